@@ -1,28 +1,62 @@
 package com.example.legacy.servlet;
 
+import com.example.legacy.servlet.cache.BoundedCache;
+import com.example.legacy.servlet.cache.CacheManager;
+import com.example.legacy.servlet.data.InstrumentedDataSource;
+import com.example.legacy.servlet.data.SchemaBootstrap;
+import com.example.legacy.servlet.export.AsyncExportJob;
+import com.example.legacy.servlet.export.ColumnarExportFormat;
+import com.example.legacy.servlet.export.ContinuationToken;
+import com.example.legacy.servlet.export.CsvExportFormat;
+import com.example.legacy.servlet.export.ExportFormat;
+import com.example.legacy.servlet.export.ExportWriter;
+import com.example.legacy.servlet.export.KeyRange;
+import com.example.legacy.servlet.export.ParallelExportEngine;
+import com.example.legacy.servlet.export.SerialExportEngine;
+import com.example.legacy.servlet.export.SqlExportFormat;
+import com.example.legacy.servlet.util.NamedThreadFactory;
 import org.apache.log4j.Logger;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * DataExportServlet demonstrates:
- * - JNDI DataSource lookup (Tomcat container-managed)
+ * - JNDI DataSource lookup (Tomcat container-managed), resolved once at startup
  * - Direct JDBC usage (no ORM)
  * - Manual resource management
- * - CSV export functionality
+ * - Streaming CSV and SQL export functionality
+ * - Compact binary columnar export (?type=columnar&rowGroup=N)
+ * - Batched multi-row INSERT dumps (?type=sql&batch=N) and H2 CSVREAD load scripts
+ * - Opt-in parallel, range-partitioned export (?parallel=N)
+ * - Asynchronous export with non-blocking output (?async=true)
+ * - Keyset-resumable exports (?after=token&limit=N, Range: ids=N-)
+ * - Page boundaries of limited exports cached with a TTL and refreshed ahead of expiry
  */
 public class DataExportServlet extends HttpServlet {
     
@@ -30,26 +64,257 @@ public class DataExportServlet extends HttpServlet {
     
     private static final String JNDI_NAME = "java:comp/env/jdbc/LegacyDB";
     
+    // Last ID of a page of limit rows and, if there is one, the first ID after it
+    private static final String PAGE_END_QUERY = 
+        "SELECT ID FROM USERS WHERE ID > ? ORDER BY ID LIMIT 2 OFFSET ?";
+    
+    // Last ID of a page when fewer than limit rows remain
+    private static final String TAIL_END_QUERY = "SELECT MAX(ID) FROM USERS WHERE ID > ?";
+    
+    private static final String CONTINUATION_HEADER = "X-Export-Continuation";
+    
+    // Range: ids=<first>-[<last>], resuming an interrupted text download by ID
+    private static final Pattern ID_RANGE = Pattern.compile("ids=(\\d{1,18})-(\\d{1,18})?");
+    
+    // Rows pulled from the driver per round trip while streaming
+    private static final int EXPORT_FETCH_SIZE = 500;
+    
+    // Encoded chunk buffers in flight per partition of a parallel export
+    private static final int BUFFERS_PER_PARTITION = 4;
+    
+    // Upper bound for rows per multi-row INSERT in SQL dumps
+    private static final int MAX_SQL_BATCH = 10000;
+    
+    // Chunk buffers between the async producer and the socket
+    private static final int ASYNC_BUFFERS = 8;
+    
+    private DataSource dataSource;
+    
+    private ExecutorService exportExecutor;
+    private int maxParallelism;
+    
+    private ExecutorService asyncExecutor;
+    private long asyncTimeoutMillis;
+    
+    private BoundedCache<String, long[]> pageEnds;
+    
+    @Override
+    public void init() throws ServletException {
+        // Shared, instrumented DataSource from ApplicationStartupListener; look it up directly only if missing
+        dataSource = (DataSource) getServletContext().getAttribute(InstrumentedDataSource.CONTEXT_ATTRIBUTE);
+        if (dataSource == null) {
+            try {
+                Context initContext = new InitialContext();
+                dataSource = (DataSource) initContext.lookup(JNDI_NAME);
+                logger.warn("Shared DataSource not found in servlet context; using " + JNDI_NAME + " directly");
+            } catch (NamingException e) {
+                throw new ServletException("DataSource " + JNDI_NAME + " is not available", e);
+            }
+        }
+        
+        // Keep well below the pool's maxTotal so parallel exports never starve other requests
+        String threadsParam = getInitParameter("parallelThreads");
+        maxParallelism = threadsParam != null 
+                ? Integer.parseInt(threadsParam) 
+                : Math.min(Runtime.getRuntime().availableProcessors(), 8);
+        exportExecutor = Executors.newFixedThreadPool(maxParallelism, 
+                new NamedThreadFactory("export-worker"));
+        
+        // Async exports run on their own bounded pool; a full queue is answered with 503
+        int asyncThreads = intParameter("asyncThreads", 4);
+        int asyncQueueSize = intParameter("asyncQueueSize", 50);
+        asyncTimeoutMillis = intParameter("asyncTimeoutMillis", 600000);
+        asyncExecutor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 
+                60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(asyncQueueSize),
+                new NamedThreadFactory("export-async"));
+        
+        // Every client paging through an export asks for the same boundaries, and
+        // each lookup skips limit rows with OFFSET; rows only change by bulk load,
+        // so a boundary with rows after it may be up to pageEndCacheSeconds old.
+        // The last page is where new rows land, so it is never cached
+        int pageEndSeconds = Math.max(1, intParameter("pageEndCacheSeconds", 60));
+        CacheManager caches = CacheManager.fromContext(getServletContext());
+        pageEnds = caches.create("exportPageEnds", BoundedCache.<String, long[]>builder()
+                .maximumSize(caches.getDefaultMaximumSize())
+                .expireAfterWrite(pageEndSeconds, TimeUnit.SECONDS)
+                .refreshAfterWrite(pageEndSeconds * 500L, TimeUnit.MILLISECONDS));
+        
+        logger.info("DataExportServlet initialized with " + maxParallelism + " parallel export threads, " 
+                  + asyncThreads + " async export threads");
+    }
+    
+    private int intParameter(String name, int defaultValue) {
+        String value = getInitParameter(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+    
+    @Override
+    public void destroy() {
+        asyncExecutor.shutdownNow();
+        exportExecutor.shutdownNow();
+        logger.info("DataExportServlet destroyed");
+    }
+    
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         
+        Throwable asyncFailure = (Throwable) request.getAttribute(AsyncExportJob.FAILURE_ATTRIBUTE);
+        if (asyncFailure != null && request.getDispatcherType() == DispatcherType.ASYNC) {
+            // Dispatched back by a failed async export whose response is committed
+            throw new ServletException("Async export failed", asyncFailure);
+        }
+        
         String exportType = request.getParameter("type");
         
         if (exportType == null) {
             exportType = "csv";
         }
         
-        logger.info("Exporting data in format: " + exportType);
+        // Schema is created once by ApplicationStartupListener
+        SchemaBootstrap bootstrap = (SchemaBootstrap) getServletContext()
+                .getAttribute(SchemaBootstrap.CONTEXT_ATTRIBUTE);
+        if (bootstrap == null) {
+            // No DataSource at startup: nothing a client retry could fix
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, 
+                             "Database is not configured");
+            return;
+        }
+        if (!bootstrap.isReady() && !bootstrap.retry()) {
+            // A failed bootstrap is retried on requests, so asking the client back is honest
+            response.setHeader("Retry-After", "5");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, 
+                             "Database is not initialized yet");
+            return;
+        }
         
-        try {
-            if ("csv".equals(exportType)) {
-                exportToCSV(response);
-            } else if ("sql".equals(exportType)) {
-                exportToSQL(response);
+        Supplier<ExportFormat> formats;
+        if ("csv".equals(exportType)) {
+            formats = CsvExportFormat::new;
+        } else if ("sql".equals(exportType)) {
+            if ("csvread".equals(request.getParameter("load"))) {
+                exportLoadScript(request, response);
+                return;
+            }
+            final int batchSize = parseBatchSize(request.getParameter("batch"));
+            if (batchSize < 1) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
+                                 "batch must be between 1 and " + MAX_SQL_BATCH);
+                return;
+            }
+            formats = () -> new SqlExportFormat(batchSize);
+        } else if ("columnar".equals(exportType)) {
+            final int rowGroupSize = parseRowGroupSize(request.getParameter("rowGroup"));
+            if (rowGroupSize < 1) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
+                                 "rowGroup must be between 1 and " + ColumnarExportFormat.MAX_ROW_GROUP_SIZE);
+                return;
+            }
+            formats = () -> new ColumnarExportFormat(rowGroupSize);
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
+                             "Unsupported export type. Use 'csv', 'sql' or 'columnar'");
+            return;
+        }
+        
+        KeyRange range = KeyRange.ALL;
+        String afterParam = request.getParameter("after");
+        if (afterParam != null) {
+            try {
+                range = KeyRange.after(ContinuationToken.decode(afterParam));
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+        }
+        
+        int limit = 0;
+        String limitParam = request.getParameter("limit");
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam.trim());
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
+                                 "limit must be a positive integer");
+                return;
+            }
+        }
+        
+        // Text formats can be appended to a partial download; the binary format cannot
+        boolean appendable = !"columnar".equals(exportType);
+        String rangeHeader = null;
+        if (appendable && afterParam == null && limitParam == null) {
+            rangeHeader = request.getHeader("Range");
+            long[] ids = rangeHeader != null ? parseIdRange(rangeHeader) : null;
+            if (ids != null) {
+                range = KeyRange.after(ids[0] - 1).withLastId(ids[1]);
             } else {
+                // Unknown units and malformed ranges are ignored, as RFC 7233 allows
+                rangeHeader = null;
+            }
+        }
+        
+        int parallel = 1;
+        String parallelParam = request.getParameter("parallel");
+        if (parallelParam != null) {
+            try {
+                parallel = Integer.parseInt(parallelParam);
+            } catch (NumberFormatException e) {
+                parallel = 0;
+            }
+            if (parallel < 1) {
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
-                                 "Unsupported export type. Use 'csv' or 'sql'");
+                                 "parallel must be a positive integer");
+                return;
+            }
+            parallel = Math.min(parallel, maxParallelism);
+        }
+        
+        logger.info("Exporting data in format: " + exportType + 
+                   (parallel > 1 ? " with " + parallel + " partitions" : "") +
+                   (range != KeyRange.ALL ? " for IDs " + range : "") +
+                   (limit > 0 ? " limited to " + limit + " rows" : ""));
+        
+        boolean async = "true".equals(request.getParameter("async"));
+        if (async && !request.isAsyncSupported()) {
+            logger.warn("Async export requested but the filter chain does not support async; exporting synchronously");
+            async = false;
+        }
+        
+        try {
+            if (limit > 0) {
+                // Fix the page's last ID up front so its continuation token can go in
+                // a header, and so rows arriving during the export can't overfill it
+                long[] page = cachedPageEnd(range.getAfterId(), limit);
+                range = range.withLastId(page[0]);
+                if (page.length > 1) {
+                    response.setHeader(CONTINUATION_HEADER, ContinuationToken.encode(page[0]));
+                }
+            }
+            
+            boolean writeHeader = true;
+            if (appendable) {
+                response.setHeader("Accept-Ranges", "ids");
+            }
+            if (rangeHeader != null) {
+                // The body continues an earlier download, so no second header row
+                writeHeader = false;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "ids " + rangeHeader.substring(4).trim() + "/*");
+            }
+            
+            if (async) {
+                exportAsync(formats, parallel, range, writeHeader, request, response);
+            } else if (parallel > 1) {
+                startDownload(formats.get(), response);
+                long rows = exportParallel(formats, parallel, range, writeHeader, response.getOutputStream());
+                logger.info("Parallel export completed successfully: " + rows + " rows");
+            } else {
+                startDownload(formats.get(), response);
+                exportSerial(formats.get(), range, writeHeader, response.getOutputStream());
             }
         } catch (Exception e) {
             logger.error("Error during data export", e);
@@ -57,143 +322,197 @@ public class DataExportServlet extends HttpServlet {
         }
     }
     
+    private DataSource getDataSource() {
+        return dataSource;
+    }
+    
+    private int parseBatchSize(String batchParam) {
+        if (batchParam == null) {
+            return 1;
+        }
+        try {
+            int batchSize = Integer.parseInt(batchParam.trim());
+            return batchSize <= MAX_SQL_BATCH ? batchSize : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
     /**
-     * Demonstrates JNDI DataSource lookup
+     * Parses {@code ids=<first>-[<last>]}.
+     *
+     * @return {first, last} or null if the header is not a usable ID range
      */
-    private DataSource getDataSource() throws NamingException {
-        Context initContext = new InitialContext();
-        return (DataSource) initContext.lookup(JNDI_NAME);
+    private static long[] parseIdRange(String rangeHeader) {
+        Matcher m = ID_RANGE.matcher(rangeHeader.trim());
+        if (!m.matches()) {
+            return null;
+        }
+        long first = Long.parseLong(m.group(1));
+        long last = m.group(2) != null ? Long.parseLong(m.group(2)) : Long.MAX_VALUE;
+        return first <= last ? new long[] {first, last} : null;
     }
     
-    private void exportToCSV(HttpServletResponse response) 
-            throws NamingException, SQLException, IOException {
-        
-        DataSource ds = getDataSource();
-        
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
+    /**
+     * Fixes the page of {@code limit} rows after {@code afterId} by counting
+     * rows along the primary key index, so every full page holds exactly
+     * {@code limit} rows however sparse the IDs are.
+     *
+     * @return {lastId, nextId} if more rows follow, otherwise {lastId} for the
+     *         last row there is now (afterId itself if there are none), so the
+     *         page never holds more than {@code limit} rows
+     */
+    private long[] findPageEnd(long afterId, int limit) 
+            throws SQLException {
         
-        try {
-            conn = ds.getConnection();
-            
-            // Create sample table if not exists (for demonstration)
-            initializeSampleData(conn);
-            
-            stmt = conn.prepareStatement("SELECT * FROM USERS ORDER BY ID");
-            rs = stmt.executeQuery();
-            
-            // Set response headers for CSV download
-            response.setContentType("text/csv");
-            response.setHeader("Content-Disposition", "attachment; filename=\"users.csv\"");
-            
-            PrintWriter writer = response.getWriter();
-            
-            // Write CSV header
-            writer.println("ID,USERNAME,EMAIL,CREATED_DATE");
-            
-            // Write data rows
-            while (rs.next()) {
-                writer.printf("%d,%s,%s,%s%n",
-                    rs.getLong("ID"),
-                    rs.getString("USERNAME"),
-                    rs.getString("EMAIL"),
-                    rs.getTimestamp("CREATED_DATE")
-                );
-            }
-            
-            writer.flush();
-            
-            logger.info("CSV export completed successfully");
-            
-        } finally {
-            if (rs != null) {
-                try { rs.close(); } catch (SQLException e) { 
-                    logger.error("Error closing ResultSet", e); 
+        try (Connection conn = getDataSource().getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(PAGE_END_QUERY)) {
+                stmt.setLong(1, afterId);
+                stmt.setInt(2, limit - 1);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        long lastId = rs.getLong(1);
+                        return rs.next() ? new long[] {lastId, rs.getLong(1)} : new long[] {lastId};
+                    }
                 }
             }
-            if (stmt != null) {
-                try { stmt.close(); } catch (SQLException e) { 
-                    logger.error("Error closing Statement", e); 
+            
+            // Fewer than limit rows remain
+            try (PreparedStatement stmt = conn.prepareStatement(TAIL_END_QUERY)) {
+                stmt.setLong(1, afterId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    long lastId = rs.getLong(1);
+                    return new long[] {rs.wasNull() ? afterId : lastId};
                 }
             }
-            if (conn != null) {
-                try { conn.close(); } catch (SQLException e) { 
-                    logger.error("Error closing Connection", e); 
-                }
+        }
+    }
+    
+    /**
+     * findPageEnd through the page boundary cache; the array is shared, don't modify it.
+     * Only boundaries with rows after them are cached: the last page grows as rows
+     * are added, so it is looked up every time.
+     */
+    private long[] cachedPageEnd(final long afterId, final int limit) throws ExecutionException {
+        final long[][] last = new long[1][];
+        long[] page = pageEnds.get(afterId + ":" + limit, key -> {
+            long[] end = findPageEnd(afterId, limit);
+            if (end.length > 1) {
+                return end;
             }
+            // Not cached; a background refresh that finds the last page drops the entry
+            last[0] = end;
+            return null;
+        });
+        return page != null ? page : last[0];
+    }
+    
+    private int parseRowGroupSize(String rowGroupParam) {
+        if (rowGroupParam == null) {
+            return ColumnarExportFormat.DEFAULT_ROW_GROUP_SIZE;
+        }
+        try {
+            int rowGroupSize = Integer.parseInt(rowGroupParam.trim());
+            return rowGroupSize <= ColumnarExportFormat.MAX_ROW_GROUP_SIZE ? rowGroupSize : 0;
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
     
-    private void exportToSQL(HttpServletResponse response) 
-            throws NamingException, SQLException, IOException {
+    /**
+     * Writes an H2 bulk-load script that restores a CSV export with a single
+     * INSERT ... SELECT FROM CSVREAD instead of one statement per row.
+     */
+    private void exportLoadScript(HttpServletRequest request, HttpServletResponse response) 
+            throws IOException {
         
-        DataSource ds = getDataSource();
+        String csvFile = request.getParameter("csvFile");
+        if (csvFile == null || csvFile.isEmpty()) {
+            csvFile = "users.csv";
+        }
         
-        try (Connection conn = ds.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM USERS ORDER BY ID");
-             ResultSet rs = stmt.executeQuery()) {
-            
-            initializeSampleData(conn);
-            
-            response.setContentType("text/plain");
-            response.setHeader("Content-Disposition", "attachment; filename=\"users.sql\"");
-            
-            PrintWriter writer = response.getWriter();
-            writer.println("-- User Data Export");
-            writer.println("-- Generated: " + new java.util.Date());
-            writer.println();
-            
-            while (rs.next()) {
-                writer.printf("INSERT INTO USERS (ID, USERNAME, EMAIL, CREATED_DATE) VALUES (%d, '%s', '%s', '%s');%n",
-                    rs.getLong("ID"),
-                    rs.getString("USERNAME"),
-                    rs.getString("EMAIL"),
-                    rs.getTimestamp("CREATED_DATE")
-                );
-            }
-            
-            writer.flush();
-            
-            logger.info("SQL export completed successfully");
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"users-load.sql\"");
+        
+        PrintWriter writer = response.getWriter();
+        writer.println("-- User Data Bulk Load (H2)");
+        writer.println("-- Generated: " + new java.util.Date());
+        writer.println("-- Restores a file produced by /export?type=csv");
+        writer.println();
+        writer.println(CsvExportFormat.loadStatement(csvFile));
+        writer.flush();
+        
+        logger.info("SQL bulk-load script generated for " + csvFile);
+    }
+    
+    private void startDownload(ExportFormat format, HttpServletResponse response) {
+        response.setContentType(format.getContentType());
+        if (format.getContentType().startsWith("text/")) {
+            response.setCharacterEncoding("UTF-8");
         }
+        response.setHeader("Content-Disposition", 
+                          "attachment; filename=\"" + format.getFileName() + "\"");
     }
     
     /**
-     * Initialize sample data in H2 database
+     * Streams the USERS table on one connection with a bounded fetch size,
+     * so heap use does not grow with the number of rows exported.
      */
-    private void initializeSampleData(Connection conn) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement(
-                "CREATE TABLE IF NOT EXISTS USERS (" +
-                "ID BIGINT PRIMARY KEY AUTO_INCREMENT, " +
-                "USERNAME VARCHAR(50) NOT NULL, " +
-                "EMAIL VARCHAR(100) NOT NULL, " +
-                "CREATED_DATE TIMESTAMP DEFAULT CURRENT_TIMESTAMP)")) {
-            stmt.execute();
-        }
-        
-        // Check if data exists
-        try (PreparedStatement checkStmt = conn.prepareStatement("SELECT COUNT(*) FROM USERS");
-             ResultSet rs = checkStmt.executeQuery()) {
-            if (rs.next() && rs.getInt(1) == 0) {
-                // Insert sample data
-                try (PreparedStatement insertStmt = conn.prepareStatement(
-                        "INSERT INTO USERS (USERNAME, EMAIL) VALUES (?, ?)")) {
-                    
-                    String[][] users = {
-                        {"admin", "admin@example.com"},
-                        {"john", "john@example.com"},
-                        {"jane", "jane@example.com"},
-                        {"bob", "bob@example.com"}
-                    };
-                    
-                    for (String[] user : users) {
-                        insertStmt.setString(1, user[0]);
-                        insertStmt.setString(2, user[1]);
-                        insertStmt.executeUpdate();
-                    }
-                }
-            }
+    private long exportSerial(ExportFormat format, KeyRange range, boolean writeHeader, OutputStream out) 
+            throws SQLException, IOException {
+        
+        SerialExportEngine engine = new SerialExportEngine(getDataSource(), 
+                EXPORT_FETCH_SIZE, ExportWriter.DEFAULT_CHUNK_SIZE);
+        
+        return engine.export(format, range, writeHeader, out);
+    }
+    
+    /**
+     * Splits the ID space into key ranges scanned concurrently on separate
+     * pooled connections, then writes the encoded ranges back in ID order.
+     */
+    private long exportParallel(Supplier<ExportFormat> formats, int partitions, KeyRange range,
+                                boolean writeHeader, OutputStream out) 
+            throws SQLException, IOException {
+        
+        ParallelExportEngine engine = new ParallelExportEngine(getDataSource(), exportExecutor,
+                EXPORT_FETCH_SIZE, ExportWriter.DEFAULT_CHUNK_SIZE, BUFFERS_PER_PARTITION);
+        
+        return engine.export(formats, partitions, range, writeHeader, out);
+    }
+    
+    /**
+     * Releases the request thread immediately: the export runs on the async
+     * executor and bytes are pushed through a WriteListener only while the
+     * client's socket is writable.
+     */
+    private void exportAsync(final Supplier<ExportFormat> formats, final int parallel,
+                             final KeyRange range, final boolean writeHeader,
+                             HttpServletRequest request, HttpServletResponse response) 
+            throws IOException {
+        
+        startDownload(formats.get(), response);
+        
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(asyncTimeoutMillis);
+        
+        AsyncExportJob job = new AsyncExportJob(asyncContext, out -> parallel > 1 
+                ? exportParallel(formats, parallel, range, writeHeader, out) 
+                : exportSerial(formats.get(), range, writeHeader, out),
+                ASYNC_BUFFERS, ExportWriter.DEFAULT_CHUNK_SIZE);
+        
+        try {
+            job.start(asyncExecutor);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Async export rejected: executor saturated");
+            response.reset();
+            response.setHeader("Retry-After", "30");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, 
+                             "Too many concurrent exports, please retry later");
+            asyncContext.complete();
         }
     }
 }
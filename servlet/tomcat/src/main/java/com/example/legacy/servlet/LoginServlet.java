@@ -1,28 +1,52 @@
 package com.example.legacy.servlet;
 
+import com.example.legacy.servlet.auth.LoginRateLimiter;
+import com.example.legacy.servlet.auth.TokenService;
+import com.example.legacy.servlet.session.SessionAttributeStore;
+import com.example.legacy.servlet.session.SessionRecord;
 import org.apache.log4j.Logger;
+import org.json.JSONObject;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 import java.io.IOException;
 
 /**
  * LoginServlet demonstrates:
  * - Traditional HttpServlet extension
- * - Session management using HttpSession
+ * - Session management through a pluggable SessionAttributeStore (HttpSession or off-heap)
+ * - Signed token issuing instead of a session (authMode=TOKEN)
  * - Manual request parameter handling
  * - Hardcoded business logic
+ * - Login throttling by client address and username (no session needed)
  * - Forward to JSP for view rendering
  */
 public class LoginServlet extends HttpServlet {
     
     private static final Logger logger = Logger.getLogger(LoginServlet.class);
     
-    private static final int MAX_LOGIN_ATTEMPTS = 3;
-    private static final int SESSION_TIMEOUT = 1800; // 30 minutes
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    
+    // Null in session mode
+    private TokenService tokenService;
+    
+    private SessionAttributeStore sessions;
+    
+    private LoginRateLimiter rateLimiter;
+    
+    @Override
+    public void init() throws ServletException {
+        tokenService = (TokenService) getServletContext().getAttribute(TokenService.CONTEXT_ATTRIBUTE);
+        sessions = SessionAttributeStore.fromContext(getServletContext());
+        rateLimiter = (LoginRateLimiter) getServletContext().getAttribute(LoginRateLimiter.CONTEXT_ATTRIBUTE);
+        if (rateLimiter == null) {
+            rateLimiter = LoginRateLimiter.fromContext(getServletContext());
+            getServletContext().setAttribute(LoginRateLimiter.CONTEXT_ATTRIBUTE, rateLimiter);
+        }
+    }
     
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) 
@@ -40,26 +64,26 @@ public class LoginServlet extends HttpServlet {
         String username = request.getParameter("username");
         String password = request.getParameter("password");
         
-        logger.info("POST /login - Login attempt for user: " + username);
+        // Before any credential check (and before logging, which a flood would swamp)
+        long retryAfterMillis = rateLimiter.tryAcquire(username, request.getRemoteAddr(), System.currentTimeMillis());
+        if (retryAfterMillis > 0) {
+            rejectThrottled(request, response, retryAfterMillis);
+            return;
+        }
         
-        HttpSession session = request.getSession(true);
+        logger.info("POST /login - Login attempt for user: " + username);
         
-        // Track login attempts in session
-        Integer attempts = (Integer) session.getAttribute("loginAttempts");
-        if (attempts == null) {
-            attempts = 0;
+        if (tokenService != null) {
+            issueToken(request, response, username, password);
+            return;
         }
         
         if (authenticate(username, password)) {
             logger.info("Login successful for user: " + username);
             
-            session.setAttribute("username", username);
-            session.setAttribute("role", getUserRole(username));
-            session.setAttribute("loginTime", System.currentTimeMillis());
-            session.removeAttribute("loginAttempts");
-            
-            // Set custom session timeout
-            session.setMaxInactiveInterval(SESSION_TIMEOUT);
+            // Only a successful login gets a session; the store applies its timeout
+            sessions.put(request, response, 
+                    SessionRecord.login(username, getUserRole(username), System.currentTimeMillis()));
             
             // Redirect to home page
             response.sendRedirect(request.getContextPath() + "/users/dashboard");
@@ -67,23 +91,65 @@ public class LoginServlet extends HttpServlet {
         } else {
             logger.warn("Login failed for user: " + username);
             
-            attempts++;
-            session.setAttribute("loginAttempts", attempts);
-            
-            if (attempts >= MAX_LOGIN_ATTEMPTS) {
-                logger.error("Maximum login attempts exceeded for user: " + username);
-                session.invalidate();
-                request.setAttribute("error", "Too many failed attempts. Please try again later.");
-            } else {
-                request.setAttribute("error", "Invalid username or password");
-                request.setAttribute("remainingAttempts", MAX_LOGIN_ATTEMPTS - attempts);
-            }
+            request.setAttribute("error", "Invalid username or password");
             
             // Forward back to login page with error
             request.getRequestDispatcher("/WEB-INF/jsp/login.jsp").forward(request, response);
         }
     }
     
+    private void rejectThrottled(HttpServletRequest request, HttpServletResponse response, long retryAfterMillis) 
+            throws ServletException, IOException {
+        long retryAfterSeconds = (retryAfterMillis + 999) / 1000;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Login throttled for " + request.getRemoteAddr() + ", retry in " + retryAfterSeconds + "s");
+        }
+        
+        response.setStatus(SC_TOO_MANY_REQUESTS);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        request.setAttribute("error", "Too many login attempts. Please try again in " + retryAfterSeconds + " seconds.");
+        request.getRequestDispatcher("/WEB-INF/jsp/login.jsp").forward(request, response);
+    }
+    
+    /**
+     * Token mode: the signed token goes into an HttpOnly cookie for browsers,
+     * and into the body for API clients asking for JSON. No session is created.
+     */
+    private void issueToken(HttpServletRequest request, HttpServletResponse response, 
+                            String username, String password) throws ServletException, IOException {
+        if (!authenticate(username, password)) {
+            logger.warn("Login failed for user: " + username);
+            request.setAttribute("error", "Invalid username or password");
+            request.getRequestDispatcher("/WEB-INF/jsp/login.jsp").forward(request, response);
+            return;
+        }
+        
+        logger.info("Login successful for user: " + username);
+        String token = tokenService.issue(username, getUserRole(username), System.currentTimeMillis());
+        
+        Cookie cookie = new Cookie(TokenService.COOKIE_NAME, token);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setMaxAge((int) tokenService.getTtlSeconds());
+        response.addCookie(cookie);
+        
+        String accept = request.getHeader("Accept");
+        if (accept != null && accept.contains("application/json")) {
+            JSONObject json = new JSONObject();
+            json.put("token", token);
+            json.put("tokenType", "Bearer");
+            json.put("expiresIn", tokenService.getTtlSeconds());
+            
+            response.setHeader("Cache-Control", "no-store");
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().print(json.toString());
+        } else {
+            response.sendRedirect(request.getContextPath() + "/users/dashboard");
+        }
+    }
+    
     private boolean authenticate(String username, String password) {
         // Extremely simplified authentication
         // In real app, would check against database
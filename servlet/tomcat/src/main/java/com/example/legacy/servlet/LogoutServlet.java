@@ -0,0 +1,65 @@
+package com.example.legacy.servlet;
+
+import com.example.legacy.servlet.auth.TokenService;
+import com.example.legacy.servlet.session.SessionAttributeStore;
+import org.apache.log4j.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * LogoutServlet demonstrates:
+ * - Ending a session through the SessionAttributeStore, so an off-heap slot
+ *   is freed at once instead of waiting for the timeout
+ * - Token mode: clearing the token cookie (the token itself stays valid
+ *   until it expires; there is no server-side state to drop)
+ * - Redirect back to the login page
+ */
+public class LogoutServlet extends HttpServlet {
+    
+    private static final Logger logger = Logger.getLogger(LogoutServlet.class);
+    
+    // Null in session mode
+    private TokenService tokenService;
+    
+    private SessionAttributeStore sessions;
+    
+    @Override
+    public void init() throws ServletException {
+        tokenService = (TokenService) getServletContext().getAttribute(TokenService.CONTEXT_ATTRIBUTE);
+        sessions = SessionAttributeStore.fromContext(getServletContext());
+    }
+    
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        logout(request, response);
+    }
+    
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        logout(request, response);
+    }
+    
+    private void logout(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (tokenService != null) {
+            Cookie cookie = new Cookie(TokenService.COOKIE_NAME, "");
+            cookie.setHttpOnly(true);
+            cookie.setSecure(request.isSecure());
+            cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+            cookie.setMaxAge(0);
+            response.addCookie(cookie);
+        } else {
+            sessions.invalidate(request, response);
+        }
+        logger.info("Logged out");
+        
+        response.setHeader("Cache-Control", "no-store");
+        response.sendRedirect(request.getContextPath() + "/login");
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.legacy.servlet;
+
+import com.example.legacy.servlet.cache.CacheManager;
+import com.example.legacy.servlet.metrics.MetricsRegistry;
+import com.example.legacy.servlet.scheduler.TaskScheduler;
+import org.apache.log4j.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * MetricsServlet demonstrates:
+ * - Admin-only endpoint (under /admin/*, guarded by SecurityFilter)
+ * - Shared component lookup from ServletContext attributes
+ * - Plain-text exposition format (Prometheus 0.0.4) for scraping
+ * - Application cache and scheduled task statistics alongside the request metrics
+ */
+public class MetricsServlet extends HttpServlet {
+    
+    private static final Logger logger = Logger.getLogger(MetricsServlet.class);
+    
+    private MetricsRegistry registry;
+    
+    @Override
+    public void init() throws ServletException {
+        registry = (MetricsRegistry) getServletContext().getAttribute(MetricsRegistry.CONTEXT_ATTRIBUTE);
+        if (registry == null) {
+            throw new ServletException("MetricsRegistry not initialized");
+        }
+        logger.info("MetricsServlet initialized (window " + registry.getWindowSeconds() + "s)");
+    }
+    
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        
+        PrintWriter out = response.getWriter();
+        registry.writeText(out);
+        
+        CacheManager caches = (CacheManager) getServletContext().getAttribute(CacheManager.CONTEXT_ATTRIBUTE);
+        if (caches != null) {
+            caches.writeText(out);
+        }
+        
+        TaskScheduler scheduler = (TaskScheduler) getServletContext().getAttribute(TaskScheduler.CONTEXT_ATTRIBUTE);
+        if (scheduler != null) {
+            scheduler.writeText(out);
+        }
+    }
+}
@@ -1,36 +1,105 @@
 package com.example.legacy.servlet;
 
+import com.example.legacy.servlet.cache.BoundedCache;
+import com.example.legacy.servlet.cache.CacheManager;
+import com.example.legacy.servlet.catalog.CatalogCursor;
+import com.example.legacy.servlet.catalog.Money;
+import com.example.legacy.servlet.catalog.Product;
+import com.example.legacy.servlet.catalog.ProductCatalog;
+import com.example.legacy.servlet.catalog.ProductQuery;
+import com.example.legacy.servlet.store.DurableStore;
+import com.example.legacy.servlet.store.RecordCodec;
+import com.example.legacy.servlet.store.StoreSettings;
+import com.example.legacy.servlet.util.ETags;
+import com.example.legacy.servlet.util.JsonBytesCache;
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONString;
 
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.CRC32;
 
 /**
  * ProductServlet demonstrates:
  * - Traditional servlet pattern
- * - Hardcoded data/configuration
- * - Manual JSON handling
+ * - Hardcoded seed data/configuration
+ * - Catalog loaded from a durable store at startup into an indexed ProductCatalog
+ * - Price/stock filters with keyset (cursor) pagination
+ * - Manual JSON handling (cached as UTF-8 bytes per product)
+ * - Rendered listing pages in the shared bounded cache, keyed by catalog version
+ * - Fixed-point prices; BigDecimal only at the request/storage boundary
+ * - Versioned ETags on listings; per-product, per-representation ETags on details
  */
 public class ProductServlet extends HttpServlet {
     
     private static final Logger logger = Logger.getLogger(ProductServlet.class);
     
-    private static List<Product> products = new ArrayList<>();
+    private DurableStore<Long, Product> productStore;
     
-    static {
-        products.add(new Product(1L, "Laptop", "High-performance laptop", new BigDecimal("999.99"), 10));
-        products.add(new Product(2L, "Mouse", "Wireless mouse", new BigDecimal("29.99"), 50));
-        products.add(new Product(3L, "Keyboard", "Mechanical keyboard", new BigDecimal("79.99"), 30));
-        products.add(new Product(4L, "Monitor", "27-inch 4K monitor", new BigDecimal("399.99"), 15));
-        products.add(new Product(5L, "Headphones", "Noise-canceling headphones", new BigDecimal("199.99"), 25));
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final long DEFAULT_PAGE_CACHE_BYTES = 4L * 1024 * 1024;
+    
+    private volatile ProductCatalog catalog;
+    
+    private JsonBytesCache<Long, Product> productJson;
+    
+    private BoundedCache<String, byte[]> pageCache;
+    
+    @Override
+    public void init() throws ServletException {
+        CacheManager caches = CacheManager.fromContext(getServletContext());
+        productJson = new JsonBytesCache<>(this::productToJson, caches, "productJson", caches.getDefaultMaximumSize());
+        
+        // Weighed in bytes: a page of 1000 products is a hundred times a page of 10
+        String pageCacheParam = getInitParameter("pageCacheBytes");
+        long pageCacheBytes = pageCacheParam != null ? Long.parseLong(pageCacheParam.trim()) : DEFAULT_PAGE_CACHE_BYTES;
+        pageCache = caches.create("productPages", BoundedCache.<String, byte[]>builder()
+                .maximumWeight(pageCacheBytes, (key, body) -> body.length + 2 * key.length())
+                .expectedEntries(caches.getDefaultMaximumSize()));
+        
+        try {
+            productStore = new DurableStore<>(StoreSettings.fromContext(getServletContext()), 
+                    "products", new ProductCodec());
+            
+            if (productStore.isFresh()) {
+                seed(new Product(1L, "Laptop", "High-performance laptop", Money.parse("999.99"), 10));
+                seed(new Product(2L, "Mouse", "Wireless mouse", Money.parse("29.99"), 50));
+                seed(new Product(3L, "Keyboard", "Mechanical keyboard", Money.parse("79.99"), 30));
+                seed(new Product(4L, "Monitor", "27-inch 4K monitor", Money.parse("399.99"), 15));
+                seed(new Product(5L, "Headphones", "Noise-canceling headphones", Money.parse("199.99"), 25));
+            }
+        } catch (IOException e) {
+            throw new ServletException("Cannot open product store", e);
+        }
+        
+        catalog = new ProductCatalog(productStore.snapshot().values(), productStore.getVersion());
+        
+        logger.info("ProductServlet initialized with " + catalog.size() + " products");
+    }
+    
+    private void seed(Product product) throws IOException {
+        productStore.put(product.getId(), product);
+    }
+    
+    @Override
+    public void destroy() {
+        try {
+            productStore.close();
+        } catch (IOException e) {
+            logger.error("Failed to close product store", e);
+        }
     }
     
     @Override
@@ -44,7 +113,7 @@ public class ProductServlet extends HttpServlet {
         } else if (pathInfo.startsWith("/details/")) {
             String idStr = pathInfo.substring("/details/".length());
             try {
-                Long id = Long.parseLong(idStr);
+                long id = Long.parseLong(idStr);
                 getProductDetails(request, response, id);
             } catch (NumberFormatException e) {
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid product ID");
@@ -57,50 +126,144 @@ public class ProductServlet extends HttpServlet {
     private void listProducts(HttpServletRequest request, HttpServletResponse response) 
             throws IOException {
         
+        ProductCatalog current = catalog;
+        String etag = ETags.weak("products", current.getVersion());
+        
         String pageParam = request.getParameter("page");
         String sizeParam = request.getParameter("size");
+        String cursorParam = request.getParameter("cursor");
         
-        int page = pageParam != null ? Integer.parseInt(pageParam) : 0;
-        int size = sizeParam != null ? Integer.parseInt(sizeParam) : 10;
-        
-        int start = page * size;
-        int end = Math.min(start + size, products.size());
+        ProductQuery query;
+        CatalogCursor cursor;
+        int page;
+        int size;
+        try {
+            query = parseQuery(request);
+            cursor = cursorParam != null ? CatalogCursor.decode(cursorParam) : null;
+            page = pageParam != null ? Integer.parseInt(pageParam) : 0;
+            size = sizeParam != null ? Integer.parseInt(sizeParam) : DEFAULT_PAGE_SIZE;
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            // Also covers NumberFormatException
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
+                    "page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
+            return;
+        }
         
-        List<Product> pageProducts = products.subList(start, end);
+        if (ETags.checkNotModified(request, response, etag)) {
+            return;
+        }
         
-        JSONObject result = new JSONObject();
-        result.put("totalElements", products.size());
-        result.put("totalPages", (products.size() + size - 1) / size);
-        result.put("currentPage", page);
-        result.put("pageSize", size);
+        // Keyed by catalog version, so a catalog change never serves an old page,
+        // and by the parsed request rather than its text, so parameter order,
+        // spelling (10 or 10.00) and unrelated parameters don't multiply entries.
+        // A cursor overrides page, so only one of them is part of the key.
+        String pageKey = current.getVersion() + "|" + query.canonical() + "|" 
+                + (cursor != null ? "cursor=" + cursor.encode() : "page=" + page) + "|size=" + size;
+        byte[] body = pageCache.getIfPresent(pageKey);
+        if (body != null) {
+            writeJson(response, body);
+            return;
+        }
         
-        JSONArray productsArray = new JSONArray();
-        for (Product product : pageProducts) {
-            productsArray.put(productToJson(product));
+        // Envelope is written by hand so the cached product bytes can be copied straight through
+        StringBuilder envelope = new StringBuilder(128);
+        ProductCatalog.Page result;
+        if (cursor != null) {
+            try {
+                result = current.page(query, cursor, size);
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            envelope.append("{\"pageSize\":").append(size);
+        } else {
+            // Pages past the end are empty rather than an error
+            int offset = (int) Math.min((long) page * size, Integer.MAX_VALUE);
+            result = current.offsetPage(query, offset, size);
+            int total = current.count(query);
+            envelope.append("{\"totalElements\":").append(total)
+                    .append(",\"totalPages\":").append((total + size - 1) / size)
+                    .append(",\"currentPage\":").append(page)
+                    .append(",\"pageSize\":").append(size);
+        }
+        if (result.getNext() != null) {
+            envelope.append(",\"nextCursor\":\"").append(result.getNext().encode()).append('"');
         }
-        result.put("products", productsArray);
+        envelope.append(",\"products\":");
         
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 + 160 * result.getProducts().size());
+        buffer.write(envelope.toString().getBytes(StandardCharsets.UTF_8));
+        productJson.writeArray(result.getProducts(), Product::getId, buffer);
+        buffer.write('}');
+        body = buffer.toByteArray();
+        
+        pageCache.put(pageKey, body);
+        writeJson(response, body);
+    }
+    
+    private void writeJson(HttpServletResponse response, byte[] body) throws IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        response.getWriter().write(result.toString());
+        response.setContentLength(body.length);
+        
+        ServletOutputStream out = response.getOutputStream();
+        out.write(body);
+        out.flush();
+    }
+    
+    /**
+     * minPrice/maxPrice (inclusive, decimal amounts), inStock=true and sort=id|price|stock.
+     * Bounds finer than a cent round inwards, so 9.999 as minimum means 10.00.
+     */
+    private ProductQuery parseQuery(HttpServletRequest request) {
+        String minPrice = request.getParameter("minPrice");
+        String maxPrice = request.getParameter("maxPrice");
+        String sort = request.getParameter("sort");
+        
+        ProductQuery.Sort order = ProductQuery.Sort.ID;
+        if (sort != null) {
+            try {
+                order = ProductQuery.Sort.valueOf(sort.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("sort must be id, price or stock");
+            }
+        }
+        return new ProductQuery(
+                minPrice != null ? Money.ceilMinorUnits(new BigDecimal(minPrice)) : ProductQuery.NO_MIN_PRICE,
+                maxPrice != null ? Money.floorMinorUnits(new BigDecimal(maxPrice)) : ProductQuery.NO_MAX_PRICE,
+                "true".equalsIgnoreCase(request.getParameter("inStock")),
+                order);
     }
     
-    private void getProductDetails(HttpServletRequest request, HttpServletResponse response, Long id) 
+    private void getProductDetails(HttpServletRequest request, HttpServletResponse response, long id) 
             throws IOException, ServletException {
         
-        Product product = findProductById(id);
+        ProductCatalog current = catalog;
+        Product product = current.get(id);
         
         if (product == null) {
             response.sendError(HttpServletResponse.SC_NOT_FOUND, "Product not found");
             return;
         }
         
+        // Same URL, JSON or HTML by Accept, so caches must key on it too
+        response.addHeader("Vary", "Accept");
+        
         // Check if JSON response is requested
         String accept = request.getHeader("Accept");
         if (accept != null && accept.contains("application/json")) {
-            response.setContentType("application/json");
-            response.setCharacterEncoding("UTF-8");
-            response.getWriter().write(productToJson(product).toString());
+            // Tagged by this product's JSON, so other products changing doesn't invalidate it
+            byte[] body = productJson.get(product.getId(), product);
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            if (ETags.checkNotModified(request, response, ETags.weak("product-" + id + "-json", crc.getValue()))) {
+                return;
+            }
+            writeJson(response, body);
         } else {
             // Forward to JSP for HTML view
             request.setAttribute("product", product);
@@ -108,44 +271,54 @@ public class ProductServlet extends HttpServlet {
         }
     }
     
-    private Product findProductById(Long id) {
-        for (Product p : products) {
-            if (p.getId().equals(id)) {
-                return p;
-            }
-        }
-        return null;
-    }
-    
     private JSONObject productToJson(Product product) {
         JSONObject json = new JSONObject();
         json.put("id", product.getId());
         json.put("name", product.getName());
         json.put("description", product.getDescription());
-        json.put("price", product.getPrice());
+        // Rendered from the cents, identical to how org.json prints the BigDecimal
+        final long price = product.getPriceCents();
+        json.put("price", (JSONString) () -> Money.format(price));
         json.put("stock", product.getStock());
         return json;
     }
     
-    private static class Product {
-        private Long id;
-        private String name;
-        private String description;
-        private BigDecimal price;
-        private int stock;
-        
-        public Product(Long id, String name, String description, BigDecimal price, int stock) {
-            this.id = id;
-            this.name = name;
-            this.description = description;
-            this.price = price;
-            this.stock = stock;
-        }
-        
-        public Long getId() { return id; }
-        public String getName() { return name; }
-        public String getDescription() { return description; }
-        public BigDecimal getPrice() { return price; }
-        public int getStock() { return stock; }
+    /**
+     * Log and snapshot encoding of products
+     */
+    private static class ProductCodec implements RecordCodec<Long, Product> {
+        
+        @Override
+        public void writeKey(Long key, DataOutput out) throws IOException {
+            out.writeLong(key);
+        }
+        
+        @Override
+        public Long readKey(DataInput in) throws IOException {
+            return in.readLong();
+        }
+        
+        @Override
+        public void writeValue(Product product, DataOutput out) throws IOException {
+            out.writeLong(product.getId());
+            out.writeUTF(product.getName());
+            out.writeUTF(product.getDescription());
+            // Stored as a decimal string so the store's format doesn't depend on Money.SCALE
+            out.writeUTF(Money.toBigDecimal(product.getPriceCents()).toPlainString());
+            out.writeInt(product.getStock());
+        }
+        
+        @Override
+        public Product readValue(DataInput in) throws IOException {
+            long id = in.readLong();
+            String name = in.readUTF();
+            String description = in.readUTF();
+            String price = in.readUTF();
+            try {
+                return new Product(id, name, description, Money.parse(price), in.readInt());
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw new IOException("Unreadable price " + price + " for product " + id, e);
+            }
+        }
     }
 }
@@ -0,0 +1,38 @@
+package com.example.legacy.servlet;
+
+import com.example.legacy.servlet.warmup.WarmUp;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * ReadinessServlet demonstrates:
+ * - Load balancer readiness probe, open to everyone (excluded in SecurityFilter)
+ * - 503 with Retry-After until the startup warm-up has finished
+ * - Shared component lookup from ServletContext attributes
+ */
+public class ReadinessServlet extends HttpServlet {
+    
+    private static final int RETRY_AFTER_SECONDS = 5;
+    
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) 
+            throws ServletException, IOException {
+        
+        // No warm-up configured means ready as soon as the application is up
+        WarmUp warmUp = (WarmUp) getServletContext().getAttribute(WarmUp.CONTEXT_ATTRIBUTE);
+        boolean ready = warmUp == null || warmUp.isReady();
+        
+        response.setHeader("Cache-Control", "no-store");
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        if (!ready) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        }
+        response.getWriter().print(ready ? "ready\n" : warmUp.getStatus() + "\n");
+    }
+}
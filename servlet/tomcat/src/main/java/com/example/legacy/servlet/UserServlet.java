@@ -1,40 +1,82 @@
 package com.example.legacy.servlet;
 
+import com.example.legacy.servlet.auth.AuthenticatedUser;
+import com.example.legacy.servlet.auth.TokenService;
+import com.example.legacy.servlet.cache.CacheManager;
+import com.example.legacy.servlet.session.SessionAttributeStore;
+import com.example.legacy.servlet.session.SessionRecord;
+import com.example.legacy.servlet.store.DurableStore;
+import com.example.legacy.servlet.store.RecordCodec;
+import com.example.legacy.servlet.store.StoreSettings;
+import com.example.legacy.servlet.store.StripedSnapshotMap;
+import com.example.legacy.servlet.util.ETags;
+import com.example.legacy.servlet.util.JsonBytesCache;
 import org.apache.log4j.Logger;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * UserServlet demonstrates:
  * - Manual routing based on pathInfo
- * - Session-based authorization checks
- * - Manual JSON serialization
- * - In-memory data storage
+ * - Authorization checks against the identity SecurityFilter established
+ * - Manual JSON serialization (UTF-8 bytes per user in the shared bounded cache)
+ * - Versioned ETags on the user list
+ * - In-memory data storage (striped, lock-free reads, snapshot listings)
+ * - Durable writes through a write-ahead log, recovered at startup
  * - Manual response building
  */
 public class UserServlet extends HttpServlet {
     
     private static final Logger logger = Logger.getLogger(UserServlet.class);
     
-    private static Map<String, User> users = new HashMap<>();
+    // The user store writes each field with writeUTF, which takes at most
+    // 65535 bytes; 255 characters are at most 765 of them
+    private static final int MAX_FIELD_LENGTH = 255;
     
-    static {
-        // Initialize with some data
-        users.put("admin", new User("admin", "Administrator", "admin@example.com", "admin"));
-        users.put("user", new User("user", "Regular User", "user@example.com", "user"));
-        users.put("john", new User("john", "John Doe", "john@example.com", "user"));
+    private DurableStore<String, User> users;
+    
+    private JsonBytesCache<String, User> userJson;
+    
+    private SessionAttributeStore sessions;
+    
+    @Override
+    public void init() throws ServletException {
+        CacheManager caches = CacheManager.fromContext(getServletContext());
+        userJson = new JsonBytesCache<>(this::userToJson, caches, "userJson", caches.getDefaultMaximumSize());
+        sessions = SessionAttributeStore.fromContext(getServletContext());
+        
+        try {
+            users = new DurableStore<>(StoreSettings.fromContext(getServletContext()), "users", new UserCodec());
+            
+            if (users.isFresh()) {
+                // Initialize with some data
+                users.put("admin", new User("admin", "Administrator", "admin@example.com", "admin"));
+                users.put("user", new User("user", "Regular User", "user@example.com", "user"));
+                users.put("john", new User("john", "John Doe", "john@example.com", "user"));
+            }
+        } catch (IOException e) {
+            throw new ServletException("Cannot open user store", e);
+        }
+        
+        logger.info("UserServlet initialized with " + users.size() + " users");
+    }
+    
+    @Override
+    public void destroy() {
+        try {
+            users.close();
+        } catch (IOException e) {
+            logger.error("Failed to close user store", e);
+        }
     }
     
     @Override
@@ -79,9 +121,18 @@ public class UserServlet extends HttpServlet {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Username is required");
             return;
         }
+        String[][] fields = {{"username", username}, {"fullName", fullName}, {"email", email}, {"role", role}};
+        for (String[] field : fields) {
+            if (field[1] != null && field[1].length() > MAX_FIELD_LENGTH) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, 
+                                 field[0] + " must be at most " + MAX_FIELD_LENGTH + " characters");
+                return;
+            }
+        }
         
         User user = new User(username, fullName, email, role);
         users.put(username, user);
+        userJson.invalidate(username);
         
         logger.info("Created new user: " + username);
         
@@ -126,6 +177,7 @@ public class UserServlet extends HttpServlet {
         if (pathInfo != null && pathInfo.startsWith("/delete/")) {
             String username = pathInfo.substring("/delete/".length());
             users.remove(username);
+            userJson.invalidate(username);
             
             logger.info("Deleted user: " + username);
             
@@ -136,25 +188,41 @@ public class UserServlet extends HttpServlet {
     
     private void showDashboard(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
-        HttpSession session = request.getSession();
-        request.setAttribute("username", session.getAttribute("username"));
+        AuthenticatedUser user = authenticatedUser(request);
+        request.setAttribute("username", user.getUsername());
+        request.setAttribute("role", user.getRole());
         request.setAttribute("userCount", users.size());
+        
+        // Don't create a session just to report its timeout
+        TokenService tokenService = (TokenService) getServletContext().getAttribute(TokenService.CONTEXT_ATTRIBUTE);
+        SessionRecord session = tokenService == null ? sessions.get(request) : null;
+        if (session != null) {
+            request.setAttribute("sessionTimeout", sessions.getTimeoutSeconds());
+            request.setAttribute("loginTime", session.getLoginTimeMillis());
+        } else if (tokenService != null) {
+            request.setAttribute("sessionTimeout", tokenService.getTtlSeconds());
+            request.setAttribute("loginTime", user.getExpiresAtMillis() - tokenService.getTtlSeconds() * 1000L);
+        }
         request.getRequestDispatcher("/WEB-INF/jsp/dashboard.jsp").forward(request, response);
     }
     
     private void listUsers(HttpServletRequest request, HttpServletResponse response) 
             throws IOException {
         
-        JSONArray jsonArray = new JSONArray();
-        for (User user : users.values()) {
-            jsonArray.put(userToJson(user));
+        // Point-in-time view: concurrent creates and deletes can't disturb the iteration,
+        // and its version identifies exactly this list
+        StripedSnapshotMap.Snapshot<String, User> snapshot = users.snapshot();
+        
+        response.setHeader("Cache-Control", "private, no-cache");
+        if (ETags.checkNotModified(request, response, ETags.weak("users", snapshot.getVersion()))) {
+            return;
         }
         
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
         
-        PrintWriter out = response.getWriter();
-        out.print(jsonArray.toString());
+        ServletOutputStream out = response.getOutputStream();
+        userJson.writeArray(snapshot.values(), User::getUsername, out);
         out.flush();
     }
     
@@ -171,14 +239,17 @@ public class UserServlet extends HttpServlet {
         request.getRequestDispatcher("/WEB-INF/jsp/profile.jsp").forward(request, response);
     }
     
+    private AuthenticatedUser authenticatedUser(HttpServletRequest request) {
+        return (AuthenticatedUser) request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE);
+    }
+    
     private boolean isAuthenticated(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        return session != null && session.getAttribute("username") != null;
+        return authenticatedUser(request) != null;
     }
     
     private boolean isAdmin(HttpServletRequest request) {
-        HttpSession session = request.getSession(false);
-        return session != null && "admin".equals(session.getAttribute("role"));
+        AuthenticatedUser user = authenticatedUser(request);
+        return user != null && user.isAdmin();
     }
     
     private JSONObject userToJson(User user) {
@@ -190,11 +261,51 @@ public class UserServlet extends HttpServlet {
         return json;
     }
     
+    /**
+     * Log and snapshot encoding of users
+     */
+    private static class UserCodec implements RecordCodec<String, User> {
+        
+        @Override
+        public void writeKey(String key, DataOutput out) throws IOException {
+            out.writeUTF(key);
+        }
+        
+        @Override
+        public String readKey(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+        
+        @Override
+        public void writeValue(User user, DataOutput out) throws IOException {
+            out.writeUTF(user.getUsername());
+            writeNullable(user.getFullName(), out);
+            writeNullable(user.getEmail(), out);
+            writeNullable(user.getRole(), out);
+        }
+        
+        @Override
+        public User readValue(DataInput in) throws IOException {
+            return new User(in.readUTF(), readNullable(in), readNullable(in), readNullable(in));
+        }
+        
+        private static void writeNullable(String value, DataOutput out) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+        
+        private static String readNullable(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+    
     private static class User {
-        private String username;
-        private String fullName;
-        private String email;
-        private String role;
+        private final String username;
+        private final String fullName;
+        private final String email;
+        private final String role;
         
         public User(String username, String fullName, String email, String role) {
             this.username = username;
@@ -0,0 +1,284 @@
+package com.example.legacy.servlet.accesslog;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AccessLog moves access logging off the request thread:
+ * - Request threads claim a preallocated slot in a ring buffer and copy the
+ *   request's fields into it; no formatting, no locks, no log4j call
+ * - One consumer thread formats the published slots and hands them to the
+ *   sink logger in batches (one log4j event per batch, one line per request)
+ * - When the ring is full the OverflowPolicy decides: drop and count, or wait
+ * - A sample rate below 1 records only that fraction of requests; server
+ *   errors (5xx) are always recorded
+ *
+ * Slots are claimed with a CAS on a sequence counter and published through a
+ * per-slot sequence number, so the consumer only reads fully written slots
+ * and producers never overwrite a slot the consumer has not released.
+ *
+ * An idle consumer parks until a producer publishes and unparks it, so an
+ * idle server costs no wakeups; it raises a flag first and checks the ring
+ * again, and producers publish before reading the flag, so a publish cannot
+ * slip between the check and the park unnoticed.
+ */
+public class AccessLog implements Closeable {
+    
+    private static final Logger logger = Logger.getLogger(AccessLog.class);
+    
+    private static final int MAX_BATCH = 512;
+    private static final long BLOCK_PARK_NANOS = 50000L;
+    private static final long DROP_REPORT_INTERVAL_MILLIS = 10000L;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    private final Logger sink;
+    private final OverflowPolicy policy;
+    private final double sampleRate;
+    
+    private final AccessLogEntry[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean running = true;
+    private final Thread consumer;
+    private final AtomicBoolean consumerParked = new AtomicBoolean();
+    
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    
+    // Consumer thread only
+    private final SimpleDateFormat secondFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedSecondText;
+    
+    /**
+     * @param capacity ring size, rounded up to a power of two
+     * @param sampleRate fraction of requests to record, 0..1
+     */
+    public AccessLog(Logger sink, int capacity, OverflowPolicy policy, double sampleRate) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2: " + capacity);
+        }
+        if (!(sampleRate >= 0.0 && sampleRate <= 1.0)) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.sink = sink;
+        this.policy = policy;
+        this.sampleRate = sampleRate;
+        this.slots = new AccessLogEntry[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new AccessLogEntry();
+            published.set(i, -1L);
+        }
+        this.mask = size - 1;
+        
+        this.consumer = new Thread(this::consume, "access-log-writer");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+    
+    /**
+     * Records a completed request. Called on the request thread; apart from
+     * waiting under the BLOCK policy it does nothing but copy references.
+     *
+     * @return false if the entry was sampled out or dropped
+     */
+    public boolean record(String method, String uri, String queryString, String remoteAddr, String userAgent,
+                          int status, long timestampMillis, long durationNanos) {
+        if (sampleRate < 1.0 && status < 500 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            sampledOut.increment();
+            return false;
+        }
+        
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                if (policy == OverflowPolicy.DROP || !running) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        
+        int index = (int) sequence & mask;
+        slots[index].set(method, uri, queryString, remoteAddr, userAgent, status, timestampMillis, durationNanos);
+        // A full volatile write, not lazySet: it must be visible before the
+        // consumerParked read below, or both sides could miss each other
+        published.set(index, sequence);
+        if (consumerParked.get() && consumerParked.compareAndSet(true, false)) {
+            LockSupport.unpark(consumer);
+        }
+        recorded.increment();
+        return true;
+    }
+    
+    public long getRecordedCount() {
+        return recorded.sum();
+    }
+    
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+    
+    public long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+    
+    /**
+     * Stops accepting entries, writes out everything already recorded and stops the consumer.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(10000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Access log closed: " + getRecordedCount() + " recorded, " + getDroppedCount() 
+                + " dropped, " + getSampledOutCount() + " sampled out");
+    }
+    
+    private void consume() {
+        StringBuilder batch = new StringBuilder(64 * 1024);
+        long next = 0;
+        long lastDropReport = System.currentTimeMillis();
+        long reportedDrops = 0;
+        
+        while (true) {
+            int count = 0;
+            int index = (int) next & mask;
+            while (count < MAX_BATCH && published.get(index) == next) {
+                AccessLogEntry entry = slots[index];
+                if (count > 0) {
+                    batch.append(LINE_SEPARATOR);
+                }
+                format(entry, batch);
+                entry.clear();
+                consumed = ++next;
+                count++;
+                index = (int) next & mask;
+            }
+            
+            if (count > 0) {
+                write(batch);
+            } else if (!running && claimed.get() == next) {
+                return;
+            } else {
+                consumerParked.set(true);
+                if (published.get(index) != next) {
+                    // The timeout only keeps the drop report below on schedule
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(DROP_REPORT_INTERVAL_MILLIS));
+                }
+                consumerParked.set(false);
+            }
+            
+            long now = System.currentTimeMillis();
+            if (now - lastDropReport >= DROP_REPORT_INTERVAL_MILLIS) {
+                long drops = dropped.sum();
+                if (drops > reportedDrops) {
+                    logger.warn("Access log ring full: " + (drops - reportedDrops) + " entries dropped in the last "
+                            + (now - lastDropReport) / 1000L + "s");
+                    reportedDrops = drops;
+                }
+                lastDropReport = now;
+            }
+        }
+    }
+    
+    private void write(StringBuilder batch) {
+        try {
+            sink.info(batch.toString());
+        } catch (RuntimeException e) {
+            // A broken appender must not kill the consumer and stall every request
+            logger.error("Access log write failed", e);
+        }
+        batch.setLength(0);
+    }
+    
+    /**
+     * {@code 2024-01-31 12:00:00.123 GET /path?query 200 1.234ms 203.0.113.5 "agent"}
+     */
+    private void format(AccessLogEntry entry, StringBuilder out) {
+        long second = entry.timestampMillis / 1000L;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedSecondText = secondFormat.format(new Date(second * 1000L));
+        }
+        out.append(cachedSecondText).append('.');
+        int millis = (int) (entry.timestampMillis % 1000L);
+        if (millis < 100) {
+            out.append('0');
+        }
+        if (millis < 10) {
+            out.append('0');
+        }
+        out.append(millis).append(' ');
+        
+        appendSafe(entry.method, out);
+        out.append(' ');
+        appendSafe(entry.uri, out);
+        if (entry.queryString != null) {
+            out.append('?');
+            appendSafe(entry.queryString, out);
+        }
+        out.append(' ').append(entry.status).append(' ');
+        
+        long micros = entry.durationNanos / 1000L;
+        out.append(micros / 1000L).append('.');
+        long fraction = micros % 1000L;
+        if (fraction < 100) {
+            out.append('0');
+        }
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction).append("ms ");
+        
+        appendSafe(entry.remoteAddr, out);
+        out.append(" \"");
+        appendSafe(entry.userAgent, out);
+        out.append('"');
+    }
+    
+    /**
+     * Client-supplied text can't break the one-line-per-request format.
+     */
+    private static void appendSafe(String value, StringBuilder out) {
+        if (value == null) {
+            out.append('-');
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                out.append("\\x").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            } else {
+                out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.legacy.servlet.accesslog;
+
+/**
+ * One preallocated ring buffer slot. Request threads overwrite the fields
+ * in place; the consumer formats them and clears the references so the
+ * slot does not keep request strings alive.
+ */
+final class AccessLogEntry {
+    
+    String method;
+    String uri;
+    String queryString;
+    String remoteAddr;
+    String userAgent;
+    int status;
+    long timestampMillis;
+    long durationNanos;
+    
+    void set(String method, String uri, String queryString, String remoteAddr, String userAgent,
+             int status, long timestampMillis, long durationNanos) {
+        this.method = method;
+        this.uri = uri;
+        this.queryString = queryString;
+        this.remoteAddr = remoteAddr;
+        this.userAgent = userAgent;
+        this.status = status;
+        this.timestampMillis = timestampMillis;
+        this.durationNanos = durationNanos;
+    }
+    
+    void clear() {
+        method = null;
+        uri = null;
+        queryString = null;
+        remoteAddr = null;
+        userAgent = null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.legacy.servlet.accesslog;
+
+/**
+ * What a request thread does when the access log ring buffer is full.
+ */
+public enum OverflowPolicy {
+    
+    /**
+     * Discard the entry and count it; a request never waits for logging.
+     */
+    DROP,
+    
+    /**
+     * Wait for the consumer to free a slot; no entry is lost, but a stalled
+     * log file stalls requests.
+     */
+    BLOCK
+}
@@ -0,0 +1,18 @@
+package com.example.legacy.servlet.auth;
+
+/**
+ * Where SecurityFilter looks for the caller's identity (authMode context-param).
+ */
+public enum AuthMode {
+    
+    /**
+     * Username and role live in the container's HttpSession.
+     */
+    SESSION,
+    
+    /**
+     * LoginServlet issues a signed token (cookie or Bearer header) carrying
+     * username, role and expiry; requests never touch HttpSession.
+     */
+    TOKEN
+}
@@ -0,0 +1,39 @@
+package com.example.legacy.servlet.auth;
+
+/**
+ * Identity SecurityFilter established for the current request, whatever the
+ * AuthMode. Servlets read it from the request instead of the session.
+ */
+public final class AuthenticatedUser {
+    
+    public static final String REQUEST_ATTRIBUTE = "authenticatedUser";
+    
+    private final String username;
+    private final String role;
+    private final long expiresAtMillis;
+    
+    public AuthenticatedUser(String username, String role, long expiresAtMillis) {
+        this.username = username;
+        this.role = role;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getRole() {
+        return role;
+    }
+    
+    /**
+     * Long.MAX_VALUE when the container decides (session mode).
+     */
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+    
+    public boolean isAdmin() {
+        return "admin".equals(role);
+    }
+}
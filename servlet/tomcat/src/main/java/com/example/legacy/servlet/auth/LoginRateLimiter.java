@@ -0,0 +1,100 @@
+package com.example.legacy.servlet.auth;
+
+import javax.servlet.ServletContext;
+import java.util.Locale;
+
+/**
+ * Throttles login attempts before any credential is checked, by client
+ * address and by username, so neither dropping the session cookie nor
+ * spreading guesses over many addresses resets the count. Every attempt
+ * takes a token from both; successful logins are cheap to allow because
+ * the bursts are generous next to a human's retries.
+ *
+ * Configured from context parameters (defaults in brackets):
+ * - loginRateLimitAddressBurst / loginRateLimitAddressRefillMillis [20 / 3000]
+ * - loginRateLimitUserBurst / loginRateLimitUserRefillMillis [5 / 12000]
+ * - loginRateLimitMaxKeys: buckets kept per dimension [100000]
+ * - loginRateLimitOverflowPerSecond: attempts per second shared by keys
+ *   arriving while the map is full [20, at least 1]
+ *
+ * The overflow budget is a denial-of-service lever. While a dimension's map
+ * is full, every address or username without a bucket of its own draws on
+ * that one shared bucket. An attacker who keeps the map full of distinct
+ * keys (about maxKeys attempts per refill window, which a botnet or a
+ * stream of random usernames provides) and drains the shared bucket locks
+ * out every legitimate user not already tracked, whatever their own
+ * history: they get 429s until the flood stops. Users whose buckets
+ * survive sweeps are unaffected. Size loginRateLimitMaxKeys well above the
+ * number of distinct clients expected within a refill window; a steadily
+ * rising TokenBucketLimiter.getOverflowCount() is the sign it is being hit.
+ */
+public class LoginRateLimiter {
+    
+    public static final String CONTEXT_ATTRIBUTE = "loginRateLimiter";
+    
+    // Usernames come straight from the request; don't let them size the map entries
+    private static final int MAX_USERNAME_KEY = 64;
+    
+    private final TokenBucketLimiter byAddress;
+    private final TokenBucketLimiter byUsername;
+    
+    public LoginRateLimiter(TokenBucketLimiter byAddress, TokenBucketLimiter byUsername) {
+        this.byAddress = byAddress;
+        this.byUsername = byUsername;
+    }
+    
+    public static LoginRateLimiter fromContext(ServletContext context) {
+        int maxKeys = intParameter(context, "loginRateLimitMaxKeys", 100000);
+        int overflowPerSecond = intParameter(context, "loginRateLimitOverflowPerSecond", 20);
+        if (overflowPerSecond < 1) {
+            throw new IllegalArgumentException(
+                    "loginRateLimitOverflowPerSecond must be at least 1: " + overflowPerSecond);
+        }
+        long overflowInterval = Math.max(1L, 1000L / overflowPerSecond);
+        
+        return new LoginRateLimiter(
+                new TokenBucketLimiter("address",
+                        intParameter(context, "loginRateLimitAddressBurst", 20),
+                        intParameter(context, "loginRateLimitAddressRefillMillis", 3000),
+                        maxKeys, overflowPerSecond, overflowInterval),
+                new TokenBucketLimiter("username",
+                        intParameter(context, "loginRateLimitUserBurst", 5),
+                        intParameter(context, "loginRateLimitUserRefillMillis", 12000),
+                        maxKeys, overflowPerSecond, overflowInterval));
+    }
+    
+    private static int intParameter(ServletContext context, String name, int defaultValue) {
+        String value = context.getInitParameter(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+    
+    /**
+     * @return 0 if the attempt may proceed, otherwise milliseconds until it may be retried
+     */
+    public long tryAcquire(String username, String remoteAddress, long nowMillis) {
+        long wait = byAddress.tryAcquire(remoteAddress != null ? remoteAddress : "", nowMillis);
+        if (wait > 0 || username == null || username.isEmpty()) {
+            return wait;
+        }
+        String key = username.length() > MAX_USERNAME_KEY ? username.substring(0, MAX_USERNAME_KEY) : username;
+        return byUsername.tryAcquire(key.toLowerCase(Locale.ROOT), nowMillis);
+    }
+    
+    /**
+     * Drops full buckets from both maps; the limiters also sweep on their own
+     * when a map fills up, this keeps them small between floods.
+     */
+    public void sweep(long nowMillis) {
+        byAddress.sweep(nowMillis);
+        byUsername.sweep(nowMillis);
+    }
+    
+    public String describe() {
+        return describe(byAddress) + ", " + describe(byUsername);
+    }
+    
+    private static String describe(TokenBucketLimiter limiter) {
+        return limiter.getName() + ": " + limiter.size() + " keys, " + limiter.getRejectedCount() 
+                + " rejected, " + limiter.getOverflowCount() + " overflowed";
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.legacy.servlet.auth;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-key token buckets in a bounded concurrent map.
+ *
+ * Each bucket is a single long, the "theoretical arrival time" of the
+ * generic cell rate algorithm: a request is allowed if advancing it by one
+ * token interval keeps it within {@code capacity} intervals of now. That is
+ * exactly a token bucket of that capacity refilling one token per interval,
+ * but it needs no separate token count and refill timestamp, so an attempt
+ * is one compare-and-set with no lock.
+ *
+ * A bucket whose arrival time has passed is full again and therefore
+ * indistinguishable from a missing one; sweeps drop those. When the map is
+ * at {@code maxKeys} even after a sweep (a flood of distinct keys, as in
+ * credential stuffing), keys without a bucket share a single overflow
+ * bucket instead of growing the map. Keys that already have a bucket keep
+ * their own limits throughout; new keys, legitimate or not, are limited
+ * together until sweeps free room, so a flood that keeps the map full can
+ * starve them (see LoginRateLimiter).
+ */
+public class TokenBucketLimiter {
+    
+    private static final long SWEEP_INTERVAL_MILLIS = 1000L;
+    
+    private final String name;
+    private final long intervalMillis;
+    private final long burstMillis;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket overflow;
+    private final long overflowIntervalMillis;
+    private final long overflowBurstMillis;
+    private final AtomicLong nextSweep = new AtomicLong();
+    
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    
+    /**
+     * @param capacity burst a key may use at once
+     * @param intervalMillis time for one token to refill
+     * @param overflowCapacity burst shared by all keys that found the map full
+     * @param overflowIntervalMillis refill time of the shared overflow bucket
+     */
+    public TokenBucketLimiter(String name, int capacity, long intervalMillis, int maxKeys,
+                              int overflowCapacity, long overflowIntervalMillis) {
+        if (capacity < 1 || intervalMillis < 1 || maxKeys < 1 || overflowCapacity < 1 || overflowIntervalMillis < 1) {
+            throw new IllegalArgumentException("Rate limit settings for " + name + " must be positive");
+        }
+        this.name = name;
+        this.intervalMillis = intervalMillis;
+        this.burstMillis = capacity * intervalMillis;
+        this.maxKeys = maxKeys;
+        this.overflow = new Bucket(Long.MIN_VALUE);
+        this.overflowIntervalMillis = overflowIntervalMillis;
+        this.overflowBurstMillis = overflowCapacity * overflowIntervalMillis;
+    }
+    
+    /**
+     * Takes one token from the key's bucket.
+     *
+     * @return 0 if allowed, otherwise how many milliseconds until a token is available
+     */
+    public long tryAcquire(String key, long nowMillis) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = bucketFor(key, nowMillis);
+            if (bucket == null) {
+                overflowed.increment();
+                return take(overflow, overflowIntervalMillis, overflowBurstMillis, nowMillis);
+            }
+        }
+        return take(bucket, intervalMillis, burstMillis, nowMillis);
+    }
+    
+    private long take(Bucket bucket, long interval, long burst, long now) {
+        while (true) {
+            long arrival = bucket.get();
+            long next = Math.max(arrival, now) + interval;
+            long wait = next - now - burst;
+            if (wait > 0) {
+                rejected.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(arrival, next)) {
+                return 0L;
+            }
+        }
+    }
+    
+    /**
+     * @return the key's new bucket, or null if the map is full
+     */
+    private Bucket bucketFor(String key, long now) {
+        if (buckets.size() >= maxKeys) {
+            sweep(now);
+            if (buckets.size() >= maxKeys) {
+                return null;
+            }
+        }
+        Bucket created = new Bucket(Long.MIN_VALUE);
+        Bucket existing = buckets.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+    
+    /**
+     * Drops full buckets. At most one thread sweeps, at most once per
+     * SWEEP_INTERVAL_MILLIS, so a flood pays for it once a second rather
+     * than per request.
+     */
+    public void sweep(long nowMillis) {
+        long due = nextSweep.get();
+        if (nowMillis < due || !nextSweep.compareAndSet(due, nowMillis + SWEEP_INTERVAL_MILLIS)) {
+            return;
+        }
+        // A thread still holding a removed bucket charges it rather than its
+        // replacement; that loses at most the one attempt in flight
+        buckets.values().removeIf(bucket -> bucket.get() <= nowMillis);
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int size() {
+        return buckets.size();
+    }
+    
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+    
+    /**
+     * Attempts that found the map full and were charged to the overflow bucket.
+     */
+    public long getOverflowCount() {
+        return overflowed.sum();
+    }
+    
+    /**
+     * The bucket's theoretical arrival time in epoch millis; full when it is in the past.
+     */
+    private static final class Bucket extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        
+        Bucket(long arrival) {
+            super(arrival);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.legacy.servlet.auth;
+
+import org.apache.log4j.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stateless authentication tokens for AuthMode.TOKEN.
+ *
+ * A token is base64url("expiresAtMillis:role:username") + "." +
+ * base64url(HMAC-SHA256 of the first part). Anything holding the secret can
+ * verify it, so no server-side session is needed and any node can serve the
+ * request. There is no revocation short of rotating the secret; keep the TTL
+ * short.
+ *
+ * Verification uses one Mac per thread (Mac instances are not thread-safe
+ * and Mac.getInstance is a provider lookup), and recently verified tokens are
+ * remembered so the common case is a map hit and an expiry check.
+ *
+ * Configured from context parameters:
+ * - authTokenSecret: base64 HMAC key, at least 32 bytes. When absent a random
+ *   key is generated, so tokens do not survive a restart or work across nodes
+ * - authTokenTtlSeconds: token lifetime (default 1800)
+ */
+public class TokenService {
+    
+    private static final Logger logger = Logger.getLogger(TokenService.class);
+    
+    public static final String CONTEXT_ATTRIBUTE = "tokenService";
+    public static final String COOKIE_NAME = "LEGACY_AUTH";
+    
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final int DEFAULT_CACHE_SIZE = 4096;
+    private static final String BEARER = "Bearer ";
+    
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final int cacheSize;
+    private final ThreadLocal<Mac> macs;
+    private final ConcurrentHashMap<String, AuthenticatedUser> verified = new ConcurrentHashMap<>();
+    
+    public TokenService(byte[] secret, long ttlSeconds, int cacheSize) {
+        if (secret.length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("Token secret must be at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        this.key = new SecretKeySpec(secret.clone(), ALGORITHM);
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.cacheSize = cacheSize;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        // Fail at startup rather than on the first request
+        newMac();
+    }
+    
+    public static TokenService fromContext(ServletContext context) {
+        String secretParam = context.getInitParameter("authTokenSecret");
+        byte[] secret;
+        if (secretParam != null && !secretParam.trim().isEmpty()) {
+            secret = Base64.getDecoder().decode(secretParam.trim());
+        } else {
+            secret = new byte[MIN_SECRET_BYTES];
+            new SecureRandom().nextBytes(secret);
+            logger.warn("No authTokenSecret configured; using a random key, tokens will not survive a restart");
+        }
+        
+        String ttlParam = context.getInitParameter("authTokenTtlSeconds");
+        long ttlSeconds = ttlParam != null ? Long.parseLong(ttlParam.trim()) : 1800L;
+        
+        return new TokenService(secret, ttlSeconds, DEFAULT_CACHE_SIZE);
+    }
+    
+    public long getTtlSeconds() {
+        return ttlMillis / 1000L;
+    }
+    
+    public String issue(String username, String role, long nowMillis) {
+        String payload = (nowMillis + ttlMillis) + ":" + role + ":" + username;
+        String encoded = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        byte[] signature = sign(encoded, encoded.length());
+        return encoded + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+    
+    /**
+     * Token from the Authorization: Bearer header, else the auth cookie.
+     *
+     * @return the verified identity, or null if there is no valid, unexpired token
+     */
+    public AuthenticatedUser authenticate(HttpServletRequest request) {
+        String token = null;
+        String authorization = request.getHeader("Authorization");
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            token = authorization.substring(BEARER.length()).trim();
+        } else {
+            Cookie[] cookies = request.getCookies();
+            if (cookies != null) {
+                for (Cookie cookie : cookies) {
+                    if (COOKIE_NAME.equals(cookie.getName())) {
+                        token = cookie.getValue();
+                        break;
+                    }
+                }
+            }
+        }
+        return token != null ? verify(token, System.currentTimeMillis()) : null;
+    }
+    
+    /**
+     * @return the identity the token carries, or null if it is malformed, forged or expired
+     */
+    public AuthenticatedUser verify(String token, long nowMillis) {
+        AuthenticatedUser user = verified.get(token);
+        if (user != null) {
+            if (user.getExpiresAtMillis() > nowMillis) {
+                return user;
+            }
+            verified.remove(token);
+            return null;
+        }
+        
+        user = decode(token);
+        if (user == null || user.getExpiresAtMillis() <= nowMillis) {
+            return null;
+        }
+        // Bounded without bookkeeping: when full, start over. Live tokens are
+        // re-verified once and repopulate it
+        if (verified.size() >= cacheSize) {
+            verified.clear();
+        }
+        verified.put(token, user);
+        return user;
+    }
+    
+    private AuthenticatedUser decode(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            byte[] presented = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(sign(token, dot), presented)) {
+                return null;
+            }
+            
+            String payload = new String(Base64.getUrlDecoder().decode(token.substring(0, dot)), StandardCharsets.UTF_8);
+            int first = payload.indexOf(':');
+            int second = payload.indexOf(':', first + 1);
+            if (first < 0 || second < 0) {
+                return null;
+            }
+            return new AuthenticatedUser(payload.substring(second + 1), payload.substring(first + 1, second),
+                    Long.parseLong(payload.substring(0, first)));
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or expiry; NumberFormatException is an IllegalArgumentException
+            return null;
+        }
+    }
+    
+    /**
+     * MAC over the first {@code length} characters, which are base64url and so ASCII.
+     */
+    private byte[] sign(String text, int length) {
+        Mac mac = macs.get();
+        mac.update(text.getBytes(StandardCharsets.US_ASCII), 0, length);
+        return mac.doFinal();
+    }
+    
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package com.example.legacy.servlet.cache;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BoundedCache is an in-process cache bounded by entry count or total weight:
+ * - Reads are a ConcurrentHashMap lookup plus a few plain writes; no locks
+ * - Writes and evictions lock one of several stripes, chosen by key hash,
+ *   each owning an equal share of the capacity
+ * - Eviction is CLOCK (second chance) within the stripe, which approximates
+ *   LRU without reads having to reorder a list
+ * - Admission is TinyLFU: when a new key would evict entries, the clock
+ *   first picks every victim needed to make room, and the key is only cached
+ *   if the FrequencySketch says it is requested more often than each of
+ *   them, so one-off keys cannot flush the hot set; a rejected key evicts
+ *   nothing
+ * - Entries can expire a fixed time after being written and, when read
+ *   through {@link #get(Object, CacheLoader)}, be reloaded in the background
+ *   once older than the refresh time while the current value keeps being served
+ *
+ * Build instances with {@link #builder()} and register them with a CacheManager.
+ */
+public final class BoundedCache<K, V> {
+    
+    private static final Logger logger = Logger.getLogger(BoundedCache.class);
+    
+    private final String name;
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    private final Stripe<K, V>[] stripes;
+    private final int stripeMask;
+    private final FrequencySketch sketch;
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maximumWeight;
+    private final long expireAfterWriteNanos;
+    private final long refreshAfterWriteNanos;
+    private final Executor refreshExecutor;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    
+    @SuppressWarnings("unchecked")
+    private BoundedCache(String name, Builder<K, V> builder, Executor refreshExecutor) {
+        this.name = name;
+        this.weigher = builder.weigher;
+        this.maximumWeight = builder.maximumWeight;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+        this.refreshExecutor = refreshExecutor;
+        
+        long expected = builder.expectedEntries > 0 ? builder.expectedEntries : Math.min(maximumWeight, 1L << 16);
+        this.map = new ConcurrentHashMap<>((int) Math.min(expected, 1 << 20));
+        this.sketch = new FrequencySketch(expected);
+        
+        // Enough stripes to keep writers apart, but each must hold a useful share
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        count = Math.min(count, 16);
+        while (count > 1 && maximumWeight / count < 16) {
+            count >>= 1;
+        }
+        this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            long share = maximumWeight / count + (i < maximumWeight % count ? 1 : 0);
+            stripes[i] = new Stripe<>(share);
+        }
+        this.stripeMask = count - 1;
+    }
+    
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return the cached value, or null if absent or expired
+     */
+    public V getIfPresent(K key) {
+        Node<K, V> node = lookup(key, spread(key.hashCode()));
+        return node != null ? node.value : null;
+    }
+    
+    /**
+     * Returns the cached value, loading it on a miss. Concurrent misses on the
+     * same key may each call the loader; the last value loaded wins. A hit
+     * older than the refresh time is returned as is and reloaded in the
+     * background, at most one reload per entry at a time.
+     *
+     * @return the value, or null if the loader found none
+     * @throws ExecutionException wrapping whatever the loader threw on a miss
+     */
+    public V get(K key, CacheLoader<? super K, V> loader) throws ExecutionException {
+        int hash = spread(key.hashCode());
+        Node<K, V> node = lookup(key, hash);
+        if (node != null) {
+            if (refreshAfterWriteNanos > 0 && System.nanoTime() - node.writeNanos >= refreshAfterWriteNanos) {
+                refresh(node, loader);
+            }
+            return node.value;
+        }
+        
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (Exception e) {
+            loadFailures.increment();
+            throw new ExecutionException("Loading " + key + " into cache " + name + " failed", e);
+        }
+        loads.increment();
+        if (value != null) {
+            insert(key, hash, value, null);
+        }
+        return value;
+    }
+    
+    public void put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Cache values must not be null");
+        }
+        insert(key, spread(key.hashCode()), value, null);
+    }
+    
+    public void invalidate(K key) {
+        int hash = spread(key.hashCode());
+        Stripe<K, V> stripe = stripes[hash & stripeMask];
+        synchronized (stripe) {
+            Node<K, V> node = map.remove(key);
+            if (node != null) {
+                stripe.remove(node);
+            }
+        }
+    }
+    
+    public void invalidateAll() {
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.size; i++) {
+                    map.remove(stripe.ring[i].key, stripe.ring[i]);
+                }
+                stripe.clear();
+            }
+        }
+    }
+    
+    /**
+     * Removes expired entries now rather than when they are next looked up or
+     * reached by the clock hand; a no-op without expireAfterWrite.
+     */
+    public void cleanUp() {
+        if (expireAfterWriteNanos <= 0) {
+            return;
+        }
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                long now = System.nanoTime();
+                // Removal moves the last entry into the slot, so look at it again
+                for (int i = 0; i < stripe.size; ) {
+                    Node<K, V> node = stripe.ring[i];
+                    if (expired(node, now)) {
+                        map.remove(node.key, node);
+                        stripe.remove(node);
+                        expirations.increment();
+                    } else {
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+    
+    private Node<K, V> lookup(K key, int hash) {
+        // Recorded on misses too: that is how a new key earns admission
+        sketch.increment(hash);
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (expireAfterWriteNanos > 0 && System.nanoTime() - node.writeNanos >= expireAfterWriteNanos) {
+            misses.increment();
+            Stripe<K, V> stripe = stripes[hash & stripeMask];
+            synchronized (stripe) {
+                if (map.remove(key, node)) {
+                    stripe.remove(node);
+                    expirations.increment();
+                }
+            }
+            return null;
+        }
+        // A plain write, and only when it changes something; a lost mark
+        // just makes the clock a little less accurate
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hits.increment();
+        return node;
+    }
+    
+    /**
+     * @param expected if not null, only replace this node (a refresh must not
+     *        resurrect an entry that was invalidated meanwhile)
+     */
+    private void insert(K key, int hash, V value, Node<K, V> expected) {
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight " + weight + " for " + key);
+        }
+        Stripe<K, V> stripe = stripes[hash & stripeMask];
+        Node<K, V> node = new Node<>(key, hash, value, weight, System.nanoTime());
+        
+        synchronized (stripe) {
+            Node<K, V> old = map.get(key);
+            if (expected != null && old != expected) {
+                return;
+            }
+            if (weight > stripe.maximumWeight) {
+                // Could never fit; drop the stale value rather than keep serving it
+                if (old != null) {
+                    map.remove(key);
+                    stripe.remove(old);
+                }
+                rejections.increment();
+                return;
+            }
+            if (old != null) {
+                // Updates of cached keys are always admitted
+                node.referenced = old.referenced;
+                stripe.remove(old);
+            }
+            
+            long now = node.writeNanos;
+            long excess = stripe.weight + weight - stripe.maximumWeight;
+            if (excess > 0) {
+                // Decide admission against every victim before removing any, so
+                // a rejected key costs the cache nothing but its expired entries
+                List<Node<K, V>> victims = stripe.selectVictims(this, excess, now);
+                boolean admit = true;
+                if (old == null) {
+                    int frequency = sketch.frequency(hash);
+                    for (Node<K, V> victim : victims) {
+                        if (!expired(victim, now) && frequency <= sketch.frequency(victim.hash)) {
+                            admit = false;
+                            break;
+                        }
+                    }
+                }
+                for (Node<K, V> victim : victims) {
+                    victim.selected = false;
+                    if (expired(victim, now)) {
+                        expirations.increment();
+                    } else if (admit) {
+                        evictions.increment();
+                    } else {
+                        continue;
+                    }
+                    map.remove(victim.key, victim);
+                    stripe.remove(victim);
+                }
+                // Don't keep evicted values reachable
+                victims.clear();
+                // The expired victims alone may have made room
+                if (!admit && stripe.weight + weight > stripe.maximumWeight) {
+                    rejections.increment();
+                    return;
+                }
+            }
+            
+            map.put(key, node);
+            stripe.add(node);
+        }
+    }
+    
+    private void refresh(Node<K, V> node, CacheLoader<? super K, V> loader) {
+        if (refreshExecutor == null || !node.startRefresh()) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    V value = loader.load(node.key);
+                    refreshes.increment();
+                    if (value != null) {
+                        insert(node.key, node.hash, value, node);
+                    } else {
+                        invalidate(node.key);
+                    }
+                } catch (Exception e) {
+                    loadFailures.increment();
+                    logger.warn("Refreshing " + node.key + " in cache " + name + " failed; keeping the old value", e);
+                } finally {
+                    node.endRefresh();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            node.endRefresh();
+        }
+    }
+    
+    private boolean expired(Node<K, V> node, long now) {
+        return expireAfterWriteNanos > 0 && now - node.writeNanos >= expireAfterWriteNanos;
+    }
+    
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) * 0x45d9f3b;
+    }
+    
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    public long getLoadCount() {
+        return loads.sum();
+    }
+    
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+    
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+    
+    /**
+     * Entries removed to make room.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+    
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+    
+    /**
+     * New entries the admission filter (or their weight) kept out.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+    
+    public int size() {
+        return map.size();
+    }
+    
+    public long weightedSize() {
+        long total = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            total += stripe.weight;
+        }
+        return total;
+    }
+    
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+    
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+    
+    public String describe() {
+        return String.format("%s: %d entries, weight %d/%d, hit rate %.1f%% (%d hits, %d misses), " 
+                + "%d evicted, %d expired, %d rejected, %d loads (%d failed), %d refreshes",
+                name, size(), weightedSize(), maximumWeight, hitRate() * 100, getHitCount(), getMissCount(),
+                getEvictionCount(), getExpirationCount(), getRejectionCount(), getLoadCount(), 
+                getLoadFailureCount(), getRefreshCount());
+    }
+    
+    private static final class Node<K, V> {
+        
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Node> REFRESHING =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "refreshing");
+        
+        final K key;
+        final int hash;
+        final V value;
+        final int weight;
+        final long writeNanos;
+        
+        // Set by readers without synchronization, cleared by the clock hand
+        boolean referenced;
+        
+        // Guarded by the stripe
+        int index = -1;
+        boolean selected;
+        
+        volatile int refreshing;
+        
+        Node(K key, int hash, V value, int weight, long writeNanos) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.weight = weight;
+            this.writeNanos = writeNanos;
+        }
+        
+        boolean startRefresh() {
+            return REFRESHING.compareAndSet(this, 0, 1);
+        }
+        
+        void endRefresh() {
+            refreshing = 0;
+        }
+    }
+    
+    /**
+     * One share of the capacity: its entries in a ring the clock hand walks.
+     * Every field is guarded by the stripe's monitor; weight is also read
+     * unlocked for statistics.
+     */
+    private static final class Stripe<K, V> {
+        
+        final long maximumWeight;
+        volatile long weight;
+        
+        Node<K, V>[] ring = newRing();
+        int size;
+        int hand;
+        // Reused by selectVictims; the caller clears it when done
+        final List<Node<K, V>> victims = new ArrayList<>();
+        
+        Stripe(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private static <K, V> Node<K, V>[] newRing() {
+            return (Node<K, V>[]) new Node<?, ?>[16];
+        }
+        
+        void add(Node<K, V> node) {
+            if (size == ring.length) {
+                ring = Arrays.copyOf(ring, size * 2);
+            }
+            node.index = size;
+            ring[size++] = node;
+            weight += node.weight;
+        }
+        
+        /**
+         * Constant time: the last entry takes the removed one's slot.
+         */
+        void remove(Node<K, V> node) {
+            int index = node.index;
+            if (index < 0) {
+                return;
+            }
+            Node<K, V> last = ring[--size];
+            ring[index] = last;
+            last.index = index;
+            ring[size] = null;
+            node.index = -1;
+            weight -= node.weight;
+        }
+        
+        /**
+         * Picks victims until they weigh at least {@code needed}, without
+         * removing them; each is marked {@code selected} so it is picked
+         * once. Second chance: referenced entries have the mark cleared and
+         * are passed over once; expired entries are taken as they come.
+         * {@code needed} must not exceed the stripe's weight.
+         */
+        List<Node<K, V>> selectVictims(BoundedCache<K, V> cache, long needed, long now) {
+            victims.clear();
+            long selected = 0;
+            while (selected < needed) {
+                if (hand >= size) {
+                    hand = 0;
+                }
+                Node<K, V> node = ring[hand++];
+                if (node.selected) {
+                    continue;
+                }
+                if (cache.expired(node, now) || !node.referenced) {
+                    node.selected = true;
+                    victims.add(node);
+                    selected += node.weight;
+                } else {
+                    node.referenced = false;
+                }
+            }
+            return victims;
+        }
+        
+        void clear() {
+            ring = newRing();
+            size = 0;
+            hand = 0;
+            weight = 0;
+        }
+    }
+    
+    /**
+     * Configures a BoundedCache; set either maximumSize or maximumWeight with a weigher.
+     */
+    public static final class Builder<K, V> {
+        
+        private long maximumWeight = -1;
+        private Weigher<? super K, ? super V> weigher;
+        private long expectedEntries;
+        private long expireAfterWriteNanos;
+        private long refreshAfterWriteNanos;
+        
+        private Builder() {
+        }
+        
+        /**
+         * Bound on the number of entries (every entry weighs 1).
+         */
+        public Builder<K, V> maximumSize(long maximumSize) {
+            this.maximumWeight = maximumSize;
+            this.weigher = (key, value) -> 1;
+            return this;
+        }
+        
+        public Builder<K, V> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+        
+        /**
+         * Sizes the frequency sketch; defaults to the maximum weight, capped at 65536.
+         */
+        public Builder<K, V> expectedEntries(long expectedEntries) {
+            this.expectedEntries = expectedEntries;
+            return this;
+        }
+        
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+        
+        /**
+         * Needs a refresh executor, i.e. a cache created through CacheManager.
+         */
+        public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+            this.refreshAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+        
+        BoundedCache<K, V> build(String name, Executor refreshExecutor) {
+            if (maximumWeight < 1 || weigher == null) {
+                throw new IllegalStateException("Cache " + name + " needs a positive maximumSize or maximumWeight");
+            }
+            if (expireAfterWriteNanos > 0 && refreshAfterWriteNanos >= expireAfterWriteNanos) {
+                throw new IllegalStateException("Cache " + name + " would expire entries before refreshing them");
+            }
+            return new BoundedCache<>(name, this, refreshExecutor);
+        }
+    }
+}
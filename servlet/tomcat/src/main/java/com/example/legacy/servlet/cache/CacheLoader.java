@@ -0,0 +1,12 @@
+package com.example.legacy.servlet.cache;
+
+/**
+ * Computes a value on a cache miss or refresh.
+ */
+public interface CacheLoader<K, V> {
+    
+    /**
+     * @return the value, or null if there is none (nothing is cached)
+     */
+    V load(K key) throws Exception;
+}
@@ -0,0 +1,182 @@
+package com.example.legacy.servlet.cache;
+
+import com.example.legacy.servlet.util.NamedThreadFactory;
+import org.apache.log4j.Logger;
+
+import javax.servlet.ServletContext;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheManager owns the application's named BoundedCaches:
+ * - Created by ApplicationStartupListener and shared as a context attribute
+ * - Default entry bound from the JNDI maxCacheSize environment entry
+ * - Refresh-ahead reloads on a shared executor (the TaskScheduler's workers,
+ *   or one thread of its own)
+ * - cleanUp() for a periodic sweep of expired entries
+ * - Statistics for the shutdown log and the admin metrics endpoint
+ */
+public class CacheManager {
+    
+    private static final Logger logger = Logger.getLogger(CacheManager.class);
+    
+    public static final String CONTEXT_ATTRIBUTE = "cacheManager";
+    
+    // Refreshes are best effort; beyond this many pending, stale values are served a little longer
+    private static final int MAX_PENDING_REFRESHES = 1000;
+    
+    private final int defaultMaximumSize;
+    private final Executor refreshExecutor;
+    // Only set when the manager started the refresh thread itself
+    private final ExecutorService ownedExecutor;
+    private final ConcurrentHashMap<String, BoundedCache<?, ?>> caches = new ConcurrentHashMap<>();
+    
+    public CacheManager(int defaultMaximumSize) {
+        this.defaultMaximumSize = defaultMaximumSize;
+        this.ownedExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_PENDING_REFRESHES), new NamedThreadFactory("cache-refresh"));
+        this.refreshExecutor = ownedExecutor;
+    }
+    
+    /**
+     * @param refreshExecutor runs refresh-ahead reloads; it should reject work
+     *        rather than queue without bound, and outlive the manager
+     */
+    public CacheManager(int defaultMaximumSize, Executor refreshExecutor) {
+        this.defaultMaximumSize = defaultMaximumSize;
+        this.refreshExecutor = refreshExecutor;
+        this.ownedExecutor = null;
+    }
+    
+    /**
+     * The shared manager, or a new one with a default bound of 100 entries if
+     * the listener did not create one.
+     */
+    public static CacheManager fromContext(ServletContext context) {
+        synchronized (CacheManager.class) {
+            CacheManager manager = (CacheManager) context.getAttribute(CONTEXT_ATTRIBUTE);
+            if (manager == null) {
+                manager = new CacheManager(100);
+                context.setAttribute(CONTEXT_ATTRIBUTE, manager);
+                logger.warn("CacheManager not found in servlet context; created one with default settings");
+            }
+            return manager;
+        }
+    }
+    
+    /**
+     * Bound for caches that count entries rather than weigh them.
+     */
+    public int getDefaultMaximumSize() {
+        return defaultMaximumSize;
+    }
+    
+    /**
+     * Builds and registers a cache. A cache registered again under the same
+     * name (a reloaded servlet) replaces the old one.
+     */
+    public <K, V> BoundedCache<K, V> create(String name, BoundedCache.Builder<K, V> builder) {
+        BoundedCache<K, V> cache = builder.build(name, refreshExecutor);
+        caches.put(name, cache);
+        logger.info("Cache " + name + " created (maximum weight " + cache.getMaximumWeight() + ")");
+        return cache;
+    }
+    
+    /**
+     * Removes expired entries from every cache.
+     */
+    public void cleanUp() {
+        for (BoundedCache<?, ?> cache : caches.values()) {
+            cache.cleanUp();
+        }
+    }
+    
+    public List<BoundedCache<?, ?>> getCaches() {
+        List<BoundedCache<?, ?>> sorted = new ArrayList<>(caches.values());
+        sorted.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return sorted;
+    }
+    
+    /**
+     * Writes cache statistics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public void writeText(PrintWriter out) {
+        List<BoundedCache<?, ?>> sorted = getCaches();
+        
+        line(out, "# HELP cache_requests_total Cache lookups by result.");
+        line(out, "# TYPE cache_requests_total counter");
+        for (BoundedCache<?, ?> cache : sorted) {
+            line(out, "cache_requests_total{cache=\"" + cache.getName() + "\",result=\"hit\"} " + cache.getHitCount());
+            line(out, "cache_requests_total{cache=\"" + cache.getName() + "\",result=\"miss\"} " + cache.getMissCount());
+        }
+        
+        line(out, "# HELP cache_removals_total Entries removed or refused, by cause.");
+        line(out, "# TYPE cache_removals_total counter");
+        for (BoundedCache<?, ?> cache : sorted) {
+            line(out, "cache_removals_total{cache=\"" + cache.getName() + "\",cause=\"evicted\"} " 
+                    + cache.getEvictionCount());
+            line(out, "cache_removals_total{cache=\"" + cache.getName() + "\",cause=\"expired\"} " 
+                    + cache.getExpirationCount());
+            line(out, "cache_removals_total{cache=\"" + cache.getName() + "\",cause=\"rejected\"} " 
+                    + cache.getRejectionCount());
+        }
+        
+        line(out, "# HELP cache_loads_total Loader calls on misses and refreshes, by result.");
+        line(out, "# TYPE cache_loads_total counter");
+        for (BoundedCache<?, ?> cache : sorted) {
+            line(out, "cache_loads_total{cache=\"" + cache.getName() + "\",result=\"success\"} " 
+                    + (cache.getLoadCount() + cache.getRefreshCount()));
+            line(out, "cache_loads_total{cache=\"" + cache.getName() + "\",result=\"failure\"} " 
+                    + cache.getLoadFailureCount());
+        }
+        
+        line(out, "# HELP cache_entries Entries currently cached.");
+        line(out, "# TYPE cache_entries gauge");
+        for (BoundedCache<?, ?> cache : sorted) {
+            line(out, "cache_entries{cache=\"" + cache.getName() + "\"} " + cache.size());
+        }
+        
+        line(out, "# HELP cache_weight Current and maximum total weight.");
+        line(out, "# TYPE cache_weight gauge");
+        for (BoundedCache<?, ?> cache : sorted) {
+            line(out, "cache_weight{cache=\"" + cache.getName() + "\",bound=\"current\"} " + cache.weightedSize());
+            line(out, "cache_weight{cache=\"" + cache.getName() + "\",bound=\"maximum\"} " + cache.getMaximumWeight());
+        }
+        
+        line(out, "# HELP cache_hit_ratio Hits over lookups since startup.");
+        line(out, "# TYPE cache_hit_ratio gauge");
+        for (BoundedCache<?, ?> cache : sorted) {
+            line(out, "cache_hit_ratio{cache=\"" + cache.getName() + "\"} " 
+                    + String.format(Locale.ROOT, "%.4f", cache.hitRate()));
+        }
+        out.flush();
+    }
+    
+    private static void line(PrintWriter out, String text) {
+        out.print(text);
+        out.print('\n');
+    }
+    
+    /**
+     * Logs final statistics, empties every cache and stops the refresh thread
+     * if the manager started one.
+     */
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdownNow();
+        }
+        for (BoundedCache<?, ?> cache : getCaches()) {
+            logger.info("Cache statistics: " + cache.describe());
+            cache.invalidateAll();
+        }
+        caches.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.legacy.servlet.cache;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often each key was
+ * requested recently (the TinyLFU admission filter).
+ *
+ * Each key maps to four counters and its frequency is the smallest of them.
+ * The four counters sit in different words of one 64-byte block, so an
+ * increment touches a single cache line. After {@code 10 x capacity}
+ * increments every counter is halved, so the history fades and a
+ * once-popular key does not hold its place forever.
+ *
+ * Updates are deliberately unsynchronized: concurrent increments of the same
+ * word can lose a count, which only makes the estimate slightly lower. The
+ * sketch is a heuristic and never affects correctness.
+ */
+final class FrequencySketch {
+    
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long COUNTER_MASK = 0xfL;
+    
+    private final long[] table;
+    private final int blockMask;
+    private final int sampleSize;
+    private int additions;
+    
+    FrequencySketch(long capacity) {
+        int size = Integer.highestOneBit((int) Math.max(8L, Math.min(capacity, 1L << 26)) - 1) << 1;
+        table = new long[size];
+        blockMask = (size >>> 3) - 1;
+        sampleSize = (int) Math.min(10L * size, Integer.MAX_VALUE);
+    }
+    
+    int frequency(int hash) {
+        int block = (hash & blockMask) << 3;
+        int counterHash = rehash(hash);
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int h = counterHash >>> (i << 3);
+            int shift = ((h >>> 1) & 15) << 2;
+            int count = (int) ((table[block + (h & 1) + (i << 1)] >>> shift) & COUNTER_MASK);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+    
+    void increment(int hash) {
+        int block = (hash & blockMask) << 3;
+        int counterHash = rehash(hash);
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int h = counterHash >>> (i << 3);
+            int shift = ((h >>> 1) & 15) << 2;
+            int slot = block + (h & 1) + (i << 1);
+            long word = table[slot];
+            // Saturated counters are left alone, so hot keys stop writing shared memory
+            if (((word >>> shift) & COUNTER_MASK) != COUNTER_MASK) {
+                table[slot] = word + (1L << shift);
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+    
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = sampleSize / 2;
+    }
+    
+    /**
+     * Independent bits for picking counters inside the block the low bits chose.
+     */
+    private static int rehash(int hash) {
+        int h = hash * 0x31848bab;
+        return h ^ (h >>> 14);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.legacy.servlet.cache;
+
+/**
+ * Relative cost of keeping an entry, e.g. its size in bytes; must not change
+ * while the entry is cached.
+ */
+public interface Weigher<K, V> {
+    
+    int weigh(K key, V value);
+}
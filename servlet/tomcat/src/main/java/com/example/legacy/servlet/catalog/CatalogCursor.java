@@ -0,0 +1,100 @@
+package com.example.legacy.servlet.catalog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Keyset position in a catalog listing: the sort key and ID of the last
+ * product on the previous page. The next page starts at the first product
+ * ordered after that pair, found by binary search in the matching index, so
+ * paging deep into a large catalog costs the same as the first page and
+ * stays stable if the catalog is rebuilt between requests.
+ *
+ * Serialized as URL-safe Base64 of {@code "v1:<sort>:<key>:<id>"}; a price
+ * key is written as a decimal amount, not in minor units.
+ */
+public final class CatalogCursor {
+    
+    private static final String PREFIX = "v1:";
+    
+    private final ProductQuery.Sort sort;
+    private final long priceCents;
+    private final int stock;
+    private final long id;
+    
+    private CatalogCursor(ProductQuery.Sort sort, long priceCents, int stock, long id) {
+        this.sort = sort;
+        this.priceCents = priceCents;
+        this.stock = stock;
+        this.id = id;
+    }
+    
+    static CatalogCursor after(ProductQuery.Sort sort, Product last) {
+        return new CatalogCursor(sort, last.getPriceCents(), last.getStock(), last.getId());
+    }
+    
+    public ProductQuery.Sort getSort() {
+        return sort;
+    }
+    
+    long getPriceCents() {
+        return priceCents;
+    }
+    
+    int getStock() {
+        return stock;
+    }
+    
+    long getId() {
+        return id;
+    }
+    
+    public String encode() {
+        String key;
+        switch (sort) {
+            case PRICE:
+                key = Money.format(priceCents);
+                break;
+            case STOCK:
+                key = Integer.toString(stock);
+                break;
+            default:
+                key = "";
+                break;
+        }
+        byte[] raw = (PREFIX + sort.name().toLowerCase(Locale.ROOT) + ":" + key + ":" + id).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the value is not a cursor
+     */
+    public static CatalogCursor decode(String value) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(value.trim()), StandardCharsets.US_ASCII);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + value);
+        }
+        String[] parts = decoded.split(":", -1);
+        if (parts.length != 4 || !decoded.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Unsupported cursor: " + value);
+        }
+        try {
+            ProductQuery.Sort sort = ProductQuery.Sort.valueOf(parts[1].toUpperCase(Locale.ROOT));
+            long id = Long.parseLong(parts[3]);
+            switch (sort) {
+                case PRICE:
+                    return new CatalogCursor(sort, Money.parse(parts[2]), 0, id);
+                case STOCK:
+                    return new CatalogCursor(sort, 0L, Integer.parseInt(parts[2]), id);
+                default:
+                    return new CatalogCursor(sort, 0L, 0, id);
+            }
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            // Also covers NumberFormatException
+            throw new IllegalArgumentException("Malformed cursor: " + value);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.legacy.servlet.catalog;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from primitive long keys to non-negative int values.
+ *
+ * Keys and values live in two flat arrays, so a lookup is a multiply, a
+ * mask and usually one probe, with no Long boxing and no per-entry objects.
+ * Sized once for an expected number of keys (load factor at most 1/2);
+ * it does not grow and does not support removal, which is all an
+ * immutable index needs.
+ */
+final class LongIntHashMap {
+    
+    private static final int EMPTY = -1;
+    
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+    
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+        mask = capacity - 1;
+    }
+    
+    /**
+     * @param value must be &gt;= 0
+     */
+    void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int slot = slot(key);
+        while (values[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size * 2 >= keys.length) {
+            throw new IllegalStateException("LongIntHashMap is full (" + size + " keys)");
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+    
+    /**
+     * @return the value, or -1 if the key is absent
+     */
+    int get(long key) {
+        int slot = slot(key);
+        int value;
+        while ((value = values[slot]) != EMPTY) {
+            if (keys[slot] == key) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.legacy.servlet.catalog;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money: amounts are longs counting minor units (cents) of the
+ * catalog currency, {@link #SCALE} decimal places.
+ *
+ * Inside the catalog prices are compared, sorted and rendered as plain
+ * longs. BigDecimal appears only at the boundaries: request parameters,
+ * the persistence codec and the JSP view.
+ */
+public final class Money {
+    
+    public static final int SCALE = 2;
+    
+    private static final long UNIT;
+    
+    // Amounts with more integer digits than this are at least 10^19 minor units,
+    // beyond the long range
+    private static final int MAX_INTEGER_DIGITS = 19 - SCALE;
+    
+    static {
+        long unit = 1;
+        for (int i = 0; i < SCALE; i++) {
+            unit *= 10;
+        }
+        UNIT = unit;
+    }
+    
+    private Money() {
+    }
+    
+    /**
+     * @throws ArithmeticException if the amount has more than SCALE decimals or does not fit
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        if (amount.signum() == 0) {
+            return 0;
+        }
+        long digits = integerDigits(amount);
+        if (digits > MAX_INTEGER_DIGITS) {
+            throw new ArithmeticException("Amount is out of range");
+        }
+        if (digits <= -SCALE) {
+            throw new ArithmeticException("Amount has more than " + SCALE + " decimals");
+        }
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+    
+    /**
+     * @throws NumberFormatException if the text is not a decimal number
+     * @throws ArithmeticException if it has more than SCALE decimals or does not fit
+     */
+    public static long parse(String amount) {
+        return toMinorUnits(new BigDecimal(amount));
+    }
+    
+    /**
+     * Smallest amount &gt;= the given one, clamped to the long range; for inclusive lower bounds.
+     */
+    public static long ceilMinorUnits(BigDecimal amount) {
+        if (amount.signum() == 0) {
+            return 0;
+        }
+        long digits = integerDigits(amount);
+        if (digits > MAX_INTEGER_DIGITS) {
+            return amount.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        if (digits <= -SCALE) {
+            // Less than one minor unit away from zero
+            return amount.signum() > 0 ? 1 : 0;
+        }
+        return clamp(amount.setScale(SCALE, RoundingMode.CEILING));
+    }
+    
+    /**
+     * Largest amount &lt;= the given one, clamped to the long range; for inclusive upper bounds.
+     */
+    public static long floorMinorUnits(BigDecimal amount) {
+        if (amount.signum() == 0) {
+            return 0;
+        }
+        long digits = integerDigits(amount);
+        if (digits > MAX_INTEGER_DIGITS) {
+            return amount.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        if (digits <= -SCALE) {
+            return amount.signum() < 0 ? -1 : 0;
+        }
+        return clamp(amount.setScale(SCALE, RoundingMode.FLOOR));
+    }
+    
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+    
+    /**
+     * Appends the amount as a JSON number without allocating: trailing
+     * fractional zeros are dropped ({@code 1050} renders as {@code 10.5},
+     * {@code 1000} as {@code 10}), exactly as org.json renders a BigDecimal.
+     */
+    public static StringBuilder appendNumber(long minorUnits, StringBuilder out) {
+        long units = minorUnits / UNIT;
+        long fraction = minorUnits % UNIT;
+        if (minorUnits < 0) {
+            out.append('-');
+            units = -units;
+            fraction = -fraction;
+        }
+        out.append(units);
+        if (fraction != 0) {
+            out.append('.');
+            int digits = SCALE;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            // Zero-pad to the remaining digits, e.g. 5 cents is .05
+            long limit = 1;
+            for (int i = 1; i < digits; i++) {
+                limit *= 10;
+            }
+            while (fraction < limit) {
+                out.append('0');
+                limit /= 10;
+            }
+            out.append(fraction);
+        }
+        return out;
+    }
+    
+    public static String format(long minorUnits) {
+        return appendNumber(minorUnits, new StringBuilder(24)).toString();
+    }
+    
+    /**
+     * Digits left of the decimal point, negative for amounts below 0.1 (0.005
+     * gives -2), read off the representation without building the number.
+     * Rescaling comes after this check: setScale on 1e1000000 would first
+     * build a million-digit integer, and the exponent comes from the client.
+     */
+    private static long integerDigits(BigDecimal amount) {
+        return (long) amount.precision() - amount.scale();
+    }
+    
+    private static long clamp(BigDecimal scaled) {
+        BigDecimal unscaled = new BigDecimal(scaled.unscaledValue());
+        if (unscaled.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+            return Long.MAX_VALUE;
+        }
+        if (unscaled.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+            return Long.MIN_VALUE;
+        }
+        return unscaled.longValue();
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.legacy.servlet.catalog;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable catalog entry; a change is a new instance.
+ * The price is held in minor units (see Money).
+ */
+public class Product {
+    private final Long id;
+    private final String name;
+    private final String description;
+    private final long priceCents;
+    private final int stock;
+    
+    public Product(Long id, String name, String description, long priceCents, int stock) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.priceCents = priceCents;
+        this.stock = stock;
+    }
+    
+    public Long getId() { return id; }
+    public String getName() { return name; }
+    public String getDescription() { return description; }
+    public long getPriceCents() { return priceCents; }
+    public int getStock() { return stock; }
+    
+    /**
+     * Decimal view for templates; the catalog itself never uses it.
+     */
+    public BigDecimal getPrice() {
+        return Money.toBigDecimal(priceCents);
+    }
+}
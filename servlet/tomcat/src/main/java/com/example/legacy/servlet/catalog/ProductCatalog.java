@@ -0,0 +1,411 @@
+package com.example.legacy.servlet.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ProductCatalog is an immutable, indexed view of the products:
+ * - Products are held in ascending ID order; lookups by ID go through a
+ *   primitive long-to-position hash index (no Long boxing, no scan)
+ * - Secondary indexes hold positions ordered by (price, ID) and (stock, ID),
+ *   so price ranges and the in-stock subset are two binary searches away;
+ *   prices are compared as long minor units, never as BigDecimal
+ * - A running count of in-stock products along the price index answers
+ *   "in stock within a price range" counts without visiting the range
+ * - Listings page by keyset (CatalogCursor) rather than offset, so page N
+ *   costs the same as page 1
+ *
+ * A filtered listing in ID order either walks the ID order and filters, or
+ * gathers the (smaller) matching index range and sorts it, whichever the
+ * range sizes say is cheaper. A change to the catalog means building a new
+ * instance and swapping it in; readers never lock.
+ */
+public final class ProductCatalog {
+    
+    private final Product[] products;
+    private final long[] ids;
+    private final LongIntHashMap idIndex;
+    
+    private final int[] byPrice;
+    private final long[] prices;
+    // inStockByPrice[i]: products with stock > 0 among byPrice[0..i)
+    private final int[] inStockByPrice;
+    private final int[] byStock;
+    private final int[] stocks;
+    
+    private final long version;
+    
+    /**
+     * @param version identifies the data the catalog was built from, e.g. for ETags
+     */
+    public ProductCatalog(Collection<Product> source, long version) {
+        this.version = version;
+        
+        // Sort keys are copied into flat arrays first; comparing through the
+        // Product objects costs a cache miss per comparison on large catalogs
+        Product[] unsorted = source.toArray(new Product[0]);
+        int n = unsorted.length;
+        long[] rawIds = new long[n];
+        for (int i = 0; i < n; i++) {
+            rawIds[i] = unsorted[i].getId();
+        }
+        int[] order = sortedPositions(n, (a, b) -> Long.compare(rawIds[a], rawIds[b]));
+        
+        products = new Product[n];
+        ids = new long[n];
+        idIndex = new LongIntHashMap(n);
+        long[] positionPrices = new long[n];
+        int[] positionStocks = new int[n];
+        for (int i = 0; i < n; i++) {
+            products[i] = unsorted[order[i]];
+            ids[i] = rawIds[order[i]];
+            if (i > 0 && ids[i] == ids[i - 1]) {
+                throw new IllegalArgumentException("Duplicate product ID " + ids[i]);
+            }
+            idIndex.put(ids[i], i);
+            positionPrices[i] = products[i].getPriceCents();
+            positionStocks[i] = products[i].getStock();
+        }
+        
+        // Stable sort of positions (already in ID order) gives (key, ID) order
+        byPrice = sortedPositions(n, (a, b) -> Long.compare(positionPrices[a], positionPrices[b]));
+        prices = new long[n];
+        for (int i = 0; i < n; i++) {
+            prices[i] = positionPrices[byPrice[i]];
+        }
+        inStockByPrice = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            inStockByPrice[i + 1] = inStockByPrice[i] + (positionStocks[byPrice[i]] > 0 ? 1 : 0);
+        }
+        
+        byStock = sortedPositions(n, (a, b) -> Integer.compare(positionStocks[a], positionStocks[b]));
+        stocks = new int[n];
+        for (int i = 0; i < n; i++) {
+            stocks[i] = positionStocks[byStock[i]];
+        }
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public int size() {
+        return products.length;
+    }
+    
+    /**
+     * @return the product, or null if there is none with this ID
+     */
+    public Product get(long id) {
+        int position = idIndex.get(id);
+        return position < 0 ? null : products[position];
+    }
+    
+    /**
+     * Number of products matching the query's filters.
+     */
+    public int count(ProductQuery query) {
+        if (!query.isFiltered()) {
+            return products.length;
+        }
+        int priceFrom = priceFrom(query);
+        int priceTo = priceTo(query);
+        if (!query.isInStockOnly()) {
+            return priceTo - priceFrom;
+        }
+        return inStockByPrice[priceTo] - inStockByPrice[priceFrom];
+    }
+    
+    /**
+     * Keyset page: up to {@code limit} matching products ordered after {@code after}
+     * (or from the start when null).
+     *
+     * @throws IllegalArgumentException if the cursor belongs to a different sort order
+     */
+    public Page page(ProductQuery query, CatalogCursor after, int limit) {
+        if (after != null && after.getSort() != query.getSort()) {
+            throw new IllegalArgumentException("Cursor is for sort=" + after.getSort().name().toLowerCase(Locale.ROOT));
+        }
+        return scan(query, after, 0, limit);
+    }
+    
+    /**
+     * Offset page for callers still using page numbers. Skipping is linear in
+     * {@code offset} when filters are applied; prefer {@link #page}.
+     */
+    public Page offsetPage(ProductQuery query, int offset, int limit) {
+        return scan(query, null, offset, limit);
+    }
+    
+    private Page scan(ProductQuery query, CatalogCursor after, int skip, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + limit);
+        }
+        List<Product> out = new ArrayList<>(Math.min(limit, 1024));
+        boolean more;
+        switch (query.getSort()) {
+            case PRICE:
+                more = scanIndex(query, byPrice,
+                        after == null ? priceFrom(query) : Math.max(priceFrom(query), priceAfter(after)),
+                        priceTo(query), skip, limit, out);
+                break;
+            case STOCK:
+                more = scanIndex(query, byStock,
+                        after == null ? stockFrom(query) : Math.max(stockFrom(query), stockAfter(after)),
+                        products.length, skip, limit, out);
+                break;
+            default:
+                more = scanById(query, after == null ? 0 : idAfter(after.getId()), skip, limit, out);
+                break;
+        }
+        CatalogCursor next = more ? CatalogCursor.after(query.getSort(), out.get(out.size() - 1)) : null;
+        return new Page(Collections.unmodifiableList(out), next);
+    }
+    
+    /**
+     * @return true if more matches exist past the collected ones
+     */
+    private boolean scanIndex(ProductQuery query, int[] index, int from, int to, int skip, int limit,
+                              List<Product> out) {
+        for (int i = from; i < to; i++) {
+            Product product = products[index[i]];
+            if (!query.matches(product)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else if (out.size() == limit) {
+                return true;
+            } else {
+                out.add(product);
+            }
+        }
+        return false;
+    }
+    
+    private boolean scanById(ProductQuery query, int start, int skip, int limit, List<Product> out) {
+        int n = products.length;
+        if (!query.isFiltered()) {
+            int from = (int) Math.min((long) start + skip, n);
+            int to = (int) Math.min((long) from + limit, n);
+            out.addAll(Arrays.asList(products).subList(from, to));
+            return to < n;
+        }
+        
+        // The narrowest index range bounds the candidates
+        int[] index = byPrice;
+        int from = priceFrom(query);
+        int to = priceTo(query);
+        if (query.isInStockOnly() && n - stockFrom(query) < to - from) {
+            index = byStock;
+            from = stockFrom(query);
+            to = n;
+        }
+        int candidates = to - from;
+        
+        // Walking ID order finds about (candidates / n) matches per step
+        long walkCost = Math.min(n - start, ((long) skip + limit + 1) * n / Math.max(candidates, 1));
+        if (walkCost <= candidates) {
+            for (int i = start; i < n; i++) {
+                if (!query.matches(products[i])) {
+                    continue;
+                }
+                if (skip > 0) {
+                    skip--;
+                } else if (out.size() == limit) {
+                    return true;
+                } else {
+                    out.add(products[i]);
+                }
+            }
+            return false;
+        }
+        
+        int[] positions = new int[candidates];
+        int matched = 0;
+        for (int i = from; i < to; i++) {
+            int position = index[i];
+            if (position >= start && query.matches(products[position])) {
+                positions[matched++] = position;
+            }
+        }
+        Arrays.sort(positions, 0, matched);
+        int end = (int) Math.min((long) skip + limit, matched);
+        for (int i = skip; i < end; i++) {
+            out.add(products[positions[i]]);
+        }
+        return matched > end;
+    }
+    
+    private int priceFrom(ProductQuery query) {
+        long min = query.getMinPriceCents();
+        if (min == ProductQuery.NO_MIN_PRICE) {
+            return 0;
+        }
+        int lo = 0;
+        int hi = prices.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prices[mid] < min) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * Never before priceFrom, so an inverted range is simply empty.
+     */
+    private int priceTo(ProductQuery query) {
+        long max = query.getMaxPriceCents();
+        if (max == ProductQuery.NO_MAX_PRICE) {
+            return prices.length;
+        }
+        int lo = priceFrom(query);
+        int hi = prices.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prices[mid] <= max) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    private int stockFrom(ProductQuery query) {
+        if (!query.isInStockOnly()) {
+            return 0;
+        }
+        int lo = 0;
+        int hi = stocks.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (stocks[mid] < 1) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * First index entry ordered after the cursor's (price, ID).
+     */
+    private int priceAfter(CatalogCursor cursor) {
+        int lo = 0;
+        int hi = prices.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Long.compare(prices[mid], cursor.getPriceCents());
+            if (c < 0 || (c == 0 && ids[byPrice[mid]] <= cursor.getId())) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * First index entry ordered after the cursor's (stock, ID).
+     */
+    private int stockAfter(CatalogCursor cursor) {
+        int lo = 0;
+        int hi = stocks.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Integer.compare(stocks[mid], cursor.getStock());
+            if (c < 0 || (c == 0 && ids[byStock[mid]] <= cursor.getId())) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * First position with an ID greater than {@code id}.
+     */
+    private int idAfter(long id) {
+        int lo = 0;
+        int hi = ids.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ids[mid] <= id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    private interface PositionComparator {
+        int compare(int a, int b);
+    }
+    
+    /**
+     * Positions 0..n-1 ordered by the comparator; a stable bottom-up merge sort
+     * on int[] so no Integer boxing is needed for large catalogs.
+     */
+    private static int[] sortedPositions(int n, PositionComparator comparator) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+        }
+        int[] b = new int[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n; lo += width << 1) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + (width << 1), n);
+                int i = lo;
+                int j = mid;
+                int k = lo;
+                while (i < mid && j < hi) {
+                    b[k++] = comparator.compare(a[j], a[i]) < 0 ? a[j++] : a[i++];
+                }
+                while (i < mid) {
+                    b[k++] = a[i++];
+                }
+                while (j < hi) {
+                    b[k++] = a[j++];
+                }
+            }
+            int[] swap = a;
+            a = b;
+            b = swap;
+        }
+        return a;
+    }
+    
+    /**
+     * One page of a listing; {@code next} is null on the last page.
+     */
+    public static final class Page {
+        private final List<Product> products;
+        private final CatalogCursor next;
+        
+        Page(List<Product> products, CatalogCursor next) {
+            this.products = products;
+            this.next = next;
+        }
+        
+        public List<Product> getProducts() {
+            return products;
+        }
+        
+        public CatalogCursor getNext() {
+            return next;
+        }
+    }
+}
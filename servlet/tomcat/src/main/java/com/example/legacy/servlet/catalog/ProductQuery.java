@@ -0,0 +1,70 @@
+package com.example.legacy.servlet.catalog;
+
+import java.util.Locale;
+
+/**
+ * Filter and order for a catalog listing. Price bounds are inclusive, in
+ * minor units (see Money); NO_MIN_PRICE/NO_MAX_PRICE leave a side open.
+ * {@code inStockOnly} keeps products with stock &gt; 0.
+ */
+public final class ProductQuery {
+    
+    public enum Sort { ID, PRICE, STOCK }
+    
+    public static final long NO_MIN_PRICE = Long.MIN_VALUE;
+    public static final long NO_MAX_PRICE = Long.MAX_VALUE;
+    
+    public static final ProductQuery ALL = new ProductQuery(NO_MIN_PRICE, NO_MAX_PRICE, false, Sort.ID);
+    
+    private final long minPriceCents;
+    private final long maxPriceCents;
+    private final boolean inStockOnly;
+    private final Sort sort;
+    
+    public ProductQuery(long minPriceCents, long maxPriceCents, boolean inStockOnly, Sort sort) {
+        this.minPriceCents = minPriceCents;
+        this.maxPriceCents = maxPriceCents;
+        this.inStockOnly = inStockOnly;
+        this.sort = sort;
+    }
+    
+    public long getMinPriceCents() {
+        return minPriceCents;
+    }
+    
+    public long getMaxPriceCents() {
+        return maxPriceCents;
+    }
+    
+    public boolean isInStockOnly() {
+        return inStockOnly;
+    }
+    
+    public Sort getSort() {
+        return sort;
+    }
+    
+    public boolean isPriceFiltered() {
+        return minPriceCents != NO_MIN_PRICE || maxPriceCents != NO_MAX_PRICE;
+    }
+    
+    public boolean isFiltered() {
+        return isPriceFiltered() || inStockOnly;
+    }
+    
+    /**
+     * The query as text, equal for equal queries however the request spelled
+     * them; for cache keys. Price bounds are in minor units, open sides are "*".
+     */
+    public String canonical() {
+        return (minPriceCents == NO_MIN_PRICE ? "*" : Long.toString(minPriceCents)) + ".."
+                + (maxPriceCents == NO_MAX_PRICE ? "*" : Long.toString(maxPriceCents))
+                + (inStockOnly ? ",inStock" : "") + ",sort=" + sort.name().toLowerCase(Locale.ROOT);
+    }
+    
+    boolean matches(Product product) {
+        long price = product.getPriceCents();
+        return price >= minPriceCents && price <= maxPriceCents
+                && (!inStockOnly || product.getStock() > 0);
+    }
+}
@@ -0,0 +1,441 @@
+package com.example.legacy.servlet.data;
+
+import org.apache.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InstrumentedDataSource is the application's single handle on the
+ * container-managed LegacyDB pool:
+ * - Resolved from JNDI once at startup and shared as a ServletContext attribute
+ * - Times every borrow (pool wait) and how long each connection is held
+ * - Tracks connections checked out through it and the peak concurrency
+ * - Reads active/idle/maxTotal from the underlying DBCP pool when available
+ * - Warns (rate-limited) when borrows start waiting, i.e. the pool saturates
+ * - Pre-opens minIdle connections at startup and reports JDBC4 isValid() cost
+ * - Reports the evictor's idle validations, timed by the pool's {@link TimedValidationDriver}
+ */
+public class InstrumentedDataSource implements DataSource {
+    
+    public static final String CONTEXT_ATTRIBUTE = "dataSource";
+    
+    private static final Logger logger = Logger.getLogger(InstrumentedDataSource.class);
+    
+    private static final long WARN_INTERVAL_NANOS = 10000000000L;
+    
+    private final DataSource delegate;
+    private final long slowBorrowNanos;
+    
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder borrowFailures = new LongAdder();
+    private final LongAdder slowBorrows = new LongAdder();
+    private final LongAdder borrowNanos = new LongAdder();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+    
+    private final LongAdder releases = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+    private final AtomicLong maxHoldNanos = new AtomicLong();
+    
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final LongAdder validations = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder validationNanos = new LongAdder();
+    private final AtomicLong maxValidationNanos = new AtomicLong();
+    
+    // Looked for on the first connection borrowed; stays null unless the pool's URL is jdbc:timed:
+    private volatile TimedValidationDriver timedDriver;
+    private volatile boolean timedDriverChecked;
+    
+    private final AtomicLong lastWarnNanos = new AtomicLong(System.nanoTime() - WARN_INTERVAL_NANOS);
+    
+    // DBCP's BasicDataSource accessors, looked up reflectively so no pool classes are needed at compile time
+    private final Method numActiveMethod;
+    private final Method numIdleMethod;
+    private final Method maxTotalMethod;
+    private final Method minIdleMethod;
+    private final Method validationTimeoutMethod;
+    
+    public InstrumentedDataSource(DataSource delegate, long slowBorrowMillis) {
+        this.delegate = delegate;
+        this.slowBorrowNanos = slowBorrowMillis * 1000000L;
+        this.numActiveMethod = poolMethod(delegate, "getNumActive");
+        this.numIdleMethod = poolMethod(delegate, "getNumIdle");
+        Method maxTotal = poolMethod(delegate, "getMaxTotal");
+        this.maxTotalMethod = maxTotal != null ? maxTotal : poolMethod(delegate, "getMaxActive");
+        this.minIdleMethod = poolMethod(delegate, "getMinIdle");
+        this.validationTimeoutMethod = poolMethod(delegate, "getValidationQueryTimeout");
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return track(delegate.getConnection(), start);
+        } catch (SQLException | RuntimeException e) {
+            borrowFailures.increment();
+            recordBorrow(System.nanoTime() - start);
+            throw e;
+        }
+    }
+    
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return track(delegate.getConnection(username, password), start);
+        } catch (SQLException | RuntimeException e) {
+            borrowFailures.increment();
+            recordBorrow(System.nanoTime() - start);
+            throw e;
+        }
+    }
+    
+    /**
+     * Opens {@code connections} connections at the same time, so the pool keeps
+     * them as idle afterwards, and validates each one. Warm-up borrows go straight
+     * to the pool and are not counted in the borrow statistics.
+     *
+     * @return number of connections opened and found valid
+     */
+    public int warmUp(int connections, int validationTimeoutSeconds) {
+        List<Connection> opened = new ArrayList<>(connections);
+        int valid = 0;
+        try {
+            for (int i = 0; i < connections; i++) {
+                Connection connection = delegate.getConnection();
+                opened.add(connection);
+                findTimedDriver(connection);
+                if (validate(connection, validationTimeoutSeconds)) {
+                    valid++;
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Connection pool warm-up stopped after " + opened.size() + " connections", e);
+        } finally {
+            for (Connection connection : opened) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.warn("Failed to return warm-up connection to the pool", e);
+                }
+            }
+        }
+        return valid;
+    }
+    
+    /**
+     * Times a JDBC4 {@link Connection#isValid(int)} check, the same check the
+     * pool's evictor runs on idle connections when no validationQuery is set.
+     */
+    public boolean validate(Connection connection, int timeoutSeconds) {
+        long start = System.nanoTime();
+        boolean valid;
+        try {
+            valid = connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            valid = false;
+        }
+        long nanos = System.nanoTime() - start;
+        validations.increment();
+        validationNanos.add(nanos);
+        maxValidationNanos.accumulateAndGet(nanos, Math::max);
+        if (!valid) {
+            validationFailures.increment();
+        }
+        return valid;
+    }
+    
+    public DataSource getDelegate() {
+        return delegate;
+    }
+    
+    public long getBorrowCount() {
+        return borrows.sum();
+    }
+    
+    public long getBorrowFailures() {
+        return borrowFailures.sum();
+    }
+    
+    public long getSlowBorrows() {
+        return slowBorrows.sum();
+    }
+    
+    public double getAverageBorrowMillis() {
+        long count = borrows.sum();
+        return count == 0 ? 0.0 : borrowNanos.sum() / 1000000.0 / count;
+    }
+    
+    public double getMaxBorrowMillis() {
+        return maxBorrowNanos.get() / 1000000.0;
+    }
+    
+    public double getAverageHoldMillis() {
+        long count = releases.sum();
+        return count == 0 ? 0.0 : holdNanos.sum() / 1000000.0 / count;
+    }
+    
+    public double getMaxHoldMillis() {
+        return maxHoldNanos.get() / 1000000.0;
+    }
+    
+    public long getValidationCount() {
+        return validations.sum();
+    }
+    
+    public long getValidationFailures() {
+        return validationFailures.sum();
+    }
+    
+    public double getAverageValidationMicros() {
+        long count = validations.sum();
+        return count == 0 ? 0.0 : validationNanos.sum() / 1000.0 / count;
+    }
+    
+    public double getMaxValidationMicros() {
+        return maxValidationNanos.get() / 1000.0;
+    }
+    
+    /**
+     * isValid() checks on the pool's physical connections: the evictor's idle
+     * validations, plus the warm-up's. Zero unless the pool's URL goes through
+     * {@link TimedValidationDriver} and a connection has been borrowed.
+     */
+    public long getPoolValidationCount() {
+        TimedValidationDriver driver = timedDriver;
+        return driver != null ? driver.getValidationCount() : 0;
+    }
+    
+    public long getPoolValidationFailures() {
+        TimedValidationDriver driver = timedDriver;
+        return driver != null ? driver.getValidationFailures() : 0;
+    }
+    
+    public double getAveragePoolValidationMicros() {
+        TimedValidationDriver driver = timedDriver;
+        return driver != null ? driver.getAverageValidationMicros() : 0.0;
+    }
+    
+    public double getMaxPoolValidationMicros() {
+        TimedValidationDriver driver = timedDriver;
+        return driver != null ? driver.getMaxValidationMicros() : 0.0;
+    }
+    
+    /**
+     * Connections currently checked out through this data source.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+    
+    public int getPeakActiveCount() {
+        return peakActive.get();
+    }
+    
+    /**
+     * Active connections as reported by the pool, or -1 if the pool doesn't expose it.
+     */
+    public int getPoolActive() {
+        return poolValue(numActiveMethod);
+    }
+    
+    public int getPoolIdle() {
+        return poolValue(numIdleMethod);
+    }
+    
+    public int getPoolMaxTotal() {
+        return poolValue(maxTotalMethod);
+    }
+    
+    public int getPoolMinIdle() {
+        return poolValue(minIdleMethod);
+    }
+    
+    /**
+     * The pool's validation timeout in seconds, also used for isValid(), or -1 if unknown.
+     */
+    public int getPoolValidationTimeout() {
+        return poolValue(validationTimeoutMethod);
+    }
+    
+    /**
+     * One-line summary for logs.
+     */
+    public String describe() {
+        return String.format("borrows=%d failures=%d slow=%d borrowAvg=%.2fms borrowMax=%.2fms "
+                + "holdAvg=%.2fms holdMax=%.2fms validations=%d invalid=%d validateAvg=%.1fus "
+                + "validateMax=%.1fus poolValidations=%d poolInvalid=%d poolValidateAvg=%.1fus "
+                + "poolValidateMax=%.1fus active=%d peak=%d pool[active=%d idle=%d maxTotal=%d]",
+                getBorrowCount(), getBorrowFailures(), getSlowBorrows(),
+                getAverageBorrowMillis(), getMaxBorrowMillis(),
+                getAverageHoldMillis(), getMaxHoldMillis(),
+                getValidationCount(), getValidationFailures(),
+                getAverageValidationMicros(), getMaxValidationMicros(),
+                getPoolValidationCount(), getPoolValidationFailures(),
+                getAveragePoolValidationMicros(), getMaxPoolValidationMicros(),
+                getActiveCount(), getPeakActiveCount(),
+                getPoolActive(), getPoolIdle(), getPoolMaxTotal());
+    }
+    
+    private Connection track(Connection connection, long start) {
+        long borrowed = System.nanoTime();
+        recordBorrow(borrowed - start);
+        findTimedDriver(connection);
+        
+        int now = active.incrementAndGet();
+        peakActive.accumulateAndGet(now, Math::max);
+        
+        return (Connection) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new TrackedConnection(connection, borrowed));
+    }
+    
+    private void recordBorrow(long nanos) {
+        borrows.increment();
+        borrowNanos.add(nanos);
+        maxBorrowNanos.accumulateAndGet(nanos, Math::max);
+        
+        if (nanos >= slowBorrowNanos) {
+            slowBorrows.increment();
+            long last = lastWarnNanos.get();
+            long now = System.nanoTime();
+            if (now - last >= WARN_INTERVAL_NANOS && lastWarnNanos.compareAndSet(last, now)) {
+                logger.warn("Connection pool saturated: borrow waited " + (nanos / 1000000L) + "ms; " + describe());
+            }
+        }
+    }
+    
+    private void recordRelease(long borrowedNanos) {
+        long held = System.nanoTime() - borrowedNanos;
+        active.decrementAndGet();
+        releases.increment();
+        holdNanos.add(held);
+        maxHoldNanos.accumulateAndGet(held, Math::max);
+    }
+    
+    private void findTimedDriver(Connection connection) {
+        if (timedDriverChecked) {
+            return;
+        }
+        try {
+            if (connection.isWrapperFor(TimedValidationDriver.TimedConnection.class)) {
+                timedDriver = connection.unwrap(TimedValidationDriver.TimedConnection.class)
+                        .getTimedValidationDriver();
+            }
+        } catch (SQLException e) {
+            logger.debug("Cannot unwrap pooled connection", e);
+        }
+        timedDriverChecked = true;
+    }
+    
+    private static Method poolMethod(DataSource dataSource, String name) {
+        try {
+            return dataSource.getClass().getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    private int poolValue(Method method) {
+        if (method == null) {
+            return -1;
+        }
+        try {
+            return ((Number) method.invoke(delegate)).intValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Passes everything through to the pooled connection and records the hold time on close().
+     */
+    private final class TrackedConnection implements InvocationHandler {
+        private final Connection connection;
+        private final long borrowedNanos;
+        private boolean closed;
+        
+        TrackedConnection(Connection connection, long borrowedNanos) {
+            this.connection = connection;
+            this.borrowedNanos = borrowedNanos;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name) && method.getParameterCount() == 0) {
+                synchronized (this) {
+                    if (closed) {
+                        return null;
+                    }
+                    closed = true;
+                }
+                try {
+                    connection.close();
+                } finally {
+                    recordRelease(borrowedNanos);
+                }
+                return null;
+            }
+            if ("equals".equals(name) && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name) && method.getParameterCount() == 0) {
+                return System.identityHashCode(proxy);
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+    
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+    
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+    
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+    
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+    
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+    
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+    }
+    
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.legacy.servlet.data;
+
+import org.apache.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SchemaBootstrap runs the versioned schema migrations once at startup:
+ * - Keeps applied versions in a SCHEMA_VERSION table
+ * - Applies each pending migration in its own transaction
+ * - Records how long the bootstrap took
+ *
+ * Request paths only check {@link #isReady()} and go straight to their queries.
+ * If the bootstrap failed at startup they call {@link #retry()}, which runs it
+ * again at most once per RETRY_INTERVAL_MILLIS.
+ */
+public class SchemaBootstrap {
+    
+    private static final Logger logger = Logger.getLogger(SchemaBootstrap.class);
+    
+    /** ServletContext attribute holding the bootstrap instance */
+    public static final String CONTEXT_ATTRIBUTE = "schemaBootstrap";
+    
+    private static final long RETRY_INTERVAL_MILLIS = 5000L;
+    
+    private static final String[][] SAMPLE_USERS = {
+        {"admin", "admin@example.com"},
+        {"john", "john@example.com"},
+        {"jane", "jane@example.com"},
+        {"bob", "bob@example.com"}
+    };
+    
+    private final DataSource dataSource;
+    private final List<Migration> migrations = new ArrayList<>();
+    
+    private volatile boolean ready;
+    private volatile long bootstrapMillis = -1;
+    private volatile int schemaVersion;
+    
+    private final AtomicLong nextRetry = new AtomicLong();
+    
+    public SchemaBootstrap(DataSource dataSource) {
+        this.dataSource = dataSource;
+        
+        migrations.add(new Migration(1, "Create USERS table") {
+            @Override
+            void apply(Connection conn) throws SQLException {
+                execute(conn, "CREATE TABLE IF NOT EXISTS USERS (" +
+                        "ID BIGINT PRIMARY KEY AUTO_INCREMENT, " +
+                        "USERNAME VARCHAR(50) NOT NULL, " +
+                        "EMAIL VARCHAR(100) NOT NULL, " +
+                        "CREATED_DATE TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            }
+        });
+        
+        migrations.add(new Migration(2, "Seed sample users") {
+            @Override
+            void apply(Connection conn) throws SQLException {
+                try (PreparedStatement checkStmt = conn.prepareStatement("SELECT COUNT(*) FROM USERS");
+                     ResultSet rs = checkStmt.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) > 0) {
+                        return;
+                    }
+                }
+                try (PreparedStatement insertStmt = conn.prepareStatement(
+                        "INSERT INTO USERS (USERNAME, EMAIL) VALUES (?, ?)")) {
+                    for (String[] user : SAMPLE_USERS) {
+                        insertStmt.setString(1, user[0]);
+                        insertStmt.setString(2, user[1]);
+                        insertStmt.addBatch();
+                    }
+                    insertStmt.executeBatch();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Applies all pending migrations. Marks the schema ready on success.
+     */
+    public synchronized void run() throws SQLException {
+        long start = System.nanoTime();
+        
+        try (Connection conn = dataSource.getConnection()) {
+            execute(conn, "CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (" +
+                    "VERSION INT PRIMARY KEY, " +
+                    "DESCRIPTION VARCHAR(200) NOT NULL, " +
+                    "APPLIED_ON TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            
+            int current = currentVersion(conn);
+            logger.info("Current schema version: " + current);
+            
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (Migration migration : migrations) {
+                    if (migration.version <= current) {
+                        continue;
+                    }
+                    logger.info("Applying migration " + migration.version + ": " + migration.description);
+                    try {
+                        migration.apply(conn);
+                        try (PreparedStatement stmt = conn.prepareStatement(
+                                "INSERT INTO SCHEMA_VERSION (VERSION, DESCRIPTION) VALUES (?, ?)")) {
+                            stmt.setInt(1, migration.version);
+                            stmt.setString(2, migration.description);
+                            stmt.executeUpdate();
+                        }
+                        conn.commit();
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        throw e;
+                    }
+                    current = migration.version;
+                }
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            
+            schemaVersion = current;
+        }
+        
+        bootstrapMillis = (System.nanoTime() - start) / 1000000L;
+        ready = true;
+        
+        logger.info("Schema bootstrap completed at version " + schemaVersion +
+                   " in " + bootstrapMillis + "ms");
+    }
+    
+    /**
+     * Runs the bootstrap again after a failure. One caller at a time retries,
+     * at most once per RETRY_INTERVAL_MILLIS; the others return at once.
+     *
+     * @return whether the schema is ready
+     */
+    public boolean retry() {
+        if (ready) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long due = nextRetry.get();
+        if (now < due || !nextRetry.compareAndSet(due, now + RETRY_INTERVAL_MILLIS)) {
+            return false;
+        }
+        try {
+            run();
+        } catch (SQLException e) {
+            logger.warn("Schema bootstrap retry failed: " + e.getMessage());
+        }
+        return ready;
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+    
+    /**
+     * Wall-clock time of the last bootstrap run in milliseconds, or -1 if it never completed.
+     */
+    public long getBootstrapMillis() {
+        return bootstrapMillis;
+    }
+    
+    public List<Migration> getMigrations() {
+        return Collections.unmodifiableList(migrations);
+    }
+    
+    private int currentVersion(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT MAX(VERSION) FROM SCHEMA_VERSION");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+    
+    /**
+     * A single schema change identified by a monotonically increasing version.
+     */
+    public abstract static class Migration {
+        private final int version;
+        private final String description;
+        
+        Migration(int version, String description) {
+            this.version = version;
+            this.description = description;
+        }
+        
+        abstract void apply(Connection conn) throws SQLException;
+        
+        public int getVersion() { return version; }
+        public String getDescription() { return description; }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.legacy.servlet.data;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TimedValidationDriver wraps the real JDBC driver underneath the LegacyDB pool:
+ * - URLs are the real URL with "timed:" after "jdbc:", e.g. jdbc:timed:h2:mem:legacydb
+ * - The real driver is whichever driver on this class's loader accepts the rest
+ * - Times every Connection.isValid() on the physical connections it opens,
+ *   which is how the pool's evictor validates idle connections when no
+ *   validationQuery is set; the pool runs those checks itself, so this is
+ *   the only place they can be measured
+ * - Statistics belong to the driver instance, i.e. to the pool that created it;
+ *   the pool, not the application, creates the driver, so the application
+ *   reaches it by unwrapping a pooled connection to {@link TimedConnection}
+ * - The real driver is looked up once and reused while it accepts the URL
+ */
+public class TimedValidationDriver implements Driver {
+    
+    public static final String URL_PREFIX = "jdbc:timed:";
+    
+    /**
+     * Implemented by the connections this driver opens; unwrap a pooled
+     * connection to it to find the driver that times the pool's validations.
+     */
+    public interface TimedConnection {
+        TimedValidationDriver getTimedValidationDriver();
+    }
+    
+    private final LongAdder validations = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder validationNanos = new LongAdder();
+    private final AtomicLong maxValidationNanos = new AtomicLong();
+    
+    private volatile Driver delegate;
+    
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        String target = targetUrl(url);
+        Connection connection = delegateFor(target).connect(target, info);
+        if (connection == null) {
+            return null;
+        }
+        return (Connection) Proxy.newProxyInstance(TimedValidationDriver.class.getClassLoader(),
+                new Class<?>[] {Connection.class, TimedConnection.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == TimedConnection.class) {
+                        return this;
+                    }
+                    if ("isValid".equals(method.getName())) {
+                        return isValid(connection, (Integer) args[0]);
+                    }
+                    if ("unwrap".equals(method.getName()) && args[0] == TimedConnection.class) {
+                        return proxy;
+                    }
+                    if ("isWrapperFor".equals(method.getName()) && args[0] == TimedConnection.class) {
+                        return true;
+                    }
+                    if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+                        return proxy == args[0];
+                    }
+                    if ("hashCode".equals(method.getName()) && method.getParameterCount() == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+    
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+    
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+        String target = targetUrl(url);
+        return delegateFor(target).getPropertyInfo(target, info);
+    }
+    
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+    
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+    
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+    
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+    
+    public long getValidationCount() {
+        return validations.sum();
+    }
+    
+    public long getValidationFailures() {
+        return validationFailures.sum();
+    }
+    
+    public double getAverageValidationMicros() {
+        long count = validations.sum();
+        return count == 0 ? 0.0 : validationNanos.sum() / 1000.0 / count;
+    }
+    
+    public double getMaxValidationMicros() {
+        return maxValidationNanos.get() / 1000.0;
+    }
+    
+    private boolean isValid(Connection connection, int timeoutSeconds) throws SQLException {
+        long start = System.nanoTime();
+        boolean valid = false;
+        try {
+            valid = connection.isValid(timeoutSeconds);
+            return valid;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            validations.increment();
+            validationNanos.add(nanos);
+            maxValidationNanos.accumulateAndGet(nanos, Math::max);
+            if (!valid) {
+                validationFailures.increment();
+            }
+        }
+    }
+    
+    private static String targetUrl(String url) {
+        return "jdbc:" + url.substring(URL_PREFIX.length());
+    }
+    
+    private Driver delegateFor(String url) throws SQLException {
+        Driver driver = delegate;
+        if (driver == null || !driver.acceptsURL(url)) {
+            driver = findDriver(url);
+            delegate = driver;
+        }
+        return driver;
+    }
+    
+    // Looked up on this class's loader rather than through DriverManager, which
+    // only sees drivers registered by the container's class loader
+    private static Driver findDriver(String url) throws SQLException {
+        for (Driver driver : ServiceLoader.load(Driver.class, TimedValidationDriver.class.getClassLoader())) {
+            if (!(driver instanceof TimedValidationDriver) && driver.acceptsURL(url)) {
+                return driver;
+            }
+        }
+        throw new SQLException("No suitable driver for " + url, "08001");
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.legacy.servlet.export;
+
+import org.apache.log4j.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * AsyncExportJob runs an export off the container's request threads:
+ * - The DB scan and encoding run on a dedicated executor into a bounded ChunkQueue
+ * - Chunks are pushed to the client only while ServletOutputStream.isReady()
+ * - A slow client stalls the producer (all buffers in flight), not a request thread
+ * - A failed export never ends like a complete one: 500 while nothing has been
+ *   sent, otherwise the connection is dropped (see {@link #FAILURE_ATTRIBUTE})
+ * - Timing out counts as failing: the async timeout runs from the start of the
+ *   export, so it can fire while data is still flowing
+ */
+public class AsyncExportJob implements Runnable, WriteListener, AsyncListener {
+    
+    private static final Logger logger = Logger.getLogger(AsyncExportJob.class);
+    
+    /**
+     * Request attribute holding the producer's failure when part of the download
+     * is already on the wire. The job dispatches the request back to the servlet,
+     * which must rethrow it: a committed response that fails is closed by the
+     * container without the final chunk, so the client sees a broken transfer.
+     */
+    public static final String FAILURE_ATTRIBUTE = AsyncExportJob.class.getName() + ".failure";
+    
+    /**
+     * The export itself; writes the complete download to the given stream.
+     */
+    public interface ExportTask {
+        long export(OutputStream out) throws Exception;
+    }
+    
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+    private final ExportTask task;
+    private final ChunkQueue queue;
+    private final long startNanos = System.nanoTime();
+    
+    private volatile Future<?> future;
+    private volatile Throwable failure;
+    private volatile long rows;
+    
+    // Guarded by this
+    private boolean writable;
+    private boolean completed;
+    
+    public AsyncExportJob(AsyncContext asyncContext, ExportTask task, int buffers, int chunkSize)
+            throws IOException {
+        this.asyncContext = asyncContext;
+        this.out = asyncContext.getResponse().getOutputStream();
+        this.task = task;
+        this.queue = new ChunkQueue(buffers, chunkSize);
+        this.queue.setPublishListener(this::pump);
+    }
+    
+    /**
+     * Submits the producer and switches the response to non-blocking output.
+     *
+     * @throws RejectedExecutionException if the export executor is saturated;
+     *         the response is untouched in that case
+     */
+    public void start(ExecutorService executor) {
+        future = executor.submit(this);
+        asyncContext.addListener(this);
+        out.setWriteListener(this);
+    }
+    
+    /**
+     * Producer: runs the export into the chunk queue on the executor thread.
+     */
+    @Override
+    public void run() {
+        OutputStream sink = queue.getOutputStream();
+        try {
+            rows = task.export(sink);
+            sink.close();
+        } catch (Throwable t) {
+            failure = t;
+            queue.abort();
+        }
+    }
+    
+    @Override
+    public void onWritePossible() {
+        synchronized (this) {
+            writable = true;
+        }
+        pump();
+    }
+    
+    @Override
+    public void onError(Throwable t) {
+        abort("write failed", t, false);
+    }
+    
+    /**
+     * Writes queued chunks for as long as the socket accepts them. Called by
+     * the container when the socket becomes writable and by the producer
+     * whenever it publishes a chunk.
+     */
+    private synchronized void pump() {
+        if (!writable || completed) {
+            return;
+        }
+        try {
+            while (out.isReady()) {
+                ChunkQueue.Chunk chunk = queue.poll();
+                if (chunk == null) {
+                    if (queue.isDrained()) {
+                        finish();
+                    }
+                    return;
+                }
+                out.write(chunk.getData(), 0, chunk.getLength());
+                queue.recycle(chunk);
+            }
+        } catch (IOException e) {
+            abort("write failed", e, false);
+        }
+    }
+    
+    private void finish() throws IOException {
+        completed = true;
+        long millis = (System.nanoTime() - startNanos) / 1000000L;
+        
+        if (failure != null) {
+            logger.error("Async export failed after " + millis + "ms", failure);
+            fail();
+            return;
+        }
+        logger.info("Async export completed successfully: " + rows + " rows in " + millis + "ms");
+        
+        try {
+            out.close();
+        } finally {
+            asyncContext.complete();
+        }
+    }
+    
+    private void fail() {
+        HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+        if (!response.isCommitted()) {
+            // Everything written so far is still in the response buffer
+            response.reset();
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            response.setContentLength(0);
+            asyncContext.complete();
+        } else {
+            asyncContext.getRequest().setAttribute(FAILURE_ATTRIBUTE, failure);
+            asyncContext.dispatch();
+        }
+    }
+    
+    /**
+     * @param failed whether the client must see the export as failed; false
+     *        when the connection is already broken and there is no one to tell
+     */
+    private synchronized void abort(String reason, Throwable t, boolean failed) {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        cancelProducer();
+        logger.warn("Async export aborted: " + reason, t);
+        if (failed) {
+            failure = t;
+            fail();
+        } else {
+            asyncContext.complete();
+        }
+    }
+    
+    private void cancelProducer() {
+        Future<?> f = future;
+        if (f != null) {
+            f.cancel(true);
+        }
+    }
+    
+    @Override
+    public void onComplete(AsyncEvent event) {
+        cancelProducer();
+    }
+    
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        long millis = (System.nanoTime() - startNanos) / 1000000L;
+        abort("timed out", new TimeoutException("Async export timed out after " + millis + "ms"), true);
+    }
+    
+    @Override
+    public void onError(AsyncEvent event) {
+        Throwable t = event.getThrowable();
+        abort("async error", t != null ? t : new IOException("Async export failed"), true);
+    }
+    
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.legacy.servlet.export;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * ChunkQueue hands encoded bytes from a producer thread to a consumer:
+ * - A fixed set of chunk buffers is allocated up front and recycled
+ * - The producer blocks once every buffer is in flight, bounding memory
+ * - The consumer sees chunks in the order they were written
+ *
+ * One producer, one consumer.
+ */
+public class ChunkQueue {
+    
+    private static final Chunk END = new Chunk(0);
+    
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> filled = new LinkedBlockingQueue<>();
+    private final ChunkOutputStream outputStream = new ChunkOutputStream();
+    
+    private volatile boolean ended;
+    private volatile Runnable publishListener;
+    
+    public ChunkQueue(int buffers, int chunkSize) {
+        free = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new Chunk(chunkSize));
+        }
+    }
+    
+    /**
+     * Producer side. Closing the stream publishes the last partial chunk and ends the queue.
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+    
+    /**
+     * Registers a callback run on the producer thread after every published chunk
+     * and when the queue ends, for consumers that cannot block in {@link #take()}.
+     */
+    public void setPublishListener(Runnable listener) {
+        this.publishListener = listener;
+    }
+    
+    /**
+     * Producer side: ends the queue without publishing pending bytes, e.g. after a failure.
+     */
+    public void abort() {
+        end();
+    }
+    
+    /**
+     * Consumer side: waits for the next chunk, or returns null once the producer is done.
+     */
+    public Chunk take() throws InterruptedException {
+        Chunk chunk = filled.take();
+        return chunk == END ? null : chunk;
+    }
+    
+    /**
+     * Consumer side: returns the next chunk if one is ready, otherwise null.
+     * Use {@link #isDrained()} to tell "nothing yet" from "finished".
+     */
+    public Chunk poll() {
+        Chunk chunk = filled.peek();
+        if (chunk == null || chunk == END) {
+            return null;
+        }
+        return filled.poll();
+    }
+    
+    /**
+     * Consumer side: true once the producer has finished and every chunk has been consumed.
+     */
+    public boolean isDrained() {
+        return filled.peek() == END;
+    }
+    
+    /**
+     * Consumer side: returns a written chunk to the pool.
+     */
+    public void recycle(Chunk chunk) {
+        chunk.length = 0;
+        free.offer(chunk);
+    }
+    
+    private void end() {
+        if (!ended) {
+            ended = true;
+            filled.add(END);
+            notifyPublished();
+        }
+    }
+    
+    private void publish(Chunk chunk) {
+        filled.add(chunk);
+        notifyPublished();
+    }
+    
+    private void notifyPublished() {
+        Runnable listener = publishListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+    
+    /**
+     * A recyclable buffer; only the first {@code length} bytes are valid.
+     */
+    public static final class Chunk {
+        private final byte[] data;
+        private int length;
+        
+        Chunk(int size) {
+            this.data = new byte[size];
+        }
+        
+        public byte[] getData() { return data; }
+        public int getLength() { return length; }
+    }
+    
+    private final class ChunkOutputStream extends OutputStream {
+        private Chunk current;
+        
+        @Override
+        public void write(int b) throws IOException {
+            Chunk chunk = current();
+            chunk.data[chunk.length++] = (byte) b;
+            publishIfFull(chunk);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                Chunk chunk = current();
+                int n = Math.min(len, chunk.data.length - chunk.length);
+                System.arraycopy(b, off, chunk.data, chunk.length, n);
+                chunk.length += n;
+                off += n;
+                len -= n;
+                publishIfFull(chunk);
+            }
+        }
+        
+        @Override
+        public void close() {
+            if (current != null && current.length > 0) {
+                publish(current);
+            }
+            current = null;
+            end();
+        }
+        
+        private Chunk current() throws IOException {
+            if (ended) {
+                throw new IOException("Chunk queue already closed");
+            }
+            if (current == null) {
+                try {
+                    current = free.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for a free export buffer");
+                }
+            }
+            return current;
+        }
+        
+        private void publishIfFull(Chunk chunk) {
+            if (chunk.length == chunk.data.length) {
+                current = null;
+                publish(chunk);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.legacy.servlet.export;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Binary columnar export.
+ *
+ * Layout (all integers big-endian):
+ * <pre>
+ *   header    : magic "FLC1", u16 version, u16 column count,
+ *               per column: u8 type, u16 name length, UTF-8 name;
+ *               i32 maximum rows per group
+ *   row group : i32 row count (&gt; 0), then each column for all rows of the group
+ *               INT64 / TIMESTAMP: i64 per row (timestamps in epoch millis)
+ *               UTF8: i32 byte length (-1 for NULL) followed by the bytes, per row
+ *   trailer   : i32 0
+ * </pre>
+ *
+ * NULL timestamps are written as {@link #NULL_TIMESTAMP}. Rows are buffered
+ * per group in reused arrays and written column by column once the group is
+ * full, so a parallel export simply produces more (smaller) groups.
+ * {@link ColumnarExportReader} reads the format back.
+ */
+public class ColumnarExportFormat implements ExportFormat {
+    
+    static final byte[] MAGIC = {'F', 'L', 'C', '1'};
+    static final int VERSION = 1;
+    
+    static final int TYPE_INT64 = 1;
+    static final int TYPE_TIMESTAMP = 2;
+    static final int TYPE_UTF8 = 3;
+    
+    public static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    
+    public static final int DEFAULT_ROW_GROUP_SIZE = 4096;
+    
+    /**
+     * Largest row group written or accepted; readers size their column arrays
+     * from the header, so the bound also caps what a corrupt file can allocate.
+     */
+    public static final int MAX_ROW_GROUP_SIZE = 65536;
+    
+    private static final String[] COLUMN_NAMES = {"ID", "USERNAME", "EMAIL", "CREATED_DATE"};
+    private static final int[] COLUMN_TYPES = {TYPE_INT64, TYPE_UTF8, TYPE_UTF8, TYPE_TIMESTAMP};
+    
+    private final int rowGroupSize;
+    private final long[] ids;
+    private final String[] usernames;
+    private final String[] emails;
+    private final long[] createdDates;
+    private int rowsInGroup;
+    
+    public ColumnarExportFormat() {
+        this(DEFAULT_ROW_GROUP_SIZE);
+    }
+    
+    public ColumnarExportFormat(int rowGroupSize) {
+        if (rowGroupSize < 1 || rowGroupSize > MAX_ROW_GROUP_SIZE) {
+            throw new IllegalArgumentException("Row group size must be between 1 and " + MAX_ROW_GROUP_SIZE
+                    + ": " + rowGroupSize);
+        }
+        this.rowGroupSize = rowGroupSize;
+        this.ids = new long[rowGroupSize];
+        this.usernames = new String[rowGroupSize];
+        this.emails = new String[rowGroupSize];
+        this.createdDates = new long[rowGroupSize];
+    }
+    
+    @Override
+    public String getContentType() {
+        return "application/octet-stream";
+    }
+    
+    @Override
+    public String getFileName() {
+        return "users.flc";
+    }
+    
+    @Override
+    public void writeHeader(ExportWriter writer) throws IOException {
+        writer.write(MAGIC);
+        writer.writeShort(VERSION);
+        writer.writeShort(COLUMN_NAMES.length);
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            byte[] name = COLUMN_NAMES[i].getBytes(StandardCharsets.UTF_8);
+            writer.write((byte) COLUMN_TYPES[i]);
+            writer.writeShort(name.length);
+            writer.write(name);
+        }
+        writer.writeInt(rowGroupSize);
+    }
+    
+    @Override
+    public void writeRow(ResultSet rs, ExportWriter writer) throws SQLException, IOException {
+        int row = rowsInGroup;
+        ids[row] = rs.getLong(1);
+        usernames[row] = rs.getString(2);
+        emails[row] = rs.getString(3);
+        Timestamp created = rs.getTimestamp(4);
+        createdDates[row] = created != null ? created.getTime() : NULL_TIMESTAMP;
+        
+        if (++rowsInGroup == rowGroupSize) {
+            writeGroup(writer);
+        }
+    }
+    
+    @Override
+    public void endRows(ExportWriter writer) throws IOException {
+        if (rowsInGroup > 0) {
+            writeGroup(writer);
+        }
+    }
+    
+    @Override
+    public void writeTrailer(ExportWriter writer) throws IOException {
+        writer.writeInt(0);
+    }
+    
+    private void writeGroup(ExportWriter writer) throws IOException {
+        int rows = rowsInGroup;
+        writer.writeInt(rows);
+        for (int i = 0; i < rows; i++) {
+            writer.writeFixedLong(ids[i]);
+        }
+        writeStrings(usernames, rows, writer);
+        writeStrings(emails, rows, writer);
+        for (int i = 0; i < rows; i++) {
+            writer.writeFixedLong(createdDates[i]);
+        }
+        rowsInGroup = 0;
+    }
+    
+    private static void writeStrings(String[] values, int rows, ExportWriter writer) throws IOException {
+        for (int i = 0; i < rows; i++) {
+            String value = values[i];
+            if (value == null) {
+                writer.writeInt(-1);
+            } else {
+                writer.writeInt(ExportWriter.utf8Length(value));
+                writer.writeString(value);
+            }
+            // Don't pin the previous group's strings until the slot is reused
+            values[i] = null;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.legacy.servlet.export;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * Reads files written by {@link ColumnarExportFormat} one row group at a time.
+ *
+ * Columns are decoded into arrays that are reused across groups, so values
+ * returned by the accessors are only valid until the next call to
+ * {@link #nextRowGroup()}.
+ *
+ * String lengths are checked against the bytes left in the file when its
+ * size is known; otherwise the string buffer only grows as bytes actually
+ * arrive, so a corrupt length ends in an EOFException rather than a huge
+ * allocation.
+ *
+ * Can also be run standalone to convert an export back to CSV on stdout:
+ * <pre>
+ *   java -cp WEB-INF/classes com.example.legacy.servlet.export.ColumnarExportReader users.flc
+ * </pre>
+ */
+public class ColumnarExportReader implements Closeable {
+    
+    private final CountingInputStream counter;
+    private final DataInputStream in;
+    private final long size;
+    private final String[] columnNames;
+    private final int[] columnTypes;
+    private final int maxRowGroupSize;
+    
+    private final long[][] longColumns;
+    private final String[][] stringColumns;
+    private byte[] stringBuffer = new byte[256];
+    private int rowCount;
+    private boolean finished;
+    
+    public ColumnarExportReader(InputStream in) throws IOException {
+        this(in, -1);
+    }
+    
+    /**
+     * @param size total length of the export in bytes, or -1 if unknown
+     */
+    public ColumnarExportReader(InputStream in, long size) throws IOException {
+        this.counter = new CountingInputStream(new BufferedInputStream(in, 64 * 1024));
+        this.in = new DataInputStream(counter);
+        this.size = size;
+        
+        byte[] magic = new byte[ColumnarExportFormat.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, ColumnarExportFormat.MAGIC)) {
+            throw new IOException("Not a columnar export (bad magic)");
+        }
+        int version = this.in.readUnsignedShort();
+        if (version != ColumnarExportFormat.VERSION) {
+            throw new IOException("Unsupported columnar export version " + version);
+        }
+        
+        int columns = this.in.readUnsignedShort();
+        columnNames = new String[columns];
+        columnTypes = new int[columns];
+        for (int i = 0; i < columns; i++) {
+            columnTypes[i] = this.in.readUnsignedByte();
+            byte[] name = new byte[this.in.readUnsignedShort()];
+            this.in.readFully(name);
+            columnNames[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        
+        maxRowGroupSize = this.in.readInt();
+        if (maxRowGroupSize < 1 || maxRowGroupSize > ColumnarExportFormat.MAX_ROW_GROUP_SIZE) {
+            throw new IOException("Invalid row group size " + maxRowGroupSize);
+        }
+        
+        longColumns = new long[columns][];
+        stringColumns = new String[columns][];
+        for (int i = 0; i < columns; i++) {
+            switch (columnTypes[i]) {
+                case ColumnarExportFormat.TYPE_INT64:
+                case ColumnarExportFormat.TYPE_TIMESTAMP:
+                    longColumns[i] = new long[maxRowGroupSize];
+                    break;
+                case ColumnarExportFormat.TYPE_UTF8:
+                    stringColumns[i] = new String[maxRowGroupSize];
+                    break;
+                default:
+                    throw new IOException("Unknown type " + columnTypes[i] + " for column " + columnNames[i]);
+            }
+        }
+    }
+    
+    /**
+     * Decodes the next row group.
+     *
+     * @return false once the trailer has been reached
+     */
+    public boolean nextRowGroup() throws IOException {
+        if (finished) {
+            return false;
+        }
+        int rows = in.readInt();
+        if (rows == 0) {
+            finished = true;
+            rowCount = 0;
+            return false;
+        }
+        if (rows < 0 || rows > maxRowGroupSize) {
+            throw new IOException("Invalid row group of " + rows + " rows");
+        }
+        
+        for (int column = 0; column < columnTypes.length; column++) {
+            if (longColumns[column] != null) {
+                long[] values = longColumns[column];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = in.readLong();
+                }
+            } else {
+                String[] values = stringColumns[column];
+                for (int i = 0; i < rows; i++) {
+                    values[i] = readString();
+                }
+            }
+        }
+        rowCount = rows;
+        return true;
+    }
+    
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+    
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+    
+    public int findColumn(String name) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No such column: " + name);
+    }
+    
+    /**
+     * Number of rows in the current row group.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    public long getLong(int row, int column) {
+        long[] values = longColumns[column];
+        if (values == null) {
+            throw new IllegalArgumentException("Column " + columnNames[column] + " is not numeric");
+        }
+        return values[checkRow(row)];
+    }
+    
+    public String getString(int row, int column) {
+        String[] values = stringColumns[column];
+        if (values == null) {
+            throw new IllegalArgumentException("Column " + columnNames[column] + " is not a string column");
+        }
+        return values[checkRow(row)];
+    }
+    
+    /**
+     * Timestamp column value, or null for {@link ColumnarExportFormat#NULL_TIMESTAMP}.
+     */
+    public Timestamp getTimestamp(int row, int column) {
+        long millis = getLong(row, column);
+        return millis == ColumnarExportFormat.NULL_TIMESTAMP ? null : new Timestamp(millis);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    
+    private int checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        return row;
+    }
+    
+    private String readString() throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length + " at offset " + (counter.count - 4));
+        }
+        if (size >= 0 && length > size - counter.count) {
+            throw new IOException("String of " + length + " bytes at offset " + (counter.count - 4)
+                    + " runs past the end of the file");
+        }
+        int read = 0;
+        while (read < length) {
+            if (read == stringBuffer.length) {
+                stringBuffer = Arrays.copyOf(stringBuffer, (int) Math.min(length, stringBuffer.length * 2L));
+            }
+            int n = Math.min(length, stringBuffer.length) - read;
+            in.readFully(stringBuffer, read, n);
+            read += n;
+        }
+        return new String(stringBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Prints an export as CSV, in the same layout as /export?type=csv:
+     * the rows go through {@link CsvExportFormat}'s field encoding.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: ColumnarExportReader <file>");
+            System.exit(2);
+        }
+        
+        File file = new File(args[0]);
+        try (ColumnarExportReader reader = new ColumnarExportReader(new FileInputStream(file), file.length())) {
+            ExportWriter out = new ExportWriter(System.out);
+            long rows = writeCsv(reader, out);
+            out.flush();
+            System.err.println(rows + " rows");
+        }
+    }
+    
+    /**
+     * Writes the rows as {@link CsvExportFormat} would have, header included.
+     *
+     * @return number of rows written
+     */
+    static long writeCsv(ColumnarExportReader reader, ExportWriter out) throws IOException {
+        int id = reader.findColumn("ID");
+        int username = reader.findColumn("USERNAME");
+        int email = reader.findColumn("EMAIL");
+        int created = reader.findColumn("CREATED_DATE");
+        
+        CsvExportFormat format = new CsvExportFormat();
+        format.writeHeader(out);
+        long rows = 0;
+        while (reader.nextRowGroup()) {
+            for (int row = 0; row < reader.getRowCount(); row++) {
+                format.writeFields(reader.getLong(row, id), reader.getString(row, username),
+                        reader.getString(row, email), reader.getTimestamp(row, created), out);
+            }
+            rows += reader.getRowCount();
+        }
+        return rows;
+    }
+    
+    /**
+     * Counts the bytes consumed, for checking lengths against the file size.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        
+        long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.legacy.servlet.export;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque resume token for paged exports.
+ *
+ * The token is the URL-safe Base64 form of {@code "v1:<last exported ID>"}.
+ * Plain numeric IDs are accepted as well, so a client that only kept the
+ * last complete line of a broken download can resume from that row's ID.
+ */
+public final class ContinuationToken {
+    
+    private static final String PREFIX = "v1:";
+    
+    private ContinuationToken() {
+    }
+    
+    public static String encode(long lastId) {
+        byte[] raw = (PREFIX + lastId).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+    
+    /**
+     * @return the last exported ID carried by the token
+     * @throws IllegalArgumentException if the value is neither a token nor an ID
+     */
+    public static long decode(String value) {
+        String text = value.trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            // Not a bare ID; try the token form
+        }
+        
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(text), StandardCharsets.US_ASCII);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed continuation token: " + value);
+        }
+        if (!decoded.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Unsupported continuation token: " + value);
+        }
+        try {
+            return Long.parseLong(decoded.substring(PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed continuation token: " + value);
+        }
+    }
+}
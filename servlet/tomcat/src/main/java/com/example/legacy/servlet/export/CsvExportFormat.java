@@ -0,0 +1,68 @@
+package com.example.legacy.servlet.export;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Comma-separated export, one line per user. Fields are quoted as in
+ * RFC 4180 where needed, so {@link #loadStatement} can read the file back.
+ */
+public class CsvExportFormat implements ExportFormat {
+    
+    private static final byte[] HEADER =
+        "ID,USERNAME,EMAIL,CREATED_DATE".getBytes(StandardCharsets.US_ASCII);
+    
+    /**
+     * H2 statement that loads a file written by this format into USERS with
+     * a single INSERT ... SELECT FROM CSVREAD.
+     */
+    public static String loadStatement(String csvFile) {
+        return "INSERT INTO USERS (ID, USERNAME, EMAIL, CREATED_DATE)" + System.lineSeparator()
+                + "SELECT ID, USERNAME, EMAIL, CREATED_DATE FROM CSVREAD('"
+                + csvFile.replace("'", "''") + "', NULL, 'charset=UTF-8 null=null');";
+    }
+    
+    @Override
+    public String getContentType() {
+        return "text/csv";
+    }
+    
+    @Override
+    public String getFileName() {
+        return "users.csv";
+    }
+    
+    @Override
+    public void writeHeader(ExportWriter writer) throws IOException {
+        writer.write(HEADER);
+        writer.newLine();
+    }
+    
+    @Override
+    public void writeRow(ResultSet rs, ExportWriter writer) throws SQLException, IOException {
+        writeFields(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getTimestamp(4), writer);
+    }
+    
+    void writeFields(long id, String username, String email, Timestamp created, ExportWriter writer)
+            throws IOException {
+        writer.writeLong(id);
+        writer.write((byte) ',');
+        writer.writeCsvField(username);
+        writer.write((byte) ',');
+        writer.writeCsvField(email);
+        writer.write((byte) ',');
+        writer.writeTimestamp(created);
+        writer.newLine();
+    }
+    
+    @Override
+    public void endRows(ExportWriter writer) {
+    }
+    
+    @Override
+    public void writeTrailer(ExportWriter writer) {
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.legacy.servlet.export;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * ExportFormat encodes USERS rows for a download.
+ *
+ * Rows are read by column index in the order ID, USERNAME, EMAIL, CREATED_DATE.
+ * Implementations may keep per-export state, so every scan (or partition of a
+ * parallel scan) gets its own instance.
+ */
+public interface ExportFormat {
+    
+    String getContentType();
+    
+    String getFileName();
+    
+    void writeHeader(ExportWriter writer) throws IOException;
+    
+    void writeRow(ResultSet rs, ExportWriter writer) throws SQLException, IOException;
+    
+    /**
+     * Called after the last row of a scan or partition so buffered rows can be written out.
+     */
+    void endRows(ExportWriter writer) throws IOException;
+    
+    void writeTrailer(ExportWriter writer) throws IOException;
+}
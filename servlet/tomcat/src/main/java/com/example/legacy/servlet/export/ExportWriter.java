@@ -0,0 +1,287 @@
+package com.example.legacy.servlet.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * ExportWriter is the streaming encoder behind the export formats:
+ * - Encodes values as UTF-8 straight into a fixed-size byte buffer
+ * - Hands the buffer to the underlying stream in fixed-size chunks
+ * - Renders numbers and timestamps without Formatter or per-row Strings
+ *
+ * Not thread-safe; use one writer per export.
+ */
+public class ExportWriter {
+    
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final byte[] digits = new byte[20];
+    private final Calendar calendar = Calendar.getInstance();
+    
+    private int position;
+    private long bytesWritten;
+    
+    public ExportWriter(OutputStream out) {
+        this(out, DEFAULT_CHUNK_SIZE);
+    }
+    
+    public ExportWriter(OutputStream out, int chunkSize) {
+        if (chunkSize < 64) {
+            throw new IllegalArgumentException("Chunk size too small: " + chunkSize);
+        }
+        this.out = out;
+        this.buffer = new byte[chunkSize];
+    }
+    
+    public void write(byte b) throws IOException {
+        if (position == buffer.length) {
+            writeChunk();
+        }
+        buffer[position++] = b;
+    }
+    
+    public void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+    
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == buffer.length) {
+                writeChunk();
+            }
+            int n = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+    
+    public void newLine() throws IOException {
+        write(LINE_SEPARATOR);
+    }
+    
+    /**
+     * Writes a string as UTF-8; null is rendered as "null" like String.valueOf.
+     */
+    public void writeString(String s) throws IOException {
+        if (s == null) {
+            write(NULL);
+            return;
+        }
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                write((byte) c);
+            } else {
+                i = writeNonAscii(s, i, c);
+            }
+        }
+    }
+    
+    /**
+     * Writes a string as UTF-8, doubling every occurrence of the quote character
+     * (SQL string literal escaping).
+     */
+    public void writeEscaped(String s, char quote) throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c == quote) {
+                write((byte) c);
+                write((byte) c);
+            } else if (c < 0x80) {
+                write((byte) c);
+            } else {
+                i = writeNonAscii(s, i, c);
+            }
+        }
+    }
+    
+    /**
+     * Writes a CSV field as RFC 4180 asks: a value containing a comma, a double
+     * quote or a line break is enclosed in double quotes, with embedded quotes
+     * doubled. null is written bare as "null", so a value that reads "null" is
+     * quoted to keep the two apart.
+     */
+    public void writeCsvField(String s) throws IOException {
+        if (s == null || !needsCsvQuotes(s)) {
+            writeString(s);
+            return;
+        }
+        write((byte) '"');
+        writeEscaped(s, '"');
+        write((byte) '"');
+    }
+    
+    private static boolean needsCsvQuotes(String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return "null".equals(s);
+    }
+    
+    private int writeNonAscii(String s, int i, char c) throws IOException {
+        if (c < 0x800) {
+            write((byte) (0xC0 | (c >> 6)));
+            write((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(++i));
+            write((byte) (0xF0 | (cp >> 18)));
+            write((byte) (0x80 | ((cp >> 12) & 0x3F)));
+            write((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            write((byte) (0x80 | (cp & 0x3F)));
+        } else if (Character.isSurrogate(c)) {
+            write((byte) '?');
+        } else {
+            write((byte) (0xE0 | (c >> 12)));
+            write((byte) (0x80 | ((c >> 6) & 0x3F)));
+            write((byte) (0x80 | (c & 0x3F)));
+        }
+        return i;
+    }
+    
+    public void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeString(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        write(digits, i, digits.length - i);
+    }
+    
+    /**
+     * Writes a big-endian 16-bit value.
+     */
+    public void writeShort(int value) throws IOException {
+        write((byte) (value >>> 8));
+        write((byte) value);
+    }
+    
+    /**
+     * Writes a big-endian 32-bit value.
+     */
+    public void writeInt(int value) throws IOException {
+        write((byte) (value >>> 24));
+        write((byte) (value >>> 16));
+        write((byte) (value >>> 8));
+        write((byte) value);
+    }
+    
+    /**
+     * Writes a big-endian 64-bit value (binary, unlike {@link #writeLong(long)}).
+     */
+    public void writeFixedLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+    
+    /**
+     * Number of bytes {@link #writeString(String)} produces for a non-null string.
+     */
+    public static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * Writes a timestamp in the same form as Timestamp.toString():
+     * yyyy-mm-dd hh:mm:ss.fffffffff with trailing zeros of the nanos dropped.
+     */
+    public void writeTimestamp(Timestamp ts) throws IOException {
+        if (ts == null) {
+            write(NULL);
+            return;
+        }
+        calendar.setTimeInMillis(ts.getTime());
+        writePadded(calendar.get(Calendar.YEAR), 4);
+        write((byte) '-');
+        writePadded(calendar.get(Calendar.MONTH) + 1, 2);
+        write((byte) '-');
+        writePadded(calendar.get(Calendar.DAY_OF_MONTH), 2);
+        write((byte) ' ');
+        writePadded(calendar.get(Calendar.HOUR_OF_DAY), 2);
+        write((byte) ':');
+        writePadded(calendar.get(Calendar.MINUTE), 2);
+        write((byte) ':');
+        writePadded(calendar.get(Calendar.SECOND), 2);
+        write((byte) '.');
+        
+        int nanos = ts.getNanos();
+        if (nanos == 0) {
+            write((byte) '0');
+            return;
+        }
+        int width = 9;
+        while (nanos % 10 == 0) {
+            nanos /= 10;
+            width--;
+        }
+        writePadded(nanos, width);
+    }
+    
+    private void writePadded(int value, int width) throws IOException {
+        int i = digits.length;
+        for (int w = 0; w < width || value != 0; w++) {
+            digits[--i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        write(digits, i, digits.length - i);
+    }
+    
+    /**
+     * Writes buffered bytes and flushes the underlying stream.
+     */
+    public void flush() throws IOException {
+        writeChunk();
+        out.flush();
+    }
+    
+    public long getBytesWritten() {
+        return bytesWritten + position;
+    }
+    
+    private void writeChunk() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            bytesWritten += position;
+            position = 0;
+        }
+    }
+}
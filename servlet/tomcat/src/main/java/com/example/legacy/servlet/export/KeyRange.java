@@ -0,0 +1,53 @@
+package com.example.legacy.servlet.export;
+
+/**
+ * KeyRange is the slice of the USERS key space an export covers:
+ * IDs greater than {@code afterId} and at most {@code lastId}.
+ *
+ * Both bounds map straight onto {@code WHERE ID > ? AND ID <= ?}, so
+ * resuming an export is an index seek on the primary key, never a rescan
+ * of the rows already delivered.
+ */
+public final class KeyRange {
+    
+    public static final KeyRange ALL = new KeyRange(Long.MIN_VALUE, Long.MAX_VALUE);
+    
+    private final long afterId;
+    private final long lastId;
+    
+    private KeyRange(long afterId, long lastId) {
+        this.afterId = afterId;
+        this.lastId = lastId;
+    }
+    
+    /**
+     * All IDs strictly greater than {@code afterId}.
+     */
+    public static KeyRange after(long afterId) {
+        return new KeyRange(afterId, Long.MAX_VALUE);
+    }
+    
+    public KeyRange withLastId(long lastId) {
+        return new KeyRange(afterId, lastId);
+    }
+    
+    /**
+     * Exclusive lower bound.
+     */
+    public long getAfterId() {
+        return afterId;
+    }
+    
+    /**
+     * Inclusive upper bound.
+     */
+    public long getLastId() {
+        return lastId;
+    }
+    
+    @Override
+    public String toString() {
+        return "(" + (afterId == Long.MIN_VALUE ? "-inf" : Long.toString(afterId))
+                + ", " + (lastId == Long.MAX_VALUE ? "+inf" : Long.toString(lastId)) + "]";
+    }
+}
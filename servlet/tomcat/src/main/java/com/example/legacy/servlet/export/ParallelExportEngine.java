@@ -0,0 +1,389 @@
+package com.example.legacy.servlet.export;
+
+import org.apache.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * ParallelExportEngine scans the USERS table in key ranges:
+ * - Splits [MIN(ID), MAX(ID)] of the requested KeyRange into equal-width ranges
+ * - Scans each range on its own pooled connection from the shared executor
+ * - A worker that runs out of work asks the range with the most IDs left to
+ *   hand over its upper half, so skewed IDs (all rows packed into one initial
+ *   range) still keep every worker busy
+ * - Stitches the encoded chunks back into the response in ID order
+ *
+ * Ranges are split by their owner between two rows, so no row is read twice
+ * and nothing is locked per row. Every range owns a fixed number of chunk
+ * buffers and at most 2 * partitions ranges are waiting to be written at any
+ * time, so memory per export is bounded by
+ * 2 * partitions * buffersPerPartition * chunkSize regardless of table size.
+ * A split never submits a new task: the idle worker scans the half it was
+ * handed, so an export never holds more than {@code partitions} threads.
+ * Only ranges whose scan has started are asked to split: a range still
+ * queued in the shared executor, behind other exports, has no owner to
+ * answer, and waiting on it could park every worker for good.
+ */
+public class ParallelExportEngine {
+    
+    private static final Logger logger = Logger.getLogger(ParallelExportEngine.class);
+    
+    private static final String BOUNDS_QUERY = "SELECT MIN(ID), MAX(ID) FROM USERS WHERE ID > ? AND ID <= ?";
+    
+    private static final String RANGE_QUERY =
+        "SELECT ID, USERNAME, EMAIL, CREATED_DATE FROM USERS WHERE ID BETWEEN ? AND ? ORDER BY ID";
+    
+    private final DataSource dataSource;
+    private final ExecutorService executor;
+    private final int fetchSize;
+    private final int chunkSize;
+    private final int buffersPerPartition;
+    
+    private volatile int rangesScanned;
+    
+    public ParallelExportEngine(DataSource dataSource, ExecutorService executor,
+                                int fetchSize, int chunkSize, int buffersPerPartition) {
+        this.dataSource = dataSource;
+        this.executor = executor;
+        this.fetchSize = fetchSize;
+        this.chunkSize = chunkSize;
+        this.buffersPerPartition = buffersPerPartition;
+    }
+    
+    /**
+     * Exports the users in {@code range} to {@code out} using up to {@code partitions}
+     * concurrent range scans. The header is left out when {@code writeHeader} is
+     * false, e.g. when appending to a partial download.
+     *
+     * @return number of rows written
+     */
+    public long export(Supplier<ExportFormat> formats, int partitions, KeyRange range,
+                       boolean writeHeader, OutputStream out) throws SQLException, IOException {
+        
+        ExportFormat format = formats.get();
+        ExportWriter writer = new ExportWriter(out, chunkSize);
+        if (writeHeader) {
+            format.writeHeader(writer);
+        }
+        
+        long[] bounds = idBounds(range);
+        Export export = new Export(formats, 2 * Math.max(1, partitions));
+        List<Future<?>> workers = new ArrayList<>();
+        long rows = 0;
+        
+        try {
+            if (bounds != null) {
+                Range head = null;
+                Range tail = null;
+                for (long[] slice : split(bounds[0], bounds[1], partitions)) {
+                    Range next = export.add(slice[0], slice[1]);
+                    if (tail == null) {
+                        head = next;
+                    } else {
+                        tail.next = next;
+                    }
+                    tail = next;
+                }
+                for (Range initial = head; initial != null; initial = initial.next) {
+                    Range first = initial;
+                    workers.add(executor.submit(() -> export.work(first)));
+                }
+                
+                writer.flush();
+                
+                // Drain ranges strictly in key order; ranges split off while
+                // scanning are linked in right after the range they came from
+                for (Range current = head; current != null; current = current.next) {
+                    ChunkQueue.Chunk chunk;
+                    while ((chunk = current.queue.take()) != null) {
+                        out.write(chunk.getData(), 0, chunk.getLength());
+                        current.queue.recycle(chunk);
+                    }
+                    rows += current.result();
+                    export.drained();
+                }
+            }
+            
+            format.writeTrailer(writer);
+            writer.flush();
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during parallel export");
+        } finally {
+            export.cancel();
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+        
+        rangesScanned = export.created;
+        logger.info("Parallel export of " + rows + " rows across " + workers.size() + " partitions ("
+                + rangesScanned + " ranges after splits)");
+        return rows;
+    }
+    
+    /**
+     * Number of key ranges the last {@link #export} scanned, including ranges split
+     * off by idle workers.
+     */
+    public int getRangesScanned() {
+        return rangesScanned;
+    }
+    
+    private long[] idBounds(KeyRange range) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(BOUNDS_QUERY)) {
+            stmt.setLong(1, range.getAfterId());
+            stmt.setLong(2, range.getLastId());
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    long min = rs.getLong(1);
+                    if (!rs.wasNull()) {
+                        return new long[] {min, rs.getLong(2)};
+                    }
+                }
+                return null;
+            }
+        }
+    }
+    
+    static List<long[]> split(long min, long max, int partitions) {
+        long span = max - min + 1;
+        int count = (int) Math.max(1, Math.min(partitions, span));
+        long width = (span + count - 1) / count;
+        
+        List<long[]> ranges = new ArrayList<>(count);
+        for (long lo = min; lo <= max; lo += width) {
+            ranges.add(new long[] {lo, Math.min(max, lo + width - 1)});
+            if (max - lo < width) {
+                break;
+            }
+        }
+        return ranges;
+    }
+    
+    /**
+     * Shared state of one export: the ranges being scanned and the split hand-offs
+     * between workers. Guarded by its own monitor; the per-row path only reads a
+     * volatile flag.
+     */
+    private final class Export {
+        private final Supplier<ExportFormat> formats;
+        private final int maxPending;
+        private final List<Range> scanning = new ArrayList<>();
+        private int pending;
+        private int created;
+        private boolean cancelled;
+        
+        Export(Supplier<ExportFormat> formats, int maxPending) {
+            this.formats = formats;
+            this.maxPending = maxPending;
+        }
+        
+        synchronized Range add(long lo, long hi) {
+            Range range = new Range(this, lo, hi);
+            scanning.add(range);
+            pending++;
+            created++;
+            return range;
+        }
+        
+        void work(Range range) {
+            try {
+                while (range != null && range.scan()) {
+                    range = steal();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        /**
+         * Worker side: asks the range with the most IDs left to give up its upper
+         * half and waits for it. Returns null when nothing is worth splitting.
+         */
+        synchronized Range steal() throws InterruptedException {
+            while (!cancelled && pending < maxPending) {
+                Range victim = null;
+                for (Range candidate : scanning) {
+                    // A range with a hand-off not yet collected is still spoken for
+                    if (candidate.started && !candidate.splitRequested && candidate.handoff == null
+                            && candidate.remaining() > fetchSize
+                            && (victim == null || candidate.remaining() > victim.remaining())) {
+                        victim = candidate;
+                    }
+                }
+                if (victim == null) {
+                    return null;
+                }
+                
+                victim.splitRequested = true;
+                try {
+                    while (victim.splitRequested && !cancelled) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    // Nobody will scan the upper half: withdraw the request, or fail
+                    // the range if it was already handed over
+                    victim.splitRequested = false;
+                    if (victim.handoff != null) {
+                        victim.handoff.abandon();
+                        victim.handoff = null;
+                    }
+                    throw e;
+                }
+                Range handed = victim.handoff;
+                victim.handoff = null;
+                if (handed != null) {
+                    return handed;
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Owner side, between two rows: keeps [.., mid] and hands (mid, hi] to the
+         * waiting worker, where {@code id} is the next row the owner would write.
+         */
+        synchronized void split(Range owner, long id) {
+            if (!owner.splitRequested) {
+                return;
+            }
+            long mid = id + (owner.hi - id) / 2;
+            if (!cancelled && pending < maxPending && mid < owner.hi) {
+                Range upper = add(mid + 1, owner.hi);
+                upper.next = owner.next;
+                owner.next = upper;
+                owner.hi = mid;
+                owner.handoff = upper;
+            }
+            owner.splitRequested = false;
+            notifyAll();
+        }
+        
+        synchronized void finished(Range range) {
+            scanning.remove(range);
+            if (range.splitRequested) {
+                range.splitRequested = false;
+                notifyAll();
+            }
+        }
+        
+        synchronized void drained() {
+            pending--;
+        }
+        
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+    }
+    
+    private final class Range {
+        private final Export export;
+        private final long lo;
+        private final ChunkQueue queue = new ChunkQueue(buffersPerPartition, chunkSize);
+        
+        // hi only moves down, written by the owner under the Export monitor
+        private long hi;
+        private volatile long position;
+        private volatile boolean started;
+        private volatile boolean splitRequested;
+        private Range handoff;
+        
+        // Written before the queue ends, read by the coordinator after draining it
+        private Range next;
+        private long rows;
+        private Throwable failure;
+        
+        Range(Export export, long lo, long hi) {
+            this.export = export;
+            this.lo = lo;
+            this.hi = hi;
+            this.position = lo - 1;
+        }
+        
+        long remaining() {
+            return hi - position;
+        }
+        
+        /**
+         * Scans [lo, hi] into the queue, splitting on request.
+         *
+         * @return false if the scan failed
+         */
+        boolean scan() {
+            started = true;
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(RANGE_QUERY,
+                         ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(fetchSize);
+                stmt.setLong(1, lo);
+                stmt.setLong(2, hi);
+                
+                ExportFormat format = export.formats.get();
+                OutputStream out = queue.getOutputStream();
+                ExportWriter writer = new ExportWriter(out, chunkSize);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        long id = rs.getLong(1);
+                        if (splitRequested) {
+                            export.split(this, id);
+                        }
+                        if (id > hi) {
+                            break;
+                        }
+                        format.writeRow(rs, writer);
+                        position = id;
+                        rows++;
+                    }
+                }
+                
+                export.finished(this);
+                format.endRows(writer);
+                writer.flush();
+                out.close();
+                return true;
+                
+            } catch (Throwable t) {
+                export.finished(this);
+                failure = t;
+                queue.abort();
+                return false;
+            }
+        }
+        
+        void abandon() {
+            export.finished(this);
+            failure = new InterruptedIOException("Export range " + lo + "-" + hi + " was never scanned");
+            queue.abort();
+        }
+        
+        long result() throws SQLException, IOException {
+            if (failure instanceof SQLException) {
+                throw (SQLException) failure;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw new IOException("Export range " + lo + "-" + hi + " failed", failure);
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.legacy.servlet.export;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * SQL script export.
+ *
+ * With a batch size of 1 every user becomes its own INSERT statement. Larger
+ * batch sizes emit multi-row INSERT ... VALUES (...),(...) statements, which
+ * restore as a handful of bulk inserts instead of one statement per row.
+ * String values are emitted as properly escaped SQL literals.
+ */
+public class SqlExportFormat implements ExportFormat {
+    
+    private static final byte[] INSERT =
+        "INSERT INTO USERS (ID, USERNAME, EMAIL, CREATED_DATE) VALUES ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = {'N', 'U', 'L', 'L'};
+    private static final byte[] SEPARATOR = {',', ' '};
+    private static final byte[] STATEMENT_END = {')', ';'};
+    
+    private final int batchSize;
+    private int rowsInBatch;
+    
+    public SqlExportFormat() {
+        this(1);
+    }
+    
+    public SqlExportFormat(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+    
+    @Override
+    public String getContentType() {
+        return "text/plain";
+    }
+    
+    @Override
+    public String getFileName() {
+        return "users.sql";
+    }
+    
+    @Override
+    public void writeHeader(ExportWriter writer) throws IOException {
+        writer.writeString("-- User Data Export");
+        writer.newLine();
+        writer.writeString("-- Generated: " + new Date());
+        writer.newLine();
+        if (batchSize > 1) {
+            writer.writeString("-- Batched: up to " + batchSize + " rows per INSERT");
+            writer.newLine();
+        }
+        writer.newLine();
+    }
+    
+    @Override
+    public void writeRow(ResultSet rs, ExportWriter writer) throws SQLException, IOException {
+        if (rowsInBatch == 0) {
+            writer.write(INSERT);
+            if (batchSize > 1) {
+                writer.newLine();
+            }
+        } else {
+            writer.write((byte) ',');
+            writer.newLine();
+        }
+        
+        writer.write((byte) '(');
+        writer.writeLong(rs.getLong(1));
+        writer.write(SEPARATOR);
+        writeLiteral(rs.getString(2), writer);
+        writer.write(SEPARATOR);
+        writeLiteral(rs.getString(3), writer);
+        writer.write(SEPARATOR);
+        writeLiteral(rs.getTimestamp(4), writer);
+        
+        if (++rowsInBatch == batchSize) {
+            endStatement(writer);
+        } else {
+            writer.write((byte) ')');
+        }
+    }
+    
+    @Override
+    public void endRows(ExportWriter writer) throws IOException {
+        if (rowsInBatch > 0) {
+            // Close the open statement: the last row already wrote its ')'
+            writer.write((byte) ';');
+            writer.newLine();
+            rowsInBatch = 0;
+        }
+    }
+    
+    @Override
+    public void writeTrailer(ExportWriter writer) {
+    }
+    
+    private void endStatement(ExportWriter writer) throws IOException {
+        writer.write(STATEMENT_END);
+        writer.newLine();
+        rowsInBatch = 0;
+    }
+    
+    private static void writeLiteral(String value, ExportWriter writer) throws IOException {
+        if (value == null) {
+            writer.write(NULL);
+            return;
+        }
+        writer.write((byte) '\'');
+        writer.writeEscaped(value, '\'');
+        writer.write((byte) '\'');
+    }
+    
+    private static void writeLiteral(Timestamp value, ExportWriter writer) throws IOException {
+        if (value == null) {
+            writer.write(NULL);
+            return;
+        }
+        writer.write((byte) '\'');
+        writer.writeTimestamp(value);
+        writer.write((byte) '\'');
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.legacy.servlet.filter;
+
+import org.apache.log4j.Logger;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CompressionFilter demonstrates:
+ * - Accept-Encoding negotiation (gzip, deflate) in a plain servlet filter
+ * - Streaming compression with pooled Deflater instances
+ * - Per content type compression levels from filter init parameters
+ */
+public class CompressionFilter implements Filter {
+    
+    private static final Logger logger = Logger.getLogger(CompressionFilter.class);
+    
+    private static final String DEFAULT_LEVELS =
+        "text/csv:6,text/plain:6,application/json:4,text/html:6,text/css:6,application/javascript:6";
+    
+    private int threshold = 1024;
+    private Map<String, Integer> levels = new HashMap<>();
+    private DeflaterPool deflaterPool;
+    
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        String thresholdParam = filterConfig.getInitParameter("threshold");
+        if (thresholdParam != null) {
+            threshold = Integer.parseInt(thresholdParam.trim());
+        }
+        
+        String levelsParam = filterConfig.getInitParameter("levels");
+        for (String entry : (levelsParam != null ? levelsParam : DEFAULT_LEVELS).split(",")) {
+            int colon = entry.lastIndexOf(':');
+            if (colon < 0) {
+                throw new ServletException("Invalid compression level entry: " + entry);
+            }
+            int level = Integer.parseInt(entry.substring(colon + 1).trim());
+            if (level < 0 || level > 9) {
+                throw new ServletException("Compression level must be 0-9: " + entry);
+            }
+            levels.put(entry.substring(0, colon).trim().toLowerCase(Locale.ROOT), level);
+        }
+        
+        String poolParam = filterConfig.getInitParameter("deflaterPoolSize");
+        deflaterPool = new DeflaterPool(poolParam != null ? Integer.parseInt(poolParam.trim()) : 32);
+        
+        logger.info("CompressionFilter initialized with threshold " + threshold + " bytes, levels: " + levels);
+    }
+    
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        
+        String encoding = negotiate(httpRequest.getHeader("Accept-Encoding"));
+        if (encoding == null || "HEAD".equals(httpRequest.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        
+        final CompressionResponseWrapper wrapper =
+            new CompressionResponseWrapper(httpResponse, encoding, this);
+        
+        try {
+            chain.doFilter(request, wrapper);
+        } catch (IOException | ServletException | RuntimeException e) {
+            wrapper.release();
+            throw e;
+        }
+        
+        if (request.isAsyncStarted()) {
+            // The async writer closes the stream itself; just make sure the deflater goes back
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    wrapper.release();
+                }
+                
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+                
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+                
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            wrapper.finish();
+        }
+    }
+    
+    @Override
+    public void destroy() {
+        String stats = deflaterPool.describe();
+        if (!stats.isEmpty()) {
+            logger.info("Compression statistics:\n" + stats);
+        }
+        deflaterPool.close();
+        logger.info("CompressionFilter destroyed");
+    }
+    
+    int getThreshold() {
+        return threshold;
+    }
+    
+    DeflaterPool getDeflaterPool() {
+        return deflaterPool;
+    }
+    
+    /**
+     * Compression level configured for a Content-Type, or -1 if it should not be compressed.
+     */
+    int levelFor(String contentType) {
+        if (contentType == null) {
+            return -1;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mimeType = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType)
+                .trim().toLowerCase(Locale.ROOT);
+        Integer level = levels.get(mimeType);
+        return level != null ? level : -1;
+    }
+    
+    /**
+     * Picks gzip or deflate from an Accept-Encoding header, honoring q=0 exclusions.
+     * "*" stands for every coding the header does not name, so "gzip;q=0, *"
+     * still allows deflate.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        // null: not named in the header
+        Boolean gzip = null;
+        Boolean deflate = null;
+        boolean wildcard = false;
+        
+        for (String token : acceptEncoding.split(",")) {
+            String coding = token;
+            boolean accepted = true;
+            int semicolon = token.indexOf(';');
+            if (semicolon >= 0) {
+                coding = token.substring(0, semicolon);
+                accepted = !isZeroQuality(token.substring(semicolon + 1));
+            }
+            coding = coding.trim();
+            if ("gzip".equalsIgnoreCase(coding)) {
+                gzip = accepted;
+            } else if ("deflate".equalsIgnoreCase(coding)) {
+                deflate = accepted;
+            } else if ("*".equals(coding)) {
+                wildcard = accepted;
+            }
+        }
+        
+        if (gzip != null ? gzip : wildcard) {
+            return "gzip";
+        }
+        return (deflate != null ? deflate : wildcard) ? "deflate" : null;
+    }
+    
+    private static boolean isZeroQuality(String params) {
+        for (String param : params.split(";")) {
+            String p = param.trim();
+            if (p.startsWith("q=") || p.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(p.substring(2).trim()) <= 0.0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,454 @@
+package com.example.legacy.servlet.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Response wrapper used by CompressionFilter.
+ *
+ * The body is held back until it exceeds the size threshold; small bodies and
+ * content types without a configured level are written through untouched.
+ * Once compressing, every write to this stream results in at most one write
+ * to the container stream, so it also works under non-blocking (WriteListener)
+ * output.
+ */
+class CompressionResponseWrapper extends HttpServletResponseWrapper {
+    
+    private final String encoding;
+    private final CompressionFilter filter;
+    
+    private CompressingOutputStream stream;
+    private PrintWriter writer;
+    private long contentLength = -1;
+    
+    CompressionResponseWrapper(HttpServletResponse response, String encoding, CompressionFilter filter) {
+        super(response);
+        this.encoding = encoding;
+        this.filter = filter;
+    }
+    
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (stream == null) {
+            stream = new CompressingOutputStream();
+        }
+        return stream;
+    }
+    
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            stream = new CompressingOutputStream();
+            writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+    
+    @Override
+    public void setContentLength(int len) {
+        contentLength = len;
+    }
+    
+    @Override
+    public void setContentLengthLong(long len) {
+        contentLength = len;
+    }
+    
+    // Content-Length is held back through every setter: it describes the
+    // uncompressed body and only applies if the response is passed through
+    
+    @Override
+    public void setHeader(String name, String value) {
+        if (isContentLength(name)) {
+            contentLength = Long.parseLong(value.trim());
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+    
+    @Override
+    public void addHeader(String name, String value) {
+        if (isContentLength(name)) {
+            contentLength = Long.parseLong(value.trim());
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+    
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (isContentLength(name)) {
+            contentLength = value;
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+    
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (isContentLength(name)) {
+            contentLength = value;
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+    
+    private static boolean isContentLength(String name) {
+        return "Content-Length".equalsIgnoreCase(name);
+    }
+    
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (stream != null) {
+            stream.flush();
+        } else {
+            super.flushBuffer();
+        }
+    }
+    
+    @Override
+    public void reset() {
+        super.reset();
+        if (stream != null) {
+            stream.discardWritten(false);
+        }
+        contentLength = -1;
+    }
+    
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (stream != null) {
+            stream.discardWritten(true);
+        }
+    }
+    
+    @Override
+    public void sendError(int sc) throws IOException {
+        discard();
+        super.sendError(sc);
+    }
+    
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        discard();
+        super.sendError(sc, msg);
+    }
+    
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        discard();
+        super.sendRedirect(location);
+    }
+    
+    /**
+     * Completes the body: writes held-back bytes or the compressed trailer.
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.close();
+        } else if (stream != null) {
+            stream.close();
+        }
+    }
+    
+    /**
+     * Returns pooled resources without writing anything, e.g. after an async request completed.
+     */
+    void release() {
+        if (stream != null) {
+            stream.releaseDeflater();
+        }
+    }
+    
+    private void discard() {
+        if (stream != null) {
+            stream.releaseDeflater();
+            stream.state = State.CLOSED;
+        }
+    }
+    
+    private enum State { UNDECIDED, PASSTHROUGH, COMPRESSING, CLOSED }
+    
+    private final class CompressingOutputStream extends ServletOutputStream {
+        
+        private State state = State.UNDECIDED;
+        private final byte[] pending = new byte[filter.getThreshold()];
+        private int pendingLength;
+        private final byte[] single = new byte[1];
+        
+        private ServletOutputStream target;
+        private Deflater deflater;
+        private int level;
+        private boolean gzip;
+        private CRC32 crc;
+        private boolean gzipHeaderPending;
+        private byte[] out = new byte[8192];
+        private long bytesIn;
+        private long bytesOut;
+        private long deflateNanos;
+        
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            switch (state) {
+                case UNDECIDED:
+                    if (pendingLength + len <= pending.length) {
+                        System.arraycopy(b, off, pending, pendingLength, len);
+                        pendingLength += len;
+                    } else {
+                        decide(b, off, len);
+                    }
+                    break;
+                case PASSTHROUGH:
+                    target().write(b, off, len);
+                    break;
+                case COMPRESSING:
+                    int n = deflate(b, off, len, Deflater.NO_FLUSH, start());
+                    writeOut(n);
+                    break;
+                default:
+                    throw new IOException("Stream closed");
+            }
+        }
+        
+        /**
+         * Body exceeds the threshold: compress it if the content type allows.
+         */
+        private void decide(byte[] b, int off, int len) throws IOException {
+            int contentLevel = filter.levelFor(getContentType());
+            if (contentLevel < 0 || containsHeader("Content-Encoding")) {
+                state = State.PASSTHROUGH;
+                applyContentLength();
+                // Single write so non-blocking output stays legal
+                byte[] all = new byte[pendingLength + len];
+                System.arraycopy(pending, 0, all, 0, pendingLength);
+                System.arraycopy(b, off, all, pendingLength, len);
+                pendingLength = 0;
+                target().write(all, 0, all.length);
+                return;
+            }
+            
+            state = State.COMPRESSING;
+            level = contentLevel;
+            gzip = "gzip".equals(encoding);
+            deflater = filter.getDeflaterPool().borrow(level, gzip);
+            
+            CompressionResponseWrapper.super.setHeader("Content-Encoding", encoding);
+            addHeader("Vary", "Accept-Encoding");
+            
+            if (gzip) {
+                crc = new CRC32();
+                gzipHeaderPending = true;
+            }
+            int n = deflate(pending, 0, pendingLength, Deflater.NO_FLUSH, start());
+            pendingLength = 0;
+            n = deflate(b, off, len, Deflater.NO_FLUSH, n);
+            writeOut(n);
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            if (state == State.COMPRESSING) {
+                writeOut(deflate(pending, 0, 0, Deflater.SYNC_FLUSH, start()));
+                target().flush();
+            } else if (state == State.PASSTHROUGH) {
+                target().flush();
+            }
+            // Undecided bodies are still below the threshold; keep holding them back
+        }
+        
+        @Override
+        public void close() throws IOException {
+            switch (state) {
+                case UNDECIDED:
+                    state = State.CLOSED;
+                    if (pendingLength > 0) {
+                        CompressionResponseWrapper.super.setContentLength(pendingLength);
+                        target().write(pending, 0, pendingLength);
+                        pendingLength = 0;
+                    } else {
+                        applyContentLength();
+                    }
+                    target().close();
+                    break;
+                case PASSTHROUGH:
+                    state = State.CLOSED;
+                    target().close();
+                    break;
+                case COMPRESSING:
+                    state = State.CLOSED;
+                    try {
+                        int n = start();
+                        deflater.finish();
+                        n = deflate(pending, 0, 0, Deflater.NO_FLUSH, n);
+                        if (gzip) {
+                            n = writeGzipTrailer(n);
+                        }
+                        writeOut(n);
+                        filter.getDeflaterPool().record(level, bytesIn, bytesOut, deflateNanos);
+                    } finally {
+                        releaseDeflater();
+                    }
+                    target().close();
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        @Override
+        public boolean isReady() {
+            return target == null || target.isReady();
+        }
+        
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            try {
+                target().setWriteListener(writeListener);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        /**
+         * The container has dropped everything written so far. After reset()
+         * the headers are gone as well, so the body is undecided again; after
+         * resetBuffer() a compressed body starts over as a new stream under
+         * the Content-Encoding already set.
+         */
+        void discardWritten(boolean headersKept) {
+            pendingLength = 0;
+            if (state == State.COMPRESSING && headersKept) {
+                deflater.reset();
+                if (crc != null) {
+                    crc.reset();
+                    gzipHeaderPending = true;
+                }
+            } else if (state == State.COMPRESSING || state == State.PASSTHROUGH) {
+                releaseDeflater();
+                crc = null;
+                gzipHeaderPending = false;
+                state = State.UNDECIDED;
+            }
+            bytesIn = 0;
+            bytesOut = 0;
+            deflateNanos = 0;
+        }
+        
+        void releaseDeflater() {
+            if (deflater != null) {
+                filter.getDeflaterPool().release(deflater, level, gzip);
+                deflater = null;
+            }
+        }
+        
+        private ServletOutputStream target() throws IOException {
+            if (target == null) {
+                target = getResponse().getOutputStream();
+            }
+            return target;
+        }
+        
+        private void applyContentLength() {
+            if (contentLength >= 0) {
+                CompressionResponseWrapper.super.setContentLengthLong(contentLength);
+            }
+        }
+        
+        /**
+         * Deflates input into {@link #out} starting at {@code offset}, growing it as needed.
+         * After deflater.finish() this drains the remaining compressed output.
+         *
+         * @return new end offset of the data in {@link #out}
+         */
+        private int deflate(byte[] b, int off, int len, int flushMode, int offset) {
+            long start = System.nanoTime();
+            if (len > 0) {
+                deflater.setInput(b, off, len);
+                bytesIn += len;
+                if (crc != null) {
+                    crc.update(b, off, len);
+                }
+            }
+            while (true) {
+                if (offset == out.length) {
+                    byte[] grown = new byte[out.length * 2];
+                    System.arraycopy(out, 0, grown, 0, offset);
+                    out = grown;
+                }
+                int space = out.length - offset;
+                int n = deflater.deflate(out, offset, space, flushMode);
+                offset += n;
+                if (deflater.finished() || (n < space && deflater.needsInput())) {
+                    break;
+                }
+            }
+            deflateNanos += System.nanoTime() - start;
+            return offset;
+        }
+        
+        /**
+         * @return where compressed output starts in {@link #out}: after the
+         *         gzip header if the stream has not written it yet
+         */
+        private int start() {
+            if (!gzipHeaderPending) {
+                return 0;
+            }
+            gzipHeaderPending = false;
+            return writeGzipHeader();
+        }
+        
+        private int writeGzipHeader() {
+            byte[] header = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+            System.arraycopy(header, 0, out, 0, header.length);
+            return header.length;
+        }
+        
+        private int writeGzipTrailer(int offset) {
+            if (out.length - offset < 8) {
+                byte[] grown = new byte[offset + 8];
+                System.arraycopy(out, 0, grown, 0, offset);
+                out = grown;
+            }
+            writeIntLE((int) crc.getValue(), offset);
+            writeIntLE((int) bytesIn, offset + 4);
+            return offset + 8;
+        }
+        
+        private void writeIntLE(int value, int offset) {
+            out[offset] = (byte) value;
+            out[offset + 1] = (byte) (value >> 8);
+            out[offset + 2] = (byte) (value >> 16);
+            out[offset + 3] = (byte) (value >> 24);
+        }
+        
+        private void writeOut(int length) throws IOException {
+            if (length > 0) {
+                target().write(out, 0, length);
+                bytesOut += length;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.legacy.servlet.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * DeflaterPool keeps reset Deflater instances per compression level so
+ * responses don't pay for native zlib state allocation on every request.
+ * Also accumulates bytes in/out and deflate CPU time per level.
+ */
+class DeflaterPool {
+    
+    private static final int LEVELS = 10;
+    
+    private final List<BlockingQueue<Deflater>> gzipPool = new ArrayList<>(LEVELS);
+    private final List<BlockingQueue<Deflater>> zlibPool = new ArrayList<>(LEVELS);
+    
+    private final LongAdder[] bytesIn = new LongAdder[LEVELS];
+    private final LongAdder[] bytesOut = new LongAdder[LEVELS];
+    private final LongAdder[] deflateNanos = new LongAdder[LEVELS];
+    private final LongAdder[] responses = new LongAdder[LEVELS];
+    
+    DeflaterPool(int maxPooledPerLevel) {
+        for (int level = 0; level < LEVELS; level++) {
+            gzipPool.add(new ArrayBlockingQueue<>(maxPooledPerLevel));
+            zlibPool.add(new ArrayBlockingQueue<>(maxPooledPerLevel));
+            bytesIn[level] = new LongAdder();
+            bytesOut[level] = new LongAdder();
+            deflateNanos[level] = new LongAdder();
+            responses[level] = new LongAdder();
+        }
+    }
+    
+    /**
+     * @param gzip true for raw deflate data wrapped in a gzip envelope by the caller,
+     *             false for the zlib stream used by Content-Encoding: deflate
+     */
+    Deflater borrow(int level, boolean gzip) {
+        Deflater deflater = pool(level, gzip).poll();
+        return deflater != null ? deflater : new Deflater(level, gzip);
+    }
+    
+    void release(Deflater deflater, int level, boolean gzip) {
+        deflater.reset();
+        if (!pool(level, gzip).offer(deflater)) {
+            deflater.end();
+        }
+    }
+    
+    void record(int level, long in, long out, long nanos) {
+        bytesIn[level].add(in);
+        bytesOut[level].add(out);
+        deflateNanos[level].add(nanos);
+        responses[level].increment();
+    }
+    
+    /**
+     * One line per level that has been used: responses, bytes in/out, ratio and CPU time.
+     */
+    String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (int level = 0; level < LEVELS; level++) {
+            long count = responses[level].sum();
+            if (count == 0) {
+                continue;
+            }
+            long in = bytesIn[level].sum();
+            long out = bytesOut[level].sum();
+            long millis = deflateNanos[level].sum() / 1000000L;
+            sb.append(String.format("level %d: %d responses, %d bytes -> %d bytes (%.1f%%), %d ms deflating%n",
+                    level, count, in, out, in == 0 ? 100.0 : out * 100.0 / in, millis));
+        }
+        return sb.toString();
+    }
+    
+    void close() {
+        for (int level = 0; level < LEVELS; level++) {
+            drain(gzipPool.get(level));
+            drain(zlibPool.get(level));
+        }
+    }
+    
+    private BlockingQueue<Deflater> pool(int level, boolean gzip) {
+        return gzip ? gzipPool.get(level) : zlibPool.get(level);
+    }
+    
+    private static void drain(BlockingQueue<Deflater> pool) {
+        Deflater deflater;
+        while ((deflater = pool.poll()) != null) {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.legacy.servlet.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled set of URL patterns, built once at filter init.
+ *
+ * Pattern syntax is the one SecurityFilter has always used:
+ * - {@code /css/*} matches any path that starts with {@code /css}
+ *   (a plain string prefix, so {@code /cssx} matches too)
+ * - anything else matches that exact path
+ *
+ * All patterns share one character trie. Each node records whether a
+ * prefix pattern ends there (match as soon as the walk reaches it) and
+ * whether an exact pattern ends there (match only if the path ends there
+ * too), so the exact-match set lives in the same structure. A lookup
+ * walks at most path-length nodes, does not depend on the number of
+ * patterns and allocates nothing; it can start at an offset, so callers
+ * can skip the context path without taking a substring.
+ */
+final class PathPatternMatcher {
+    
+    private final Node root;
+    private final List<String> patterns;
+    
+    private PathPatternMatcher(Node root, List<String> patterns) {
+        this.root = root;
+        this.patterns = patterns;
+    }
+    
+    /**
+     * @param spec comma-separated patterns, e.g. an init-param value; null means none
+     */
+    static PathPatternMatcher compile(String spec) {
+        List<String> patterns = new ArrayList<>();
+        if (spec != null) {
+            for (String pattern : spec.split(",")) {
+                patterns.add(pattern.trim());
+            }
+        }
+        
+        Builder root = new Builder();
+        for (String pattern : patterns) {
+            boolean prefix = pattern.endsWith("/*");
+            String text = prefix ? pattern.substring(0, pattern.length() - 2) : pattern;
+            Builder node = root;
+            for (int i = 0; i < text.length(); i++) {
+                node = node.child(text.charAt(i));
+            }
+            if (prefix) {
+                node.prefixEnd = true;
+            } else {
+                node.exactEnd = true;
+            }
+        }
+        return new PathPatternMatcher(root.freeze(), patterns);
+    }
+    
+    boolean matches(String path) {
+        return matches(path, 0);
+    }
+    
+    /**
+     * Matches {@code path.substring(from)} without creating it.
+     */
+    boolean matches(String path, int from) {
+        Node node = root;
+        int length = path.length();
+        for (int i = from; ; i++) {
+            if (node.prefixEnd) {
+                return true;
+            }
+            if (i == length) {
+                return node.exactEnd;
+            }
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+    
+    boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+    
+    @Override
+    public String toString() {
+        return patterns.toString();
+    }
+    
+    /**
+     * Immutable trie node; children are looked up by binary search over sorted labels.
+     */
+    private static final class Node {
+        private final char[] labels;
+        private final Node[] children;
+        private final boolean prefixEnd;
+        private final boolean exactEnd;
+        
+        Node(char[] labels, Node[] children, boolean prefixEnd, boolean exactEnd) {
+            this.labels = labels;
+            this.children = children;
+            this.prefixEnd = prefixEnd;
+            this.exactEnd = exactEnd;
+        }
+        
+        Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i >= 0 ? children[i] : null;
+        }
+    }
+    
+    private static final class Builder {
+        private final List<Character> labels = new ArrayList<>();
+        private final List<Builder> children = new ArrayList<>();
+        private boolean prefixEnd;
+        private boolean exactEnd;
+        
+        Builder child(char c) {
+            int i = labels.indexOf(c);
+            if (i >= 0) {
+                return children.get(i);
+            }
+            Builder child = new Builder();
+            labels.add(c);
+            children.add(child);
+            return child;
+        }
+        
+        Node freeze() {
+            Integer[] order = new Integer[labels.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Character.compare(labels.get(a), labels.get(b)));
+            
+            char[] sortedLabels = new char[order.length];
+            Node[] frozen = new Node[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedLabels[i] = labels.get(order[i]);
+                frozen[i] = children.get(order[i]).freeze();
+            }
+            return new Node(sortedLabels, frozen, prefixEnd, exactEnd);
+        }
+    }
+}
@@ -1,25 +1,92 @@
 package com.example.legacy.servlet.filter;
 
+import com.example.legacy.servlet.accesslog.AccessLog;
+import com.example.legacy.servlet.accesslog.OverflowPolicy;
+import com.example.legacy.servlet.metrics.MetricsRegistry;
+import com.example.legacy.servlet.metrics.RouteMetrics;
 import org.apache.log4j.Logger;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * RequestLoggingFilter demonstrates:
  * - Traditional servlet filter for cross-cutting concerns
- * - Manual request/response logging
- * - Performance timing
+ * - Manual request/response logging (asynchronous access log)
+ * - Performance timing (including async requests)
+ * - Filter init parameters from web.xml
+ *
+ * Each request becomes one line in the "accesslog" logger, written by the
+ * AccessLog consumer thread; the request thread only fills a ring buffer slot.
+ * Timing (System.nanoTime) also feeds the per-route latency histograms of the
+ * shared MetricsRegistry, and decides what counts as a slow request per route.
  */
 public class RequestLoggingFilter implements Filter {
     
     private static final Logger logger = Logger.getLogger(RequestLoggingFilter.class);
     
+    private static final Logger accessLogger = Logger.getLogger("accesslog");
+    
+    private AccessLog accessLog;
+    
+    // Servlet path -> metrics, fixed at init so the lookup needs no locking
+    private Map<String, RouteMetrics> routes;
+    private RouteMetrics otherRoute;
+    
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
-        logger.info("RequestLoggingFilter initialized");
+        int bufferSize = Integer.parseInt(getParameter(filterConfig, "bufferSize", "8192"));
+        OverflowPolicy policy = OverflowPolicy.valueOf(getParameter(filterConfig, "overflowPolicy", "DROP").toUpperCase(Locale.ROOT));
+        double sampleRate = Double.parseDouble(getParameter(filterConfig, "sampleRate", "1.0"));
+        long slowRequestMillis = Long.parseLong(getParameter(filterConfig, "slowRequestMillis", "1000"));
+        Map<String, Long> routeSlowRequestMillis = new HashMap<>();
+        for (String entry : getParameter(filterConfig, "routeSlowRequestMillis", "").split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            if (equals < 0) {
+                throw new ServletException("Invalid routeSlowRequestMillis entry: " + entry);
+            }
+            routeSlowRequestMillis.put(entry.substring(0, equals).trim(), 
+                                       Long.parseLong(entry.substring(equals + 1).trim()));
+        }
+        
+        accessLog = new AccessLog(accessLogger, bufferSize, policy, sampleRate);
+        
+        ServletContext context = filterConfig.getServletContext();
+        MetricsRegistry registry = (MetricsRegistry) context.getAttribute(MetricsRegistry.CONTEXT_ATTRIBUTE);
+        if (registry == null) {
+            logger.warn("No MetricsRegistry in the context; using a default one");
+            registry = new MetricsRegistry(60, 6);
+            context.setAttribute(MetricsRegistry.CONTEXT_ATTRIBUTE, registry);
+        }
+        registry.setSlowRequestThresholds(slowRequestMillis, routeSlowRequestMillis);
+        
+        // One route per servlet mapping: "/users/*" and "/login" give servlet paths "/users" and "/login"
+        routes = new HashMap<>();
+        for (ServletRegistration servlet : context.getServletRegistrations().values()) {
+            for (String mapping : servlet.getMappings()) {
+                String route = mapping.endsWith("/*") ? mapping.substring(0, mapping.length() - 2) : mapping;
+                if (route.startsWith("/") && route.length() > 1) {
+                    routes.put(route, registry.route(route));
+                }
+            }
+        }
+        otherRoute = registry.route(MetricsRegistry.OTHER_ROUTE);
+        
+        logger.info("RequestLoggingFilter initialized: buffer " + bufferSize + ", overflow " + policy 
+                + ", sample rate " + sampleRate + ", routes " + routes.keySet());
+    }
+    
+    private static String getParameter(FilterConfig config, String name, String defaultValue) {
+        String value = config.getInitParameter(name);
+        return value != null ? value.trim() : defaultValue;
     }
     
     @Override
@@ -29,42 +96,90 @@ public class RequestLoggingFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
         
-        // Log request details
+        // Capture request details; the request may be recycled before an async completion
         String method = httpRequest.getMethod();
         String uri = httpRequest.getRequestURI();
         String queryString = httpRequest.getQueryString();
         String remoteAddr = httpRequest.getRemoteAddr();
         String userAgent = httpRequest.getHeader("User-Agent");
         
-        String fullURL = uri + (queryString != null ? "?" + queryString : "");
-        
-        logger.info(String.format("Incoming request: %s %s from %s", method, fullURL, remoteAddr));
-        logger.debug("User-Agent: " + userAgent);
+        RouteMetrics mapped = routes.get(httpRequest.getServletPath());
+        RouteMetrics route = mapped != null ? mapped : otherRoute;
         
         // Track request timing
-        long startTime = System.currentTimeMillis();
+        long startMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        route.begin();
         
+        boolean failed = false;
         try {
             // Continue filter chain
             chain.doFilter(request, response);
             
+        } catch (IOException | ServletException | RuntimeException | Error e) {
+            failed = true;
+            throw e;
         } finally {
-            // Log response details and timing
-            long duration = System.currentTimeMillis() - startTime;
-            int status = httpResponse.getStatus();
-            
-            logger.info(String.format("Completed: %s %s - Status: %d - Duration: %dms", 
-                                    method, fullURL, status, duration));
-            
-            if (duration > 1000) {
-                logger.warn(String.format("Slow request detected: %s %s took %dms", 
-                                        method, fullURL, duration));
+            if (httpRequest.isAsyncStarted()) {
+                // Async requests (e.g. streaming exports) finish after the chain returns
+                httpRequest.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        logCompletion(route, method, uri, queryString, remoteAddr, userAgent, 
+                                      httpResponse.getStatus(), startMillis, startNanos);
+                    }
+                    
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        logger.warn("Async request timed out: " + method + " " + uri);
+                    }
+                    
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        logger.warn("Async request failed: " + method + " " + uri, event.getThrowable());
+                    }
+                    
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                logCompletion(route, method, uri, queryString, remoteAddr, userAgent, 
+                              failed ? failedStatus(httpResponse) : httpResponse.getStatus(), 
+                              startMillis, startNanos);
             }
         }
     }
     
+    /**
+     * The chain threw, so the container will answer with an error page; the
+     * status the response holds now is still whatever was set before the
+     * failure (usually 200). Only an error status already sent stands.
+     */
+    private static int failedStatus(HttpServletResponse response) {
+        int status = response.getStatus();
+        return response.isCommitted() && status >= 400 ? status : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+    
+    private void logCompletion(RouteMetrics route, String method, String uri, String queryString, 
+                               String remoteAddr, String userAgent, int status, long startMillis, 
+                               long startNanos) {
+        long now = System.nanoTime();
+        long durationNanos = now - startNanos;
+        
+        boolean slow = route.end(status, durationNanos, now);
+        accessLog.record(method, uri, queryString, remoteAddr, userAgent, status, startMillis, durationNanos);
+        
+        // Rare, so it still goes through the application log synchronously
+        if (slow) {
+            logger.warn("Slow request detected: " + method + " " + uri + " took " 
+                        + durationNanos / 1000000L + "ms");
+        }
+    }
+    
     @Override
     public void destroy() {
+        accessLog.close();
         logger.info("RequestLoggingFilter destroyed");
     }
 }
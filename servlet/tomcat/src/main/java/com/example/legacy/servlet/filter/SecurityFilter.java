@@ -1,41 +1,52 @@
 package com.example.legacy.servlet.filter;
 
+import com.example.legacy.servlet.auth.AuthenticatedUser;
+import com.example.legacy.servlet.auth.TokenService;
+import com.example.legacy.servlet.session.SessionAttributeStore;
+import com.example.legacy.servlet.session.SessionRecord;
 import org.apache.log4j.Logger;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * SecurityFilter demonstrates:
  * - Traditional Filter-based security
- * - Session-based authentication checking
- * - Manual URL pattern matching
+ * - Session-based authentication checking, or stateless signed tokens (authMode=TOKEN)
+ * - Session state read through the shared SessionAttributeStore
+ * - The caller's identity handed to servlets as a request attribute
+ * - Manual URL pattern matching (compiled into a trie at init)
  * - Filter init parameters from web.xml
  */
 public class SecurityFilter implements Filter {
     
     private static final Logger logger = Logger.getLogger(SecurityFilter.class);
     
-    private Set<String> excludePatterns = new HashSet<>();
+    private static final String DEFAULT_ADMIN_PATTERNS = "/admin/*";
+    
+    private PathPatternMatcher excludePatterns;
+    private PathPatternMatcher adminPatterns;
+    
+    // Null in session mode
+    private TokenService tokenService;
+    
+    private SessionAttributeStore sessions;
     
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
-        String excludeParam = filterConfig.getInitParameter("excludePatterns");
+        excludePatterns = PathPatternMatcher.compile(filterConfig.getInitParameter("excludePatterns"));
         
-        if (excludeParam != null) {
-            String[] patterns = excludeParam.split(",");
-            for (String pattern : patterns) {
-                excludePatterns.add(pattern.trim());
-            }
-        }
+        String adminParam = filterConfig.getInitParameter("adminPatterns");
+        adminPatterns = PathPatternMatcher.compile(adminParam != null ? adminParam : DEFAULT_ADMIN_PATTERNS);
         
-        logger.info("SecurityFilter initialized with exclude patterns: " + excludePatterns);
+        tokenService = (TokenService) filterConfig.getServletContext().getAttribute(TokenService.CONTEXT_ATTRIBUTE);
+        sessions = SessionAttributeStore.fromContext(filterConfig.getServletContext());
+        
+        logger.info("SecurityFilter initialized with exclude patterns: " + excludePatterns 
+                + ", admin patterns: " + adminPatterns 
+                + ", authentication: " + (tokenService != null ? "token" : "session (" + sessions.describe() + ")"));
     }
     
     @Override
@@ -47,37 +58,49 @@ public class SecurityFilter implements Filter {
         
         String requestURI = httpRequest.getRequestURI();
         String contextPath = httpRequest.getContextPath();
-        String path = requestURI.substring(contextPath.length());
+        // Patterns are matched against the URI past the context path, without copying it
+        int pathStart = contextPath.length();
+        boolean debug = logger.isDebugEnabled();
         
-        logger.debug("SecurityFilter checking: " + path);
+        if (debug) {
+            logger.debug("SecurityFilter checking: " + requestURI.substring(pathStart));
+        }
         
         // Check if path should be excluded from security check
-        if (isExcluded(path)) {
-            logger.debug("Path excluded from security check: " + path);
+        if (excludePatterns.matches(requestURI, pathStart)) {
+            if (debug) {
+                logger.debug("Path excluded from security check: " + requestURI.substring(pathStart));
+            }
             chain.doFilter(request, response);
             return;
         }
         
-        HttpSession session = httpRequest.getSession(false);
+        AuthenticatedUser user = tokenService != null 
+                ? tokenService.authenticate(httpRequest) 
+                : sessionUser(httpRequest);
         
-        if (session == null || session.getAttribute("username") == null) {
-            logger.warn("Unauthorized access attempt to: " + path);
+        if (user == null) {
+            logger.warn("Unauthorized access attempt to: " + requestURI.substring(pathStart));
             
-            // Save original URL for redirect after login
-            httpRequest.getSession(true).setAttribute("originalURL", requestURI);
+            if (tokenService != null && httpRequest.getHeader("Authorization") != null) {
+                // API client with a bad or expired token: a login page is no use to it
+                httpResponse.setHeader("WWW-Authenticate", "Bearer");
+                httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid or expired token");
+                return;
+            }
             
-            // Redirect to login page
+            // Redirect to login page; no session is created, only a successful login creates one
             httpResponse.sendRedirect(contextPath + "/login");
             return;
         }
         
+        httpRequest.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE, user);
+        
         // Check role-based access for admin paths
-        if (path.startsWith("/admin")) {
-            String role = (String) session.getAttribute("role");
-            
-            if (!"admin".equals(role)) {
+        if (adminPatterns.matches(requestURI, pathStart)) {
+            if (!user.isAdmin()) {
                 logger.warn("Forbidden access attempt by user: " + 
-                          session.getAttribute("username") + " to: " + path);
+                          user.getUsername() + " to: " + requestURI.substring(pathStart));
                 httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN, 
                                      "You don't have permission to access this resource");
                 return;
@@ -88,28 +111,24 @@ public class SecurityFilter implements Filter {
         httpResponse.setHeader("X-Frame-Options", "DENY");
         httpResponse.setHeader("X-XSS-Protection", "1; mode=block");
         
-        logger.debug("Access granted to: " + path);
+        if (debug) {
+            logger.debug("Access granted to: " + requestURI.substring(pathStart));
+        }
         
         // Continue filter chain
         chain.doFilter(request, response);
     }
     
+    private AuthenticatedUser sessionUser(HttpServletRequest request) {
+        SessionRecord session = sessions.get(request);
+        if (session == null || !session.isAuthenticated()) {
+            return null;
+        }
+        return new AuthenticatedUser(session.getUsername(), session.getRole(), Long.MAX_VALUE);
+    }
+    
     @Override
     public void destroy() {
         logger.info("SecurityFilter destroyed");
     }
-    
-    private boolean isExcluded(String path) {
-        for (String pattern : excludePatterns) {
-            if (pattern.endsWith("/*")) {
-                String prefix = pattern.substring(0, pattern.length() - 2);
-                if (path.startsWith(prefix)) {
-                    return true;
-                }
-            } else if (pattern.equals(path)) {
-                return true;
-            }
-        }
-        return false;
-    }
 }
@@ -1,5 +1,18 @@
 package com.example.legacy.servlet.listener;
 
+import com.example.legacy.servlet.auth.AuthMode;
+import com.example.legacy.servlet.auth.LoginRateLimiter;
+import com.example.legacy.servlet.auth.TokenService;
+import com.example.legacy.servlet.cache.CacheManager;
+import com.example.legacy.servlet.data.InstrumentedDataSource;
+import com.example.legacy.servlet.data.SchemaBootstrap;
+import com.example.legacy.servlet.metrics.MetricsRegistry;
+import com.example.legacy.servlet.scheduler.TaskScheduler;
+import com.example.legacy.servlet.session.HttpSessionAttributeStore;
+import com.example.legacy.servlet.session.OffHeapSessionStore;
+import com.example.legacy.servlet.session.SessionAttributeStore;
+import com.example.legacy.servlet.session.SessionStoreType;
+import com.example.legacy.servlet.warmup.WarmUp;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
@@ -8,14 +21,25 @@ import javax.naming.InitialContext;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import javax.sql.DataSource;
 import java.io.InputStream;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ApplicationStartupListener demonstrates:
  * - ServletContextListener for application lifecycle events
  * - Application initialization logic
  * - JNDI environment entry lookup
+ * - Single JNDI DataSource resolution, shared as an instrumented context attribute
+ * - One-time database schema bootstrap
+ * - Shared request metrics registry
+ * - Shared bounded application caches, sized from the JNDI maxCacheSize entry
+ * - Shared background task scheduler, drained on shutdown
+ * - Warm-up replay before the node reports ready
+ * - Authentication mode selection (session or signed token) and login throttling
+ * - Session attribute store selection (container HttpSession or off-heap slabs)
  * - Log4j configuration
  * - Startup/shutdown hooks
  */
@@ -66,9 +90,15 @@ public class ApplicationStartupListener implements ServletContextListener {
         }
         
         // Initialize application components
+        // Scheduler first: the cache and the stores hand their background work to it
+        initializeScheduler(context);
+        initializeMetrics(context);
+        initializeAuthentication(context);
+        initializeDatabase(context);
         initializeCache(context);
-        initializeScheduledTasks();
+        initializeScheduledTasks(context);
         loadApplicationConfig();
+        initializeWarmUp(context);
         
         logger.info("Application started successfully");
         logger.info("Context Path: " + context.getContextPath());
@@ -96,9 +126,9 @@ public class ApplicationStartupListener implements ServletContextListener {
         }
         
         // Cleanup resources
-        cleanupCache();
-        shutdownScheduledTasks();
-        closeConnections();
+        shutdownScheduledTasks(context);
+        cleanupCache(context);
+        closeConnections(context);
         
         logger.info("Application shutdown complete");
     }
@@ -120,6 +150,110 @@ public class ApplicationStartupListener implements ServletContextListener {
         }
     }
     
+    /**
+     * Create the registry RequestLoggingFilter records into and MetricsServlet reports from
+     */
+    private void initializeMetrics(ServletContext context) {
+        String windowParam = context.getInitParameter("metricsWindowSeconds");
+        String slotsParam = context.getInitParameter("metricsWindowSlots");
+        int windowSeconds = windowParam != null ? Integer.parseInt(windowParam.trim()) : 60;
+        int slots = slotsParam != null ? Integer.parseInt(slotsParam.trim()) : 6;
+        
+        context.setAttribute(MetricsRegistry.CONTEXT_ATTRIBUTE, new MetricsRegistry(windowSeconds, slots));
+        logger.info("Request metrics over a " + windowSeconds + "s window in " + slots + " slots");
+    }
+    
+    /**
+     * In token mode, create the TokenService that LoginServlet issues with and
+     * SecurityFilter verifies with; its absence means session mode, which keeps
+     * its state in the selected SessionAttributeStore
+     */
+    private void initializeAuthentication(ServletContext context) {
+        String modeParam = context.getInitParameter("authMode");
+        AuthMode mode = modeParam != null 
+                ? AuthMode.valueOf(modeParam.trim().toUpperCase(Locale.ROOT)) 
+                : AuthMode.SESSION;
+        
+        if (mode == AuthMode.TOKEN) {
+            TokenService tokenService = TokenService.fromContext(context);
+            context.setAttribute(TokenService.CONTEXT_ATTRIBUTE, tokenService);
+            logger.info("Authentication: signed tokens, TTL " + tokenService.getTtlSeconds() + "s");
+        } else {
+            SessionAttributeStore sessions = createSessionStore(context);
+            context.setAttribute(SessionAttributeStore.CONTEXT_ATTRIBUTE, sessions);
+            logger.info("Authentication: sessions in " + sessions.describe());
+        }
+        
+        context.setAttribute(LoginRateLimiter.CONTEXT_ATTRIBUTE, LoginRateLimiter.fromContext(context));
+    }
+    
+    private SessionAttributeStore createSessionStore(ServletContext context) {
+        String storeParam = context.getInitParameter("sessionStore");
+        SessionStoreType type = storeParam != null 
+                ? SessionStoreType.valueOf(storeParam.trim().toUpperCase(Locale.ROOT)) 
+                : SessionStoreType.CONTAINER;
+        if (type == SessionStoreType.OFF_HEAP) {
+            return OffHeapSessionStore.fromContext(context);
+        }
+        String timeoutParam = context.getInitParameter("sessionTimeoutSeconds");
+        return new HttpSessionAttributeStore(timeoutParam != null 
+                ? Integer.parseInt(timeoutParam.trim()) 
+                : SessionAttributeStore.DEFAULT_TIMEOUT_SECONDS);
+    }
+    
+    /**
+     * Resolve the pooled DataSource once for the whole application and run
+     * the versioned schema bootstrap so request paths can skip it
+     */
+    private void initializeDatabase(ServletContext context) {
+        try {
+            Context initContext = new InitialContext();
+            DataSource jndiDataSource = (DataSource) initContext.lookup("java:comp/env/jdbc/LegacyDB");
+            
+            String slowBorrowParam = context.getInitParameter("dbSlowBorrowMillis");
+            long slowBorrowMillis = slowBorrowParam != null ? Long.parseLong(slowBorrowParam.trim()) : 50L;
+            
+            InstrumentedDataSource dataSource = new InstrumentedDataSource(jndiDataSource, slowBorrowMillis);
+            context.setAttribute(InstrumentedDataSource.CONTEXT_ATTRIBUTE, dataSource);
+            logger.info("DataSource jdbc/LegacyDB resolved (pool maxTotal " + dataSource.getPoolMaxTotal() + 
+                       ", slow borrow threshold " + slowBorrowMillis + "ms)");
+            
+            warmUpPool(context, dataSource);
+            
+            SchemaBootstrap bootstrap = new SchemaBootstrap(dataSource);
+            context.setAttribute(SchemaBootstrap.CONTEXT_ATTRIBUTE, bootstrap);
+            bootstrap.run();
+            
+            context.setAttribute("schemaBootstrapMillis", bootstrap.getBootstrapMillis());
+            logger.info("Database schema ready (version " + bootstrap.getSchemaVersion() + 
+                       ", bootstrap took " + bootstrap.getBootstrapMillis() + "ms)");
+            
+        } catch (Exception e) {
+            logger.error("Database schema bootstrap failed; export requests will retry it", e);
+        }
+    }
+    
+    /**
+     * Open the pool's minimum idle connections before the first request needs
+     * them and measure what an isValid() check costs
+     */
+    private void warmUpPool(ServletContext context, InstrumentedDataSource dataSource) {
+        String warmupParam = context.getInitParameter("dbWarmupConnections");
+        int connections = warmupParam != null 
+                ? Integer.parseInt(warmupParam.trim()) 
+                : Math.max(dataSource.getPoolMinIdle(), 0);
+        int timeoutSeconds = dataSource.getPoolValidationTimeout() > 0 ? dataSource.getPoolValidationTimeout() : 2;
+        
+        long start = System.nanoTime();
+        int valid = dataSource.warmUp(connections, timeoutSeconds);
+        long millis = (System.nanoTime() - start) / 1000000L;
+        
+        logger.info(String.format("Connection pool warmed: %d/%d connections valid in %d ms, " 
+                + "isValid() avg %.1f us, max %.1f us, %d idle", 
+                valid, connections, millis, dataSource.getAverageValidationMicros(), 
+                dataSource.getMaxValidationMicros(), dataSource.getPoolIdle()));
+    }
+    
     /**
      * Initialize application cache
      */
@@ -130,15 +264,47 @@ public class ApplicationStartupListener implements ServletContextListener {
         }
         
         logger.info("Initializing cache with max size: " + maxCacheSize);
-        // Cache initialization would go here
+        // Servlets create their named caches from it in init()
+        TaskScheduler scheduler = (TaskScheduler) context.getAttribute(TaskScheduler.CONTEXT_ATTRIBUTE);
+        context.setAttribute(CacheManager.CONTEXT_ATTRIBUTE, new CacheManager(maxCacheSize, scheduler));
+    }
+    
+    /**
+     * Start the scheduler that background tasks, cache refreshes and store
+     * compaction checks share
+     */
+    private void initializeScheduler(ServletContext context) {
+        String threadsParam = context.getInitParameter("schedulerThreads");
+        String tickParam = context.getInitParameter("schedulerTickMillis");
+        int threads = threadsParam != null ? Integer.parseInt(threadsParam.trim()) : 2;
+        int tickMillis = tickParam != null ? Integer.parseInt(tickParam.trim()) : 100;
+        
+        context.setAttribute(TaskScheduler.CONTEXT_ATTRIBUTE, new TaskScheduler(threads, tickMillis, 512, 1000));
+        logger.info("Task scheduler started: " + threads + " workers, " + tickMillis + "ms tick");
     }
     
     /**
-     * Initialize scheduled tasks
+     * Register the application's periodic housekeeping. Request metrics need
+     * none: their windows rotate when recorded or read.
      */
-    private void initializeScheduledTasks() {
+    private void initializeScheduledTasks(ServletContext context) {
         logger.info("Initializing scheduled tasks");
-        // Would typically use Timer or ScheduledExecutorService
+        TaskScheduler scheduler = (TaskScheduler) context.getAttribute(TaskScheduler.CONTEXT_ATTRIBUTE);
+        
+        final CacheManager caches = (CacheManager) context.getAttribute(CacheManager.CONTEXT_ATTRIBUTE);
+        scheduler.scheduleWithJitter("cache-cleanup", caches::cleanUp, 30, 30, 5, TimeUnit.SECONDS);
+        
+        final LoginRateLimiter rateLimiter = (LoginRateLimiter) context.getAttribute(LoginRateLimiter.CONTEXT_ATTRIBUTE);
+        scheduler.scheduleWithJitter("login-limiter-sweep", 
+                () -> rateLimiter.sweep(System.currentTimeMillis()), 10, 10, 2, TimeUnit.SECONDS);
+        
+        // Lookups and inserts only expire what they touch; this catches abandoned sessions
+        final SessionAttributeStore sessions = (SessionAttributeStore) context
+                .getAttribute(SessionAttributeStore.CONTEXT_ATTRIBUTE);
+        if (sessions instanceof OffHeapSessionStore) {
+            scheduler.scheduleWithJitter("session-sweep", 
+                    () -> sessions.sweep(System.currentTimeMillis()), 60, 60, 10, TimeUnit.SECONDS);
+        }
     }
     
     /**
@@ -149,18 +315,81 @@ public class ApplicationStartupListener implements ServletContextListener {
         // Load config from properties files, database, etc.
     }
     
+    /**
+     * Replay a request mix against this node once the connector is open, so
+     * JSPs, caches and hot paths are warm before /ready answers 200
+     */
+    private void initializeWarmUp(ServletContext context) {
+        TaskScheduler scheduler = (TaskScheduler) context.getAttribute(TaskScheduler.CONTEXT_ATTRIBUTE);
+        MetricsRegistry registry = (MetricsRegistry) context.getAttribute(MetricsRegistry.CONTEXT_ATTRIBUTE);
+        
+        WarmUp warmUp = WarmUp.fromContext(context, scheduler, registry);
+        if (warmUp == null) {
+            logger.info("Warm-up disabled; ready immediately");
+            return;
+        }
+        context.setAttribute(WarmUp.CONTEXT_ATTRIBUTE, warmUp);
+        warmUp.start();
+        logger.info("Warm-up started; /ready answers 503 until it finishes");
+    }
+    
     /**
      * Cleanup methods
      */
-    private void cleanupCache() {
+    private void cleanupCache(ServletContext context) {
         logger.info("Cleaning up cache");
+        
+        CacheManager caches = (CacheManager) context.getAttribute(CacheManager.CONTEXT_ATTRIBUTE);
+        if (caches != null) {
+            caches.close();
+            context.removeAttribute(CacheManager.CONTEXT_ATTRIBUTE);
+        }
     }
     
-    private void shutdownScheduledTasks() {
+    /**
+     * Cancel every task and wait for running ones, so a redeploy leaves no threads behind
+     */
+    private void shutdownScheduledTasks(ServletContext context) {
         logger.info("Shutting down scheduled tasks");
+        
+        WarmUp warmUp = (WarmUp) context.getAttribute(WarmUp.CONTEXT_ATTRIBUTE);
+        if (warmUp != null) {
+            warmUp.stop();
+            context.removeAttribute(WarmUp.CONTEXT_ATTRIBUTE);
+        }
+        
+        TaskScheduler scheduler = (TaskScheduler) context.getAttribute(TaskScheduler.CONTEXT_ATTRIBUTE);
+        if (scheduler != null) {
+            logger.info("Scheduled task statistics: " + scheduler.describe());
+            if (scheduler.close(10, TimeUnit.SECONDS)) {
+                logger.info("Task scheduler drained");
+            }
+            context.removeAttribute(TaskScheduler.CONTEXT_ATTRIBUTE);
+        }
     }
     
-    private void closeConnections() {
+    private void closeConnections(ServletContext context) {
         logger.info("Closing database connections and other resources");
+        
+        LoginRateLimiter rateLimiter = (LoginRateLimiter) context.getAttribute(LoginRateLimiter.CONTEXT_ATTRIBUTE);
+        if (rateLimiter != null) {
+            logger.info("Login rate limiter statistics: " + rateLimiter.describe());
+        }
+        
+        // Off-heap slabs are released with the store once nothing references it
+        SessionAttributeStore sessions = (SessionAttributeStore) context
+                .getAttribute(SessionAttributeStore.CONTEXT_ATTRIBUTE);
+        if (sessions != null) {
+            logger.info("Session store statistics: " + sessions.describe());
+            context.removeAttribute(SessionAttributeStore.CONTEXT_ATTRIBUTE);
+        }
+        
+        // The pool itself belongs to the container; just report how it was used
+        InstrumentedDataSource dataSource = (InstrumentedDataSource) context
+                .getAttribute(InstrumentedDataSource.CONTEXT_ATTRIBUTE);
+        if (dataSource != null) {
+            logger.info("Connection pool statistics: " + dataSource.describe());
+            context.removeAttribute(InstrumentedDataSource.CONTEXT_ATTRIBUTE);
+        }
     }
 }
@@ -0,0 +1,96 @@
+package com.example.legacy.servlet.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in nanoseconds.
+ *
+ * Values below 2^(SUB_BITS+1) get one bucket each; above that every power
+ * of two is split into 2^SUB_BITS equal buckets, so any recorded value is
+ * reported within 1/32 (about 3%) of its true value, from nanoseconds up to
+ * the 137 s ceiling, using a fixed 1056 counters. Recording is an index
+ * computation and one atomic increment; larger values are clamped.
+ */
+final class LatencyHistogram {
+    
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+    private static final int MAX_BITS = 37;
+    
+    static final long MAX_TRACKABLE = (1L << MAX_BITS) - 1;
+    static final int BUCKETS = LINEAR_BUCKETS + (MAX_BITS - SUB_BITS - 1) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sumNanos = new LongAdder();
+    
+    void record(long nanos) {
+        long value = nanos < 0 ? 0 : Math.min(nanos, MAX_TRACKABLE);
+        counts.incrementAndGet(index(value));
+        sumNanos.add(value);
+    }
+    
+    /**
+     * Adds this histogram's counts into {@code target}.
+     *
+     * @return the sum of the recorded values
+     */
+    long addTo(long[] target) {
+        for (int i = 0; i < BUCKETS; i++) {
+            target[i] += counts.get(i);
+        }
+        return sumNanos.sum();
+    }
+    
+    /**
+     * Not atomic with respect to concurrent recording; values recorded
+     * during a reset may or may not survive it.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+        sumNanos.reset();
+    }
+    
+    static int index(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + sub;
+    }
+    
+    /**
+     * Largest value that falls into the bucket, i.e. values are reported rounded up.
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+    
+    /**
+     * @param quantile 0..1
+     * @return the value at the quantile, or 0 if nothing was recorded
+     */
+    static long valueAtQuantile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(counts.length - 1);
+    }
+}
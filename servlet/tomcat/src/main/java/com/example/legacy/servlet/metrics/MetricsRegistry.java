@@ -0,0 +1,222 @@
+package com.example.legacy.servlet.metrics;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MetricsRegistry holds the request metrics for the application:
+ * - One RouteMetrics per route (servlet mapping), created on first use and
+ *   capped so unexpected paths can't grow it without bound
+ * - Latency percentiles and throughput per route and status class over a
+ *   rolling window; request counts and latency sums since startup
+ * - Per-route slow-request thresholds
+ *
+ * Shared through the ServletContext attribute {@link #CONTEXT_ATTRIBUTE};
+ * RequestLoggingFilter records into it and MetricsServlet renders it.
+ */
+public class MetricsRegistry {
+    
+    public static final String CONTEXT_ATTRIBUTE = "metricsRegistry";
+    
+    /**
+     * Route used for paths that don't belong to a known servlet mapping.
+     */
+    public static final String OTHER_ROUTE = "other";
+    
+    private static final int MAX_ROUTES = 100;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99", "0.999"};
+    
+    private final long origin = System.nanoTime();
+    private final long windowNanos;
+    private final long slotNanos;
+    private final int slotCount;
+    private final ConcurrentHashMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    
+    private volatile long defaultSlowNanos = 1000L * 1000000L;
+    private volatile Map<String, Long> routeSlowNanos = Collections.emptyMap();
+    
+    /**
+     * @param windowSeconds length of the rolling window
+     * @param slotCount number of steps the window slides in
+     */
+    public MetricsRegistry(int windowSeconds, int slotCount) {
+        if (windowSeconds < 1 || slotCount < 1) {
+            throw new IllegalArgumentException("Window seconds and slots must be positive");
+        }
+        this.windowNanos = windowSeconds * 1000000000L;
+        this.slotCount = slotCount;
+        this.slotNanos = windowNanos / slotCount;
+    }
+    
+    /**
+     * Sets the slow-request thresholds for routes created from now on.
+     *
+     * @param perRouteMillis thresholds for individual routes, overriding the default
+     */
+    public void setSlowRequestThresholds(long defaultMillis, Map<String, Long> perRouteMillis) {
+        Map<String, Long> nanos = new HashMap<>();
+        for (Map.Entry<String, Long> entry : perRouteMillis.entrySet()) {
+            nanos.put(entry.getKey(), entry.getValue() * 1000000L);
+        }
+        routeSlowNanos = nanos;
+        defaultSlowNanos = defaultMillis * 1000000L;
+    }
+    
+    public RouteMetrics route(String route) {
+        RouteMetrics metrics = routes.get(route);
+        if (metrics != null) {
+            return metrics;
+        }
+        String name = routes.size() < MAX_ROUTES ? route : OTHER_ROUTE;
+        return routes.computeIfAbsent(name, r -> {
+            Long slow = routeSlowNanos.get(r);
+            return new RouteMetrics(r, slow != null ? slow : defaultSlowNanos, origin, slotNanos, slotCount);
+        });
+    }
+    
+    public long getWindowSeconds() {
+        return windowNanos / 1000000000L;
+    }
+    
+    /**
+     * Latency at {@code quantile} over the window, across every route and status class.
+     *
+     * @return nanoseconds, or 0 if nothing was recorded
+     */
+    public long windowQuantileNanos(double quantile) {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        return LatencyHistogram.valueAtQuantile(counts, windowCounts(counts), quantile);
+    }
+    
+    /**
+     * Requests completed within the window, across every route.
+     */
+    public long windowCount() {
+        return windowCounts(new long[LatencyHistogram.BUCKETS]);
+    }
+    
+    private long windowCounts(long[] counts) {
+        long now = System.nanoTime();
+        for (RouteMetrics route : routes.values()) {
+            for (int c = 0; c < RouteMetrics.STATUS_CLASSES.length; c++) {
+                WindowedHistogram histogram = route.getLatency(c);
+                if (histogram != null) {
+                    histogram.addTo(counts, now);
+                }
+            }
+        }
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+    
+    /**
+     * Writes all metrics in the Prometheus text exposition format (version 0.0.4).
+     * Lines end with a bare newline, as the format requires on every platform.
+     */
+    public void writeText(PrintWriter out) {
+        long now = System.nanoTime();
+        // Until the first window has passed, rates are over the time since startup
+        double windowSeconds = Math.max(1L, Math.min(now - origin, windowNanos)) / 1e9;
+        
+        List<RouteMetrics> sorted = new ArrayList<>(routes.values());
+        sorted.sort((a, b) -> a.getRoute().compareTo(b.getRoute()));
+        
+        line(out, "# HELP http_server_requests_in_flight Requests currently being processed.");
+        line(out, "# TYPE http_server_requests_in_flight gauge");
+        for (RouteMetrics route : sorted) {
+            line(out, "http_server_requests_in_flight{route=\"" + escape(route.getRoute()) + "\"} " 
+                    + route.getInFlight());
+        }
+        
+        line(out, "# HELP http_server_requests_total Completed requests since startup.");
+        line(out, "# TYPE http_server_requests_total counter");
+        for (RouteMetrics route : sorted) {
+            for (int c = 0; c < RouteMetrics.STATUS_CLASSES.length; c++) {
+                long completed = route.getCompleted(c);
+                if (completed > 0) {
+                    line(out, "http_server_requests_total" + labels(route, c) + " " + completed);
+                }
+            }
+        }
+        
+        line(out, "# HELP http_server_slow_requests_total Requests slower than the route's threshold since startup.");
+        line(out, "# TYPE http_server_slow_requests_total counter");
+        for (RouteMetrics route : sorted) {
+            line(out, "http_server_slow_requests_total{route=\"" + escape(route.getRoute()) + "\"} " 
+                    + route.getSlowCount());
+        }
+        
+        line(out, "# HELP http_server_slow_request_threshold_seconds Slow-request threshold per route.");
+        line(out, "# TYPE http_server_slow_request_threshold_seconds gauge");
+        for (RouteMetrics route : sorted) {
+            line(out, "http_server_slow_request_threshold_seconds{route=\"" + escape(route.getRoute()) + "\"} " 
+                    + seconds(route.getSlowThresholdNanos()));
+        }
+        
+        // Prometheus summary semantics: _sum and _count are cumulative counters
+        // that never go down; only the quantiles cover the rolling window
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        StringBuilder throughput = new StringBuilder();
+        line(out, "# HELP http_server_request_duration_seconds Request latency; quantiles over the last " 
+                + getWindowSeconds() + "s, sum and count since startup.");
+        line(out, "# TYPE http_server_request_duration_seconds summary");
+        for (RouteMetrics route : sorted) {
+            for (int c = 0; c < RouteMetrics.STATUS_CLASSES.length; c++) {
+                WindowedHistogram histogram = route.getLatency(c);
+                if (histogram == null) {
+                    continue;
+                }
+                Arrays.fill(counts, 0L);
+                histogram.addTo(counts, now);
+                long windowTotal = 0;
+                for (long count : counts) {
+                    windowTotal += count;
+                }
+                String labels = labels(route, c);
+                String quantilePrefix = labels.substring(0, labels.length() - 1) + ",quantile=\"";
+                for (int q = 0; q < QUANTILES.length; q++) {
+                    line(out, "http_server_request_duration_seconds" + quantilePrefix + QUANTILE_LABELS[q] + "\"} " 
+                            + (windowTotal == 0 ? "NaN" 
+                                    : seconds(LatencyHistogram.valueAtQuantile(counts, windowTotal, QUANTILES[q]))));
+                }
+                line(out, "http_server_request_duration_seconds_sum" + labels + " " + seconds(route.getTotalNanos(c)));
+                line(out, "http_server_request_duration_seconds_count" + labels + " " + route.getCompleted(c));
+                throughput.append("http_server_requests_per_second").append(labels).append(' ')
+                        .append(String.format(Locale.ROOT, "%.3f", windowTotal / windowSeconds)).append('\n');
+            }
+        }
+        
+        line(out, "# HELP http_server_requests_per_second Throughput over the last " + getWindowSeconds() + "s.");
+        line(out, "# TYPE http_server_requests_per_second gauge");
+        out.print(throughput);
+        out.flush();
+    }
+    
+    private static void line(PrintWriter out, String text) {
+        out.print(text);
+        out.print('\n');
+    }
+    
+    private static String labels(RouteMetrics route, int statusClass) {
+        return "{route=\"" + escape(route.getRoute()) + "\",status=\"" + RouteMetrics.STATUS_CLASSES[statusClass] + "\"}";
+    }
+    
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+    
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
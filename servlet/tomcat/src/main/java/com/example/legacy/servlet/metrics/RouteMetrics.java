@@ -0,0 +1,112 @@
+package com.example.legacy.servlet.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency windows for one route, split by status class.
+ * Histograms for a status class are only allocated once a response of
+ * that class has been seen.
+ */
+public final class RouteMetrics {
+    
+    static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+    
+    private final String route;
+    private final long slowThresholdNanos;
+    private final long origin;
+    private final long slotNanos;
+    private final int slotCount;
+    
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder slow = new LongAdder();
+    private final LongAdder[] completed = new LongAdder[STATUS_CLASSES.length];
+    private final LongAdder[] totalNanos = new LongAdder[STATUS_CLASSES.length];
+    private final AtomicReferenceArray<WindowedHistogram> latency = 
+            new AtomicReferenceArray<>(STATUS_CLASSES.length);
+    
+    RouteMetrics(String route, long slowThresholdNanos, long origin, long slotNanos, int slotCount) {
+        this.route = route;
+        this.slowThresholdNanos = slowThresholdNanos;
+        this.origin = origin;
+        this.slotNanos = slotNanos;
+        this.slotCount = slotCount;
+        for (int i = 0; i < completed.length; i++) {
+            completed[i] = new LongAdder();
+            totalNanos[i] = new LongAdder();
+        }
+    }
+    
+    public String getRoute() {
+        return route;
+    }
+    
+    public long getSlowThresholdNanos() {
+        return slowThresholdNanos;
+    }
+    
+    /**
+     * A request for this route has started.
+     */
+    public void begin() {
+        inFlight.increment();
+    }
+    
+    /**
+     * A request that called {@link #begin()} has completed.
+     *
+     * @return true if it took longer than the route's slow-request threshold
+     */
+    public boolean end(int status, long durationNanos, long nowNanos) {
+        inFlight.decrement();
+        int statusClass = statusClass(status);
+        completed[statusClass].increment();
+        totalNanos[statusClass].add(Math.max(0L, durationNanos));
+        histogram(statusClass).record(durationNanos, nowNanos);
+        if (durationNanos > slowThresholdNanos) {
+            slow.increment();
+            return true;
+        }
+        return false;
+    }
+    
+    long getInFlight() {
+        return inFlight.sum();
+    }
+    
+    long getSlowCount() {
+        return slow.sum();
+    }
+    
+    long getCompleted(int statusClass) {
+        return completed[statusClass].sum();
+    }
+    
+    /**
+     * Total duration of the completed requests of this class since startup.
+     */
+    long getTotalNanos(int statusClass) {
+        return totalNanos[statusClass].sum();
+    }
+    
+    /**
+     * @return null if no response of this class has been recorded
+     */
+    WindowedHistogram getLatency(int statusClass) {
+        return latency.get(statusClass);
+    }
+    
+    private WindowedHistogram histogram(int statusClass) {
+        WindowedHistogram histogram = latency.get(statusClass);
+        if (histogram == null) {
+            latency.compareAndSet(statusClass, null, new WindowedHistogram(origin, slotNanos, slotCount));
+            histogram = latency.get(statusClass);
+        }
+        return histogram;
+    }
+    
+    private static int statusClass(int status) {
+        int statusClass = status / 100 - 1;
+        return statusClass < 0 || statusClass >= STATUS_CLASSES.length ? STATUS_CLASSES.length - 1 : statusClass;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.legacy.servlet.metrics;
+
+/**
+ * Latency histogram over a rolling time window.
+ *
+ * The window is split into slots, each a LatencyHistogram for one fixed
+ * interval. A recording goes into the slot of the current interval; the
+ * first recording of a new interval clears the slot it reuses (the only
+ * place a lock is taken, once per slot per interval). A snapshot merges the
+ * slots that still fall inside the window, so the window slides in steps
+ * of one slot. Counts recorded at the exact moment a slot is recycled may
+ * land in either interval.
+ */
+final class WindowedHistogram {
+    
+    private final long origin;
+    private final long slotNanos;
+    private final Slot[] slots;
+    
+    WindowedHistogram(long origin, long slotNanos, int slotCount) {
+        this.origin = origin;
+        this.slotNanos = slotNanos;
+        this.slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Slot();
+        }
+    }
+    
+    void record(long durationNanos, long nowNanos) {
+        long epoch = (nowNanos - origin) / slotNanos;
+        Slot slot = slots[(int) (epoch % slots.length)];
+        if (slot.epoch != epoch) {
+            slot.advance(epoch);
+        }
+        slot.histogram.record(durationNanos);
+    }
+    
+    /**
+     * Merges the slots inside the window ending at {@code nowNanos} into {@code counts}.
+     *
+     * @return the sum of the merged values
+     */
+    long addTo(long[] counts, long nowNanos) {
+        long epoch = (nowNanos - origin) / slotNanos;
+        long sum = 0;
+        for (Slot slot : slots) {
+            long age = epoch - slot.epoch;
+            if (age >= 0 && age < slots.length) {
+                sum += slot.histogram.addTo(counts);
+            }
+        }
+        return sum;
+    }
+    
+    private static final class Slot {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private volatile long epoch = -1;
+        
+        synchronized void advance(long newEpoch) {
+            if (epoch < newEpoch) {
+                histogram.reset();
+                epoch = newEpoch;
+            }
+        }
+    }
+}
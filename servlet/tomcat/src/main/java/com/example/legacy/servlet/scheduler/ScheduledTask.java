@@ -0,0 +1,163 @@
+package com.example.legacy.servlet.scheduler;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A task registered with the TaskScheduler: its schedule, its place in the
+ * timing wheel and its run statistics.
+ *
+ * A run that is still going when the next one is due is not started again
+ * (the due run is counted as skipped); the schedule itself is not shifted,
+ * so a fixed-rate task stays on its grid after an overrun.
+ *
+ * Because runs never overlap, the run statistics have a single writer at a
+ * time and are plain volatile fields; skips are only counted by the tick
+ * thread. Thousands of one-shot timers stay cheap to create.
+ */
+public final class ScheduledTask {
+    
+    private static final Logger logger = Logger.getLogger(ScheduledTask.class);
+    
+    private final String name;
+    private final Runnable task;
+    private final long periodNanos;
+    private final long jitterNanos;
+    
+    // Timing wheel state, owned by the tick thread
+    long baseDeadline;
+    long deadline;
+    long remainingRounds;
+    
+    private static final AtomicIntegerFieldUpdater<ScheduledTask> RUNNING =
+            AtomicIntegerFieldUpdater.newUpdater(ScheduledTask.class, "running");
+    
+    private volatile boolean cancelled;
+    private volatile int running;
+    
+    private volatile long runs;
+    private volatile long failures;
+    private volatile long skipped;
+    private volatile long totalNanos;
+    private volatile long maxNanos;
+    private volatile long lastNanos;
+    private volatile long lastStartMillis;
+    
+    ScheduledTask(String name, Runnable task, long firstDeadline, long periodNanos, long jitterNanos) {
+        this.name = name;
+        this.task = task;
+        this.periodNanos = periodNanos;
+        this.jitterNanos = jitterNanos;
+        this.baseDeadline = firstDeadline;
+        this.deadline = firstDeadline + jitter();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public boolean isPeriodic() {
+        return periodNanos > 0;
+    }
+    
+    /**
+     * Stops future runs; a run already in progress finishes.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public boolean isRunning() {
+        return running != 0;
+    }
+    
+    public long getRunCount() {
+        return runs;
+    }
+    
+    public long getFailureCount() {
+        return failures;
+    }
+    
+    /**
+     * Runs not started because the previous one was still going or the workers were saturated.
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+    
+    public long getTotalRunNanos() {
+        return totalNanos;
+    }
+    
+    public long getMaxRunNanos() {
+        return maxNanos;
+    }
+    
+    public long getLastRunNanos() {
+        return lastNanos;
+    }
+    
+    public long getLastStartMillis() {
+        return lastStartMillis;
+    }
+    
+    /**
+     * Claims the task for one run.
+     *
+     * @return false (and counts a skip) if the previous run has not finished
+     */
+    boolean tryStart() {
+        if (RUNNING.compareAndSet(this, 0, 1)) {
+            return true;
+        }
+        skipped++;
+        return false;
+    }
+    
+    /**
+     * The workers refused the run it claimed.
+     */
+    void abandon() {
+        skipped++;
+        running = 0;
+    }
+    
+    void run() {
+        lastStartMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } catch (Throwable t) {
+            failures++;
+            logger.error("Scheduled task " + name + " failed", t);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            runs++;
+            totalNanos += elapsed;
+            lastNanos = elapsed;
+            if (elapsed > maxNanos) {
+                maxNanos = elapsed;
+            }
+            running = 0;
+        }
+    }
+    
+    /**
+     * Moves to the next slot of a fixed-rate grid, plus fresh jitter.
+     */
+    void advance() {
+        baseDeadline += periodNanos;
+        deadline = baseDeadline + jitter();
+    }
+    
+    private long jitter() {
+        return jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos + 1) : 0L;
+    }
+}
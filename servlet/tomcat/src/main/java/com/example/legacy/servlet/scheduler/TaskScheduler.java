@@ -0,0 +1,310 @@
+package com.example.legacy.servlet.scheduler;
+
+import com.example.legacy.servlet.util.NamedThreadFactory;
+import org.apache.log4j.Logger;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaskScheduler runs the application's background work:
+ * - Timers live in a hashed timing wheel: scheduling is a queue offer and
+ *   each tick only looks at one bucket, however many timers exist
+ * - One tick thread moves due tasks to a small, bounded worker pool, so a
+ *   slow task delays only itself
+ * - Fixed-rate tasks keep to their grid; jittered tasks add a random delay
+ *   to every run so many nodes (or many tasks) don't fire in lockstep
+ * - A task never overlaps itself: a run due while the last is still going
+ *   is skipped and counted
+ * - Per-task run counts, failures, skips and run times (listed for periodic
+ *   tasks; one-shots are counted on their handle only)
+ * - close() cancels the timers, lets running and queued work drain, and
+ *   stops every thread it started, so a redeploy leaves nothing behind
+ *
+ * It is also an Executor for one-off work (e.g. cache refreshes), which
+ * shares the worker pool and fails with RejectedExecutionException when the
+ * queue is full or the scheduler is closed.
+ */
+public class TaskScheduler implements Executor {
+    
+    private static final Logger logger = Logger.getLogger(TaskScheduler.class);
+    
+    public static final String CONTEXT_ATTRIBUTE = "taskScheduler";
+    
+    private final long tickNanos;
+    private final List<ArrayDeque<ScheduledTask>> wheel;
+    private final int mask;
+    private final long startNanos;
+    
+    private final ConcurrentLinkedQueue<ScheduledTask> pending = new ConcurrentLinkedQueue<>();
+    private final Set<ScheduledTask> tasks = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor workers;
+    private final Thread ticker;
+    
+    private volatile boolean closed;
+    
+    /**
+     * @param tickMillis timer resolution; tasks fire up to one tick late
+     * @param wheelSize buckets in the wheel (rounded up to a power of two)
+     * @param queueCapacity runs and one-off jobs that may wait for a worker
+     */
+    public TaskScheduler(int workerThreads, long tickMillis, int wheelSize, int queueCapacity) {
+        if (workerThreads < 1 || tickMillis < 1 || wheelSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Scheduler settings must be positive");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.wheel = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.add(new ArrayDeque<ScheduledTask>());
+        }
+        this.mask = size - 1;
+        
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory("scheduler-worker"));
+        
+        this.startNanos = System.nanoTime();
+        this.ticker = new NamedThreadFactory("scheduler-tick").newThread(this::runTicks);
+        this.ticker.start();
+    }
+    
+    /**
+     * Runs {@code task} every {@code period}, first after {@code initialDelay}.
+     */
+    public ScheduledTask scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return scheduleWithJitter(name, task, initialDelay, period, 0L, unit);
+    }
+    
+    /**
+     * Like scheduleAtFixedRate, but each run is delayed by a random amount
+     * between 0 and {@code maxJitter}; the average rate is unchanged.
+     */
+    public ScheduledTask scheduleWithJitter(String name, Runnable task, long initialDelay, long period, 
+                                            long maxJitter, TimeUnit unit) {
+        if (period <= 0 || maxJitter < 0 || maxJitter >= period) {
+            throw new IllegalArgumentException("Task " + name + " needs 0 <= jitter < period");
+        }
+        return add(new ScheduledTask(name, task, System.nanoTime() + unit.toNanos(Math.max(0L, initialDelay)),
+                unit.toNanos(period), unit.toNanos(maxJitter)));
+    }
+    
+    public ScheduledTask scheduleOnce(String name, Runnable task, long delay, TimeUnit unit) {
+        return add(new ScheduledTask(name, task, System.nanoTime() + unit.toNanos(Math.max(0L, delay)), 0L, 0L));
+    }
+    
+    private ScheduledTask add(ScheduledTask task) {
+        if (closed) {
+            throw new RejectedExecutionException("Scheduler is closed");
+        }
+        // One-shots are not listed: there can be many, and they are gone once fired
+        if (task.isPeriodic()) {
+            tasks.add(task);
+        }
+        pending.add(task);
+        return task;
+    }
+    
+    @Override
+    public void execute(Runnable command) {
+        if (closed) {
+            throw new RejectedExecutionException("Scheduler is closed");
+        }
+        workers.execute(command);
+    }
+    
+    /**
+     * Periodic tasks not cancelled.
+     */
+    public List<ScheduledTask> getTasks() {
+        return new ArrayList<>(tasks);
+    }
+    
+    private void runTicks() {
+        long tick = 0;
+        while (!closed) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // close() wakes us up
+                    continue;
+                }
+            }
+            transferPending(tick);
+            fireExpired(tick);
+            tick++;
+        }
+    }
+    
+    /**
+     * Places new and rescheduled tasks in the bucket of their deadline tick.
+     */
+    private void transferPending(long tick) {
+        ScheduledTask task;
+        while ((task = pending.poll()) != null) {
+            if (task.isCancelled()) {
+                tasks.remove(task);
+                continue;
+            }
+            long due = Math.max(0L, task.deadline - startNanos);
+            long calculated = (due + tickNanos - 1) / tickNanos - 1;
+            // Already late: the current tick's bucket
+            long target = Math.max(calculated, tick);
+            task.remainingRounds = (target - tick) / wheel.size();
+            wheel.get((int) (target & mask)).add(task);
+        }
+    }
+    
+    private void fireExpired(long tick) {
+        Iterator<ScheduledTask> bucket = wheel.get((int) (tick & mask)).iterator();
+        while (bucket.hasNext()) {
+            ScheduledTask task = bucket.next();
+            if (task.isCancelled()) {
+                bucket.remove();
+                tasks.remove(task);
+            } else if (task.remainingRounds > 0) {
+                task.remainingRounds--;
+            } else {
+                bucket.remove();
+                fire(task);
+            }
+        }
+    }
+    
+    private void fire(final ScheduledTask task) {
+        if (task.tryStart()) {
+            try {
+                workers.execute(task::run);
+            } catch (RejectedExecutionException e) {
+                task.abandon();
+                logger.warn("Scheduler workers saturated; skipped a run of " + task.getName());
+            }
+        }
+        if (task.isPeriodic()) {
+            task.advance();
+            pending.add(task);
+        }
+    }
+    
+    /**
+     * Cancels every timer, waits up to {@code timeout} in total for the tick
+     * thread and for running and queued work to finish, then interrupts what
+     * is left.
+     *
+     * @return true if everything finished within the timeout
+     */
+    public boolean close(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        closed = true;
+        ticker.interrupt();
+        try {
+            TimeUnit.NANOSECONDS.timedJoin(ticker, Math.max(1L, deadline - System.nanoTime()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ScheduledTask task : tasks) {
+            task.cancel();
+        }
+        
+        workers.shutdown();
+        boolean drained = false;
+        try {
+            drained = !ticker.isAlive()
+                    && workers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!drained) {
+            StringBuilder stuck = new StringBuilder();
+            for (ScheduledTask task : tasks) {
+                if (task.isRunning()) {
+                    stuck.append(stuck.length() > 0 ? ", " : "").append(task.getName());
+                }
+            }
+            logger.warn("Scheduler did not drain within " + unit.toMillis(timeout) + "ms; interrupting " 
+                    + (stuck.length() > 0 ? stuck : "queued jobs"));
+            workers.shutdownNow();
+        }
+        tasks.clear();
+        pending.clear();
+        for (ArrayDeque<ScheduledTask> bucket : wheel) {
+            bucket.clear();
+        }
+        return drained;
+    }
+    
+    /**
+     * Writes per-task statistics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public void writeText(PrintWriter out) {
+        List<ScheduledTask> sorted = getTasks();
+        sorted.sort((a, b) -> a.getName().compareTo(b.getName()));
+        
+        line(out, "# HELP scheduler_task_runs_total Completed runs by result.");
+        line(out, "# TYPE scheduler_task_runs_total counter");
+        for (ScheduledTask task : sorted) {
+            long failures = task.getFailureCount();
+            line(out, "scheduler_task_runs_total{task=\"" + task.getName() + "\",result=\"success\"} " 
+                    + (task.getRunCount() - failures));
+            line(out, "scheduler_task_runs_total{task=\"" + task.getName() + "\",result=\"failure\"} " + failures);
+        }
+        
+        line(out, "# HELP scheduler_task_skipped_total Runs not started: previous run still going or workers saturated.");
+        line(out, "# TYPE scheduler_task_skipped_total counter");
+        for (ScheduledTask task : sorted) {
+            line(out, "scheduler_task_skipped_total{task=\"" + task.getName() + "\"} " + task.getSkippedCount());
+        }
+        
+        line(out, "# HELP scheduler_task_duration_seconds Run time: total, slowest and latest.");
+        line(out, "# TYPE scheduler_task_duration_seconds gauge");
+        for (ScheduledTask task : sorted) {
+            line(out, "scheduler_task_duration_seconds{task=\"" + task.getName() + "\",stat=\"total\"} " 
+                    + seconds(task.getTotalRunNanos()));
+            line(out, "scheduler_task_duration_seconds{task=\"" + task.getName() + "\",stat=\"max\"} " 
+                    + seconds(task.getMaxRunNanos()));
+            line(out, "scheduler_task_duration_seconds{task=\"" + task.getName() + "\",stat=\"last\"} " 
+                    + seconds(task.getLastRunNanos()));
+        }
+        
+        line(out, "# HELP scheduler_queued_jobs Runs and jobs waiting for a worker.");
+        line(out, "# TYPE scheduler_queued_jobs gauge");
+        line(out, "scheduler_queued_jobs " + workers.getQueue().size());
+        out.flush();
+    }
+    
+    private static void line(PrintWriter out, String text) {
+        out.print(text);
+        out.print('\n');
+    }
+    
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+    
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        for (ScheduledTask task : getTasks()) {
+            if (text.length() > 0) {
+                text.append("; ");
+            }
+            text.append(task.getName()).append(": ").append(task.getRunCount()).append(" runs, ")
+                    .append(task.getFailureCount()).append(" failed, ").append(task.getSkippedCount())
+                    .append(" skipped, max ").append(task.getMaxRunNanos() / 1000000L).append("ms");
+        }
+        return text.length() > 0 ? text.toString() : "no tasks";
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.legacy.servlet.session;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * The container's HttpSession, with the attributes the application has
+ * always used: username, role and loginTime.
+ */
+public class HttpSessionAttributeStore implements SessionAttributeStore {
+    
+    private final int timeoutSeconds;
+    
+    public HttpSessionAttributeStore(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+    
+    @Override
+    public SessionRecord get(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        Long loginTime = (Long) session.getAttribute("loginTime");
+        return new SessionRecord((String) session.getAttribute("username"), (String) session.getAttribute("role"),
+                loginTime != null ? loginTime : 0L);
+    }
+    
+    @Override
+    public void put(HttpServletRequest request, HttpServletResponse response, SessionRecord record) {
+        HttpSession session = request.getSession(true);
+        if (record.isAuthenticated()) {
+            session.setAttribute("username", record.getUsername());
+            session.setAttribute("role", record.getRole());
+            session.setAttribute("loginTime", record.getLoginTimeMillis());
+            session.setMaxInactiveInterval(timeoutSeconds);
+        } else {
+            session.removeAttribute("username");
+            session.removeAttribute("role");
+            session.removeAttribute("loginTime");
+        }
+    }
+    
+    @Override
+    public void invalidate(HttpServletRequest request, HttpServletResponse response) {
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            session.invalidate();
+        }
+    }
+    
+    @Override
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+    
+    @Override
+    public void sweep(long nowMillis) {
+        // The container expires its own sessions
+    }
+    
+    @Override
+    public String describe() {
+        return "container HttpSession, timeout " + timeoutSeconds + "s";
+    }
+}
@@ -0,0 +1,514 @@
+package com.example.legacy.servlet.session;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session records kept outside the Java heap:
+ * - Each session is one fixed-size slot in direct ByteBuffer slabs: its ID,
+ *   expiry, login time and the UTF-8 encoded attributes. Slabs are allocated
+ *   a few thousand slots at a time as sessions arrive.
+ * - The heap holds only primitive arrays: an open-addressing index from
+ *   session ID to slot (8 to 16 bytes per session) and a free-slot stack.
+ *   A million sessions are a handful of arrays to the garbage collector, not
+ *   millions of session, map and string objects it has to trace and promote.
+ * - Segments chosen by session ID, each with its own lock, slabs and index
+ * - Lazy expiry: a lookup drops the expired session it finds, every insert
+ *   sweeps a few slots behind a clock hand, and sweep() (scheduled) clears
+ *   the rest. When a segment is full of live sessions the one at the hand
+ *   is evicted.
+ * - 128-bit random IDs in the LEGACY_SESSION cookie, replaced on every put,
+ *   so logging in always starts a new session
+ *
+ * Records are decoded on each lookup, a few strings per request in exchange
+ * for long-lived objects. Sessions live in this process only: a restart or
+ * redeploy logs everyone out (the container's manager would have persisted
+ * them), and they are not replicated between nodes.
+ */
+public class OffHeapSessionStore implements SessionAttributeStore {
+    
+    public static final String COOKIE_NAME = "LEGACY_SESSION";
+    
+    private static final int SEGMENTS = 16;
+    private static final int SLOTS_PER_SLAB = 4096;
+    private static final int SWEEP_PER_INSERT = 8;
+    private static final int MIN_SLOT_BYTES = 64;
+    
+    // Slot layout; an expiry of 0 marks a free slot
+    private static final int ID_HIGH = 0;
+    private static final int ID_LOW = 8;
+    private static final int EXPIRES_AT = 16;
+    private static final int LOGIN_TIME = 24;
+    private static final int LENGTH = 32;
+    private static final int PAYLOAD = 34;
+    
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int slotBytes;
+    private final int timeoutSeconds;
+    private final long timeoutMillis;
+    private final Random random;
+    
+    private final LongAdder created = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    
+    /**
+     * @param maxSessions live sessions kept before eviction starts (slightly more fit)
+     * @param slotBytes fixed size of a record, attributes included
+     */
+    public OffHeapSessionStore(int maxSessions, int slotBytes, int timeoutSeconds) {
+        this(maxSessions, slotBytes, timeoutSeconds, new SecureRandom());
+    }
+    
+    /**
+     * @param random source of session IDs; tests pass one that picks them
+     */
+    OffHeapSessionStore(int maxSessions, int slotBytes, int timeoutSeconds, Random random) {
+        if (maxSessions < 1 || timeoutSeconds < 1) {
+            throw new IllegalArgumentException("Session store size and timeout must be positive");
+        }
+        if (slotBytes < MIN_SLOT_BYTES || slotBytes > PAYLOAD + Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Session slot size must be between " + MIN_SLOT_BYTES
+                    + " and " + (PAYLOAD + Short.MAX_VALUE) + " bytes");
+        }
+        this.random = random;
+        this.slotBytes = slotBytes;
+        this.timeoutSeconds = timeoutSeconds;
+        this.timeoutMillis = timeoutSeconds * 1000L;
+        // Random IDs don't divide evenly: the headroom keeps a store of
+        // maxSessions from evicting in its fullest segment
+        int perSegment = (maxSessions + SEGMENTS - 1) / SEGMENTS;
+        perSegment += perSegment / 16 + 16;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+    
+    public static OffHeapSessionStore fromContext(ServletContext context) {
+        return new OffHeapSessionStore(
+                intParameter(context, "sessionStoreMaxSessions", 1000000),
+                intParameter(context, "sessionStoreSlotBytes", 256),
+                intParameter(context, "sessionTimeoutSeconds", DEFAULT_TIMEOUT_SECONDS));
+    }
+    
+    private static int intParameter(ServletContext context, String name, int defaultValue) {
+        String value = context.getInitParameter(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+    
+    @Override
+    public SessionRecord get(HttpServletRequest request) {
+        String id = sessionId(request);
+        return id != null ? get(id, System.currentTimeMillis()) : null;
+    }
+    
+    @Override
+    public void put(HttpServletRequest request, HttpServletResponse response, SessionRecord record) {
+        String previous = sessionId(request);
+        if (previous != null) {
+            remove(previous);
+        }
+        response.addCookie(cookie(request, create(record, System.currentTimeMillis()), -1));
+    }
+    
+    @Override
+    public void invalidate(HttpServletRequest request, HttpServletResponse response) {
+        String id = sessionId(request);
+        if (id != null) {
+            remove(id);
+            response.addCookie(cookie(request, "", 0));
+        }
+    }
+    
+    private static Cookie cookie(HttpServletRequest request, String value, int maxAge) {
+        Cookie cookie = new Cookie(COOKIE_NAME, value);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setMaxAge(maxAge);
+        return cookie;
+    }
+    
+    private static String sessionId(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE_NAME.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Stores a new session.
+     *
+     * @return its ID
+     * @throws IllegalArgumentException if the user's attributes don't fit a slot
+     */
+    public String create(SessionRecord record, long nowMillis) {
+        byte[] payload = encode(record);
+        long idHigh = random.nextLong();
+        long idLow = random.nextLong();
+        Segment segment = segmentFor(idLow);
+        synchronized (segment) {
+            segment.insert(idHigh, idLow, nowMillis + timeoutMillis, record.getLoginTimeMillis(), payload, nowMillis);
+        }
+        created.increment();
+        return encodeId(idHigh, idLow);
+    }
+    
+    /**
+     * Looks a session up and extends its expiry.
+     *
+     * @return null if the ID is unknown, malformed or expired
+     */
+    public SessionRecord get(String id, long nowMillis) {
+        long[] key = decodeId(id);
+        if (key == null) {
+            return null;
+        }
+        Segment segment = segmentFor(key[1]);
+        long loginTime;
+        byte[] payload;
+        synchronized (segment) {
+            int slot = segment.find(key[0], key[1]);
+            if (slot < 0) {
+                return null;
+            }
+            ByteBuffer slab = segment.slab(slot);
+            int offset = segment.offset(slot);
+            if (slab.getLong(offset + EXPIRES_AT) <= nowMillis) {
+                segment.remove(slot);
+                expired.increment();
+                return null;
+            }
+            slab.putLong(offset + EXPIRES_AT, nowMillis + timeoutMillis);
+            loginTime = slab.getLong(offset + LOGIN_TIME);
+            payload = new byte[slab.getShort(offset + LENGTH)];
+            slab.position(offset + PAYLOAD);
+            slab.get(payload);
+        }
+        return decode(payload, loginTime);
+    }
+    
+    public void remove(String id) {
+        long[] key = decodeId(id);
+        if (key == null) {
+            return;
+        }
+        Segment segment = segmentFor(key[1]);
+        synchronized (segment) {
+            int slot = segment.find(key[0], key[1]);
+            if (slot >= 0) {
+                segment.remove(slot);
+            }
+        }
+    }
+    
+    /**
+     * A full pass over every segment, one segment locked at a time.
+     */
+    @Override
+    public void sweep(long nowMillis) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.sweep(nowMillis, segment.allocated);
+            }
+        }
+    }
+    
+    private Segment segmentFor(long idLow) {
+        return segments[(int) idLow & (SEGMENTS - 1)];
+    }
+    
+    /**
+     * Username and role as a length-prefixed UTF-8 string each (-1 for null).
+     */
+    private byte[] encode(SessionRecord record) {
+        ByteBuffer buffer = ByteBuffer.allocate(slotBytes - PAYLOAD);
+        try {
+            putString(buffer, record.getUsername());
+            putString(buffer, record.getRole());
+        } catch (BufferOverflowException e) {
+            throw new IllegalArgumentException("Session attributes exceed the " + slotBytes + "-byte slot");
+        }
+        byte[] payload = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(payload);
+        return payload;
+    }
+    
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new BufferOverflowException();
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+    
+    private static SessionRecord decode(byte[] payload, long loginTime) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String username = getString(buffer);
+        String role = getString(buffer);
+        return new SessionRecord(username, role, loginTime);
+    }
+    
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    
+    private static String encodeId(long idHigh, long idLow) {
+        byte[] bytes = ByteBuffer.allocate(16).putLong(idHigh).putLong(idLow).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+    
+    /**
+     * @return {idHigh, idLow}, or null if this is not an ID we issued
+     */
+    private static long[] decodeId(String id) {
+        // The last of 22 characters carries 2 bits of the ID and 4 zero bits
+        // the decoder ignores; only the zero form is ours
+        if (id.length() != 22 || "AQgw".indexOf(id.charAt(21)) < 0) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new long[] {buffer.getLong(), buffer.getLong()};
+    }
+    
+    @Override
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+    
+    /**
+     * Live and not yet swept sessions.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Direct memory held by allocated slabs.
+     */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.slabBytes;
+            }
+        }
+        return bytes;
+    }
+    
+    @Override
+    public String describe() {
+        return "off-heap, sessions=" + size()
+                + ", slabBytes=" + getAllocatedBytes()
+                + ", timeout=" + timeoutSeconds + "s"
+                + ", created=" + created.sum()
+                + ", expired=" + expired.sum()
+                + ", evicted=" + evicted.sum();
+    }
+    
+    /**
+     * Slots of one segment, guarded by the segment's monitor. The index is
+     * linear probing over slot + 1 (0 is empty), hashed on the high half of
+     * the ID, which is random already; probes compare IDs in the slab.
+     */
+    private final class Segment {
+        
+        final int maxSlots;
+        final ByteBuffer[] slabs;
+        final int[] index;
+        final int indexMask;
+        int[] free = new int[64];
+        int freeCount;
+        long slabBytes;
+        
+        // Slots below this have been handed out at least once
+        int allocated;
+        int size;
+        int hand;
+        
+        Segment(int maxSlots) {
+            this.maxSlots = maxSlots;
+            this.slabs = new ByteBuffer[(maxSlots + SLOTS_PER_SLAB - 1) / SLOTS_PER_SLAB];
+            // At most half full
+            int capacity = Integer.highestOneBit(maxSlots) << 2;
+            this.index = new int[capacity];
+            this.indexMask = capacity - 1;
+        }
+        
+        ByteBuffer slab(int slot) {
+            return slabs[slot / SLOTS_PER_SLAB];
+        }
+        
+        int offset(int slot) {
+            return (slot % SLOTS_PER_SLAB) * slotBytes;
+        }
+        
+        int home(long idHigh) {
+            return (int) (idHigh ^ (idHigh >>> 32)) & indexMask;
+        }
+        
+        long idHigh(int slot) {
+            return slab(slot).getLong(offset(slot) + ID_HIGH);
+        }
+        
+        int find(long idHigh, long idLow) {
+            for (int i = home(idHigh); ; i = (i + 1) & indexMask) {
+                int entry = index[i];
+                if (entry == 0) {
+                    return -1;
+                }
+                int slot = entry - 1;
+                ByteBuffer slab = slab(slot);
+                int offset = offset(slot);
+                if (slab.getLong(offset + ID_HIGH) == idHigh && slab.getLong(offset + ID_LOW) == idLow) {
+                    return slot;
+                }
+            }
+        }
+        
+        void insert(long idHigh, long idLow, long expiresAt, long loginTime, byte[] payload, long now) {
+            sweep(now, SWEEP_PER_INSERT);
+            int slot = allocate();
+            if (slot < 0) {
+                sweep(now, allocated);
+                slot = allocate();
+                if (slot < 0) {
+                    evict();
+                    slot = allocate();
+                }
+            }
+            ByteBuffer slab = slab(slot);
+            int offset = offset(slot);
+            slab.putLong(offset + ID_HIGH, idHigh);
+            slab.putLong(offset + ID_LOW, idLow);
+            slab.putLong(offset + EXPIRES_AT, expiresAt);
+            slab.putLong(offset + LOGIN_TIME, loginTime);
+            slab.putShort(offset + LENGTH, (short) payload.length);
+            slab.position(offset + PAYLOAD);
+            slab.put(payload);
+            
+            int i = home(idHigh);
+            while (index[i] != 0) {
+                i = (i + 1) & indexMask;
+            }
+            index[i] = slot + 1;
+            size++;
+        }
+        
+        /**
+         * @return a free slot, or -1 if all maxSlots are in use
+         */
+        int allocate() {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if (allocated == maxSlots) {
+                return -1;
+            }
+            int slot = allocated++;
+            if (slot % SLOTS_PER_SLAB == 0) {
+                // The last slab only as large as the segment needs
+                int capacity = Math.min(SLOTS_PER_SLAB, maxSlots - slot) * slotBytes;
+                slabs[slot / SLOTS_PER_SLAB] = ByteBuffer.allocateDirect(capacity);
+                slabBytes += capacity;
+            }
+            return slot;
+        }
+        
+        /**
+         * Frees the slot and closes the gap it leaves in its probe run
+         * (backward-shift deletion, so the index never fills with tombstones).
+         */
+        void remove(int slot) {
+            int i = home(idHigh(slot));
+            while (index[i] != slot + 1) {
+                i = (i + 1) & indexMask;
+            }
+            for (int j = (i + 1) & indexMask; index[j] != 0; j = (j + 1) & indexMask) {
+                int k = home(idHigh(index[j] - 1));
+                // The entry at j may move into the gap unless its home lies cyclically in (i, j]
+                boolean stays = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+                if (!stays) {
+                    index[i] = index[j];
+                    i = j;
+                }
+            }
+            index[i] = 0;
+            
+            slab(slot).putLong(offset(slot) + EXPIRES_AT, 0L);
+            if (freeCount == free.length) {
+                int[] grown = new int[Math.min(free.length * 2, maxSlots)];
+                System.arraycopy(free, 0, grown, 0, freeCount);
+                free = grown;
+            }
+            free[freeCount++] = slot;
+            size--;
+        }
+        
+        /**
+         * Checks the next {@code count} slots at the hand and frees expired ones.
+         */
+        void sweep(long now, int count) {
+            for (int n = 0; n < count && allocated > 0; n++) {
+                if (hand >= allocated) {
+                    hand = 0;
+                }
+                int slot = hand++;
+                long expiresAt = slab(slot).getLong(offset(slot) + EXPIRES_AT);
+                if (expiresAt != 0L && expiresAt <= now) {
+                    remove(slot);
+                    expired.increment();
+                }
+            }
+        }
+        
+        /**
+         * Frees the slot at the hand; only called when every slot is live.
+         */
+        void evict() {
+            if (hand >= allocated) {
+                hand = 0;
+            }
+            remove(hand++);
+            evicted.increment();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.legacy.servlet.session;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Where the session-mode state of a caller lives (sessionStore context-param,
+ * see SessionStoreType). LoginServlet, SecurityFilter and UserServlet go
+ * through it instead of touching HttpSession directly.
+ */
+public interface SessionAttributeStore {
+    
+    String CONTEXT_ATTRIBUTE = "sessionAttributeStore";
+    
+    int DEFAULT_TIMEOUT_SECONDS = 1800;
+    
+    /**
+     * @return the caller's session, or null if it has none (or it expired)
+     */
+    SessionRecord get(HttpServletRequest request);
+    
+    /**
+     * Makes {@code record} the caller's session, creating one if needed.
+     */
+    void put(HttpServletRequest request, HttpServletResponse response, SessionRecord record);
+    
+    void invalidate(HttpServletRequest request, HttpServletResponse response);
+    
+    /**
+     * Idle time after which a logged-in session expires.
+     */
+    int getTimeoutSeconds();
+    
+    /**
+     * Drops expired sessions; a no-op where the container expires them.
+     */
+    void sweep(long nowMillis);
+    
+    String describe();
+    
+    /**
+     * The store the listener created, or the container's HttpSession if there is none.
+     */
+    static SessionAttributeStore fromContext(ServletContext context) {
+        SessionAttributeStore store = (SessionAttributeStore) context.getAttribute(CONTEXT_ATTRIBUTE);
+        return store != null ? store : new HttpSessionAttributeStore(DEFAULT_TIMEOUT_SECONDS);
+    }
+}
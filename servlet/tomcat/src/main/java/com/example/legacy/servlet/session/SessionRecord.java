@@ -0,0 +1,38 @@
+package com.example.legacy.servlet.session;
+
+/**
+ * What the application keeps per session: the logged-in user. Only a
+ * successful login creates a session.
+ */
+public final class SessionRecord {
+    
+    private final String username;
+    private final String role;
+    private final long loginTimeMillis;
+    
+    public SessionRecord(String username, String role, long loginTimeMillis) {
+        this.username = username;
+        this.role = role;
+        this.loginTimeMillis = loginTimeMillis;
+    }
+    
+    public static SessionRecord login(String username, String role, long loginTimeMillis) {
+        return new SessionRecord(username, role, loginTimeMillis);
+    }
+    
+    public boolean isAuthenticated() {
+        return username != null;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getRole() {
+        return role;
+    }
+    
+    public long getLoginTimeMillis() {
+        return loginTimeMillis;
+    }
+}
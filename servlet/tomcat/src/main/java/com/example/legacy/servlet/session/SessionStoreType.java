@@ -0,0 +1,19 @@
+package com.example.legacy.servlet.session;
+
+/**
+ * Which SessionAttributeStore session mode uses (sessionStore context-param).
+ */
+public enum SessionStoreType {
+    
+    /**
+     * Attributes in the container's HttpSession; every session is a few
+     * heap objects until the container expires it.
+     */
+    CONTAINER,
+    
+    /**
+     * Encoded records in direct-memory slabs (OffHeapSessionStore); the heap
+     * holds a few bytes of index per session.
+     */
+    OFF_HEAP
+}
@@ -0,0 +1,387 @@
+package com.example.legacy.servlet.store;
+
+import com.example.legacy.servlet.scheduler.ScheduledTask;
+import com.example.legacy.servlet.scheduler.TaskScheduler;
+import com.example.legacy.servlet.util.NamedThreadFactory;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * DurableStore keeps a StripedSnapshotMap on disk without putting disk I/O on the read path:
+ * - Reads are served from memory exactly as before
+ * - Every mutation is appended to a write-ahead log and becomes visible only
+ *   once the record is durable under the configured FsyncPolicy (group commit);
+ *   if the log fails, the mutation is not applied and put/remove throw
+ * - A background compaction writes a snapshot of the map and drops the log
+ *   segments it covers once the log has grown past a threshold; the check
+ *   runs on the shared TaskScheduler when there is one
+ * - On open the snapshot is memory-mapped and loaded, then the log tail is
+ *   replayed, skipping records the snapshot already contains; only the last
+ *   segment may end in a torn record, anywhere else is a recovery error
+ *
+ * Log sequence numbers are the map's mutation versions, so a snapshot taken at
+ * version V covers exactly the records with sequence &lt;= V.
+ */
+public class DurableStore<K, V> implements Closeable {
+    
+    private static final Logger logger = Logger.getLogger(DurableStore.class);
+    
+    private static final byte[] SNAPSHOT_MAGIC = {'F', 'L', 'S', 'N', 'A', 'P', '0', '1'};
+    
+    private final String name;
+    private final File directory;
+    private final RecordCodec<K, V> codec;
+    private final StripedSnapshotMap<K, V> map = new StripedSnapshotMap<>();
+    private final WriteAheadLog log;
+    private final ScheduledTask compaction;
+    private final ScheduledExecutorService compactor;
+    private final long compactAfterBytes;
+    private final boolean fresh;
+    
+    private final Object compactionLock = new Object();
+    private volatile long compactedAtBytes;
+    private volatile long lastCompactionMillis = -1;
+    private boolean closed;
+    
+    /**
+     * Opens (or creates) the store {@code name} in the configured directory and recovers its contents.
+     */
+    public DurableStore(StoreSettings settings, String name, RecordCodec<K, V> codec) throws IOException {
+        this.name = name;
+        this.directory = settings.getDirectory();
+        this.codec = codec;
+        this.compactAfterBytes = settings.getCompactAfterBytes();
+        
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create store directory " + directory);
+        }
+        
+        long start = System.nanoTime();
+        File snapshotFile = snapshotFile();
+        List<Long> segments = WriteAheadLog.listSegments(directory, name);
+        fresh = !snapshotFile.exists() && segments.isEmpty();
+        
+        long snapshotSequence = snapshotFile.exists() ? loadSnapshot(snapshotFile) : 0L;
+        long replayed = replay(segments, snapshotSequence);
+        
+        long nextSegment = segments.isEmpty() ? 1L : segments.get(segments.size() - 1) + 1;
+        this.log = new WriteAheadLog(directory, name, nextSegment, settings.getFsyncPolicy(),
+                settings.getFsyncIntervalMillis());
+        this.map.setMutationListener(this::logMutation);
+        
+        long interval = settings.getCompactCheckSeconds();
+        TaskScheduler scheduler = settings.getScheduler();
+        if (scheduler != null) {
+            // Jittered so stores opened together don't compact together
+            long intervalMillis = TimeUnit.SECONDS.toMillis(interval);
+            this.compaction = scheduler.scheduleWithJitter("store-compaction-" + name, this::compactIfNeeded,
+                    intervalMillis, intervalMillis, intervalMillis / 4, TimeUnit.MILLISECONDS);
+            this.compactor = null;
+        } else {
+            this.compaction = null;
+            this.compactor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("store-compactor-" + name));
+            this.compactor.scheduleWithFixedDelay(this::compactIfNeeded, interval, interval, TimeUnit.SECONDS);
+        }
+        
+        logger.info("Store " + name + " opened: " + map.size() + " entries, snapshot at sequence "
+                + snapshotSequence + ", " + replayed + " log records replayed in "
+                + (System.nanoTime() - start) / 1000000L + "ms (" + settings.getFsyncPolicy() + ")");
+    }
+    
+    public V get(K key) {
+        return map.get(key);
+    }
+    
+    public int size() {
+        return map.size();
+    }
+    
+    public long getVersion() {
+        return map.getVersion();
+    }
+    
+    public StripedSnapshotMap.Snapshot<K, V> snapshot() {
+        return map.snapshot();
+    }
+    
+    /**
+     * True if nothing was on disk when the store was opened, e.g. to decide whether to seed it.
+     */
+    public boolean isFresh() {
+        return fresh;
+    }
+    
+    /**
+     * Stores the value once the change is durable; readers see it only then.
+     *
+     * @return the previous value, or null
+     * @throws IOException if the log failed, in which case the store is unchanged
+     */
+    public V put(K key, V value) throws IOException {
+        log.checkHealthy();
+        try {
+            return map.put(key, value);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * Removes the key once the change is durable.
+     *
+     * @return the removed value, or null if the key was not present
+     * @throws IOException if the log failed, in which case the store is unchanged
+     */
+    public V remove(K key) throws IOException {
+        log.checkHealthy();
+        try {
+            return map.remove(key);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * Writes a snapshot and deletes the log segments it makes redundant.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            if (closed) {
+                throw new IOException("Store " + name + " is closed");
+            }
+            long start = System.nanoTime();
+            long bytesBefore = log.getBytesWritten();
+            
+            // Everything appended before the rotation is applied to the map, so the
+            // snapshot taken afterwards covers every record in the older segments
+            long firstKept = log.rotate();
+            StripedSnapshotMap.Snapshot<K, V> snapshot = map.snapshot();
+            writeSnapshot(snapshot);
+            
+            for (long segment : WriteAheadLog.listSegments(directory, name)) {
+                if (segment < firstKept) {
+                    File file = WriteAheadLog.segmentFile(directory, name, segment);
+                    if (!file.delete()) {
+                        logger.warn("Could not delete compacted log segment " + file);
+                    }
+                }
+            }
+            
+            compactedAtBytes = bytesBefore;
+            lastCompactionMillis = System.currentTimeMillis();
+            logger.info("Store " + name + " compacted: " + snapshot.size() + " entries at sequence "
+                    + snapshot.getVersion() + " in " + (System.nanoTime() - start) / 1000000L + "ms");
+        }
+    }
+    
+    public long getLogBytesWritten() {
+        return log.getBytesWritten();
+    }
+    
+    public long getLastCompactionMillis() {
+        return lastCompactionMillis;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (compaction != null) {
+            compaction.cancel();
+        } else {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Waits out a compaction in progress; none starts afterwards
+        synchronized (compactionLock) {
+            closed = true;
+        }
+        // The listener stays: mutations after this are rejected by the closed log
+        log.close();
+        logger.info("Store " + name + " closed at version " + map.getVersion());
+    }
+    
+    private void compactIfNeeded() {
+        synchronized (compactionLock) {
+            if (closed || log.getBytesWritten() - compactedAtBytes < compactAfterBytes) {
+                return;
+            }
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.error("Compaction of store " + name + " failed", e);
+            }
+        }
+    }
+    
+    /**
+     * Runs under the map's stripe lock, before the mutation is visible, so
+     * per-key log order matches memory order and readers never see a change
+     * that could be lost. Waiting here holds only this stripe; writers on
+     * other stripes still share each fsync.
+     */
+    private void logMutation(K key, V value, long version) {
+        byte[] payload;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            codec.writeKey(key, out);
+            if (value != null) {
+                codec.writeValue(value, out);
+            }
+            out.flush();
+            payload = bytes.toByteArray();
+        } catch (IOException e) {
+            // In-memory streams only; a codec failure here is a programming error
+            throw new IllegalStateException("Cannot encode record for store " + name, e);
+        }
+        try {
+            log.checkHealthy();
+            log.append(version, value != null ? WriteAheadLog.OP_PUT : WriteAheadLog.OP_REMOVE,
+                    payload, payload.length);
+            log.awaitAppended();
+        } catch (IOException e) {
+            // Rejects the mutation; put/remove rethrow the cause
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private File snapshotFile() {
+        return new File(directory, name + ".snapshot");
+    }
+    
+    /**
+     * Snapshot layout: magic, i64 sequence, i32 entry count, entries, i32 CRC32 of
+     * everything between the magic and the checksum. Written to a temporary file,
+     * forced, then atomically renamed over the previous snapshot.
+     */
+    private void writeSnapshot(StripedSnapshotMap.Snapshot<K, V> snapshot) throws IOException {
+        File temp = new File(directory, name + ".snapshot.tmp");
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(file, 64 * 1024), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            
+            out.write(SNAPSHOT_MAGIC);
+            checked.getChecksum().reset();
+            out.writeLong(snapshot.getVersion());
+            out.writeInt(snapshot.size());
+            for (Map.Entry<K, V> entry : snapshot.entries()) {
+                codec.writeKey(entry.getKey(), out);
+                codec.writeValue(entry.getValue(), out);
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), snapshotFile().toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * @return the snapshot's sequence number
+     */
+    private long loadSnapshot(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            
+            byte[] magic = new byte[SNAPSHOT_MAGIC.length];
+            if (buffer.remaining() < magic.length + 16) {
+                throw new IOException("Snapshot " + file + " is truncated");
+            }
+            buffer.get(magic);
+            if (!Arrays.equals(magic, SNAPSHOT_MAGIC)) {
+                throw new IOException("Snapshot " + file + " has an unknown format");
+            }
+            
+            ByteBuffer body = buffer.slice();
+            body.limit(body.capacity() - 4);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(buffer.capacity() - 4)) {
+                throw new IOException("Snapshot " + file + " is corrupt (checksum mismatch)");
+            }
+            
+            DataInput in = new DataInputStream(new ByteBufferInputStream(body));
+            long sequence = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                K key = codec.readKey(in);
+                map.put(key, codec.readValue(in));
+            }
+            map.advanceVersion(sequence);
+            return sequence;
+        }
+    }
+    
+    private long replay(List<Long> segments, final long snapshotSequence) throws IOException {
+        long replayed = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            File file = WriteAheadLog.segmentFile(directory, name, segments.get(i));
+            boolean last = i == segments.size() - 1;
+            replayed += WriteAheadLog.replay(file, last, (sequence, operation, payload) -> {
+                K key = codec.readKey(payload);
+                V value = operation == WriteAheadLog.OP_PUT ? codec.readValue(payload) : null;
+                if (sequence > snapshotSequence) {
+                    if (value != null) {
+                        map.put(key, value);
+                    } else {
+                        map.remove(key);
+                    }
+                }
+                map.advanceVersion(sequence);
+            });
+        }
+        return replayed;
+    }
+    
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
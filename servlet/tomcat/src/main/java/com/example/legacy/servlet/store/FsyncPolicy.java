@@ -0,0 +1,25 @@
+package com.example.legacy.servlet.store;
+
+/**
+ * When a DurableStore forces its write-ahead log to disk.
+ */
+public enum FsyncPolicy {
+    
+    /**
+     * Every write waits for an fsync. Concurrent writers share one fsync per
+     * batch (group commit), so throughput grows with concurrency.
+     */
+    ALWAYS,
+    
+    /**
+     * Writes return once the log has been handed to the OS; the log is forced
+     * every fsync interval, bounding loss on power failure to that window.
+     */
+    INTERVAL,
+    
+    /**
+     * Writes return once the log has been handed to the OS, which decides when
+     * to flush. Survives process crashes, not power loss.
+     */
+    NEVER
+}
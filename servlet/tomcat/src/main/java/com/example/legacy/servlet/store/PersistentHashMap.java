@@ -0,0 +1,373 @@
+package com.example.legacy.servlet.store;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * PersistentHashMap is the immutable map behind each StripedSnapshotMap stripe:
+ * - A hash array mapped trie, branching 32 ways on 5 hash bits per level
+ * - put/remove copy only the nodes on the path to the changed entry, at most
+ *   8 arrays of up to 32 slots, and share everything else with the old version
+ * - Every version stays valid and unchanged, which is what snapshots rely on
+ *
+ * Null keys and values are not supported.
+ */
+final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+    
+    private static final int BITS = 5;
+    private static final int MAX_DEPTH = 8;
+    
+    private static final PersistentHashMap<Object, Object> EMPTY =
+            new PersistentHashMap<>(new BitmapNode<>(0, new Object[0]), 0);
+    
+    private final Node<K, V> root;
+    private final int size;
+    
+    private PersistentHashMap(Node<K, V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    V get(Object key) {
+        Leaf<K, V> leaf = root.find(hash(key), key, 0);
+        return leaf != null ? leaf.value : null;
+    }
+    
+    boolean containsKey(Object key) {
+        return root.find(hash(key), key, 0) != null;
+    }
+    
+    PersistentHashMap<K, V> put(K key, V value) {
+        int hash = hash(key);
+        boolean added = root.find(hash, key, 0) == null;
+        return new PersistentHashMap<>(root.put(new Leaf<>(hash, key, value), 0), added ? size + 1 : size);
+    }
+    
+    PersistentHashMap<K, V> remove(Object key) {
+        int hash = hash(key);
+        if (root.find(hash, key, 0) == null) {
+            return this;
+        }
+        Object rest = root.remove(hash, key, 0);
+        if (rest == null) {
+            return empty();
+        }
+        return new PersistentHashMap<>(rest instanceof Leaf ? BitmapNode.of(asLeaf(rest), 0) : asNode(rest), size - 1);
+    }
+    
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+    
+    // Bit-reversed so the trie branches first on the high bits; the stripe
+    // index already used the low ones
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return Integer.reverse(h ^ (h >>> 16));
+    }
+    
+    private static int slot(int hash, int shift) {
+        return (hash >>> shift) & 31;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <K, V> Leaf<K, V> asLeaf(Object slot) {
+        return (Leaf<K, V>) slot;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V> asNode(Object slot) {
+        return (Node<K, V>) slot;
+    }
+    
+    /**
+     * Smallest subtree holding {@code existing} (a leaf or a collision node with
+     * hash {@code existingHash}) and {@code leaf}, from level {@code shift} down.
+     */
+    private static <K, V> Node<K, V> merge(Object existing, int existingHash, Leaf<K, V> leaf, int shift) {
+        if (existingHash == leaf.hash) {
+            if (existing instanceof Leaf) {
+                return new CollisionNode<>(leaf.hash, new Object[] {existing, leaf});
+            }
+            return PersistentHashMap.<K, V>asNode(existing).put(leaf, shift);
+        }
+        int a = slot(existingHash, shift);
+        int b = slot(leaf.hash, shift);
+        if (a == b) {
+            return new BitmapNode<>(1 << a, new Object[] {merge(existing, existingHash, leaf, shift + BITS)});
+        }
+        Object[] slots = a < b ? new Object[] {existing, leaf} : new Object[] {leaf, existing};
+        return new BitmapNode<>((1 << a) | (1 << b), slots);
+    }
+    
+    private abstract static class Node<K, V> {
+        abstract Leaf<K, V> find(int hash, Object key, int shift);
+        
+        abstract Node<K, V> put(Leaf<K, V> leaf, int shift);
+        
+        /**
+         * Removes a key known to be present.
+         *
+         * @return the remaining node, its only leaf, or null if nothing remains
+         */
+        abstract Object remove(int hash, Object key, int shift);
+        
+        abstract Object[] slots();
+    }
+    
+    private static final class BitmapNode<K, V> extends Node<K, V> {
+        private final int bitmap;
+        private final Object[] slots;
+        
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+        
+        static <K, V> BitmapNode<K, V> of(Leaf<K, V> leaf, int shift) {
+            return new BitmapNode<>(1 << slot(leaf.hash, shift), new Object[] {leaf});
+        }
+        
+        @Override
+        Leaf<K, V> find(int hash, Object key, int shift) {
+            int bit = 1 << slot(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf<K, V> leaf = asLeaf(slot);
+                return leaf.hash == hash && leaf.key.equals(key) ? leaf : null;
+            }
+            return PersistentHashMap.<K, V>asNode(slot).find(hash, key, shift + BITS);
+        }
+        
+        @Override
+        Node<K, V> put(Leaf<K, V> leaf, int shift) {
+            int bit = 1 << slot(leaf.hash, shift);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, copy, 0, index);
+                copy[index] = leaf;
+                System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+                return new BitmapNode<>(bitmap | bit, copy);
+            }
+            Object slot = slots[index];
+            Object replacement;
+            if (slot instanceof Leaf) {
+                Leaf<K, V> existing = asLeaf(slot);
+                replacement = existing.hash == leaf.hash && existing.key.equals(leaf.key)
+                        ? leaf : merge(existing, existing.hash, leaf, shift + BITS);
+            } else {
+                replacement = PersistentHashMap.<K, V>asNode(slot).put(leaf, shift + BITS);
+            }
+            Object[] copy = slots.clone();
+            copy[index] = replacement;
+            return new BitmapNode<>(bitmap, copy);
+        }
+        
+        @Override
+        Object remove(int hash, Object key, int shift) {
+            int bit = 1 << slot(hash, shift);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[index];
+            Object rest = slot instanceof Leaf ? null : PersistentHashMap.<K, V>asNode(slot).remove(hash, key, shift + BITS);
+            if (rest != null) {
+                if (slots.length == 1 && rest instanceof Leaf) {
+                    return rest;
+                }
+                Object[] copy = slots.clone();
+                copy[index] = rest;
+                return new BitmapNode<>(bitmap, copy);
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            if (slots.length == 2 && slots[1 - index] instanceof Leaf) {
+                return slots[1 - index];
+            }
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, copy.length - index);
+            return new BitmapNode<>(bitmap & ~bit, copy);
+        }
+        
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+    }
+    
+    /**
+     * Leaves whose full 32-bit hashes are equal, in a plain array.
+     */
+    private static final class CollisionNode<K, V> extends Node<K, V> {
+        private final int hash;
+        private final Object[] leaves;
+        
+        CollisionNode(int hash, Object[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+        
+        @Override
+        Leaf<K, V> find(int hash, Object key, int shift) {
+            if (hash != this.hash) {
+                return null;
+            }
+            for (Object slot : leaves) {
+                Leaf<K, V> leaf = asLeaf(slot);
+                if (leaf.key.equals(key)) {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        Node<K, V> put(Leaf<K, V> leaf, int shift) {
+            if (leaf.hash != hash) {
+                return merge(this, hash, leaf, shift);
+            }
+            for (int i = 0; i < leaves.length; i++) {
+                if (PersistentHashMap.<K, V>asLeaf(leaves[i]).key.equals(leaf.key)) {
+                    Object[] copy = leaves.clone();
+                    copy[i] = leaf;
+                    return new CollisionNode<>(hash, copy);
+                }
+            }
+            Object[] copy = new Object[leaves.length + 1];
+            System.arraycopy(leaves, 0, copy, 0, leaves.length);
+            copy[leaves.length] = leaf;
+            return new CollisionNode<>(hash, copy);
+        }
+        
+        @Override
+        Object remove(int hash, Object key, int shift) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (PersistentHashMap.<K, V>asLeaf(leaves[i]).key.equals(key)) {
+                    if (leaves.length == 2) {
+                        return leaves[1 - i];
+                    }
+                    Object[] copy = new Object[leaves.length - 1];
+                    System.arraycopy(leaves, 0, copy, 0, i);
+                    System.arraycopy(leaves, i + 1, copy, i, copy.length - i);
+                    return new CollisionNode<>(hash, copy);
+                }
+            }
+            return this;
+        }
+        
+        @Override
+        Object[] slots() {
+            return leaves;
+        }
+    }
+    
+    private static final class Leaf<K, V> implements Map.Entry<K, V> {
+        private final int hash;
+        private final K key;
+        private final V value;
+        
+        Leaf(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+        
+        @Override
+        public K getKey() {
+            return key;
+        }
+        
+        @Override
+        public V getValue() {
+            return value;
+        }
+        
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("Snapshot entries are immutable");
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            return key.equals(other.getKey()) && value.equals(other.getValue());
+        }
+        
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+        
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+    
+    /**
+     * Depth-first walk with one slot array and position per level.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object[][] path = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth;
+        private Leaf<K, V> next;
+        
+        EntryIterator(Node<K, V> root) {
+            path[0] = root.slots();
+            advance();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+        
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf<K, V> current = next;
+            advance();
+            return current;
+        }
+        
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] slots = path[depth];
+                if (positions[depth] == slots.length) {
+                    path[depth--] = null;
+                    continue;
+                }
+                Object slot = slots[positions[depth]++];
+                if (slot instanceof Leaf) {
+                    next = asLeaf(slot);
+                    return;
+                }
+                depth++;
+                path[depth] = PersistentHashMap.<K, V>asNode(slot).slots();
+                positions[depth] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.legacy.servlet.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoding of the keys and values kept in a DurableStore, used for
+ * both log records and snapshots.
+ */
+public interface RecordCodec<K, V> {
+    
+    void writeKey(K key, DataOutput out) throws IOException;
+    
+    K readKey(DataInput in) throws IOException;
+    
+    void writeValue(V value, DataOutput out) throws IOException;
+    
+    V readValue(DataInput in) throws IOException;
+}
@@ -0,0 +1,101 @@
+package com.example.legacy.servlet.store;
+
+import com.example.legacy.servlet.scheduler.TaskScheduler;
+
+import javax.servlet.ServletContext;
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * StoreSettings reads the DurableStore configuration from context parameters:
+ * - storeDirectory: where snapshots and logs live (default: ${catalina.base}/data/legacy-servlet-app,
+ *   or the JVM temp directory outside Tomcat)
+ * - storeFsyncPolicy: ALWAYS, INTERVAL or NEVER (default INTERVAL)
+ * - storeFsyncIntervalMillis: log force interval for INTERVAL (default 50)
+ * - storeCompactAfterBytes: log growth that triggers a snapshot (default 4 MB)
+ *
+ * Compaction checks run on the shared TaskScheduler if the listener created
+ * one; otherwise each store starts a thread of its own.
+ */
+public class StoreSettings {
+    
+    private final File directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final long compactAfterBytes;
+    private final long compactCheckSeconds;
+    private final TaskScheduler scheduler;
+    
+    public StoreSettings(File directory, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, 
+                         long compactAfterBytes, long compactCheckSeconds) {
+        this(directory, fsyncPolicy, fsyncIntervalMillis, compactAfterBytes, compactCheckSeconds, null);
+    }
+    
+    /**
+     * @param scheduler runs the compaction checks; null for a thread per store
+     */
+    public StoreSettings(File directory, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, 
+                         long compactAfterBytes, long compactCheckSeconds, TaskScheduler scheduler) {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.compactAfterBytes = compactAfterBytes;
+        this.compactCheckSeconds = compactCheckSeconds;
+        this.scheduler = scheduler;
+    }
+    
+    public static StoreSettings fromContext(ServletContext context) {
+        String directoryParam = context.getInitParameter("storeDirectory");
+        File directory;
+        if (directoryParam != null && !directoryParam.trim().isEmpty()) {
+            directory = new File(directoryParam.trim());
+        } else if (System.getProperty("catalina.base") != null) {
+            directory = new File(new File(System.getProperty("catalina.base"), "data"), "legacy-servlet-app");
+        } else {
+            directory = new File(System.getProperty("java.io.tmpdir"), "legacy-servlet-app");
+        }
+        
+        String policyParam = context.getInitParameter("storeFsyncPolicy");
+        FsyncPolicy policy = policyParam != null 
+                ? FsyncPolicy.valueOf(policyParam.trim().toUpperCase(Locale.ROOT)) 
+                : FsyncPolicy.INTERVAL;
+        
+        return new StoreSettings(directory, policy,
+                longParameter(context, "storeFsyncIntervalMillis", 50L),
+                longParameter(context, "storeCompactAfterBytes", 4L * 1024 * 1024),
+                60L,
+                (TaskScheduler) context.getAttribute(TaskScheduler.CONTEXT_ATTRIBUTE));
+    }
+    
+    private static long longParameter(ServletContext context, String name, long defaultValue) {
+        String value = context.getInitParameter(name);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+    
+    public File getDirectory() {
+        return directory;
+    }
+    
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+    
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+    
+    public long getCompactAfterBytes() {
+        return compactAfterBytes;
+    }
+    
+    public long getCompactCheckSeconds() {
+        return compactCheckSeconds;
+    }
+    
+    /**
+     * @return null if stores schedule their own compaction checks
+     */
+    public TaskScheduler getScheduler() {
+        return scheduler;
+    }
+}
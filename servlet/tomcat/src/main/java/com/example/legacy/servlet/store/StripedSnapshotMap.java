@@ -0,0 +1,333 @@
+package com.example.legacy.servlet.store;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * StripedSnapshotMap is an in-memory key/value store for request threads:
+ * - Reads are lock-free: each stripe publishes an immutable map through a volatile field
+ * - Writes lock only their stripe and replace that stripe's map (copy-on-write);
+ *   the maps are persistent tries, so a write copies O(log n) small nodes
+ *   rather than the whole stripe
+ * - snapshot() captures every stripe at one point in time; iterating it never
+ *   blocks, and never sees or fails on concurrent writes
+ *
+ * Writers additionally hold the shared side of a read/write lock, and
+ * snapshot() takes the exclusive side just long enough to read the stripe
+ * references, so a snapshot never mixes stripes from before and after a write.
+ * Every mutation bumps a global version, which identifies the snapshot.
+ * An optional MutationListener sees each mutation with its version while the
+ * stripe lock is still held and before readers can see it, i.e. in the order
+ * readers observe them per key; if the listener throws, the mutation is
+ * dropped and the exception reaches the caller.
+ *
+ * Null keys and values are not supported.
+ */
+public class StripedSnapshotMap<K, V> {
+    
+    public static final int DEFAULT_STRIPES = 16;
+    
+    /**
+     * Observes mutations; called with the stripe lock held, before the mutation
+     * is visible, and must not call back into the map. Throwing rejects the
+     * mutation. The version of a rejected mutation is not reused.
+     */
+    public interface MutationListener<K, V> {
+        /**
+         * @param value the new value, or null if the key was removed
+         */
+        void onMutation(K key, V value, long version);
+    }
+    
+    private final List<Stripe<K, V>> stripes;
+    private final int mask;
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final AtomicLong version = new AtomicLong();
+    private volatile MutationListener<K, V> listener;
+    
+    public StripedSnapshotMap() {
+        this(DEFAULT_STRIPES);
+    }
+    
+    public StripedSnapshotMap(int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripeCount);
+        }
+        int size = Integer.highestOneBit(stripeCount);
+        if (size < stripeCount) {
+            size <<= 1;
+        }
+        stripes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stripes.add(new Stripe<>());
+        }
+        mask = size - 1;
+    }
+    
+    public V get(Object key) {
+        return stripeFor(key).map.get(key);
+    }
+    
+    public boolean containsKey(Object key) {
+        return stripeFor(key).map.containsKey(key);
+    }
+    
+    /**
+     * @return the previous value, or null
+     */
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Null keys and values are not supported");
+        }
+        Stripe<K, V> stripe = stripeFor(key);
+        lock(stripe);
+        try {
+            V previous = stripe.map.get(key);
+            publish(stripe, stripe.map.put(key, value), key, value);
+            return previous;
+        } finally {
+            unlock(stripe);
+        }
+    }
+    
+    /**
+     * @return the existing value if the key was present (nothing is written), otherwise null
+     */
+    public V putIfAbsent(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Null keys and values are not supported");
+        }
+        Stripe<K, V> stripe = stripeFor(key);
+        V existing = stripe.map.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        lock(stripe);
+        try {
+            existing = stripe.map.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            publish(stripe, stripe.map.put(key, value), key, value);
+            return null;
+        } finally {
+            unlock(stripe);
+        }
+    }
+    
+    /**
+     * @return the removed value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Stripe<K, V> stripe = stripeFor(key);
+        if (!stripe.map.containsKey(key)) {
+            return null;
+        }
+        lock(stripe);
+        try {
+            V previous = stripe.map.get(key);
+            if (previous == null) {
+                return null;
+            }
+            publish(stripe, stripe.map.remove(key), (K) key, null);
+            return previous;
+        } finally {
+            unlock(stripe);
+        }
+    }
+    
+    /**
+     * Current number of entries; like any unlocked read this may already be
+     * stale while writes are in flight. Use a snapshot for a consistent count.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.map.size();
+        }
+        return size;
+    }
+    
+    /**
+     * Number of mutations applied so far.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+    
+    /**
+     * Moves the version counter forward, e.g. to the last sequence number
+     * recovered from disk, so new versions keep increasing across restarts.
+     */
+    public void advanceVersion(long minimum) {
+        version.accumulateAndGet(minimum, Math::max);
+    }
+    
+    public void setMutationListener(MutationListener<K, V> listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Point-in-time view of all entries. Costs one list copy of the stripe
+     * references; the entries themselves are shared, not copied.
+     */
+    public Snapshot<K, V> snapshot() {
+        List<PersistentHashMap<K, V>> maps = new ArrayList<>(stripes.size());
+        long snapshotVersion;
+        snapshotLock.writeLock().lock();
+        try {
+            for (Stripe<K, V> stripe : stripes) {
+                maps.add(stripe.map);
+            }
+            snapshotVersion = version.get();
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        return new Snapshot<>(maps, snapshotVersion, mask);
+    }
+    
+    private Stripe<K, V> stripeFor(Object key) {
+        return stripes.get(index(key, mask));
+    }
+    
+    private static int index(Object key, int mask) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+    
+    private void lock(Stripe<K, V> stripe) {
+        snapshotLock.readLock().lock();
+        stripe.lock.lock();
+    }
+    
+    private void unlock(Stripe<K, V> stripe) {
+        stripe.lock.unlock();
+        snapshotLock.readLock().unlock();
+    }
+    
+    private void publish(Stripe<K, V> stripe, PersistentHashMap<K, V> map, K key, V value) {
+        long newVersion = version.incrementAndGet();
+        MutationListener<K, V> l = listener;
+        if (l != null) {
+            l.onMutation(key, value, newVersion);
+        }
+        stripe.map = map;
+    }
+    
+    private static final class Stripe<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile PersistentHashMap<K, V> map = PersistentHashMap.empty();
+    }
+    
+    /**
+     * Immutable view of the store as of one version.
+     */
+    public static final class Snapshot<K, V> {
+        private final List<PersistentHashMap<K, V>> maps;
+        private final long version;
+        private final int mask;
+        private final int size;
+        
+        private Snapshot(List<PersistentHashMap<K, V>> maps, long version, int mask) {
+            this.maps = maps;
+            this.version = version;
+            this.mask = mask;
+            int total = 0;
+            for (PersistentHashMap<K, V> map : maps) {
+                total += map.size();
+            }
+            this.size = total;
+        }
+        
+        public long getVersion() {
+            return version;
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        public V get(Object key) {
+            return maps.get(index(key, mask)).get(key);
+        }
+        
+        public Iterable<Map.Entry<K, V>> entries() {
+            return () -> new Iterator<Map.Entry<K, V>>() {
+                private int stripe;
+                private Iterator<Map.Entry<K, V>> current = Collections.emptyIterator();
+                
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext()) {
+                        if (stripe == maps.size()) {
+                            return false;
+                        }
+                        current = maps.get(stripe++).iterator();
+                    }
+                    return true;
+                }
+                
+                @Override
+                public Map.Entry<K, V> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+            };
+        }
+        
+        public Collection<V> values() {
+            return new AbstractCollection<V>() {
+                @Override
+                public Iterator<V> iterator() {
+                    return new ValueIterator<>(maps);
+                }
+                
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+    
+    private static final class ValueIterator<K, V> implements Iterator<V> {
+        private final List<PersistentHashMap<K, V>> maps;
+        private int stripe;
+        private Iterator<Map.Entry<K, V>> current = Collections.emptyIterator();
+        
+        ValueIterator(List<PersistentHashMap<K, V>> maps) {
+            this.maps = maps;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (stripe == maps.size()) {
+                    return false;
+                }
+                current = maps.get(stripe++).iterator();
+            }
+            return true;
+        }
+        
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next().getValue();
+        }
+    }
+}
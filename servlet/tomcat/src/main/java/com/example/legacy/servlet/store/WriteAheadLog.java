@@ -0,0 +1,404 @@
+package com.example.legacy.servlet.store;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log behind a DurableStore.
+ *
+ * Record layout: i32 body length, body (i64 sequence, u8 operation, payload),
+ * i32 CRC32 of the body. Callers append from any thread; a single writer
+ * thread drains everything queued since its last pass into one gathering
+ * write and, depending on the FsyncPolicy, one fsync (group commit).
+ *
+ * The log is split into numbered segment files so a compaction can start a
+ * new segment and delete the old ones once they are covered by a snapshot.
+ */
+class WriteAheadLog implements Closeable {
+    
+    private static final Logger logger = Logger.getLogger(WriteAheadLog.class);
+    
+    static final byte OP_PUT = 1;
+    static final byte OP_REMOVE = 2;
+    
+    private static final String SUFFIX = ".wal";
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+    
+    /**
+     * Receives replayed records.
+     */
+    interface RecordVisitor {
+        void record(long sequence, byte operation, DataInput payload) throws IOException;
+    }
+    
+    private final File directory;
+    private final String name;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalNanos;
+    private final Thread writer;
+    
+    // Guarded by this
+    private final ArrayDeque<Object> queue = new ArrayDeque<>();
+    private long appended;
+    private long written;
+    private long synced;
+    private IOException failure;
+    private boolean closing;
+    
+    // Writer thread only
+    private FileChannel channel;
+    private long segment;
+    
+    private volatile long bytesWritten;
+    
+    WriteAheadLog(File directory, String name, long segment, FsyncPolicy policy, long fsyncIntervalMillis)
+            throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.policy = policy;
+        this.fsyncIntervalNanos = fsyncIntervalMillis * 1000000L;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+        
+        this.writer = new Thread(this::runWriter, "wal-writer-" + name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+    
+    /**
+     * Queues a record. Never blocks on I/O; use {@link #awaitAppended()} to wait for it.
+     */
+    void append(long sequence, byte operation, byte[] payload, int length) {
+        byte[] record = new byte[4 + 9 + length + 4];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(9 + length);
+        buffer.putLong(sequence);
+        buffer.put(operation);
+        buffer.put(payload, 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, 9 + length);
+        buffer.putInt((int) crc.getValue());
+        
+        synchronized (this) {
+            queue.add(record);
+            appended++;
+            notifyAll();
+        }
+    }
+    
+    /**
+     * Waits until every record appended so far is durable under the log's policy.
+     */
+    void awaitAppended() throws IOException {
+        synchronized (this) {
+            long ticket = appended;
+            boolean interrupted = false;
+            try {
+                while ((policy == FsyncPolicy.ALWAYS ? synced : written) < ticket) {
+                    if (failure != null) {
+                        throw new IOException("Write-ahead log " + name + " failed", failure);
+                    }
+                    if (!writer.isAlive()) {
+                        throw new IOException("Write-ahead log " + name + " is closed");
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+    
+    synchronized void checkHealthy() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log " + name + " failed", failure);
+        }
+        if (closing) {
+            throw new IOException("Write-ahead log " + name + " is closed");
+        }
+    }
+    
+    /**
+     * Forces the current segment and switches to a new one. Everything appended
+     * before this call is in the older segments.
+     *
+     * @return number of the new segment
+     */
+    long rotate() throws IOException {
+        Rotation rotation = new Rotation();
+        synchronized (this) {
+            checkHealthy();
+            queue.add(rotation);
+            notifyAll();
+            try {
+                while (!rotation.done) {
+                    checkHealthy();
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while rotating " + name);
+            }
+            return rotation.segment;
+        }
+    }
+    
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    /**
+     * Writes out everything queued, forces the log and stops the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw new IOException("Write-ahead log " + name + " failed", failure);
+            }
+        }
+    }
+    
+    private void runWriter() {
+        long lastSync = System.nanoTime();
+        List<Object> batch = new ArrayList<>();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        
+        try {
+            while (true) {
+                boolean stop;
+                synchronized (this) {
+                    while (queue.isEmpty() && !closing && !intervalSyncDue(lastSync)) {
+                        if (policy == FsyncPolicy.INTERVAL && written > synced) {
+                            long remaining = fsyncIntervalNanos - (System.nanoTime() - lastSync);
+                            wait(Math.max(1L, remaining / 1000000L));
+                        } else {
+                            wait();
+                        }
+                    }
+                    batch.addAll(queue);
+                    queue.clear();
+                    stop = closing && batch.isEmpty();
+                }
+                
+                long records = 0;
+                for (Object item : batch) {
+                    if (item instanceof Rotation) {
+                        writeBuffers(buffers);
+                        channel.force(false);
+                        channel.close();
+                        segment++;
+                        channel = openSegment(segment);
+                        Rotation rotation = (Rotation) item;
+                        rotation.segment = segment;
+                        rotation.done = true;
+                    } else {
+                        buffers.add(ByteBuffer.wrap((byte[]) item));
+                        records++;
+                    }
+                }
+                writeBuffers(buffers);
+                batch.clear();
+                
+                long now = System.nanoTime();
+                boolean sync = policy == FsyncPolicy.ALWAYS || stop
+                        || (policy == FsyncPolicy.INTERVAL && now - lastSync >= fsyncIntervalNanos);
+                synchronized (this) {
+                    sync &= written + records > synced;
+                }
+                if (sync) {
+                    channel.force(false);
+                    lastSync = now;
+                }
+                
+                synchronized (this) {
+                    written += records;
+                    if (sync) {
+                        synced = written;
+                    }
+                    notifyAll();
+                }
+                
+                if (stop) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Write-ahead log " + name + " failed; further writes will be rejected", e);
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                failure = new InterruptedIOException("Write-ahead log writer interrupted");
+                notifyAll();
+            }
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close write-ahead log " + name, e);
+            }
+        }
+    }
+    
+    private boolean intervalSyncDue(long lastSync) {
+        return policy == FsyncPolicy.INTERVAL && written > synced
+                && System.nanoTime() - lastSync >= fsyncIntervalNanos;
+    }
+    
+    private void writeBuffers(List<ByteBuffer> buffers) throws IOException {
+        if (buffers.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+        long total = 0;
+        for (ByteBuffer buffer : array) {
+            total += buffer.remaining();
+        }
+        long remaining = total;
+        while (remaining > 0) {
+            remaining -= channel.write(array);
+        }
+        bytesWritten += total;
+        buffers.clear();
+    }
+    
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentFile(directory, name, number).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    
+    static File segmentFile(File directory, String name, long number) {
+        return new File(directory, name + "-" + String.format("%016d", number) + SUFFIX);
+    }
+    
+    /**
+     * Segment numbers present on disk, oldest first.
+     */
+    static List<Long> listSegments(File directory, String name) {
+        List<Long> segments = new ArrayList<>();
+        String prefix = name + "-";
+        String[] files = directory.list();
+        if (files != null) {
+            for (String file : files) {
+                if (file.startsWith(prefix) && file.endsWith(SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(file.substring(prefix.length(), file.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+    
+    /**
+     * Replays one segment. In the last segment a torn or corrupt record is what
+     * a crash mid-write leaves behind: it ends the replay and, since nothing
+     * after it can be trusted, the segment is truncated there. Older segments
+     * were forced and closed on rotation, so a bad record in one is corruption
+     * that truncating would silently turn into lost writes; that is an error.
+     *
+     * @param last whether this is the newest segment
+     * @return number of records replayed
+     */
+    static long replay(File file, boolean last, RecordVisitor visitor) throws IOException {
+        long records = 0;
+        long validLength = 0;
+        boolean torn = false;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 9 || length > MAX_RECORD) {
+                    torn = true;
+                    break;
+                }
+                byte[] body = new byte[length];
+                int checksum;
+                try {
+                    in.readFully(body);
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    torn = true;
+                    break;
+                }
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    torn = true;
+                    break;
+                }
+                
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                long sequence = record.readLong();
+                byte operation = record.readByte();
+                visitor.record(sequence, operation, record);
+                
+                records++;
+                validLength += 4 + length + 4;
+            }
+        }
+        
+        if (torn && !last) {
+            throw new IOException("Log segment " + file.getName() + " is corrupt at byte " + validLength
+                    + " but is not the last segment; refusing to drop the records after it");
+        }
+        if (torn) {
+            logger.warn("Truncating " + file.getName() + " at byte " + validLength + " after a torn or corrupt record");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return records;
+    }
+    
+    private static final class Rotation {
+        private volatile long segment;
+        private volatile boolean done;
+    }
+}
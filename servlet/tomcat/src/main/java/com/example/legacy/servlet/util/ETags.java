@@ -0,0 +1,55 @@
+package com.example.legacy.servlet.util;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Conditional GET support for responses identified by a data version.
+ *
+ * Tags are weak (W/"...") because CompressionFilter may gzip the same
+ * representation; the version says the content is equivalent, not that the
+ * bytes on the wire are identical.
+ */
+public final class ETags {
+    
+    private ETags() {
+    }
+    
+    public static String weak(String prefix, long version) {
+        return "W/\"" + prefix + "-" + version + "\"";
+    }
+    
+    /**
+     * Sets the ETag header and, if the client already has this version,
+     * answers 304 Not Modified.
+     *
+     * @return true if the response is complete and nothing else should be written
+     */
+    public static boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String etag) {
+        response.setHeader("ETag", etag);
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null || !matches(ifNoneMatch, etag)) {
+            return false;
+        }
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+    
+    /**
+     * Weak comparison as required for If-None-Match: the W/ prefix is ignored on both sides.
+     */
+    private static boolean matches(String header, String etag) {
+        String opaque = stripWeak(etag);
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || stripWeak(tag).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.legacy.servlet.util;
+
+import com.example.legacy.servlet.cache.BoundedCache;
+import com.example.legacy.servlet.cache.CacheManager;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * JsonBytesCache keeps the UTF-8 JSON encoding of immutable entities so hot
+ * read endpoints can write bytes instead of rebuilding JSONObjects:
+ * - An entry is only served for the exact instance it was encoded from, so a
+ *   replaced entity is re-encoded even if an invalidation was missed or raced
+ * - invalidate() drops the entry when the entity is written or removed
+ * - Entries live in a BoundedCache, so only the frequently read entities
+ *   stay encoded and memory is bounded however large the data set grows
+ * - writeArray() concatenates cached entries into a JSON array on the stream
+ */
+public class JsonBytesCache<K, V> {
+    
+    private static final byte[] COMMA = {','};
+    
+    private final Function<V, JSONObject> encoder;
+    private final BoundedCache<K, Encoded<V>> entries;
+    
+    /**
+     * @param maximumSize how many encoded entities to keep
+     */
+    public JsonBytesCache(Function<V, JSONObject> encoder, CacheManager caches, String name, long maximumSize) {
+        this.encoder = encoder;
+        this.entries = caches.create(name, BoundedCache.<K, Encoded<V>>builder().maximumSize(maximumSize));
+    }
+    
+    /**
+     * @return the encoded form of {@code value}, which must be the current entity for {@code key}
+     */
+    public byte[] get(K key, V value) {
+        Encoded<V> encoded = entries.getIfPresent(key);
+        if (encoded == null || encoded.value != value) {
+            encoded = new Encoded<>(value, encoder.apply(value).toString().getBytes(StandardCharsets.UTF_8));
+            // May be refused admission; the bytes are still good for this response
+            entries.put(key, encoded);
+        }
+        return encoded.bytes;
+    }
+    
+    public void invalidate(K key) {
+        entries.invalidate(key);
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Writes {@code [e1,e2,...]} using the cached encodings.
+     */
+    public void writeArray(Iterable<V> values, Function<V, K> keyOf, OutputStream out) throws IOException {
+        out.write('[');
+        boolean first = true;
+        for (V value : values) {
+            if (!first) {
+                out.write(COMMA);
+            }
+            out.write(get(keyOf.apply(value), value));
+            first = false;
+        }
+        out.write(']');
+    }
+    
+    private static final class Encoded<V> {
+        private final V value;
+        private final byte[] bytes;
+        
+        Encoded(V value, byte[] bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
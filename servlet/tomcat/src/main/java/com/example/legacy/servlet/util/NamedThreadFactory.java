@@ -0,0 +1,26 @@
+package com.example.legacy.servlet.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadFactory producing daemon threads named {@code <prefix>-<n>} so
+ * application threads are easy to spot in thread dumps and never block
+ * container shutdown.
+ */
+public class NamedThreadFactory implements ThreadFactory {
+    
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+    
+    public NamedThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+    
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,372 @@
+package com.example.legacy.servlet.warmup;
+
+import com.example.legacy.servlet.metrics.MetricsRegistry;
+import com.example.legacy.servlet.scheduler.TaskScheduler;
+import com.example.legacy.servlet.util.NamedThreadFactory;
+import org.apache.log4j.Logger;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WarmUp gets a freshly deployed node up to speed before it reports ready:
+ * - Replays a synthetic mix of read-only requests (login page, dashboard,
+ *   user and product listings, JSON details, gzip) against this node over
+ *   loopback, so they pass through the same filters, servlets and JSPs as
+ *   real traffic: JSPs are compiled, caches filled, hot paths JIT-compiled
+ * - Runs in rounds and measures each round's p99; the node is ready once the
+ *   p99 has settled (within a tolerance for several rounds in a row) or the
+ *   time limit is reached
+ * - Logs the time taken and the first (cold) round's latency, then the live
+ *   latency over the first metrics window after becoming ready
+ *
+ * The replay runs on its own thread rather than a scheduler worker, since it
+ * can take up to warmupMaxSeconds plus the connector wait. It waits for the
+ * connector to accept connections; until it has finished, ReadinessServlet
+ * answers 503. Logging in for the authenticated pages takes one attempt from
+ * the loopback address's login rate limit.
+ *
+ * Configured from context parameters (defaults in brackets):
+ * - warmupEnabled [true]
+ * - warmupBaseUrl: this node as seen from itself [http://127.0.0.1:8080 + context path]
+ * - warmupUsername / warmupPassword: account for the authenticated pages [none: login page only]
+ * - warmupRoundRequests: requests per round [200]
+ * - warmupStableRounds: consecutive settled rounds required [3]
+ * - warmupTolerancePercent: p99 change between rounds still counted as settled [10]
+ * - warmupMaxSeconds: report ready anyway after this long [120]
+ */
+public class WarmUp {
+    
+    private static final Logger logger = Logger.getLogger(WarmUp.class);
+    
+    public static final String CONTEXT_ATTRIBUTE = "warmUp";
+    
+    private static final long CONNECTOR_WAIT_MILLIS = 30000L;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    
+    // Sub-millisecond p99 swings are noise, whatever the ratio
+    private static final long SETTLED_FLOOR_NANOS = 1000000L;
+    
+    private final String baseUrl;
+    private final String username;
+    private final String password;
+    private final int roundRequests;
+    private final int stableRounds;
+    private final double tolerance;
+    private final long maxMillis;
+    
+    private final TaskScheduler scheduler;
+    private final MetricsRegistry registry;
+    
+    private volatile Thread thread;
+    private volatile boolean ready;
+    private volatile boolean stopped;
+    private volatile String status = "pending";
+    
+    private long coldP50Nanos;
+    private long coldP99Nanos;
+    
+    /**
+     * @param username null to warm only the pages that need no login
+     * @param registry for the first-window report; may be null
+     */
+    public WarmUp(String baseUrl, String username, String password, int roundRequests, int stableRounds,
+                  int tolerancePercent, long maxSeconds, TaskScheduler scheduler, MetricsRegistry registry) {
+        if (roundRequests < 1 || stableRounds < 1) {
+            throw new IllegalArgumentException("Warm-up rounds must have requests and need settled rounds");
+        }
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.username = username;
+        this.password = password;
+        this.roundRequests = roundRequests;
+        this.stableRounds = stableRounds;
+        this.tolerance = tolerancePercent / 100.0;
+        this.maxMillis = TimeUnit.SECONDS.toMillis(maxSeconds);
+        this.scheduler = scheduler;
+        this.registry = registry;
+    }
+    
+    /**
+     * A warm-up configured from context parameters, or null if warmupEnabled is false.
+     */
+    public static WarmUp fromContext(ServletContext context, TaskScheduler scheduler, MetricsRegistry registry) {
+        String enabled = context.getInitParameter("warmupEnabled");
+        if (enabled != null && !Boolean.parseBoolean(enabled.trim())) {
+            return null;
+        }
+        String baseUrl = context.getInitParameter("warmupBaseUrl");
+        String username = context.getInitParameter("warmupUsername");
+        return new WarmUp(
+                baseUrl != null && !baseUrl.trim().isEmpty() 
+                        ? baseUrl.trim() 
+                        : "http://127.0.0.1:8080" + context.getContextPath(),
+                username != null && !username.trim().isEmpty() ? username.trim() : null,
+                context.getInitParameter("warmupPassword"),
+                intParameter(context, "warmupRoundRequests", 200),
+                intParameter(context, "warmupStableRounds", 3),
+                intParameter(context, "warmupTolerancePercent", 10),
+                intParameter(context, "warmupMaxSeconds", 120),
+                scheduler, registry);
+    }
+    
+    private static int intParameter(ServletContext context, String name, int defaultValue) {
+        String value = context.getInitParameter(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+    
+    /**
+     * Starts the replay on its own thread; returns at once.
+     */
+    public void start() {
+        status = "waiting for connector";
+        thread = new NamedThreadFactory("warm-up").newThread(this::run);
+        thread.start();
+    }
+    
+    /**
+     * Ends a replay in progress after the current request (on shutdown) and
+     * waits for its thread, at most as long as one request may take.
+     */
+    public void stop() {
+        stopped = true;
+        Thread running = thread;
+        if (running == null) {
+            return;
+        }
+        running.interrupt();
+        try {
+            running.join(CONNECT_TIMEOUT_MILLIS + READ_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (running.isAlive()) {
+            logger.warn("Warm-up thread still in a request after stop; leaving it to time out");
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    private void run() {
+        long start = System.currentTimeMillis();
+        long requests = 0;
+        int rounds = 0;
+        long lastP99 = 0;
+        try {
+            if (!awaitConnector(start)) {
+                logger.warn("Warm-up: " + baseUrl + " not reachable after " + CONNECTOR_WAIT_MILLIS 
+                        + "ms; reporting ready without warming up");
+                return;
+            }
+            String cookies = login();
+            List<WarmUpRequest> mix = WarmUpRequest.mix(cookies != null);
+            
+            long[] samples = new long[roundRequests];
+            int settled = 0;
+            while (settled < stableRounds && !stopped && !Thread.currentThread().isInterrupted()) {
+                if (System.currentTimeMillis() - start > maxMillis) {
+                    logger.warn("Warm-up: p99 still moving after " + maxMillis / 1000 
+                            + "s (last round " + millis(lastP99) + " ms); reporting ready");
+                    break;
+                }
+                for (int i = 0; i < roundRequests && !stopped; i++) {
+                    samples[i] = send(mix.get(i % mix.size()), cookies);
+                    requests++;
+                }
+                if (stopped) {
+                    break;
+                }
+                rounds++;
+                
+                Arrays.sort(samples);
+                long p99 = samples[(int) Math.ceil(0.99 * roundRequests) - 1];
+                if (rounds == 1) {
+                    coldP50Nanos = samples[(roundRequests - 1) / 2];
+                    coldP99Nanos = p99;
+                } else if (Math.abs(p99 - lastP99) <= Math.max(SETTLED_FLOOR_NANOS, tolerance * lastP99)) {
+                    settled++;
+                } else {
+                    settled = 0;
+                }
+                lastP99 = p99;
+                status = "warming up: round " + rounds + ", p99 " + millis(p99) + " ms";
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Warm-up round " + rounds + ": p99 " + millis(p99) + " ms, settled " + settled);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Warm-up stopped after " + requests + " requests; reporting ready", e);
+        } finally {
+            ready = true;
+            status = "ready";
+        }
+        
+        logger.info("Warm-up finished in " + (System.currentTimeMillis() - start) + "ms: " + requests 
+                + " requests in " + rounds + " rounds, p99 " + millis(coldP99Nanos) + " ms cold, " 
+                + millis(lastP99) + " ms warm (cold p50 " + millis(coldP50Nanos) + " ms)");
+        if (registry != null && rounds > 0 && !stopped) {
+            try {
+                scheduler.scheduleOnce("warm-up-report", this::reportFirstWindow, 
+                        registry.getWindowSeconds(), TimeUnit.SECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+            }
+        }
+    }
+    
+    /**
+     * Live latency over the first metrics window after becoming ready, next to the cold round.
+     */
+    private void reportFirstWindow() {
+        long count = registry.windowCount();
+        if (count == 0) {
+            logger.info("First " + registry.getWindowSeconds() + "s after warm-up: no requests");
+            return;
+        }
+        logger.info("First " + registry.getWindowSeconds() + "s after warm-up: " + count + " requests, p50 " 
+                + millis(registry.windowQuantileNanos(0.5)) + " ms, p99 " 
+                + millis(registry.windowQuantileNanos(0.99)) + " ms (cold warm-up round: p50 " 
+                + millis(coldP50Nanos) + " ms, p99 " + millis(coldP99Nanos) + " ms)");
+    }
+    
+    /**
+     * Tomcat opens the connector only once every application has started.
+     */
+    private boolean awaitConnector(long start) throws IOException {
+        WarmUpRequest probe = WarmUpRequest.mix(false).get(0);
+        while (!stopped) {
+            try {
+                send(probe, null);
+                return true;
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() - start > CONNECTOR_WAIT_MILLIS) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return the cookies identifying the session or token, or null if there is no login
+     */
+    private String login() throws IOException {
+        if (username == null) {
+            logger.info("Warm-up: no warmupUsername; warming the login page only");
+            return null;
+        }
+        HttpURLConnection connection = open("/login");
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        String form = "username=" + URLEncoder.encode(username, "UTF-8") 
+                + "&password=" + URLEncoder.encode(password != null ? password : "", "UTF-8");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(form.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        drain(connection);
+        
+        // Header names are case-insensitive, the map's keys are not
+        List<String> cookies = new ArrayList<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (!"Set-Cookie".equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
+            for (String setCookie : header.getValue()) {
+                int end = setCookie.indexOf(';');
+                cookies.add(end < 0 ? setCookie : setCookie.substring(0, end));
+            }
+        }
+        // Success is a redirect to the dashboard
+        if (status != HttpURLConnection.HTTP_MOVED_TEMP || cookies.isEmpty()) {
+            logger.warn("Warm-up: login as " + username + " failed (status " + status 
+                    + "); warming the login page only");
+            return null;
+        }
+        return String.join("; ", cookies);
+    }
+    
+    /**
+     * @return the time to the last byte of the response, in nanoseconds
+     */
+    private long send(WarmUpRequest request, String cookies) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = open(request.getPath());
+        if (cookies != null) {
+            connection.setRequestProperty("Cookie", cookies);
+        }
+        if (request.getAccept() != null) {
+            connection.setRequestProperty("Accept", request.getAccept());
+        }
+        if (request.isCompressed()) {
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+        }
+        int status = connection.getResponseCode();
+        drain(connection);
+        if (status >= 500 && logger.isDebugEnabled()) {
+            logger.debug("Warm-up: " + request.getPath() + " answered " + status);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        return connection;
+    }
+    
+    /**
+     * Reads the body to the end so the connection goes back to the keep-alive pool.
+     */
+    private static void drain(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getErrorStream();
+        if (in == null) {
+            try {
+                in = connection.getInputStream();
+            } catch (IOException e) {
+                // No body
+                return;
+            }
+        }
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            while (body.read(buffer) >= 0) {
+                // discard
+            }
+        }
+    }
+    
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+    }
+}
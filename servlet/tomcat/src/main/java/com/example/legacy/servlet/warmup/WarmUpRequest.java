@@ -0,0 +1,52 @@
+package com.example.legacy.servlet.warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One request of the warm-up mix. Only GETs: replaying them changes nothing.
+ */
+final class WarmUpRequest {
+    
+    private final String path;
+    private final String accept;
+    private final boolean compressed;
+    
+    private WarmUpRequest(String path, String accept, boolean compressed) {
+        this.path = path;
+        this.accept = accept;
+        this.compressed = compressed;
+    }
+    
+    /**
+     * The replayed mix, roughly in the proportions of real traffic; the first
+     * entry needs no login.
+     */
+    static List<WarmUpRequest> mix(boolean authenticated) {
+        List<WarmUpRequest> mix = new ArrayList<>();
+        mix.add(new WarmUpRequest("/login", null, true));
+        if (authenticated) {
+            mix.add(new WarmUpRequest("/users/dashboard", null, true));
+            mix.add(new WarmUpRequest("/products/list", "application/json", true));
+            mix.add(new WarmUpRequest("/products/details/1", "application/json", false));
+            mix.add(new WarmUpRequest("/products/list?sort=price&inStock=true&size=50", "application/json", true));
+            mix.add(new WarmUpRequest("/products/details/2", "application/json", true));
+            mix.add(new WarmUpRequest("/users/list", "application/json", true));
+            mix.add(new WarmUpRequest("/products/list?page=0&size=100", "application/json", false));
+        }
+        return Collections.unmodifiableList(mix);
+    }
+    
+    String getPath() {
+        return path;
+    }
+    
+    String getAccept() {
+        return accept;
+    }
+    
+    boolean isCompressed() {
+        return compressed;
+    }
+}
@@ -1,4 +1,4 @@
-<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" session="false"%>
 <%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
 <!DOCTYPE html>
 <html>
@@ -13,8 +13,8 @@
         <header>
             <h1>User Dashboard</h1>
             <div class="user-info">
-                Welcome, <strong>${sessionScope.username}</strong> 
-                (Role: ${sessionScope.role})
+                Welcome, <strong>${username}</strong> 
+                (Role: ${role})
                 <a href="${pageContext.request.contextPath}/logout" class="btn-logout">Logout</a>
             </div>
         </header>
@@ -23,18 +23,18 @@
             <div class="stats-box">
                 <h2>Statistics</h2>
                 <p>Total Users: <strong>${userCount}</strong></p>
-                <p>Your Session ID: <strong>${pageContext.session.id}</strong></p>
-                <p>Session Created: <strong>${sessionScope.loginTime}</strong></p>
+                <p>Your Session ID: <strong>${pageContext.request.requestedSessionId}</strong></p>
+                <p>Session Created: <strong>${loginTime}</strong></p>
             </div>
             
             <div class="menu-box">
                 <h2>Quick Links</h2>
                 <ul>
                     <li><a href="${pageContext.request.contextPath}/users/list">View All Users (JSON)</a></li>
-                    <li><a href="${pageContext.request.contextPath}/users/profile/${sessionScope.username}">My Profile</a></li>
+                    <li><a href="${pageContext.request.contextPath}/users/profile/${username}">My Profile</a></li>
                     <li><a href="${pageContext.request.contextPath}/products/list">View Products</a></li>
                     <li><a href="${pageContext.request.contextPath}/export?type=csv">Export Data (CSV)</a></li>
-                    <c:if test="${sessionScope.role eq 'admin'}">
+                    <c:if test="${role eq 'admin'}">
                         <li><a href="${pageContext.request.contextPath}/admin">Admin Panel</a></li>
                     </c:if>
                 </ul>
@@ -45,7 +45,7 @@
                 <p>This page demonstrates traditional session-based state management:</p>
                 <ul>
                     <li>User info stored in HttpSession</li>
-                    <li>Session timeout: <%= session.getMaxInactiveInterval() %> seconds</li>
+                    <li>Session timeout: ${sessionTimeout} seconds</li>
                     <li>Stateful architecture</li>
                 </ul>
             </div>
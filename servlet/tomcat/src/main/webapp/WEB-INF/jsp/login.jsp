@@ -1,4 +1,4 @@
-<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" session="false"%>
 <%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
 <!DOCTYPE html>
 <html>
@@ -17,9 +17,6 @@
             <c:if test="${not empty error}">
                 <div class="error-message">
                     ${error}
-                    <c:if test="${not empty remainingAttempts}">
-                        <p>Remaining attempts: ${remainingAttempts}</p>
-                    </c:if>
                 </div>
             </c:if>
             
@@ -0,0 +1,119 @@
+package com.example.legacy.servlet;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.jasper.servlet.JasperInitializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first request for the login page after a deploy, in a fresh JVM and a
+ * fresh Tomcat work directory per fork:
+ * - lazy: Jasper's JspServlet translates and compiles login.jsp on that request
+ * - precompiled: /WEB-INF/jsp/login.jsp is mapped to the class JspC generated
+ *   at build time, as the packaged web.xml does
+ *
+ * The page is reached the way LoginServlet reaches it, by a forward from
+ * /login. Startup is not timed. Run "mvn compile" first so the precompiled
+ * classes are in target/classes.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=JspColdStartBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+@State(Scope.Benchmark)
+public class JspColdStartBenchmark {
+    
+    private static final String LOGIN_JSP = "/WEB-INF/jsp/login.jsp";
+    
+    @Param({"lazy", "precompiled"})
+    public String jsp;
+    
+    private Tomcat tomcat;
+    private File baseDir;
+    private String loginUrl;
+    
+    @Setup
+    public void startServer() throws Exception {
+        baseDir = new File("target/benchmark-data/jsp-" + jsp + "-" + System.nanoTime()).getAbsoluteFile();
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.getPath());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", new File("src/main/webapp").getAbsolutePath());
+        Tomcat.initWebappDefaults(context);
+        context.addServletContainerInitializer(new JasperInitializer(), null);
+        if ("precompiled".equals(jsp)) {
+            Tomcat.addServlet(context, "login_jsp", "org.apache.jsp.WEB_002dINF.jsp.login_jsp");
+            context.addServletMappingDecoded(LOGIN_JSP, "login_jsp");
+        }
+        Tomcat.addServlet(context, "login", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                    throws ServletException, IOException {
+                request.getRequestDispatcher(LOGIN_JSP).forward(request, response);
+            }
+        });
+        context.addServletMappingDecoded("/login", "login");
+        tomcat.getConnector();
+        tomcat.start();
+        loginUrl = "http://localhost:" + tomcat.getConnector().getLocalPort() + "/login";
+    }
+    
+    @TearDown
+    public void stopServer() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+        delete(baseDir);
+    }
+    
+    @Benchmark
+    public long firstRequest() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(loginUrl).openConnection();
+        if (conn.getResponseCode() != 200) {
+            throw new IllegalStateException("GET /login returned " + conn.getResponseCode());
+        }
+        long length = 0;
+        try (InputStream in = conn.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                length += n;
+            }
+        }
+        return length;
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.legacy.servlet;
+
+import com.example.legacy.servlet.auth.TokenService;
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LoginServlet in token mode on an embedded Tomcat with two connectors: a
+ * plain one and one that marks its requests secure, as a connector behind a
+ * TLS-terminating proxy does.
+ */
+public class LoginServletTest {
+    
+    private static Tomcat tomcat;
+    private static Connector secure;
+    
+    @BeforeClass
+    public static void startServer() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        secure = new Connector();
+        secure.setPort(0);
+        secure.setSecure(true);
+        secure.setScheme("https");
+        tomcat.getService().addConnector(secure);
+        
+        Context context = tomcat.addContext("", null);
+        context.getServletContext().setAttribute(TokenService.CONTEXT_ATTRIBUTE,
+                new TokenService(new byte[32], 1800, 16));
+        Tomcat.addServlet(context, "login", new LoginServlet());
+        context.addServletMappingDecoded("/login", "login");
+        tomcat.start();
+    }
+    
+    @AfterClass
+    public static void stopServer() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+    
+    @Test
+    public void tokenCookieIsSecureOverSecureConnections() throws IOException {
+        String cookie = login(secure.getLocalPort());
+        assertTrue(cookie, cookie.startsWith(TokenService.COOKIE_NAME + "="));
+        assertTrue(cookie, cookie.contains("Secure"));
+        assertTrue(cookie, cookie.contains("HttpOnly"));
+    }
+    
+    @Test
+    public void tokenCookieStaysUsableOverPlainHttp() throws IOException {
+        String cookie = login(tomcat.getConnector().getLocalPort());
+        assertTrue(cookie, cookie.contains("HttpOnly"));
+        assertFalse(cookie, cookie.contains("Secure"));
+    }
+    
+    private static String login(int port) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/login").openConnection();
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write("username=user&password=user123".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, conn.getResponseCode());
+        String cookie = conn.getHeaderField("Set-Cookie");
+        assertNotNull(cookie);
+        return cookie;
+    }
+}
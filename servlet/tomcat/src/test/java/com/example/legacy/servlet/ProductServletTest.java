@@ -0,0 +1,156 @@
+package com.example.legacy.servlet;
+
+import com.example.legacy.servlet.cache.BoundedCache;
+import com.example.legacy.servlet.cache.CacheManager;
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ProductServlet on an embedded Tomcat, with its store in a temporary directory
+ * and the seeded catalog.
+ */
+public class ProductServletTest {
+    
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+    
+    private static Tomcat tomcat;
+    private static String baseUrl;
+    private static BoundedCache<?, ?> pageCache;
+    
+    @BeforeClass
+    public static void startServer() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", null);
+        context.addParameter("storeDirectory", folder.getRoot().getAbsolutePath());
+        Wrapper products = Tomcat.addServlet(context, "products", new ProductServlet());
+        products.setLoadOnStartup(1);
+        context.addServletMappingDecoded("/products/*", "products");
+        tomcat.getConnector();
+        tomcat.start();
+        baseUrl = "http://localhost:" + tomcat.getConnector().getLocalPort() + "/products";
+        CacheManager caches = (CacheManager) context.getServletContext().getAttribute(CacheManager.CONTEXT_ATTRIBUTE);
+        for (BoundedCache<?, ?> cache : caches.getCaches()) {
+            if ("productPages".equals(cache.getName())) {
+                pageCache = cache;
+            }
+        }
+    }
+    
+    @AfterClass
+    public static void stopServer() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+    
+    @Test
+    public void detailsVaryOnAccept() throws IOException {
+        HttpURLConnection conn = get("/details/1", "application/json", null);
+        assertEquals(200, conn.getResponseCode());
+        assertTrue(conn.getHeaderField("Vary"), conn.getHeaderField("Vary").contains("Accept"));
+        assertTrue(body(conn).contains("\"name\":\"Laptop\""));
+    }
+    
+    @Test
+    public void detailsETagIsPerProduct() throws IOException {
+        String laptop = get("/details/1", "application/json", null).getHeaderField("ETag");
+        String mouse = get("/details/2", "application/json", null).getHeaderField("ETag");
+        assertNotNull(laptop);
+        assertNotEquals(laptop, mouse);
+        assertTrue(laptop, laptop.contains("product-1-json"));
+        
+        HttpURLConnection same = get("/details/1", "application/json", laptop);
+        assertEquals(304, same.getResponseCode());
+        assertTrue(same.getHeaderField("Vary").contains("Accept"));
+        assertEquals(200, get("/details/2", "application/json", laptop).getResponseCode());
+    }
+    
+    @Test(timeout = 10000)
+    public void hugePriceExponentsAreCheap() throws IOException {
+        HttpURLConnection above = get("?minPrice=1e999999999", null, null);
+        assertEquals(200, above.getResponseCode());
+        assertTrue(body(above).contains("\"totalElements\":0"));
+        HttpURLConnection below = get("?maxPrice=1e999999999&minPrice=-1e999999999", null, null);
+        assertEquals(200, below.getResponseCode());
+        assertTrue(body(below).contains("\"totalElements\":5"));
+    }
+    
+    @Test
+    public void equivalentListingsShareOnePageCacheEntry() throws IOException {
+        int before = pageCache.size();
+        String first = body(get("?minPrice=50&inStock=true&sort=price", null, null));
+        assertEquals(before + 1, pageCache.size());
+        
+        for (String spelling : new String[] {
+                "?sort=price&inStock=true&minPrice=50",
+                "?minPrice=50.00&inStock=TRUE&sort=PRICE&page=0",
+                "?minPrice=49.999&inStock=true&sort=price&_=1697500000",
+                "?minPrice=50&inStock=true&sort=price&size=10"}) {
+            HttpURLConnection conn = get(spelling, null, null);
+            assertEquals(spelling, 200, conn.getResponseCode());
+            assertEquals(spelling, first, body(conn));
+        }
+        assertEquals(before + 1, pageCache.size());
+        
+        body(get("?minPrice=50&inStock=true&sort=price&page=1", null, null));
+        assertEquals(before + 2, pageCache.size());
+    }
+    
+    @Test
+    public void sortParameterIsParsedIndependentlyOfTheDefaultLocale() throws IOException {
+        Locale original = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            for (String sort : new String[] {"id", "price", "stock"}) {
+                HttpURLConnection conn = get("?sort=" + sort, null, null);
+                assertEquals(sort, 200, conn.getResponseCode());
+            }
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+    
+    static HttpURLConnection get(String path, String accept, String ifNoneMatch) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        if (accept != null) {
+            conn.setRequestProperty("Accept", accept);
+        }
+        if (ifNoneMatch != null) {
+            conn.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        return conn;
+    }
+    
+    static String body(HttpURLConnection conn) throws IOException {
+        try (InputStream in = conn.getResponseCode() < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while (in != null && (n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), "UTF-8");
+        }
+    }
+}
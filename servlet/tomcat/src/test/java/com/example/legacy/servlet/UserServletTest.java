@@ -0,0 +1,96 @@
+package com.example.legacy.servlet;
+
+import com.example.legacy.servlet.auth.AuthenticatedUser;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.Filter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Creating users through UserServlet on an embedded Tomcat, as an admin
+ * SecurityFilter has already authenticated.
+ */
+public class UserServletTest {
+    
+    private static Tomcat tomcat;
+    
+    @BeforeClass
+    public static void startServer() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        
+        Context context = tomcat.addContext("", null);
+        context.addParameter("storeDirectory",
+                new File("target/user-servlet-test-" + System.nanoTime()).getAbsolutePath());
+        Filter admin = (request, response, chain) -> {
+            request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE,
+                    new AuthenticatedUser("admin", "admin", Long.MAX_VALUE));
+            chain.doFilter(request, response);
+        };
+        FilterDef def = new FilterDef();
+        def.setFilterName("admin");
+        def.setFilter(admin);
+        context.addFilterDef(def);
+        FilterMap map = new FilterMap();
+        map.setFilterName("admin");
+        map.addURLPatternDecoded("/*");
+        context.addFilterMap(map);
+        Tomcat.addServlet(context, "users", new UserServlet());
+        context.addServletMappingDecoded("/user/*", "users");
+        tomcat.start();
+    }
+    
+    @AfterClass
+    public static void stopServer() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+    
+    @Test
+    public void createsAUser() throws IOException {
+        assertEquals(200, post("username=jane&fullName=Jane%20Doe&email=jane%40example.com&role=user"));
+    }
+    
+    @Test
+    public void fieldsTooLongForTheStoreAreBadRequests() throws IOException {
+        String huge = URLEncoder.encode(repeat('€', 70000), "UTF-8");
+        assertEquals(400, post("username=big&fullName=" + huge));
+        assertEquals(400, post("username=" + repeat('x', 256)));
+        assertEquals(200, post("username=" + repeat('x', 255) + "&role=" + repeat('r', 255)));
+    }
+    
+    private static int post(String form) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(
+                "http://localhost:" + tomcat.getConnector().getLocalPort() + "/user/").openConnection();
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(form.getBytes(StandardCharsets.UTF_8));
+        }
+        return conn.getResponseCode();
+    }
+    
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.legacy.servlet.accesslog;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.RollingFileAppender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access logging cost per request on the request thread, writing to a
+ * rolling file under target/benchmark-data:
+ * - sync: what RequestLoggingFilter did before AccessLog, two String.format
+ *   messages per request through the application file appender's layout
+ *   (including %L location info); the console appender is left out
+ * - BLOCK: AccessLog.record with a lossless ring, so throughput is bounded
+ *   by the consumer thread writing the file
+ * - DROP: AccessLog.record discarding entries when the ring is full; the
+ *   share of dropped entries is printed at the end of the trial
+ *
+ * Run with -t 1 for a single request thread.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=AccessLogBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class AccessLogBenchmark {
+    
+    @Param({"sync", "BLOCK", "DROP"})
+    public String mode;
+    
+    private Logger sink;
+    private AccessLog accessLog;
+    
+    @Setup
+    public void openLog() throws IOException {
+        File directory = new File("target/benchmark-data");
+        directory.mkdirs();
+        File file = new File(directory, "access-" + mode.toLowerCase(Locale.ROOT) + ".log");
+        file.delete();
+        
+        sink = Logger.getLogger("benchmark.accesslog." + mode);
+        sink.setAdditivity(false);
+        sink.setLevel(Level.INFO);
+        String pattern = "sync".equals(mode) ? "%d{yyyy-MM-dd HH:mm:ss} %-5p %c{1}:%L - %m%n" : "%m%n";
+        RollingFileAppender appender = new RollingFileAppender(new PatternLayout(pattern), file.getPath());
+        appender.setMaxFileSize("50MB");
+        appender.setMaxBackupIndex(1);
+        sink.addAppender(appender);
+        
+        if (!"sync".equals(mode)) {
+            accessLog = new AccessLog(sink, 8192, OverflowPolicy.valueOf(mode), 1.0);
+        }
+    }
+    
+    @TearDown
+    public void closeLog() {
+        if (accessLog != null) {
+            accessLog.close();
+            long recorded = accessLog.getRecordedCount();
+            long dropped = accessLog.getDroppedCount();
+            System.out.printf("%nrecorded %d, dropped %d (%.1f%%)%n",
+                    recorded, dropped, 100.0 * dropped / Math.max(1L, recorded + dropped));
+        }
+        sink.removeAllAppenders();
+    }
+    
+    @Benchmark
+    public boolean request() {
+        long start = System.currentTimeMillis();
+        if (accessLog != null) {
+            return accessLog.record("GET", "/products", "page=2&sort=price", "10.0.0.1",
+                                    "Mozilla/5.0 (X11; Linux x86_64)", 200, start, 1500000L);
+        }
+        sink.info(String.format("Incoming request: %s %s from %s", "GET", "/products?page=2&sort=price", "10.0.0.1"));
+        sink.info(String.format("Completed: %s %s - Status: %d - Duration: %dms",
+                                "GET", "/products?page=2&sort=price", 200, System.currentTimeMillis() - start));
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.legacy.servlet.accesslog;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AccessLog's consumer thread: entries reach the sink promptly after an idle
+ * spell, close() drains, and an idle log does not keep waking the thread.
+ */
+public class AccessLogTest {
+    
+    private final CollectingAppender appender = new CollectingAppender();
+    private Logger sink;
+    private AccessLog log;
+    
+    @Before
+    public void createLog() {
+        sink = Logger.getLogger("test.accesslog." + System.nanoTime());
+        sink.setAdditivity(false);
+        sink.setLevel(Level.INFO);
+        sink.addAppender(appender);
+        log = new AccessLog(sink, 64, OverflowPolicy.BLOCK, 1.0);
+    }
+    
+    @After
+    public void closeLog() {
+        log.close();
+        sink.removeAllAppenders();
+    }
+    
+    @Test
+    public void recordsAfterIdleAreWrittenPromptly() throws InterruptedException {
+        Thread.sleep(200);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            record("/after-idle-" + round);
+            awaitLines(round + 1, 2000);
+            assertTrue("took " + (System.nanoTime() - start) / 1000000L + " ms",
+                    System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+            Thread.sleep(100);
+        }
+        assertTrue(appender.text().contains("GET /after-idle-2 200"));
+    }
+    
+    @Test
+    public void closeDrainsEverythingRecorded() {
+        for (int i = 0; i < 1000; i++) {
+            record("/drain/" + i);
+        }
+        log.close();
+        assertEquals(1000, appender.lineCount());
+        assertEquals(1000, log.getRecordedCount());
+        assertEquals(0, log.getDroppedCount());
+    }
+    
+    @Test
+    public void idleConsumerDoesNotSpin() throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Thread.sleep(100);
+        long consumer = consumerThreadId();
+        long before = threads.getThreadCpuTime(consumer);
+        Thread.sleep(1000);
+        long used = threads.getThreadCpuTime(consumer) - before;
+        // Parking every millisecond costs several ms of CPU per second here
+        assertTrue("idle consumer used " + used / 1000 + " us of CPU", used < TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    
+    private void record(String uri) {
+        log.record("GET", uri, null, "203.0.113.5", "test", 200, System.currentTimeMillis(), 1000000L);
+    }
+    
+    private void awaitLines(int lines, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (appender.lineCount() < lines && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(lines, appender.lineCount());
+    }
+    
+    private static long consumerThreadId() {
+        long id = -1;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            // The newest one; earlier tests' consumers may still be exiting
+            if ("access-log-writer".equals(thread.getName()) && thread.getId() > id) {
+                id = thread.getId();
+            }
+        }
+        assertTrue("no consumer thread", id >= 0);
+        return id;
+    }
+    
+    private static final class CollectingAppender extends AppenderSkeleton {
+        private final List<String> batches = new CopyOnWriteArrayList<>();
+        
+        @Override
+        protected void append(LoggingEvent event) {
+            batches.add(event.getRenderedMessage());
+        }
+        
+        int lineCount() {
+            int lines = 0;
+            for (String batch : batches) {
+                lines += batch.split(System.lineSeparator()).length;
+            }
+            return lines;
+        }
+        
+        String text() {
+            return String.join(System.lineSeparator(), batches);
+        }
+        
+        @Override
+        public void close() {
+        }
+        
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
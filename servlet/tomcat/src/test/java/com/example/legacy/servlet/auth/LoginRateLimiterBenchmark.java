@@ -0,0 +1,81 @@
+package com.example.legacy.servlet.auth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.ServletContext;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoginRateLimiter with its default settings under a credential-stuffing
+ * flood: 4 threads, every attempt a new username and client address, so
+ * each measurement iteration offers millions of distinct keys. Both maps
+ * fill to loginRateLimitMaxKeys and new keys then share the overflow bucket.
+ *
+ * After each iteration it prints the attempts so far, map sizes, overflow
+ * and rejection counts, heap used after a GC, and how many of 100 new
+ * legitimate users arriving during the flood may try once.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=LoginRateLimiterBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoginRateLimiterBenchmark {
+    
+    private final AtomicLong attempts = new AtomicLong();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private LoginRateLimiter limiter;
+    private long baselineHeap;
+    private int probes;
+    
+    @Setup(Level.Trial)
+    public void createLimiter() {
+        limiter = LoginRateLimiter.fromContext((ServletContext) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] {ServletContext.class}, (proxy, method, args) -> null));
+        System.gc();
+        baselineHeap = memory.getHeapMemoryUsage().getUsed();
+    }
+    
+    @TearDown(Level.Iteration)
+    public void report() {
+        System.gc();
+        long heap = memory.getHeapMemoryUsage().getUsed() - baselineHeap;
+        int allowed = 0;
+        for (int i = 0; i < 100; i++) {
+            if (limiter.tryAcquire("legit" + probes, "198.51." + (probes >>> 8 & 0xff) + "." + (probes & 0xff), 
+                                   System.currentTimeMillis()) == 0) {
+                allowed++;
+            }
+            probes++;
+        }
+        System.out.printf("%n%d attempts; %s; heap +%.1f MB; new users allowed: %d/100%n",
+                attempts.get(), limiter.describe(), heap / 1048576.0, allowed);
+    }
+    
+    @Benchmark
+    public long attempt() {
+        long n = attempts.incrementAndGet();
+        String address = ((n >>> 24) & 0xff) + "." + ((n >>> 16) & 0xff) + "." + ((n >>> 8) & 0xff) + "." + (n & 0xff);
+        return limiter.tryAcquire("user" + n, address, System.currentTimeMillis());
+    }
+}
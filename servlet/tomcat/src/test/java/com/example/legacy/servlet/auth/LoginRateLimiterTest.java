@@ -0,0 +1,69 @@
+package com.example.legacy.servlet.auth;
+
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * LoginRateLimiter configuration and the shared overflow bucket behind it.
+ */
+public class LoginRateLimiterTest {
+    
+    @Test
+    public void zeroOverflowRateIsRejectedClearly() {
+        for (String value : new String[] {"0", "-5"}) {
+            try {
+                LoginRateLimiter.fromContext(context("loginRateLimitOverflowPerSecond", value));
+                fail(value);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("loginRateLimitOverflowPerSecond"));
+            }
+        }
+    }
+    
+    @Test
+    public void defaultsApplyWithoutParameters() {
+        LoginRateLimiter limiter = LoginRateLimiter.fromContext(context());
+        assertEquals(0, limiter.tryAcquire("alice", "203.0.113.5", 1000));
+    }
+    
+    @Test
+    public void newKeysShareTheOverflowBucketWhileTheMapIsFull() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter("test", 5, 1000, 2, 3, 1000);
+        long now = 1000000;
+        assertEquals(0, limiter.tryAcquire("a", now));
+        assertEquals(0, limiter.tryAcquire("b", now));
+        
+        // The map is full and nothing is sweepable, so c, d and e draw on one
+        // shared budget of 3, and f is turned away having never tried before
+        assertEquals(0, limiter.tryAcquire("c", now));
+        assertEquals(0, limiter.tryAcquire("d", now));
+        assertEquals(0, limiter.tryAcquire("e", now));
+        assertTrue(limiter.tryAcquire("f", now) > 0);
+        assertEquals(4, limiter.getOverflowCount());
+        
+        // Keys with their own bucket are unaffected
+        assertEquals(0, limiter.tryAcquire("a", now));
+    }
+    
+    private static ServletContext context(String... parameters) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < parameters.length; i += 2) {
+            values.put(parameters[i], parameters[i + 1]);
+        }
+        return (ServletContext) Proxy.newProxyInstance(LoginRateLimiterTest.class.getClassLoader(),
+                new Class<?>[] {ServletContext.class}, (proxy, method, args) -> {
+                    if ("getInitParameter".equals(method.getName())) {
+                        return values.get(args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.legacy.servlet.auth;
+
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TokenServiceTest {
+    
+    private static final long NOW = 1700000000000L;
+    private static final long TTL_SECONDS = 1800;
+    
+    private final byte[] secret = secret((byte) 7);
+    private final TokenService tokens = new TokenService(secret, TTL_SECONDS, 16);
+    
+    @Test
+    public void issuedTokensVerify() {
+        AuthenticatedUser user = tokens.verify(tokens.issue("alice", "admin", NOW), NOW + 1000);
+        assertNotNull(user);
+        assertEquals("alice", user.getUsername());
+        assertEquals("admin", user.getRole());
+        assertEquals(NOW + TTL_SECONDS * 1000L, user.getExpiresAtMillis());
+    }
+    
+    @Test
+    public void usernamesMayContainTheSeparator() {
+        AuthenticatedUser user = tokens.verify(tokens.issue("a:b:c", "user", NOW), NOW);
+        assertEquals("a:b:c", user.getUsername());
+        assertEquals("user", user.getRole());
+    }
+    
+    @Test
+    public void tamperedSignatureIsRejected() {
+        String token = tokens.issue("alice", "user", NOW);
+        int dot = token.indexOf('.');
+        // Not the last character: its low bits are base64 padding and decode the same
+        int at = dot + 10;
+        String flipped = token.substring(0, at) + (token.charAt(at) == 'A' ? 'B' : 'A') + token.substring(at + 1);
+        assertNull(tokens.verify(flipped, NOW));
+        assertNull(tokens.verify(token.substring(0, dot + 1) + token.substring(dot + 2), NOW));
+        assertNull(tokens.verify(token.substring(0, dot + 1), NOW));
+    }
+    
+    @Test
+    public void tamperedPayloadIsRejected() {
+        String token = tokens.issue("alice", "user", NOW);
+        String signature = token.substring(token.indexOf('.'));
+        String forged = encode((NOW + TTL_SECONDS * 1000L) + ":admin:alice") + signature;
+        assertNull(tokens.verify(forged, NOW));
+    }
+    
+    @Test
+    public void tokensFromAnotherKeyAreRejected() {
+        TokenService other = new TokenService(secret((byte) 8), TTL_SECONDS, 16);
+        assertNull(tokens.verify(other.issue("alice", "admin", NOW), NOW));
+    }
+    
+    @Test
+    public void tokensExpireAfterTheTtl() {
+        String token = tokens.issue("alice", "user", NOW);
+        long expiresAt = NOW + TTL_SECONDS * 1000L;
+        assertNull(tokens.verify(token, expiresAt));
+        assertNotNull(tokens.verify(token, expiresAt - 1));
+    }
+    
+    @Test
+    public void cachedTokensStillExpire() {
+        String token = tokens.issue("alice", "user", NOW);
+        long expiresAt = NOW + TTL_SECONDS * 1000L;
+        assertNotNull(tokens.verify(token, NOW));
+        assertNull(tokens.verify(token, expiresAt));
+        assertNull(tokens.verify(token, expiresAt + 1));
+    }
+    
+    @Test
+    public void malformedTokensAreRejected() {
+        for (String token : new String[] {"", ".", "abc", "abc.", ".abc", "!!!.!!!", "a.b.c", "YWxpY2U.%%%"}) {
+            assertNull(token, tokens.verify(token, NOW));
+        }
+    }
+    
+    @Test
+    public void correctlySignedButMalformedPayloadsAreRejected() throws Exception {
+        for (String payload : new String[] {"no separators", "123:onlyone", "soon:user:alice", ":user:alice"}) {
+            assertNull(payload, tokens.verify(signed(payload), NOW));
+        }
+        // The hand-made signature itself is what the service expects
+        assertNotNull(tokens.verify(signed((NOW + 1000) + ":user:alice"), NOW));
+    }
+    
+    @Test
+    public void shortSecretsAreRefused() {
+        try {
+            new TokenService(new byte[31], TTL_SECONDS, 16);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+    
+    private String signed(String payload) throws Exception {
+        String encoded = encode(payload);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+        byte[] signature = mac.doFinal(encoded.getBytes(StandardCharsets.US_ASCII));
+        return encoded + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+    
+    private static String encode(String payload) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static byte[] secret(byte fill) {
+        byte[] secret = new byte[32];
+        Arrays.fill(secret, fill);
+        return secret;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.legacy.servlet.auth;
+
+import com.example.legacy.servlet.session.OffHeapSessionStore;
+import com.example.legacy.servlet.session.SessionRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of resolving the caller, 1000 logged-in users picked at
+ * random:
+ * - sessionMap: a ConcurrentHashMap from session ID to identity, like the
+ *   container's in-memory session manager
+ * - offHeapSession: OffHeapSessionStore.get, which decodes the record
+ * - tokenCached: TokenService.verify with the verified-token cache warm
+ * - tokenFull: TokenService.verify with a one-entry cache, so nearly every
+ *   call decodes the token and computes the HMAC
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=TokenVerifyBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenVerifyBenchmark {
+    
+    private static final int USERS = 1000;
+    
+    private final Map<String, AuthenticatedUser> sessions = new ConcurrentHashMap<>();
+    private String[] sessionIds;
+    private OffHeapSessionStore offHeap;
+    private String[] offHeapIds;
+    private TokenService cached;
+    private TokenService uncached;
+    private String[] tokens;
+    private long now;
+    
+    @Setup
+    public void login() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        cached = new TokenService(secret, 1800, 4096);
+        uncached = new TokenService(secret, 1800, 1);
+        offHeap = new OffHeapSessionStore(USERS * 2, 256, 1800);
+        now = System.currentTimeMillis();
+        
+        sessionIds = new String[USERS];
+        offHeapIds = new String[USERS];
+        tokens = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            String username = "user" + i;
+            sessionIds[i] = Long.toHexString(ThreadLocalRandom.current().nextLong())
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong());
+            sessions.put(sessionIds[i], new AuthenticatedUser(username, "user", Long.MAX_VALUE));
+            offHeapIds[i] = offHeap.create(SessionRecord.login(username, "user", now), now);
+            tokens[i] = cached.issue(username, "user", now);
+            cached.verify(tokens[i], now);
+        }
+    }
+    
+    @Benchmark
+    public AuthenticatedUser sessionMap() {
+        return sessions.get(sessionIds[ThreadLocalRandom.current().nextInt(USERS)]);
+    }
+    
+    @Benchmark
+    public SessionRecord offHeapSession() {
+        return offHeap.get(offHeapIds[ThreadLocalRandom.current().nextInt(USERS)], now);
+    }
+    
+    @Benchmark
+    public AuthenticatedUser tokenCached() {
+        return cached.verify(tokens[ThreadLocalRandom.current().nextInt(USERS)], now);
+    }
+    
+    @Benchmark
+    public AuthenticatedUser tokenFull() {
+        return uncached.verify(tokens[ThreadLocalRandom.current().nextInt(USERS)], now);
+    }
+}
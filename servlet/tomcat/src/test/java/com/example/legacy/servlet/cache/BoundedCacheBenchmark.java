@@ -0,0 +1,149 @@
+package com.example.legacy.servlet.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a read-through cache of 10k entries over 100k Zipf-distributed
+ * keys (get, put on a miss), as ProductServlet's caches are used:
+ * - boundedCache: BoundedCache, lock-free reads and striped writes
+ * - synchronizedLru: an access-ordered LinkedHashMap behind
+ *   Collections.synchronizedMap, so every read takes the one lock to move
+ *   the entry to the tail
+ *
+ * Runs on 16 threads; pass -t to compare thread counts. Setup also prints
+ * each cache's hit rate over one single-threaded pass of the key stream,
+ * since a faster cache that misses more is no win.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=BoundedCacheBenchmark -Djmh.args="-t 64"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class BoundedCacheBenchmark {
+    
+    private static final int CAPACITY = 10000;
+    private static final int KEYS = 100000;
+    private static final int SAMPLES = 1 << 20;
+    
+    private int[] samples;
+    private BoundedCache<Integer, Integer> boundedCache;
+    private Map<Integer, Integer> synchronizedLru;
+    
+    @Setup(Level.Trial)
+    public void createCaches() {
+        samples = zipf(new Random(42), KEYS, SAMPLES);
+        boundedCache = BoundedCache.<Integer, Integer>builder().maximumSize(CAPACITY).build("benchmark", null);
+        synchronizedLru = Collections.synchronizedMap(new LinkedHashMap<Integer, Integer>(CAPACITY * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                return size() > CAPACITY;
+            }
+        });
+        
+        // The first pass fills the caches, the second is counted
+        int boundedHits = 0;
+        int lruHits = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            boundedHits = 0;
+            lruHits = 0;
+            for (int key : samples) {
+                if (boundedCache.getIfPresent(key) != null) {
+                    boundedHits++;
+                } else {
+                    boundedCache.put(key, key);
+                }
+                if (synchronizedLru.get(key) != null) {
+                    lruHits++;
+                } else {
+                    synchronizedLru.put(key, key);
+                }
+            }
+        }
+        System.out.printf("%nhit rate: boundedCache %.1f%%, synchronizedLru %.1f%%%n",
+                boundedHits * 100.0 / SAMPLES, lruHits * 100.0 / SAMPLES);
+    }
+    
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        
+        @Setup(Level.Trial)
+        public void start() {
+            next = new Random().nextInt(SAMPLES);
+        }
+    }
+    
+    @Benchmark
+    public Integer boundedCache(Cursor cursor) {
+        Integer key = samples[cursor.next++ & (SAMPLES - 1)];
+        Integer value = boundedCache.getIfPresent(key);
+        if (value == null) {
+            value = key;
+            boundedCache.put(key, value);
+        }
+        return value;
+    }
+    
+    @Benchmark
+    public Integer synchronizedLru(Cursor cursor) {
+        Integer key = samples[cursor.next++ & (SAMPLES - 1)];
+        Integer value = synchronizedLru.get(key);
+        if (value == null) {
+            value = key;
+            synchronizedLru.put(key, value);
+        }
+        return value;
+    }
+    
+    /**
+     * Keys 0..n-1 drawn with probability proportional to 1/(rank+1), ranks
+     * scattered over the key space so hot keys don't share stripes by construction.
+     */
+    static int[] zipf(Random random, int n, int count) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        int[] samples = new int[count];
+        for (int i = 0; i < count; i++) {
+            double target = random.nextDouble() * sum;
+            int lo = 0;
+            int hi = n - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cumulative[mid] < target) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            samples[i] = (int) ((lo * 0x9E3779B1L) % n);
+        }
+        return samples;
+    }
+}
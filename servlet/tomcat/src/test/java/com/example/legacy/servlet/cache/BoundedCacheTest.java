@@ -0,0 +1,125 @@
+package com.example.legacy.servlet.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BoundedCache eviction and admission. Maximum weights below 32 give a single
+ * stripe, so victim order is the clock order of the entries put.
+ */
+public class BoundedCacheTest {
+    
+    @Test
+    public void rejectedKeyEvictsNothing() {
+        BoundedCache<String, byte[]> cache = weighted(30);
+        cache.put("cold", new byte[10]);
+        cache.put("hot1", new byte[10]);
+        cache.put("hot2", new byte[10]);
+        for (int i = 0; i < 10; i++) {
+            cache.getIfPresent("hot1");
+            cache.getIfPresent("hot2");
+        }
+        // More popular than "cold" but not than the hot entries it would also have to evict
+        for (int i = 0; i < 3; i++) {
+            cache.getIfPresent("big");
+        }
+        
+        cache.put("big", new byte[25]);
+        
+        assertNull(cache.getIfPresent("big"));
+        assertEquals(3, cache.size());
+        assertEquals(30, cache.weightedSize());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(1, cache.getRejectionCount());
+        assertNotNull(cache.getIfPresent("cold"));
+    }
+    
+    @Test
+    public void admittedKeyEvictsEveryVictimItNeeds() {
+        BoundedCache<String, byte[]> cache = weighted(30);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.put("c", new byte[10]);
+        for (int i = 0; i < 5; i++) {
+            cache.getIfPresent("big");
+        }
+        
+        cache.put("big", new byte[25]);
+        
+        assertNotNull(cache.getIfPresent("big"));
+        assertEquals(1, cache.size());
+        assertEquals(25, cache.weightedSize());
+        assertEquals(3, cache.getEvictionCount());
+    }
+    
+    @Test
+    public void updatesAreAlwaysAdmitted() {
+        BoundedCache<String, byte[]> cache = weighted(30);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.put("c", new byte[10]);
+        for (int i = 0; i < 10; i++) {
+            cache.getIfPresent("b");
+            cache.getIfPresent("c");
+        }
+        
+        cache.put("a", new byte[20]);
+        
+        assertArrayEquals(new byte[20], cache.getIfPresent("a"));
+        assertTrue(cache.weightedSize() <= 30);
+        assertEquals(0, cache.getRejectionCount());
+    }
+    
+    @Test
+    public void weightStaysBoundedUnderConcurrentWriters() throws InterruptedException {
+        BoundedCache<Integer, byte[]> cache = BoundedCache.<Integer, byte[]>builder()
+                .maximumWeight(10000, (key, value) -> value.length)
+                .build("concurrent", null);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 50000; i++) {
+                    int key = (int) Math.abs(random.nextGaussian() * 500);
+                    if (cache.getIfPresent(key) == null) {
+                        cache.put(key, new byte[1 + key % 50]);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertTrue(cache.weightedSize() <= 10000);
+        long weight = 0;
+        int present = 0;
+        for (int key = 0; key < 5000; key++) {
+            byte[] value = cache.getIfPresent(key);
+            if (value != null) {
+                assertEquals(1 + key % 50, value.length);
+                weight += value.length;
+                present++;
+            }
+        }
+        assertEquals(cache.size(), present);
+        assertEquals(cache.weightedSize(), weight);
+    }
+    
+    private static BoundedCache<String, byte[]> weighted(long maximumWeight) {
+        return BoundedCache.<String, byte[]>builder()
+                .maximumWeight(maximumWeight, (key, value) -> value.length)
+                .build("test", null);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.legacy.servlet.catalog;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-point prices against the BigDecimal path they replaced, over 1024
+ * random prices from 0.00 to 9999.99 (a quarter of them whole amounts):
+ * - render*: the JSON number text of one price, Money.appendNumber into a
+ *   reused StringBuilder vs JSONObject.numberToString of the BigDecimal
+ * - filter*: how many prices fall in a 10.00-500.00 range, comparing
+ *   longs vs BigDecimal.compareTo, as the catalog's range bounds did
+ *
+ * Setup checks that both renderings agree on every price. Add -prof gc
+ * for the allocation per operation.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=MoneyBenchmark -Djmh.args="-prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+    
+    private static final int PRICES = 1024;
+    
+    private final long[] cents = new long[PRICES];
+    private final BigDecimal[] decimals = new BigDecimal[PRICES];
+    private final StringBuilder out = new StringBuilder(32);
+    private final long minCents = 1000;
+    private final long maxCents = 50000;
+    private final BigDecimal minDecimal = new BigDecimal("10.00");
+    private final BigDecimal maxDecimal = new BigDecimal("500.00");
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void createPrices() {
+        Random random = new Random(42);
+        for (int i = 0; i < PRICES; i++) {
+            long price = random.nextInt(1000000);
+            if (i % 4 == 0) {
+                price -= price % 100;
+            }
+            cents[i] = price;
+            decimals[i] = Money.toBigDecimal(price);
+            String fixed = Money.format(price);
+            String json = JSONObject.numberToString(decimals[i]);
+            if (!fixed.equals(json)) {
+                throw new IllegalStateException(fixed + " != " + json);
+            }
+        }
+    }
+    
+    @Benchmark
+    public int renderMoney() {
+        out.setLength(0);
+        return Money.appendNumber(cents[next++ & (PRICES - 1)], out).length();
+    }
+    
+    @Benchmark
+    public int renderBigDecimal() {
+        return JSONObject.numberToString(decimals[next++ & (PRICES - 1)]).length();
+    }
+    
+    @Benchmark
+    public int filterMoney() {
+        int matches = 0;
+        for (long price : cents) {
+            if (price >= minCents && price <= maxCents) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+    
+    @Benchmark
+    public int filterBigDecimal() {
+        int matches = 0;
+        for (BigDecimal price : decimals) {
+            if (price.compareTo(minDecimal) >= 0 && price.compareTo(maxDecimal) <= 0) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.legacy.servlet.catalog;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Money conversions, including amounts whose exponent alone puts them far
+ * outside the long range; those must be answered without building the number.
+ */
+public class MoneyTest {
+    
+    @Test
+    public void roundsBoundsInwards() {
+        assertEquals(1000, Money.ceilMinorUnits(new BigDecimal("9.999")));
+        assertEquals(999, Money.floorMinorUnits(new BigDecimal("9.999")));
+        assertEquals(-999, Money.ceilMinorUnits(new BigDecimal("-9.999")));
+        assertEquals(-1000, Money.floorMinorUnits(new BigDecimal("-9.999")));
+        assertEquals(1, Money.ceilMinorUnits(new BigDecimal("0.001")));
+        assertEquals(0, Money.floorMinorUnits(new BigDecimal("0.001")));
+        assertEquals(0, Money.ceilMinorUnits(new BigDecimal("-0.001")));
+        assertEquals(-1, Money.floorMinorUnits(new BigDecimal("-0.001")));
+    }
+    
+    @Test
+    public void clampsAtTheLongRange() {
+        assertEquals(Long.MAX_VALUE, Money.floorMinorUnits(new BigDecimal("92233720368547758.08")));
+        assertEquals(Long.MAX_VALUE - 1, Money.floorMinorUnits(new BigDecimal("92233720368547758.06")));
+        assertEquals(Long.MIN_VALUE, Money.ceilMinorUnits(new BigDecimal("-92233720368547758.09")));
+        assertEquals(Long.MAX_VALUE, Money.ceilMinorUnits(new BigDecimal("1e17")));
+    }
+    
+    @Test(timeout = 5000)
+    public void hugeExponentsClampWithoutExpanding() {
+        assertEquals(Long.MAX_VALUE, Money.ceilMinorUnits(new BigDecimal("1e999999999")));
+        assertEquals(Long.MIN_VALUE, Money.floorMinorUnits(new BigDecimal("-1e999999999")));
+        assertEquals(1, Money.ceilMinorUnits(new BigDecimal("1e-999999999")));
+        assertEquals(0, Money.floorMinorUnits(new BigDecimal("1e-999999999")));
+        assertEquals(-1, Money.floorMinorUnits(new BigDecimal("-1e-999999999")));
+        assertEquals(0, Money.ceilMinorUnits(new BigDecimal("0e999999999")));
+        assertEquals(0, Money.floorMinorUnits(new BigDecimal("0e-999999999")));
+    }
+    
+    @Test(timeout = 5000)
+    public void hugeExponentsDoNotParse() {
+        for (String amount : new String[] {"1e999999999", "-1e999999999", "1e-999999999", "100000000000000000"}) {
+            try {
+                Money.parse(amount);
+                fail(amount);
+            } catch (ArithmeticException e) {
+                // expected
+            }
+        }
+        assertEquals(0, Money.parse("0e999999999"));
+        assertEquals(123450, Money.parse("1234.5"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.legacy.servlet.catalog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a page-numbered listing with both filters (inStock=true and a
+ * price range covering about half the catalog), from 10^3 to 10^7 products:
+ * - count: ProductCatalog.count alone, which ProductServlet runs for
+ *   totalElements on every offset page
+ * - listing: offsetPage for the first page of 20 plus count, as one request
+ *
+ * A third of the products are out of stock. 10^7 products need a few GB of heap.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=ProductCatalogCountBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ProductCatalogCountBenchmark {
+    
+    private static final int PAGE_SIZE = 20;
+    
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int products;
+    
+    private ProductCatalog catalog;
+    private ProductQuery query;
+    
+    @Setup(Level.Trial)
+    public void build() {
+        Random random = new Random(42);
+        List<Product> source = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            source.add(new Product((long) i, "Product", "", 100 + random.nextInt(100000),
+                    random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(100)));
+        }
+        catalog = new ProductCatalog(source, 1);
+        query = new ProductQuery(25000, 75000, true, ProductQuery.Sort.ID);
+    }
+    
+    @Benchmark
+    public int count() {
+        return catalog.count(query);
+    }
+    
+    @Benchmark
+    public int listing() {
+        return catalog.offsetPage(query, 0, PAGE_SIZE).getProducts().size() + catalog.count(query);
+    }
+}
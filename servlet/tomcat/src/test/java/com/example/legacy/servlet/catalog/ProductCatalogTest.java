@@ -0,0 +1,105 @@
+package com.example.legacy.servlet.catalog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ProductCatalog counts and pages checked against a linear filter over the same products.
+ */
+public class ProductCatalogTest {
+    
+    @Test
+    public void countMatchesLinearFilter() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            List<Product> products = randomProducts(random, random.nextInt(500));
+            ProductCatalog catalog = new ProductCatalog(products, round);
+            for (int q = 0; q < 200; q++) {
+                ProductQuery query = randomQuery(random);
+                assertEquals(describe(query), expectedCount(products, query), catalog.count(query));
+            }
+        }
+    }
+    
+    @Test
+    public void countAgreesWithPages() {
+        Random random = new Random(7);
+        List<Product> products = randomProducts(random, 1000);
+        ProductCatalog catalog = new ProductCatalog(products, 1);
+        for (int q = 0; q < 50; q++) {
+            ProductQuery query = randomQuery(random);
+            int listed = 0;
+            CatalogCursor cursor = null;
+            do {
+                ProductCatalog.Page page = catalog.page(query, cursor, 37);
+                listed += page.getProducts().size();
+                cursor = page.getNext();
+            } while (cursor != null);
+            assertEquals(describe(query), catalog.count(query), listed);
+        }
+    }
+    
+    @Test
+    public void invertedPriceRangeCountsNothing() {
+        List<Product> products = randomProducts(new Random(1), 100);
+        ProductCatalog catalog = new ProductCatalog(products, 1);
+        assertEquals(0, catalog.count(new ProductQuery(5000, 1000, true, ProductQuery.Sort.ID)));
+        assertEquals(0, catalog.count(new ProductQuery(5000, 1000, false, ProductQuery.Sort.ID)));
+    }
+    
+    @Test
+    public void cursorsRoundTripUnderATurkishDefaultLocale() {
+        Locale original = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            Product last = new Product(7L, "p7", "", 1999L, 3);
+            for (ProductQuery.Sort sort : ProductQuery.Sort.values()) {
+                CatalogCursor cursor = CatalogCursor.decode(CatalogCursor.after(sort, last).encode());
+                assertEquals(sort, cursor.getSort());
+                assertEquals(7L, cursor.getId());
+            }
+            assertEquals(1999L, CatalogCursor.decode(CatalogCursor.after(ProductQuery.Sort.PRICE, last).encode())
+                    .getPriceCents());
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+    
+    private static List<Product> randomProducts(Random random, int n) {
+        List<Product> products = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // Few distinct prices and many zero stocks, so ties and both filters matter
+            products.add(new Product((long) i * 3 + random.nextInt(3), "p" + i, "",
+                    random.nextInt(50) * 100L, random.nextInt(3) == 0 ? 0 : random.nextInt(10)));
+        }
+        return products;
+    }
+    
+    private static ProductQuery randomQuery(Random random) {
+        long min = random.nextBoolean() ? ProductQuery.NO_MIN_PRICE : random.nextInt(5200) - 100;
+        long max = random.nextBoolean() ? ProductQuery.NO_MAX_PRICE : random.nextInt(5200) - 100;
+        ProductQuery.Sort[] sorts = ProductQuery.Sort.values();
+        return new ProductQuery(min, max, random.nextBoolean(), sorts[random.nextInt(sorts.length)]);
+    }
+    
+    private static int expectedCount(List<Product> products, ProductQuery query) {
+        int count = 0;
+        for (Product product : products) {
+            if (query.matches(product)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static String describe(ProductQuery query) {
+        return "min=" + query.getMinPriceCents() + " max=" + query.getMaxPriceCents()
+                + " inStock=" + query.isInStockOnly() + " sort=" + query.getSort();
+    }
+}
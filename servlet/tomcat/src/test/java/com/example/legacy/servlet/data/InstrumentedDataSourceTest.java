@@ -0,0 +1,127 @@
+package com.example.legacy.servlet.data;
+
+import org.apache.tomcat.dbcp.dbcp2.BasicDataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * InstrumentedDataSource over a DBCP pool: the pool figures it reads
+ * reflectively, borrow and hold tracking, and the startup warm-up.
+ */
+public class InstrumentedDataSourceTest {
+    
+    private BasicDataSource pool;
+    
+    @Before
+    public void createPool() {
+        pool = new BasicDataSource();
+        pool.setDriverClassName("org.h2.Driver");
+        pool.setUrl("jdbc:h2:mem:instrumented;DB_CLOSE_DELAY=-1");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setMaxTotal(3);
+        pool.setMinIdle(1);
+        pool.setValidationQueryTimeout(Duration.ofSeconds(4));
+        pool.setMaxWait(Duration.ofMillis(200));
+    }
+    
+    @After
+    public void closePool() throws SQLException {
+        pool.close();
+    }
+    
+    @Test
+    public void readsPoolSettingsAndCountsReflectively() throws SQLException {
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, 1000);
+        assertEquals(3, dataSource.getPoolMaxTotal());
+        assertEquals(1, dataSource.getPoolMinIdle());
+        assertEquals(4, dataSource.getPoolValidationTimeout());
+        
+        try (Connection first = dataSource.getConnection();
+             Connection second = dataSource.getConnection()) {
+            assertEquals(2, dataSource.getPoolActive());
+            assertEquals(2, dataSource.getActiveCount());
+        }
+        assertEquals(0, dataSource.getPoolActive());
+        assertEquals(2, dataSource.getPoolIdle());
+        assertEquals(0, dataSource.getActiveCount());
+        assertEquals(2, dataSource.getPeakActiveCount());
+        assertEquals(2, dataSource.getBorrowCount());
+    }
+    
+    @Test
+    public void plainDataSourcesReportUnknownPoolFigures() throws SQLException {
+        JdbcDataSource plain = new JdbcDataSource();
+        plain.setURL("jdbc:h2:mem:instrumentedPlain");
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(plain, 1000);
+        
+        assertEquals(-1, dataSource.getPoolActive());
+        assertEquals(-1, dataSource.getPoolIdle());
+        assertEquals(-1, dataSource.getPoolMaxTotal());
+        assertEquals(-1, dataSource.getPoolMinIdle());
+        assertEquals(-1, dataSource.getPoolValidationTimeout());
+        try (Connection connection = dataSource.getConnection()) {
+            assertEquals(1, dataSource.getActiveCount());
+        }
+        assertTrue(dataSource.describe(), dataSource.describe().contains("pool[active=-1 idle=-1 maxTotal=-1]"));
+    }
+    
+    @Test
+    public void closingTwiceReleasesOnce() throws SQLException {
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, 1000);
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        connection.close();
+        
+        assertEquals(0, dataSource.getActiveCount());
+        assertEquals(0, dataSource.getPoolActive());
+    }
+    
+    @Test
+    public void warmUpLeavesValidatedConnectionsIdle() {
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, 1000);
+        
+        assertEquals(3, dataSource.warmUp(3, 1));
+        
+        assertEquals(3, dataSource.getPoolIdle());
+        assertEquals(0, dataSource.getPoolActive());
+        assertEquals(3, dataSource.getValidationCount());
+        assertEquals(0, dataSource.getValidationFailures());
+        assertEquals(0, dataSource.getBorrowCount());
+        assertEquals(0, dataSource.getActiveCount());
+    }
+    
+    @Test
+    public void warmUpBeyondMaxTotalStopsAndReturnsWhatItOpened() {
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, 1000);
+        
+        assertEquals(3, dataSource.warmUp(5, 1));
+        
+        assertEquals(0, dataSource.getPoolActive());
+        assertEquals(3, dataSource.getPoolIdle());
+        assertEquals(3, dataSource.getValidationCount());
+    }
+    
+    @Test
+    public void invalidConnectionsAreCountedAsFailures() throws SQLException {
+        InstrumentedDataSource dataSource = new InstrumentedDataSource(pool, 1000);
+        try (Connection connection = dataSource.getConnection()) {
+            Connection closed = pool.getConnection();
+            closed.close();
+            assertFalse(dataSource.validate(closed, 1));
+            assertTrue(dataSource.validate(connection, 1));
+        }
+        assertEquals(2, dataSource.getValidationCount());
+        assertEquals(1, dataSource.getValidationFailures());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.legacy.servlet.data;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SchemaBootstrapTest {
+    
+    @Test
+    public void retryRunsAgainAfterAFailedBootstrap() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:bootstrapRetry;DB_CLOSE_DELAY=-1");
+        AtomicBoolean down = new AtomicBoolean(true);
+        SchemaBootstrap bootstrap = new SchemaBootstrap(failingWhile(down, h2));
+        
+        try {
+            bootstrap.run();
+            fail("Bootstrap should fail while the database is down");
+        } catch (SQLException expected) {
+            assertFalse(bootstrap.isReady());
+        }
+        
+        down.set(false);
+        assertTrue(bootstrap.retry());
+        assertTrue(bootstrap.isReady());
+        assertEquals(2, bootstrap.getSchemaVersion());
+    }
+    
+    @Test
+    public void retriesAreThrottled() {
+        AtomicBoolean down = new AtomicBoolean(true);
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:bootstrapThrottle;DB_CLOSE_DELAY=-1");
+        SchemaBootstrap bootstrap = new SchemaBootstrap(failingWhile(down, h2));
+        
+        assertFalse(bootstrap.retry());
+        down.set(false);
+        // Within the retry interval the failed attempt is not repeated
+        assertFalse(bootstrap.retry());
+        assertFalse(bootstrap.isReady());
+    }
+    
+    private static DataSource failingWhile(AtomicBoolean down, DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), 
+                new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getConnection") && down.get()) {
+                        throw new SQLException("Database down");
+                    }
+                    return method.invoke(target, args);
+                });
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.legacy.servlet.data;
+
+import org.apache.tomcat.dbcp.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TimedValidationDriver under the container pool configured as in context.xml,
+ * with a short eviction interval: the evictor's idle validations are counted.
+ */
+public class TimedValidationDriverTest {
+    
+    private BasicDataSource pool;
+    
+    /**
+     * The driver instance the pool created, found the way InstrumentedDataSource finds it.
+     */
+    static TimedValidationDriver driver(BasicDataSource pool) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return conn.unwrap(TimedValidationDriver.TimedConnection.class).getTimedValidationDriver();
+        }
+    }
+    
+    @Before
+    public void createPool() {
+        pool = new BasicDataSource();
+        pool.setDriverClassName(TimedValidationDriver.class.getName());
+        pool.setUrl("jdbc:timed:h2:mem:timedDriver;DB_CLOSE_DELAY=-1");
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setMinIdle(2);
+        pool.setInitialSize(2);
+        pool.setTestOnBorrow(false);
+        pool.setTestWhileIdle(true);
+        pool.setValidationQueryTimeout(Duration.ofSeconds(2));
+        pool.setDurationBetweenEvictionRuns(Duration.ofMillis(20));
+        pool.setNumTestsPerEvictionRun(2);
+    }
+    
+    @After
+    public void closePool() throws SQLException {
+        pool.close();
+    }
+    
+    @Test
+    public void connectionsReachTheRealDriver() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+    
+    @Test
+    public void evictorValidationsAreTimed() throws Exception {
+        TimedValidationDriver driver = driver(pool);
+        long before = driver.getValidationCount();
+        
+        long deadline = System.currentTimeMillis() + 10000;
+        while (driver.getValidationCount() < before + 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue("evictor validations counted: " + (driver.getValidationCount() - before),
+                driver.getValidationCount() >= before + 4);
+        assertTrue(driver.getMaxValidationMicros() > 0);
+    }
+    
+    @Test
+    public void everyPhysicalValidationIsCountedOnce() throws Exception {
+        pool.setDurationBetweenEvictionRuns(Duration.ofMillis(-1));
+        // Creating the pool validates one connection from the factory
+        long before = driver(pool).getValidationCount();
+        InstrumentedDataSource instrumented = new InstrumentedDataSource(pool, 1000);
+        
+        assertEquals(3, instrumented.warmUp(3, 2));
+        
+        assertEquals(3, instrumented.getValidationCount());
+        assertEquals(before + 3, instrumented.getPoolValidationCount());
+        assertTrue(instrumented.describe(), instrumented.describe().contains("poolValidations="));
+    }
+    
+    @Test
+    public void eachPoolCountsItsOwnValidations() throws Exception {
+        pool.setDurationBetweenEvictionRuns(Duration.ofMillis(-1));
+        BasicDataSource other = new BasicDataSource();
+        other.setDriverClassName(TimedValidationDriver.class.getName());
+        other.setUrl("jdbc:timed:h2:mem:timedDriverOther;DB_CLOSE_DELAY=-1");
+        other.setUsername("sa");
+        other.setPassword("");
+        other.setTestOnBorrow(false);
+        try {
+            TimedValidationDriver driver = driver(pool);
+            TimedValidationDriver otherDriver = driver(other);
+            assertNotSame(driver, otherDriver);
+            long before = driver.getValidationCount();
+            long otherBefore = otherDriver.getValidationCount();
+            
+            try (Connection conn = other.getConnection()) {
+                assertTrue(conn.isValid(2));
+                assertTrue(conn.isValid(2));
+            }
+            
+            assertEquals(2, otherDriver.getValidationCount() - otherBefore);
+            assertEquals(before, driver.getValidationCount());
+        } finally {
+            other.close();
+        }
+    }
+    
+    @Test
+    public void otherUrlsAreLeftToOtherDrivers() throws SQLException {
+        assertNull(new TimedValidationDriver().connect("jdbc:h2:mem:notTimed", new Properties()));
+    }
+}
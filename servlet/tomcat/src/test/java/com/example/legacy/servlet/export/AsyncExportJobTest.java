@@ -0,0 +1,177 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Async exports against a real connector: a failed export must never look
+ * like a complete download.
+ */
+public class AsyncExportJobTest {
+    
+    private static final int ROWS = 20000;
+    
+    // Rows after which every ResultSet.next() fails; negative for never
+    private static final AtomicLong failAfterRows = new AtomicLong(-1);
+    
+    // Rows after which every ResultSet.next() takes a millisecond; negative for never
+    private static final AtomicLong slowAfterRows = new AtomicLong(-1);
+    
+    private static JdbcConnectionPool pool;
+    private static ExportServer server;
+    private static String baseUrl;
+    
+    // The same export with a one-second async timeout
+    private static ExportServer impatientServer;
+    private static String impatientUrl;
+    
+    @BeforeClass
+    public static void startServer() throws Exception {
+        pool = UsersFixture.inMemory("asyncExport", ROWS);
+        server = new ExportServer(failing(pool), Collections.<String, String>emptyMap());
+        baseUrl = server.start();
+        impatientServer = new ExportServer(failing(pool), Collections.singletonMap("asyncTimeoutMillis", "1000"));
+        impatientUrl = impatientServer.start();
+    }
+    
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.stop();
+        impatientServer.stop();
+        pool.dispose();
+    }
+    
+    @After
+    public void stopFailing() {
+        failAfterRows.set(-1);
+        slowAfterRows.set(-1);
+    }
+    
+    @Test
+    public void completeExportEndsCleanly() throws Exception {
+        HttpURLConnection conn = open();
+        assertEquals(200, conn.getResponseCode());
+        String body = new String(readFully(conn.getInputStream()), "UTF-8");
+        assertEquals(ROWS + 1, body.split(System.lineSeparator()).length);
+    }
+    
+    @Test
+    public void failureBeforeAnythingIsSentIs500() throws Exception {
+        failAfterRows.set(10);
+        HttpURLConnection conn = open();
+        assertEquals(500, conn.getResponseCode());
+    }
+    
+    @Test
+    public void failureAfterCommitDropsTheConnection() throws Exception {
+        // Far more than the response buffer, so headers and part of the body are sent
+        failAfterRows.set(ROWS / 2);
+        HttpURLConnection conn = open();
+        assertEquals(200, conn.getResponseCode());
+        try {
+            readFully(conn.getInputStream());
+            fail("a failed export must not end like a complete download");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage() != null);
+        }
+    }
+    
+    @Test
+    public void timeoutMidStreamDropsTheConnection() throws Exception {
+        // A few thousand rows go out at full speed, then about 15 s of slow
+        // rows: the one-second timeout fires with the response committed
+        slowAfterRows.set(ROWS / 4);
+        HttpURLConnection conn = open(impatientUrl);
+        assertEquals(200, conn.getResponseCode());
+        try {
+            readFully(conn.getInputStream());
+            fail("a timed-out export must not end like a complete download");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage() != null);
+        }
+    }
+    
+    private static HttpURLConnection open() throws IOException {
+        return open(baseUrl);
+    }
+    
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url + "/export?type=csv&async=true").openConnection();
+        conn.setReadTimeout(30000);
+        return conn;
+    }
+    
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = body.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+    
+    /**
+     * Wraps the pool so result sets fail once {@link #failAfterRows} rows have
+     * been read, and slow down after {@link #slowAfterRows}.
+     */
+    private static DataSource failing(DataSource dataSource) {
+        return (DataSource) wrap(dataSource, DataSource.class);
+    }
+    
+    private static Object wrap(Object target, Class<?> type) {
+        final AtomicLong rows = new AtomicLong();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (target instanceof ResultSet && "next".equals(method.getName())) {
+                long limit = failAfterRows.get();
+                long read = rows.incrementAndGet();
+                if (limit >= 0 && read > limit) {
+                    throw new SQLException("Injected failure after " + limit + " rows");
+                }
+                long slow = slowAfterRows.get();
+                if (slow >= 0 && read > slow) {
+                    LockSupport.parkNanos(1000000L);
+                }
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            for (Class<?> wrapped : new Class<?>[] {Connection.class, Statement.class, ResultSet.class}) {
+                if (result != null && wrapped.isAssignableFrom(method.getReturnType())) {
+                    return wrap(result, method.getReturnType());
+                }
+            }
+            return result;
+        };
+        return Proxy.newProxyInstance(AsyncExportJobTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.legacy.servlet.export;
+
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency of a trivial endpoint on the same connector while 50 slow clients
+ * download exports, with the exports served synchronously or with ?async=true.
+ *
+ * The connector has 40 request threads, fewer than the concurrent exports,
+ * as a production pool sized for short requests would. Each export client
+ * reads about 8 MB/s, so a synchronous export holds its request thread for the
+ * whole download. SampleTime reports the p99 of /ping; after every iteration
+ * the harness also prints the mean and peak number of busy request threads.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=AsyncExportLoadBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncExportLoadBenchmark {
+    
+    private static final int ROWS = 100000;
+    private static final int EXPORTS = 50;
+    private static final int REQUEST_THREADS = 40;
+    
+    @Param({"sync", "async"})
+    public String mode;
+    
+    private JdbcConnectionPool dataSource;
+    private ExportServer server;
+    private String baseUrl;
+    private final List<Thread> clients = new ArrayList<>();
+    private volatile boolean running;
+    
+    private Thread sampler;
+    private volatile long busySamples;
+    private volatile long busySum;
+    private volatile int busyPeak;
+    
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        dataSource = UsersFixture.inMemory("exportLoad", ROWS);
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("asyncThreads", "4");
+        parameters.put("asyncQueueSize", String.valueOf(EXPORTS));
+        server = new ExportServer(dataSource, parameters);
+        server.addServlet("/ping", new PingServlet());
+        server.getTomcat().getConnector().setProperty("maxThreads", String.valueOf(REQUEST_THREADS));
+        baseUrl = server.start();
+        
+        running = true;
+        String exportUrl = baseUrl + "/export?type=csv" + ("async".equals(mode) ? "&async=true" : "");
+        for (int i = 0; i < EXPORTS; i++) {
+            Thread client = new Thread(() -> download(exportUrl), "export-client-" + i);
+            client.setDaemon(true);
+            client.start();
+            clients.add(client);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopServer() throws Exception {
+        running = false;
+        for (Thread client : clients) {
+            client.join(30000);
+        }
+        server.stop();
+        dataSource.dispose();
+    }
+    
+    @Setup(Level.Iteration)
+    public void startSampling() {
+        busySamples = 0;
+        busySum = 0;
+        busyPeak = 0;
+        ThreadPoolExecutor requestThreads =
+                (ThreadPoolExecutor) server.getTomcat().getConnector().getProtocolHandler().getExecutor();
+        sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                int busy = requestThreads.getActiveCount();
+                busySamples++;
+                busySum += busy;
+                busyPeak = Math.max(busyPeak, busy);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }, "request-thread-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+    
+    @TearDown(Level.Iteration)
+    public void reportOccupancy() throws InterruptedException {
+        sampler.interrupt();
+        sampler.join();
+        System.out.printf("%n%s: busy request threads mean %.1f, peak %d of %d%n", mode,
+                busySamples == 0 ? 0.0 : (double) busySum / busySamples, busyPeak, REQUEST_THREADS);
+    }
+    
+    @Benchmark
+    public int ping() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + "/ping").openConnection();
+        try (InputStream in = conn.getInputStream()) {
+            while (in.read() != -1) {
+                // drain so the connection is reused
+            }
+        }
+        return conn.getResponseCode();
+    }
+    
+    private void download(String exportUrl) {
+        byte[] buffer = new byte[8192];
+        while (running) {
+            try {
+                HttpURLConnection conn = (HttpURLConnection) new URL(exportUrl).openConnection();
+                try (InputStream in = conn.getInputStream()) {
+                    while (running && in.read(buffer) != -1) {
+                        LockSupport.parkNanos(1000000);
+                    }
+                }
+            } catch (IOException e) {
+                // 503 when the async queue is full, or the server stopping: try again
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+        }
+    }
+    
+    private static final class PingServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            response.setContentType("text/plain");
+            response.getWriter().write("pong");
+        }
+    }
+}
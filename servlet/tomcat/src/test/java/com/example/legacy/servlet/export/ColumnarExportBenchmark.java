@@ -0,0 +1,91 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.tools.Csv;
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding 100k users as CSV and as the columnar format.
+ *
+ * Rows come from an in-memory result set, so the scores are the codec alone,
+ * without the database. CSV is decoded with H2's CSV reader, as the CSVREAD
+ * load script does, parsing timestamps from text; columnar with
+ * ColumnarExportReader. Encoded sizes are printed after setup.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=ColumnarExportBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnarExportBenchmark {
+    
+    private static final int ROWS = 100000;
+    
+    private SimpleResultSet users;
+    private byte[] csv;
+    private byte[] columnar;
+    
+    @Setup
+    public void encodeOnce() throws Exception {
+        users = ColumnarExportReaderTest.users(ROWS);
+        csv = ColumnarExportReaderTest.encode(new CsvExportFormat(), users);
+        columnar = ColumnarExportReaderTest.encode(new ColumnarExportFormat(), users);
+        System.out.printf("%n%d rows: csv %d bytes, columnar %d bytes%n", ROWS, csv.length, columnar.length);
+    }
+    
+    @Benchmark
+    public int encodeCsv() throws Exception {
+        return ColumnarExportReaderTest.encode(new CsvExportFormat(), users).length;
+    }
+    
+    @Benchmark
+    public int encodeColumnar() throws Exception {
+        return ColumnarExportReaderTest.encode(new ColumnarExportFormat(), users).length;
+    }
+    
+    @Benchmark
+    public long decodeCsv() throws Exception {
+        long checksum = 0;
+        try (ResultSet rs = new Csv().read(new InputStreamReader(
+                new ByteArrayInputStream(csv), StandardCharsets.UTF_8), null)) {
+            while (rs.next()) {
+                checksum += Long.parseLong(rs.getString(1)) + rs.getString(2).length()
+                        + rs.getString(3).length() + Timestamp.valueOf(rs.getString(4)).getTime();
+            }
+        }
+        return checksum;
+    }
+    
+    @Benchmark
+    public long decodeColumnar() throws Exception {
+        long checksum = 0;
+        try (ColumnarExportReader reader = new ColumnarExportReader(new ByteArrayInputStream(columnar))) {
+            while (reader.nextRowGroup()) {
+                for (int row = 0; row < reader.getRowCount(); row++) {
+                    checksum += reader.getLong(row, 0) + reader.getString(row, 1).length()
+                            + reader.getString(row, 2).length() + reader.getTimestamp(row, 3).getTime();
+                }
+            }
+        }
+        return checksum;
+    }
+}
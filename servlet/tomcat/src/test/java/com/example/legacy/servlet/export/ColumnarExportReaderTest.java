@@ -0,0 +1,183 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.tools.SimpleResultSet;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ColumnarExportReaderTest {
+    
+    @Test
+    public void readsBackWhatTheFormatWrites() throws Exception {
+        SimpleResultSet rs = users(10);
+        rs.addRow(11L, "ünïcödé", null, null);
+        byte[] file = encode(new ColumnarExportFormat(4), rs);
+        
+        try (ColumnarExportReader reader = new ColumnarExportReader(new ByteArrayInputStream(file))) {
+            int rows = 0;
+            while (reader.nextRowGroup()) {
+                assertTrue(reader.getRowCount() <= 4);
+                for (int row = 0; row < reader.getRowCount(); row++) {
+                    long id = ++rows;
+                    assertEquals(id, reader.getLong(row, 0));
+                    if (id <= 10) {
+                        assertEquals("user" + id, reader.getString(row, 1));
+                        assertEquals("user" + id + "@example.com", reader.getString(row, 2));
+                        assertEquals(new Timestamp(id * 1000L), reader.getTimestamp(row, 3));
+                    } else {
+                        assertEquals("ünïcödé", reader.getString(row, 1));
+                        assertNull(reader.getString(row, 2));
+                        assertNull(reader.getTimestamp(row, 3));
+                    }
+                }
+            }
+            assertEquals(11, rows);
+            assertFalse(reader.nextRowGroup());
+        }
+    }
+    
+    @Test
+    public void rejectsRowGroupSizesBeyondTheLimitBeforeAllocating() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(ColumnarExportFormat.MAGIC);
+        out.writeShort(ColumnarExportFormat.VERSION);
+        out.writeShort(1);
+        out.writeByte(ColumnarExportFormat.TYPE_INT64);
+        out.writeShort(2);
+        out.writeBytes("ID");
+        out.writeInt(Integer.MAX_VALUE);
+        
+        try {
+            new ColumnarExportReader(new ByteArrayInputStream(bytes.toByteArray()));
+            fail("header claims 2^31 rows per group");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("row group size"));
+        }
+    }
+    
+    @Test
+    public void rejectsNegativeStringLengths() throws Exception {
+        byte[] file = stringGroup(-2);
+        try (ColumnarExportReader reader = new ColumnarExportReader(new ByteArrayInputStream(file))) {
+            reader.nextRowGroup();
+            fail("string length -2");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("Invalid string length -2"));
+        }
+    }
+    
+    @Test
+    public void rejectsStringsRunningPastTheEndOfTheFile() throws Exception {
+        byte[] file = stringGroup(Integer.MAX_VALUE);
+        try (ColumnarExportReader reader = new ColumnarExportReader(new ByteArrayInputStream(file), file.length)) {
+            reader.nextRowGroup();
+            fail("string of 2^31 bytes in a " + file.length + " byte file");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("past the end of the file"));
+        }
+    }
+    
+    @Test(expected = EOFException.class)
+    public void stringLengthBeyondAStreamOfUnknownSizeEndsInEofWithoutAllocatingIt() throws Exception {
+        byte[] file = stringGroup(Integer.MAX_VALUE);
+        try (ColumnarExportReader reader = new ColumnarExportReader(new ByteArrayInputStream(file))) {
+            reader.nextRowGroup();
+        }
+    }
+    
+    @Test
+    public void convertsToTheCsvExportLayout() throws Exception {
+        SimpleResultSet rs = users(3);
+        rs.addRow(4L, "doe, jane", "say \"hi\"@example.com", null);
+        rs.addRow(5L, "null", null, new Timestamp(5000L));
+        
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        ExportWriter writer = new ExportWriter(csv);
+        ExportFormat format = new CsvExportFormat();
+        format.writeHeader(writer);
+        rs.beforeFirst();
+        while (rs.next()) {
+            format.writeRow(rs, writer);
+        }
+        writer.flush();
+        
+        ByteArrayOutputStream converted = new ByteArrayOutputStream();
+        byte[] file = encode(new ColumnarExportFormat(2), rs);
+        try (ColumnarExportReader reader = new ColumnarExportReader(new ByteArrayInputStream(file), file.length)) {
+            ExportWriter out = new ExportWriter(converted);
+            assertEquals(5, ColumnarExportReader.writeCsv(reader, out));
+            out.flush();
+        }
+        
+        assertEquals(new String(csv.toByteArray(), StandardCharsets.UTF_8),
+                new String(converted.toByteArray(), StandardCharsets.UTF_8));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void writerRefusesRowGroupsReadersWouldReject() {
+        new ColumnarExportFormat(ColumnarExportFormat.MAX_ROW_GROUP_SIZE + 1);
+    }
+    
+    /**
+     * A file with one UTF8 column and a one-row group whose string claims {@code length} bytes.
+     */
+    private static byte[] stringGroup(int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(ColumnarExportFormat.MAGIC);
+        out.writeShort(ColumnarExportFormat.VERSION);
+        out.writeShort(1);
+        out.writeByte(ColumnarExportFormat.TYPE_UTF8);
+        out.writeShort(4);
+        out.writeBytes("NAME");
+        out.writeInt(1);
+        out.writeInt(1);
+        out.writeInt(length);
+        out.writeBytes("truncated");
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Users 1..rows as the USERS query returns them; row X was created X seconds after the epoch.
+     */
+    static SimpleResultSet users(int rows) {
+        SimpleResultSet rs = new SimpleResultSet();
+        rs.addColumn("ID", Types.BIGINT, 19, 0);
+        rs.addColumn("USERNAME", Types.VARCHAR, 50, 0);
+        rs.addColumn("EMAIL", Types.VARCHAR, 100, 0);
+        rs.addColumn("CREATED_DATE", Types.TIMESTAMP, 26, 0);
+        for (long id = 1; id <= rows; id++) {
+            rs.addRow(id, "user" + id, "user" + id + "@example.com", new Timestamp(id * 1000L));
+        }
+        rs.setAutoClose(false);
+        return rs;
+    }
+    
+    static byte[] encode(ExportFormat format, SimpleResultSet rs) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportWriter writer = new ExportWriter(out);
+        format.writeHeader(writer);
+        rs.beforeFirst();
+        while (rs.next()) {
+            format.writeRow(rs, writer);
+        }
+        format.endRows(writer);
+        format.writeTrailer(writer);
+        writer.flush();
+        return out.toByteArray();
+    }
+}
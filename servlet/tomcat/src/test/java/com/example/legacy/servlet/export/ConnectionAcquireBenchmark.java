@@ -0,0 +1,149 @@
+package com.example.legacy.servlet.export;
+
+import com.example.legacy.servlet.data.TimedValidationDriver;
+import org.apache.tomcat.dbcp.dbcp2.BasicDataSource;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection acquire latency (getConnection() and close()) from the container
+ * pool while 4 threads run CSV exports over the same pool, before and after
+ * moving validation off the borrow path:
+ * - borrow: the old context.xml, testOnBorrow with validationQuery SELECT 1
+ * - idle: the new context.xml, testWhileIdle with isValid() through
+ *   TimedValidationDriver; the evictor runs every second instead of every 30,
+ *   so its validations happen during the measurement
+ *
+ * H2 is reached over TCP so a validation is a real round trip, as it would
+ * be against a database server. After each iteration the idle mode also
+ * prints the evictor's validation count and cost.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=ConnectionAcquireBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectionAcquireBenchmark {
+    
+    private static final int ROWS = 100000;
+    private static final int EXPORTS = 4;
+    
+    @Param({"borrow", "idle"})
+    public String validation;
+    
+    private Server server;
+    private JdbcConnectionPool fixture;
+    private BasicDataSource pool;
+    private final List<Thread> exporters = new ArrayList<>();
+    private volatile boolean running;
+    private TimedValidationDriver driver;
+    
+    @Setup(Level.Trial)
+    public void startPool() throws SQLException {
+        fixture = UsersFixture.inMemory("acquire", ROWS);
+        server = Server.createTcpServer("-tcpPort", "0").start();
+        // No LAZY_QUERY_EXECUTION: H2 1.4.200 hangs with it over TCP, and remote
+        // result sets are fetched in batches anyway
+        String url = "h2:tcp://localhost:" + server.getPort() + "/mem:acquire";
+        
+        pool = new BasicDataSource();
+        pool.setUsername("sa");
+        pool.setPassword("");
+        pool.setMaxTotal(20);
+        pool.setMaxIdle(10);
+        pool.setMaxWait(Duration.ofSeconds(10));
+        if ("borrow".equals(validation)) {
+            pool.setDriverClassName("org.h2.Driver");
+            pool.setUrl("jdbc:" + url);
+            pool.setValidationQuery("SELECT 1");
+            pool.setTestOnBorrow(true);
+        } else {
+            pool.setDriverClassName(TimedValidationDriver.class.getName());
+            pool.setUrl(TimedValidationDriver.URL_PREFIX + url);
+            pool.setMinIdle(4);
+            pool.setInitialSize(4);
+            pool.setTestOnBorrow(false);
+            pool.setTestWhileIdle(true);
+            pool.setValidationQueryTimeout(Duration.ofSeconds(2));
+            pool.setDurationBetweenEvictionRuns(Duration.ofSeconds(1));
+            pool.setNumTestsPerEvictionRun(4);
+            pool.setMinEvictableIdle(Duration.ofMinutes(5));
+            try (Connection conn = pool.getConnection()) {
+                driver = conn.unwrap(TimedValidationDriver.TimedConnection.class).getTimedValidationDriver();
+            }
+        }
+        
+        running = true;
+        for (int i = 0; i < EXPORTS; i++) {
+            Thread exporter = new Thread(this::export, "exporter-" + i);
+            exporter.setDaemon(true);
+            exporter.start();
+            exporters.add(exporter);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopPool() throws Exception {
+        running = false;
+        for (Thread exporter : exporters) {
+            exporter.join(30000);
+        }
+        pool.close();
+        server.stop();
+        fixture.dispose();
+    }
+    
+    @TearDown(Level.Iteration)
+    public void reportValidations() {
+        if ("idle".equals(validation)) {
+            System.out.printf("%nevictor validations %d, avg %.1f us, max %.1f us%n",
+                    driver.getValidationCount(),
+                    driver.getAverageValidationMicros(),
+                    driver.getMaxValidationMicros());
+        }
+    }
+    
+    @Benchmark
+    public boolean acquire() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+    
+    private void export() {
+        SerialExportEngine engine = new SerialExportEngine(pool, 500, ExportWriter.DEFAULT_CHUNK_SIZE);
+        while (running) {
+            try {
+                engine.export(new CsvExportFormat(), KeyRange.ALL, true, new SerialExportBenchmark.CountingStream());
+            } catch (SQLException | IOException e) {
+                if (running) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CsvExportFormatTest {
+    
+    private static final String[][] AWKWARD = {
+        {"plain", "plain@example.com"},
+        {"doe, jane", "jane@example.com"},
+        {"say \"hi\"", "\"quoted\"@example.com"},
+        {"two\nlines", "cr\r\nlf@example.com"},
+        {"null", "null@example.com"},
+        {"ünïcödé, \"mixed\"", "u@example.com"},
+    };
+    
+    @Test
+    public void quotesFieldsAsRfc4180() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportWriter writer = new ExportWriter(out, 64);
+        writer.writeCsvField("plain");
+        writer.write((byte) ',');
+        writer.writeCsvField("a,b");
+        writer.write((byte) ',');
+        writer.writeCsvField("say \"hi\"");
+        writer.write((byte) ',');
+        writer.writeCsvField("null");
+        writer.write((byte) ',');
+        writer.writeCsvField(null);
+        writer.flush();
+        
+        assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\",\"null\",null",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void loadStatementRestoresAnExportWithAwkwardValues() throws Exception {
+        JdbcConnectionPool source = UsersFixture.inMemory("csvSource", AWKWARD.length);
+        JdbcConnectionPool target = UsersFixture.inMemory("csvTarget", 0);
+        File csv = new File("target/csv-load-test.csv");
+        try {
+            try (Connection conn = source.getConnection();
+                 PreparedStatement update = conn.prepareStatement(
+                         "UPDATE USERS SET USERNAME = ?, EMAIL = ? WHERE ID = ?")) {
+                for (int i = 0; i < AWKWARD.length; i++) {
+                    update.setString(1, AWKWARD[i][0]);
+                    update.setString(2, AWKWARD[i][1]);
+                    update.setLong(3, i + 1);
+                    update.executeUpdate();
+                }
+            }
+            
+            try (OutputStream out = new FileOutputStream(csv)) {
+                new SerialExportEngine(source, 100, ExportWriter.DEFAULT_CHUNK_SIZE)
+                        .export(new CsvExportFormat(), KeyRange.ALL, true, out);
+            }
+            try (Connection conn = target.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                assertEquals(AWKWARD.length, stmt.executeUpdate(CsvExportFormat.loadStatement(csv.getPath())));
+            }
+            
+            assertEquals(users(source), users(target));
+        } finally {
+            source.dispose();
+            target.dispose();
+            csv.delete();
+        }
+    }
+    
+    private static List<String> users(JdbcConnectionPool pool) throws Exception {
+        List<String> users = new ArrayList<>();
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT ID, USERNAME, EMAIL, CREATED_DATE FROM USERS ORDER BY ID")) {
+            while (rs.next()) {
+                users.add(rs.getLong(1) + "|" + rs.getString(2) + "|" + rs.getString(3) + "|" + rs.getTimestamp(4));
+            }
+        }
+        return users;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Paging through ?after=token&limit=N on a table with gaps in its IDs:
+ * every row is returned exactly once and every page but the last holds
+ * exactly limit rows, including once rows are added after the last page
+ * has been served.
+ */
+public class ExportPagingTest {
+    
+    private static final int ROWS = 1000;
+    
+    private static JdbcConnectionPool pool;
+    private static ExportServer server;
+    private static String baseUrl;
+    
+    @BeforeClass
+    public static void startServer() throws Exception {
+        pool = UsersFixture.inMemory("exportPaging", ROWS, UsersFixture.skewedIds(ROWS));
+        server = new ExportServer(pool, Collections.<String, String>emptyMap());
+        baseUrl = server.start();
+    }
+    
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.stop();
+        pool.dispose();
+    }
+    
+    @Test
+    public void denseTablePagesHoldExactlyLimitRows() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        page(null, 100, ids, sizes);
+        assertEquals(100, (int) sizes.get(0));
+        assertEquals(1L, (long) ids.get(0));
+        assertEquals(100L, (long) ids.get(99));
+    }
+    
+    @Test
+    public void pagesHoldExactlyLimitRowsAcrossGaps() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            token = page(token, 70, ids, sizes);
+            pages++;
+            assertTrue("runaway paging", pages < ROWS);
+        } while (token != null);
+        
+        assertEquals(ROWS, ids.size());
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue("IDs out of order or repeated at " + i, ids.get(i) > ids.get(i - 1));
+        }
+        // The dense IDs end at row 900, so page 13 (rows 841-910) straddles the gap
+        assertEquals((ROWS + 69) / 70, sizes.size());
+        for (int i = 0; i < sizes.size() - 1; i++) {
+            assertEquals("page " + (i + 1), 70, (int) sizes.get(i));
+        }
+        assertEquals(ROWS % 70, (int) sizes.get(sizes.size() - 1));
+    }
+    
+    @Test
+    public void lastPageStaysBoundedWhenRowsAreAdded() throws Exception {
+        // 1000 rows in pages of 300: the fourth page holds the last 100
+        String token = tokenForPage(4, 300);
+        List<Long> ids = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        assertNull(page(token, 300, ids, sizes));
+        assertEquals(100, (int) sizes.get(0));
+        
+        long lastId = addRows(250);
+        try {
+            String next = page(token, 300, ids, sizes);
+            assertEquals(300, (int) sizes.get(1));
+            assertNotNull("the page is full and more rows follow", next);
+            assertNull(page(next, 300, ids, sizes));
+            assertEquals(50, (int) sizes.get(2));
+        } finally {
+            removeRowsAfter(lastId);
+        }
+    }
+    
+    @Test
+    public void fullLastPageGetsAContinuationOnceRowsAreAdded() throws Exception {
+        // 1000 rows in pages of 100: the tenth page ends exactly at the last row
+        String token = tokenForPage(10, 100);
+        List<Long> ids = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        assertNull(page(token, 100, ids, sizes));
+        assertEquals(100, (int) sizes.get(0));
+        
+        long lastId = addRows(30);
+        try {
+            String next = page(token, 100, ids, sizes);
+            assertEquals(100, (int) sizes.get(1));
+            assertNotNull("rows added after the page must be reachable", next);
+            assertNull(page(next, 100, ids, sizes));
+            assertEquals(30, (int) sizes.get(2));
+        } finally {
+            removeRowsAfter(lastId);
+        }
+    }
+    
+    /**
+     * @return the continuation token that leads to page {@code number} (1-based)
+     */
+    private static String tokenForPage(int number, int limit) throws IOException {
+        String token = null;
+        for (int i = 1; i < number; i++) {
+            token = page(token, limit, new ArrayList<>(), new ArrayList<>());
+            assertNotNull("page " + i + " has no continuation", token);
+        }
+        return token;
+    }
+    
+    /**
+     * Appends rows with IDs above the current maximum.
+     *
+     * @return the maximum ID before the new rows
+     */
+    private static long addRows(int rows) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(ID) FROM USERS")) {
+            rs.next();
+            long lastId = rs.getLong(1);
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO USERS (ID, USERNAME, EMAIL) SELECT ? + X, 'late' || X, 'late' || X || '@example.com' "
+                    + "FROM SYSTEM_RANGE(1, ?)")) {
+                insert.setLong(1, lastId);
+                insert.setInt(2, rows);
+                insert.executeUpdate();
+            }
+            return lastId;
+        }
+    }
+    
+    private static void removeRowsAfter(long lastId) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM USERS WHERE ID > ?")) {
+            delete.setLong(1, lastId);
+            delete.executeUpdate();
+        }
+    }
+    
+    /**
+     * Fetches one page, adding its IDs to {@code ids} and its row count to
+     * {@code sizes}; returns the continuation token, or null on the last page.
+     */
+    private static String page(String after, int limit, List<Long> ids, List<Integer> sizes) throws IOException {
+        String url = baseUrl + "/export?type=csv&limit=" + limit
+                + (after != null ? "&after=" + URLEncoder.encode(after, "UTF-8") : "");
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        assertEquals(200, conn.getResponseCode());
+        int rows = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"))) {
+            assertFalse(in.readLine().isEmpty());
+            String line;
+            while ((line = in.readLine()) != null) {
+                ids.add(Long.parseLong(line.substring(0, line.indexOf(','))));
+                rows++;
+            }
+        }
+        sizes.add(rows);
+        return conn.getHeaderField("X-Export-Continuation");
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.legacy.servlet.export;
+
+import com.example.legacy.servlet.DataExportServlet;
+import com.example.legacy.servlet.data.InstrumentedDataSource;
+import com.example.legacy.servlet.data.SchemaBootstrap;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+
+import javax.servlet.http.HttpServlet;
+import javax.sql.DataSource;
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * DataExportServlet on an embedded Tomcat, mapped to /export, with the
+ * context attributes ApplicationStartupListener would provide. Extra
+ * servlets can be mapped next to it before {@link #start()}.
+ */
+final class ExportServer {
+    
+    private final Tomcat tomcat = new Tomcat();
+    private final Context context;
+    
+    ExportServer(DataSource dataSource, Map<String, String> initParameters) throws SQLException {
+        SchemaBootstrap bootstrap = new SchemaBootstrap(dataSource);
+        bootstrap.run();
+        
+        tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        tomcat.setPort(0);
+        context = tomcat.addContext("", null);
+        context.addServletContainerInitializer((classes, servletContext) -> {
+            servletContext.setAttribute(InstrumentedDataSource.CONTEXT_ATTRIBUTE, dataSource);
+            servletContext.setAttribute(SchemaBootstrap.CONTEXT_ATTRIBUTE, bootstrap);
+        }, null);
+        
+        Wrapper export = addServlet("/export", new DataExportServlet());
+        for (Map.Entry<String, String> parameter : initParameters.entrySet()) {
+            export.addInitParameter(parameter.getKey(), parameter.getValue());
+        }
+    }
+    
+    Wrapper addServlet(String path, HttpServlet servlet) {
+        String name = path.substring(1);
+        Wrapper wrapper = Tomcat.addServlet(context, name, servlet);
+        wrapper.setAsyncSupported(true);
+        context.addServletMappingDecoded(path, name);
+        return wrapper;
+    }
+    
+    Tomcat getTomcat() {
+        return tomcat;
+    }
+    
+    String start() throws LifecycleException {
+        tomcat.getConnector();
+        tomcat.start();
+        return "http://localhost:" + tomcat.getConnector().getLocalPort();
+    }
+    
+    void stop() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serial vs parallel CSV export of 1M USERS rows from an on-disk H2 database,
+ * with dense IDs and with the skewed IDs of {@link UsersFixture#skewedIds}
+ * (90% of the rows in the first tenth of the key space).
+ *
+ * The serial benchmark is the baseline; parallel runs with 2 and 4 partitions
+ * on a pool of 4 threads, the servlet's defaults. Speed-up needs as many free
+ * cores as partitions: on a single core the parallel export can only match
+ * the serial one, and the interesting number is how much the coordination
+ * costs.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=ParallelExportBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelExportBenchmark {
+    
+    private static final long ROWS = 1000000;
+    
+    @Param({"dense", "skewed"})
+    public String ids;
+    
+    @Param({"2", "4"})
+    public int partitions;
+    
+    private JdbcConnectionPool dataSource;
+    private ExecutorService executor;
+    
+    @Setup(Level.Trial)
+    public void openDatabase() throws SQLException {
+        dataSource = UsersFixture.onDisk("users-" + ids + "-" + ROWS, ROWS,
+                "dense".equals(ids) ? "X" : UsersFixture.skewedIds(ROWS));
+        executor = Executors.newFixedThreadPool(4);
+    }
+    
+    @TearDown(Level.Trial)
+    public void closeDatabase() {
+        executor.shutdownNow();
+        dataSource.dispose();
+    }
+    
+    @Benchmark
+    public long serial() throws SQLException, IOException {
+        SerialExportBenchmark.CountingStream out = new SerialExportBenchmark.CountingStream();
+        new SerialExportEngine(dataSource, 500, ExportWriter.DEFAULT_CHUNK_SIZE)
+                .export(new CsvExportFormat(), KeyRange.ALL, true, out);
+        return out.count;
+    }
+    
+    @Benchmark
+    public long parallel() throws SQLException, IOException {
+        SerialExportBenchmark.CountingStream out = new SerialExportBenchmark.CountingStream();
+        new ParallelExportEngine(dataSource, executor, 500, ExportWriter.DEFAULT_CHUNK_SIZE, 4)
+                .export(CsvExportFormat::new, partitions, KeyRange.ALL, true, out);
+        return out.count;
+    }
+}
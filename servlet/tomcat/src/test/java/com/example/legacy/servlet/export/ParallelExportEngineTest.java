@@ -0,0 +1,127 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelExportEngineTest {
+    
+    private static final int ROWS = 10000;
+    
+    private static JdbcConnectionPool dense;
+    private static JdbcConnectionPool skewed;
+    private static ExecutorService executor;
+    
+    @BeforeClass
+    public static void createUsers() throws Exception {
+        dense = UsersFixture.inMemory("parallelDense", ROWS);
+        skewed = UsersFixture.inMemory("parallelSkewed", ROWS, UsersFixture.skewedIds(ROWS));
+        executor = Executors.newFixedThreadPool(4);
+    }
+    
+    @AfterClass
+    public static void dispose() {
+        executor.shutdownNow();
+        dense.dispose();
+        skewed.dispose();
+    }
+    
+    @Test
+    public void matchesTheSerialExportOnDenseIds() throws Exception {
+        ParallelExportEngine engine = engine(dense);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = engine.export(CsvExportFormat::new, 4, KeyRange.ALL, true, out);
+        
+        assertEquals(ROWS, rows);
+        assertArrayEquals(serial(dense, KeyRange.ALL), out.toByteArray());
+    }
+    
+    @Test
+    public void splitsTheBusyRangeWhenIdsAreSkewed() throws Exception {
+        ParallelExportEngine engine = engine(skewed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Slow rows keep the first range busy while the sparse ranges finish
+        long rows = engine.export(SlowCsvFormat::new, 4, KeyRange.ALL, true, out);
+        
+        assertEquals(ROWS, rows);
+        assertTrue("expected idle workers to split the dense range, scanned " + engine.getRangesScanned(),
+                engine.getRangesScanned() > 4);
+        assertArrayEquals(serial(skewed, KeyRange.ALL), out.toByteArray());
+    }
+    
+    @Test
+    public void exportsOnlyTheRequestedKeyRange() throws Exception {
+        KeyRange range = KeyRange.after(4321).withLastId(8765);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = engine(skewed).export(SlowCsvFormat::new, 3, range, false, out);
+        
+        assertEquals(8765 - 4321, rows);
+        assertArrayEquals(serial(skewed, range), out.toByteArray());
+    }
+    
+    @Test
+    public void concurrentExportsWithMoreRangesThanWorkersFinish() throws Exception {
+        // 4 exports of 2 ranges each on 2 workers: most ranges sit in the
+        // executor's queue while a worker that finished its range looks for
+        // one to split
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        try {
+            ParallelExportEngine engine = new ParallelExportEngine(dense, workers, 50, 256, 2);
+            List<Future<byte[]>> exports = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                exports.add(requests.submit(() -> {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    engine.export(SlowCsvFormat::new, 2, KeyRange.ALL, true, out);
+                    return out.toByteArray();
+                }));
+            }
+            byte[] expected = serial(dense, KeyRange.ALL);
+            for (Future<byte[]> export : exports) {
+                assertArrayEquals(expected, export.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            requests.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+    
+    private static ParallelExportEngine engine(DataSource dataSource) {
+        return new ParallelExportEngine(dataSource, executor, 50, 256, 2);
+    }
+    
+    private static byte[] serial(DataSource dataSource, KeyRange range) throws SQLException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SerialExportEngine(dataSource, 50, 256)
+                .export(new CsvExportFormat(), range, range == KeyRange.ALL, out);
+        return out.toByteArray();
+    }
+    
+    private static final class SlowCsvFormat extends CsvExportFormat {
+        @Override
+        public void writeRow(ResultSet rs, ExportWriter writer) throws SQLException, IOException {
+            if (rs.getLong(1) % 100 == 0) {
+                LockSupport.parkNanos(1000000);
+            }
+            super.writeRow(rs, writer);
+        }
+    }
+}
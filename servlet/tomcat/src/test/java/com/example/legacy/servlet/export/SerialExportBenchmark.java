@@ -0,0 +1,107 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serial CSV export of 10k, 1M and 10M USERS rows from an on-disk H2
+ * database into a discarding stream.
+ *
+ * Rows per second is rows divided by the time per export. The fork runs
+ * in a 64 MB heap, so every row count completing is itself the proof that
+ * heap use does not grow with the export; after each iteration it also
+ * prints the peak heap used, garbage included. -prof gc adds allocation
+ * per export.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=SerialExportBenchmark
+ *
+ * The 10M-row database takes a few minutes to generate on first use and
+ * is kept under target/benchmark-data.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx64m")
+@State(Scope.Benchmark)
+public class SerialExportBenchmark {
+    
+    @Param({"10000", "1000000", "10000000"})
+    public long rows;
+    
+    private JdbcConnectionPool dataSource;
+    private SerialExportEngine engine;
+    
+    @Setup(Level.Trial)
+    public void openDatabase() throws SQLException {
+        dataSource = UsersFixture.onDisk("users-" + rows, rows, "X");
+        engine = new SerialExportEngine(dataSource, 500, ExportWriter.DEFAULT_CHUNK_SIZE);
+    }
+    
+    @TearDown(Level.Trial)
+    public void closeDatabase() {
+        dataSource.dispose();
+    }
+    
+    @Setup(Level.Iteration)
+    public void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+    
+    @TearDown(Level.Iteration)
+    public void reportPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.println("peak heap " + (peak >> 20) + " MB at " + rows + " rows");
+    }
+    
+    @Benchmark
+    public long csv() throws SQLException, IOException {
+        CountingStream out = new CountingStream();
+        engine.export(new CsvExportFormat(), KeyRange.ALL, true, out);
+        return out.count;
+    }
+    
+    static final class CountingStream extends OutputStream {
+        long count;
+        
+        @Override
+        public void write(int b) {
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
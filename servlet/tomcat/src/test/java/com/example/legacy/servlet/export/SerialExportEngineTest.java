@@ -0,0 +1,77 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SerialExportEngineTest {
+    
+    private static final String NL = System.lineSeparator();
+    
+    private static JdbcConnectionPool dataSource;
+    
+    @BeforeClass
+    public static void createUsers() throws Exception {
+        dataSource = UsersFixture.inMemory("serialExport", 10000);
+    }
+    
+    @AfterClass
+    public static void dispose() {
+        dataSource.dispose();
+    }
+    
+    @Test
+    public void exportsEveryRowAsCsv() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = new SerialExportEngine(dataSource, 500, ExportWriter.DEFAULT_CHUNK_SIZE)
+                .export(new CsvExportFormat(), KeyRange.ALL, true, out);
+        
+        String csv = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        String[] lines = csv.split(NL);
+        assertEquals(10000, rows);
+        assertEquals(10001, lines.length);
+        assertEquals("ID,USERNAME,EMAIL,CREATED_DATE", lines[0]);
+        assertEquals("1,user1,user1@example.com," + timestamp(1), lines[1]);
+        assertEquals("10000,user10000,user10000@example.com," + timestamp(10000), lines[10000]);
+    }
+    
+    @Test
+    public void resumesAfterTheKeyRangeWithoutHeader() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = new SerialExportEngine(dataSource, 500, ExportWriter.DEFAULT_CHUNK_SIZE)
+                .export(new CsvExportFormat(), KeyRange.after(9998).withLastId(9999), false, out);
+        
+        assertEquals(1, rows);
+        assertEquals("9999,user9999,user9999@example.com," + timestamp(9999) + NL,
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void chunkSizeDoesNotChangeTheOutput() throws Exception {
+        ByteArrayOutputStream small = new ByteArrayOutputStream();
+        new SerialExportEngine(dataSource, 7, 64).export(new CsvExportFormat(), KeyRange.ALL, true, small);
+        ByteArrayOutputStream large = new ByteArrayOutputStream();
+        new SerialExportEngine(dataSource, 500, ExportWriter.DEFAULT_CHUNK_SIZE)
+                .export(new CsvExportFormat(), KeyRange.ALL, true, large);
+        
+        assertTrue(large.size() > 0);
+        assertArrayEquals(large.toByteArray(), small.toByteArray());
+    }
+    
+    /**
+     * CREATED_DATE of row {@code id}, as Timestamp.toString() renders it in the default time zone.
+     */
+    private static String timestamp(long id) {
+        java.sql.Timestamp ts = java.sql.Timestamp.valueOf("2020-01-01 00:00:00");
+        ts.setTime(ts.getTime() + id * 1000L);
+        return ts.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.RunScript;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SqlExportFormatTest {
+    
+    private static final String INSERT = "INSERT INTO USERS (ID, USERNAME, EMAIL, CREATED_DATE) VALUES ";
+    
+    @Test
+    public void batchesRowsIntoMultiRowInsertsWithATrailingPartialBatch() throws Exception {
+        JdbcConnectionPool source = UsersFixture.inMemory("sqlBatchSource", 7);
+        try {
+            List<String> statements = statements(export(source, 3));
+            
+            assertEquals(3, statements.size());
+            assertEquals(INSERT + "\n"
+                    + "(1, 'user1', 'user1@example.com', '2020-01-01 00:00:01.0'),\n"
+                    + "(2, 'user2', 'user2@example.com', '2020-01-01 00:00:02.0'),\n"
+                    + "(3, 'user3', 'user3@example.com', '2020-01-01 00:00:03.0');", statements.get(0));
+            assertEquals(3, rows(statements.get(1)));
+            assertEquals(INSERT + "\n"
+                    + "(7, 'user7', 'user7@example.com', '2020-01-01 00:00:07.0');", statements.get(2));
+        } finally {
+            source.dispose();
+        }
+    }
+    
+    @Test
+    public void batchOfOneWritesOneInsertPerRow() throws Exception {
+        JdbcConnectionPool source = UsersFixture.inMemory("sqlSingleSource", 2);
+        try {
+            List<String> statements = statements(export(source, 1));
+            
+            assertEquals(2, statements.size());
+            assertEquals(INSERT + "(1, 'user1', 'user1@example.com', '2020-01-01 00:00:01.0');",
+                    statements.get(0));
+        } finally {
+            source.dispose();
+        }
+    }
+    
+    @Test
+    public void batchedDumpRestoresEveryRowAndEscapesQuotes() throws Exception {
+        JdbcConnectionPool source = UsersFixture.inMemory("sqlRestoreSource", 10);
+        JdbcConnectionPool target = UsersFixture.inMemory("sqlRestoreTarget", 0);
+        try {
+            try (Connection conn = source.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE USERS SET USERNAME = 'o''brien' WHERE ID = 4");
+                stmt.executeUpdate("UPDATE USERS SET CREATED_DATE = NULL WHERE ID = 5");
+            }
+            String dump = export(source, 4);
+            try (Connection conn = target.getConnection()) {
+                RunScript.execute(conn, new StringReader(dump));
+            }
+            
+            assertEquals(users(source), users(target));
+        } finally {
+            source.dispose();
+            target.dispose();
+        }
+    }
+    
+    static String export(JdbcConnectionPool source, int batchSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SerialExportEngine(source, 100, ExportWriter.DEFAULT_CHUNK_SIZE)
+                .export(new SqlExportFormat(batchSize), KeyRange.ALL, true, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * The INSERT statements of a dump, without the comment header.
+     */
+    private static List<String> statements(String dump) {
+        List<String> statements = new ArrayList<>();
+        for (String statement : dump.split(";\n")) {
+            int insert = statement.indexOf(INSERT);
+            if (insert >= 0) {
+                statements.add(statement.substring(insert) + ";");
+            }
+        }
+        return statements;
+    }
+    
+    private static int rows(String statement) {
+        return statement.split("\\),\n\\(").length;
+    }
+    
+    private static List<String> users(JdbcConnectionPool pool) throws Exception {
+        List<String> users = new ArrayList<>();
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT ID, USERNAME, EMAIL, CREATED_DATE FROM USERS ORDER BY ID")) {
+            while (rs.next()) {
+                users.add(rs.getLong(1) + "|" + rs.getString(2) + "|" + rs.getString(3) + "|" + rs.getTimestamp(4));
+            }
+        }
+        return users;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.RunScript;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores a type=sql dump of 100k USERS rows into an empty in-memory H2
+ * table, with one INSERT per row (batch=1) and with multi-row INSERTs of
+ * 100 and 1000 rows. The dump is generated once per trial; the time per
+ * restore covers parsing and executing the script.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=SqlRestoreBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlRestoreBenchmark {
+    
+    private static final long ROWS = 100000;
+    
+    @Param({"1", "100", "1000"})
+    public int batch;
+    
+    private String dump;
+    private JdbcConnectionPool target;
+    
+    @Setup(Level.Trial)
+    public void exportDump() throws Exception {
+        JdbcConnectionPool source = UsersFixture.inMemory("restoreSource", ROWS);
+        try {
+            dump = SqlExportFormatTest.export(source, batch);
+        } finally {
+            source.dispose();
+        }
+        target = UsersFixture.inMemory("restoreTarget", 0);
+    }
+    
+    @TearDown(Level.Trial)
+    public void closeDatabase() {
+        target.dispose();
+    }
+    
+    @Setup(Level.Iteration)
+    public void emptyTable() throws SQLException {
+        UsersFixture.populate(target, 0, "X");
+    }
+    
+    @Benchmark
+    public void restore() throws SQLException {
+        try (Connection conn = target.getConnection()) {
+            RunScript.execute(conn, new StringReader(dump));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.legacy.servlet.export;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * H2 USERS tables for export tests and benchmarks, with the production
+ * columns and URL settings (lazy query execution, as in context.xml, so
+ * result sets stream instead of being materialized) and generated rows:
+ * row X gets ID X, USERNAME user<X>, EMAIL user<X>@example.com and a
+ * CREATED_DATE X seconds after 2020-01-01.
+ */
+final class UsersFixture {
+    
+    private static final int INSERT_BATCH = 1000000;
+    
+    private UsersFixture() {
+    }
+    
+    static JdbcConnectionPool inMemory(String name, long rows) throws SQLException {
+        return inMemory(name, rows, "X");
+    }
+    
+    static JdbcConnectionPool inMemory(String name, long rows, String idExpression) throws SQLException {
+        JdbcConnectionPool pool = JdbcConnectionPool.create("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;LAZY_QUERY_EXECUTION=1", "sa", "");
+        populate(pool, rows, idExpression);
+        return pool;
+    }
+    
+    /**
+     * IDs for a skewed table: the first 90% of the rows are dense from 1, the
+     * rest are spread a thousand apart, so equal-width key ranges put nearly
+     * every row into the first range.
+     */
+    static String skewedIds(long rows) {
+        return "CASE WHEN X <= " + (rows * 9 / 10) + " THEN X ELSE X * 1000 END";
+    }
+    
+    /**
+     * A database under target/benchmark-data, generated on first use and
+     * kept for later runs (large tables take minutes to build).
+     */
+    static JdbcConnectionPool onDisk(String name, long rows, String idExpression) throws SQLException {
+        JdbcConnectionPool pool = JdbcConnectionPool.create(
+                "jdbc:h2:./target/benchmark-data/" + name + ";LAZY_QUERY_EXECUTION=1", "sa", "");
+        pool.setMaxConnections(32);
+        if (count(pool) != rows) {
+            populate(pool, rows, idExpression);
+        }
+        return pool;
+    }
+    
+    /**
+     * Recreates USERS with {@code rows} rows; {@code idExpression} computes the
+     * ID from the row number X (1-based), e.g. "X" for dense IDs.
+     */
+    static void populate(JdbcConnectionPool pool, long rows, String idExpression) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS USERS");
+            // No AUTO_INCREMENT: H2 adjusts the identity for every explicit ID, a hundred times slower
+            stmt.execute("CREATE TABLE USERS ("
+                    + "ID BIGINT PRIMARY KEY, "
+                    + "USERNAME VARCHAR(50) NOT NULL, "
+                    + "EMAIL VARCHAR(100) NOT NULL, "
+                    + "CREATED_DATE TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO USERS (ID, USERNAME, EMAIL, CREATED_DATE) "
+                    + "SELECT " + idExpression + ", 'user' || X, 'user' || X || '@example.com', "
+                    + "DATEADD('SECOND', X, TIMESTAMP '2020-01-01 00:00:00') FROM SYSTEM_RANGE(?, ?)")) {
+                for (long first = 1; first <= rows; first += INSERT_BATCH) {
+                    insert.setLong(1, first);
+                    insert.setLong(2, Math.min(rows, first + INSERT_BATCH - 1));
+                    insert.executeUpdate();
+                }
+            }
+        }
+    }
+    
+    private static long count(JdbcConnectionPool pool) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = 'USERS'")) {
+            rs.next();
+            if (rs.getLong(1) == 0) {
+                return -1;
+            }
+        }
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM USERS")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
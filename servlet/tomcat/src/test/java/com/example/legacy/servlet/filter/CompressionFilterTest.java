@@ -0,0 +1,137 @@
+package com.example.legacy.servlet.filter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CompressionFilterTest {
+    
+    @Test
+    public void negotiatesGzipFirst() {
+        assertEquals("gzip", CompressionFilter.negotiate("gzip, deflate"));
+        assertEquals("gzip", CompressionFilter.negotiate("deflate, gzip;q=0.5"));
+        assertEquals("gzip", CompressionFilter.negotiate("*"));
+        assertEquals("deflate", CompressionFilter.negotiate("deflate"));
+    }
+    
+    @Test
+    public void wildcardCoversCodingsTheHeaderDoesNotName() {
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0, *"));
+        assertEquals("gzip", CompressionFilter.negotiate("deflate;q=0, *"));
+        assertNull(CompressionFilter.negotiate("gzip;q=0, deflate;q=0, *"));
+        assertNull(CompressionFilter.negotiate("*;q=0"));
+        assertNull(CompressionFilter.negotiate("identity"));
+    }
+    
+    @Test
+    public void contentLengthNeverDescribesACompressedBody() throws Exception {
+        byte[] body = csv(4000);
+        String[] setters = {"setHeader", "addHeader", "setIntHeader", "addIntHeader", "setContentLength"};
+        for (String setter : setters) {
+            RecordingResponse container = RecordingResponse.capturing();
+            CompressionResponseWrapper wrapper = new CompressionResponseWrapper(
+                    container.response, "gzip", RecordingResponse.filter(null));
+            wrapper.setContentType("text/csv");
+            setContentLength(wrapper, setter, body.length);
+            wrapper.getOutputStream().write(body);
+            wrapper.finish();
+            
+            assertNull(setter, container.header("Content-Length"));
+            assertEquals(setter, "gzip", container.header("Content-Encoding"));
+            assertArrayEquals(setter, body, gunzip(container.body()));
+        }
+    }
+    
+    @Test
+    public void contentLengthIsKeptForBodiesPassedThrough() throws Exception {
+        byte[] body = csv(4000);
+        RecordingResponse container = RecordingResponse.capturing();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(
+                container.response, "gzip", RecordingResponse.filter(null));
+        wrapper.setContentType("image/png");
+        wrapper.addIntHeader("Content-Length", body.length);
+        wrapper.getOutputStream().write(body);
+        wrapper.finish();
+        
+        assertEquals(String.valueOf(body.length), container.header("Content-Length"));
+        assertNull(container.header("Content-Encoding"));
+        assertArrayEquals(body, container.body());
+    }
+    
+    @Test
+    public void resetWhileCompressingStartsTheBodyOverUncompressed() throws Exception {
+        RecordingResponse container = RecordingResponse.capturing();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(
+                container.response, "gzip", RecordingResponse.filter(null));
+        wrapper.setContentType("text/csv");
+        wrapper.getOutputStream().write(csv(4000));
+        
+        // What AsyncExportJob does when an export fails before anything is committed
+        wrapper.reset();
+        byte[] error = "export failed".getBytes(StandardCharsets.UTF_8);
+        wrapper.getOutputStream().write(error);
+        wrapper.finish();
+        
+        assertNull(container.header("Content-Encoding"));
+        assertArrayEquals(error, container.body());
+    }
+    
+    @Test
+    public void resetBufferWhileCompressingStartsANewGzipStream() throws Exception {
+        RecordingResponse container = RecordingResponse.capturing();
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(
+                container.response, "gzip", RecordingResponse.filter(null));
+        wrapper.setContentType("text/csv");
+        wrapper.getOutputStream().write(csv(4000));
+        
+        wrapper.resetBuffer();
+        byte[] body = csv(3000);
+        for (byte b : body) {
+            wrapper.getOutputStream().write(b);
+        }
+        wrapper.finish();
+        
+        assertEquals("gzip", container.header("Content-Encoding"));
+        assertArrayEquals(body, gunzip(container.body()));
+    }
+    
+    private static void setContentLength(CompressionResponseWrapper wrapper, String setter, int length) {
+        switch (setter) {
+            case "setHeader": wrapper.setHeader("Content-Length", String.valueOf(length)); break;
+            case "addHeader": wrapper.addHeader("Content-Length", String.valueOf(length)); break;
+            case "setIntHeader": wrapper.setIntHeader("Content-Length", length); break;
+            case "addIntHeader": wrapper.addIntHeader("content-length", length); break;
+            default: wrapper.setContentLength(length); break;
+        }
+    }
+    
+    static byte[] csv(int rows) {
+        StringBuilder sb = new StringBuilder("ID,USERNAME,EMAIL,CREATED_DATE\n");
+        for (int id = 1; id <= rows; id++) {
+            sb.append(id).append(",user").append(id).append(",user").append(id)
+              .append("@example.com,2020-01-01 00:00:").append(id % 60).append(".0\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.legacy.servlet.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one SecurityFilter pattern lookup with 10 to 1000 patterns, in the
+ * shape of a real exclude list (static directories as prefixes, public pages
+ * as exact paths under a few shared roots):
+ * - linear: the loop SecurityFilter ran before, kept as the baseline
+ * - trie: PathPatternMatcher
+ *
+ * Lookups cycle through 1024 request paths, a quarter of them excluded and
+ * the rest protected pages that share prefixes with the patterns.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=PathPatternMatcherBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathPatternMatcherBenchmark {
+    
+    private static final String[] ROOTS = {"/static", "/assets", "/public", "/docs", "/api/v1/public"};
+    
+    @Param({"10", "100", "300", "1000"})
+    public int patterns;
+    
+    private List<String> patternList;
+    private PathPatternMatcher trie;
+    private String[] paths;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void compile() {
+        Random random = new Random(42);
+        patternList = new ArrayList<>(patterns);
+        for (int i = 0; i < patterns; i++) {
+            String root = ROOTS[i % ROOTS.length];
+            patternList.add(i % 2 == 0 ? root + "/module" + i + "/*" : root + "/page" + i + ".html");
+        }
+        trie = PathPatternMatcher.compile(String.join(",", patternList));
+        
+        paths = new String[1024];
+        for (int i = 0; i < paths.length; i++) {
+            int n = random.nextInt(patterns);
+            String root = ROOTS[n % ROOTS.length];
+            if (random.nextInt(4) == 0) {
+                paths[i] = n % 2 == 0 ? root + "/module" + n + "/app.js" : root + "/page" + n + ".html";
+            } else {
+                paths[i] = random.nextBoolean() ? root + "/page" + n + ".jsp" : "/products/details/" + n;
+            }
+        }
+    }
+    
+    @Benchmark
+    public boolean linear() {
+        return PathPatternMatcherTest.linearMatches(patternList, paths[next++ & (paths.length - 1)]);
+    }
+    
+    @Benchmark
+    public boolean trie() {
+        return trie.matches(paths[next++ & (paths.length - 1)]);
+    }
+}
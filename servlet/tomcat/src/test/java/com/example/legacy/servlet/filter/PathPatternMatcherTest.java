@@ -0,0 +1,122 @@
+package com.example.legacy.servlet.filter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PathPatternMatcher against the linear pattern loop SecurityFilter used before it.
+ */
+public class PathPatternMatcherTest {
+    
+    @Test
+    public void prefixAndExactPatterns() {
+        PathPatternMatcher matcher = PathPatternMatcher.compile("/css/*, /login, /api/public/*");
+        assertTrue(matcher.matches("/css/site.css"));
+        assertTrue(matcher.matches("/css"));
+        // Plain string prefix, as it always was
+        assertTrue(matcher.matches("/cssx"));
+        assertTrue(matcher.matches("/login"));
+        assertFalse(matcher.matches("/login/"));
+        assertFalse(matcher.matches("/log"));
+        assertTrue(matcher.matches("/api/public/x"));
+        assertFalse(matcher.matches("/api/private"));
+        assertFalse(matcher.matches(""));
+    }
+    
+    @Test
+    public void matchesFromAnOffset() {
+        PathPatternMatcher matcher = PathPatternMatcher.compile("/login,/css/*");
+        assertTrue(matcher.matches("/app/login", "/app".length()));
+        assertTrue(matcher.matches("/app/css/a.css", "/app".length()));
+        assertFalse(matcher.matches("/app/login", 0));
+        assertFalse(matcher.matches("/app/logins", "/app".length()));
+    }
+    
+    @Test
+    public void emptyAndCatchAllSpecs() {
+        assertTrue(PathPatternMatcher.compile(null).isEmpty());
+        assertFalse(PathPatternMatcher.compile(null).matches("/anything"));
+        PathPatternMatcher all = PathPatternMatcher.compile("/*");
+        assertTrue(all.matches("/anything"));
+        assertTrue(all.matches(""));
+    }
+    
+    @Test
+    public void agreesWithLinearMatchingOnHundredsOfPatterns() {
+        Random random = new Random(16);
+        for (int round = 0; round < 10; round++) {
+            List<String> patterns = randomPatterns(random, 100 + random.nextInt(400));
+            PathPatternMatcher matcher = PathPatternMatcher.compile(String.join(",", patterns));
+            for (int i = 0; i < 5000; i++) {
+                String path = randomPath(random, patterns);
+                assertEquals(path, linearMatches(patterns, path), matcher.matches(path));
+            }
+        }
+    }
+    
+    /**
+     * Patterns over a small alphabet so prefixes overlap and exact patterns
+     * sit inside prefix ones.
+     */
+    static List<String> randomPatterns(Random random, int count) {
+        List<String> patterns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String path = randomSegments(random);
+            patterns.add(random.nextInt(3) == 0 ? path + "/*" : path);
+        }
+        return patterns;
+    }
+    
+    static String randomPath(Random random, List<String> patterns) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return randomSegments(random);
+            case 1: {
+                String pattern = patterns.get(random.nextInt(patterns.size()));
+                String text = pattern.endsWith("/*") ? pattern.substring(0, pattern.length() - 2) : pattern;
+                return text + (random.nextBoolean() ? "" : randomSegments(random));
+            }
+            default: {
+                String pattern = patterns.get(random.nextInt(patterns.size()));
+                return pattern.substring(0, random.nextInt(pattern.length() + 1));
+            }
+        }
+    }
+    
+    private static String randomSegments(Random random) {
+        StringBuilder path = new StringBuilder();
+        int segments = 1 + random.nextInt(3);
+        for (int s = 0; s < segments; s++) {
+            path.append('/');
+            int length = 1 + random.nextInt(3);
+            for (int c = 0; c < length; c++) {
+                path.append((char) ('a' + random.nextInt(3)));
+            }
+        }
+        return path.toString();
+    }
+    
+    /**
+     * The loop SecurityFilter.isExcluded ran before the patterns were compiled.
+     */
+    static boolean linearMatches(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (pattern.endsWith("/*")) {
+                String prefix = pattern.substring(0, pattern.length() - 2);
+                if (path.startsWith(prefix)) {
+                    return true;
+                }
+            } else if (pattern.equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.legacy.servlet.filter;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A container response stand-in for CompressionFilter tests and benchmarks:
+ * records headers and the bytes written to its output stream.
+ */
+final class RecordingResponse {
+    
+    final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    final HttpServletResponse response;
+    private final OutputStream body;
+    private String contentType;
+    
+    RecordingResponse(OutputStream body) {
+        this.body = body;
+        this.response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return stream;
+                        case "setContentType":
+                            contentType = (String) args[0];
+                            return null;
+                        case "getContentType":
+                            return contentType;
+                        case "getCharacterEncoding":
+                            return "UTF-8";
+                        case "containsHeader":
+                            return headers.containsKey((String) args[0]);
+                        case "setHeader":
+                        case "setIntHeader":
+                            headers.put((String) args[0], new ArrayList<>(Collections.singletonList(String.valueOf(args[1]))));
+                            return null;
+                        case "addHeader":
+                        case "addIntHeader":
+                            headers.computeIfAbsent((String) args[0], k -> new ArrayList<>())
+                                    .add(String.valueOf(args[1]));
+                            return null;
+                        case "reset":
+                            headers.clear();
+                            contentType = null;
+                            resetBody();
+                            return null;
+                        case "resetBuffer":
+                            resetBody();
+                            return null;
+                        case "setContentLength":
+                        case "setContentLengthLong":
+                            headers.put("Content-Length", new ArrayList<>(Collections.singletonList(String.valueOf(args[0]))));
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+    
+    static RecordingResponse capturing() {
+        return new RecordingResponse(new ByteArrayOutputStream());
+    }
+    
+    private void resetBody() {
+        if (body instanceof ByteArrayOutputStream) {
+            ((ByteArrayOutputStream) body).reset();
+        }
+    }
+    
+    byte[] body() {
+        return ((ByteArrayOutputStream) body).toByteArray();
+    }
+    
+    String header(String name) {
+        List<String> values = headers.get(name);
+        return values == null ? null : String.join(", ", values);
+    }
+    
+    static CompressionFilter filter(String levels) throws ServletException {
+        CompressionFilter filter = new CompressionFilter();
+        filter.init((FilterConfig) Proxy.newProxyInstance(RecordingResponse.class.getClassLoader(),
+                new Class<?>[] {FilterConfig.class},
+                (proxy, method, args) -> "getInitParameter".equals(method.getName())
+                        && "levels".equals(args[0]) ? levels : null));
+        return filter;
+    }
+    
+    private final ServletOutputStream stream = new ServletOutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            body.write(b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body.write(b, off, len);
+        }
+        
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+        
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    };
+}
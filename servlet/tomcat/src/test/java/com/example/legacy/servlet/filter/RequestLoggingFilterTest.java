@@ -0,0 +1,150 @@
+package com.example.legacy.servlet.filter;
+
+import com.example.legacy.servlet.metrics.MetricsRegistry;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RequestLoggingFilter on an embedded Tomcat: requests whose servlet throws
+ * are recorded with the status the client receives, not the 200 the
+ * response held when the exception passed through the filter.
+ */
+public class RequestLoggingFilterTest {
+    
+    private static Tomcat tomcat;
+    private static MetricsRegistry registry;
+    private static String baseUrl;
+    
+    @BeforeClass
+    public static void startServer() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", null);
+        registry = new MetricsRegistry(60, 6);
+        context.getServletContext().setAttribute(MetricsRegistry.CONTEXT_ATTRIBUTE, registry);
+        
+        FilterDef filter = new FilterDef();
+        filter.setFilterName("logging");
+        filter.setFilter(new RequestLoggingFilter());
+        context.addFilterDef(filter);
+        FilterMap mapping = new FilterMap();
+        mapping.setFilterName("logging");
+        mapping.addURLPattern("/*");
+        context.addFilterMap(mapping);
+        
+        Tomcat.addServlet(context, "ok", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                response.setStatus(HttpServletResponse.SC_OK);
+            }
+        });
+        context.addServletMappingDecoded("/ok", "ok");
+        Tomcat.addServlet(context, "unchecked", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                throw new IllegalStateException("test failure");
+            }
+        });
+        context.addServletMappingDecoded("/unchecked", "unchecked");
+        Tomcat.addServlet(context, "io", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                throw new IOException("test failure");
+            }
+        });
+        context.addServletMappingDecoded("/io", "io");
+        Tomcat.addServlet(context, "sent", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                response.getWriter().print("not found");
+                response.flushBuffer();
+                throw new IllegalStateException("test failure after the response was committed");
+            }
+        });
+        context.addServletMappingDecoded("/sent", "sent");
+        tomcat.getConnector();
+        tomcat.start();
+        baseUrl = "http://localhost:" + tomcat.getConnector().getLocalPort();
+    }
+    
+    @AfterClass
+    public static void stopServer() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+    
+    @Test
+    public void successfulRequestsKeepTheirStatus() throws Exception {
+        assertEquals(200, get("/ok"));
+        assertRecorded("/ok", "2xx");
+    }
+    
+    @Test
+    public void uncheckedExceptionsAreRecordedAs500() throws Exception {
+        assertEquals(500, get("/unchecked"));
+        assertRecorded("/unchecked", "5xx");
+        assertFalse(metrics().contains("route=\"/unchecked\",status=\"2xx\""));
+    }
+    
+    @Test
+    public void ioExceptionsAreRecordedAs500() throws Exception {
+        assertEquals(500, get("/io"));
+        assertRecorded("/io", "5xx");
+        assertFalse(metrics().contains("route=\"/io\",status=\"2xx\""));
+    }
+    
+    @Test
+    public void errorStatusAlreadySentStands() throws Exception {
+        assertEquals(404, get("/sent"));
+        assertRecorded("/sent", "4xx");
+        assertFalse(metrics().contains("route=\"/sent\",status=\"5xx\""));
+    }
+    
+    private static int get(String path) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        return conn.getResponseCode();
+    }
+    
+    /**
+     * A committed response can reach the client before the filter records it,
+     * so this waits briefly for the counter.
+     */
+    private static void assertRecorded(String route, String statusClass) throws InterruptedException {
+        String counter = "http_server_requests_total{route=\"" + route + "\",status=\"" + statusClass + "\"} 1\n";
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        String text = metrics();
+        while (!text.contains(counter) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            text = metrics();
+        }
+        assertTrue(text, text.contains(counter));
+    }
+    
+    private static String metrics() {
+        StringWriter text = new StringWriter();
+        registry.writeText(new PrintWriter(text));
+        return text.toString();
+    }
+}
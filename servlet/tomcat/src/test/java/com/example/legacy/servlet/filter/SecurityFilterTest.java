@@ -0,0 +1,136 @@
+package com.example.legacy.servlet.filter;
+
+import com.example.legacy.servlet.LoginServlet;
+import com.example.legacy.servlet.LogoutServlet;
+import com.example.legacy.servlet.session.OffHeapSessionStore;
+import com.example.legacy.servlet.session.SessionAttributeStore;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SecurityFilter in session mode with the off-heap store, on an embedded
+ * Tomcat: anonymous callers get no session, and logging out frees the one
+ * a login created.
+ */
+public class SecurityFilterTest {
+    
+    private static Tomcat tomcat;
+    private static OffHeapSessionStore sessions;
+    
+    @BeforeClass
+    public static void startServer() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", null);
+        sessions = new OffHeapSessionStore(1000, 256, 1800);
+        context.getServletContext().setAttribute(SessionAttributeStore.CONTEXT_ATTRIBUTE, sessions);
+        
+        FilterDef filter = new FilterDef();
+        filter.setFilterName("security");
+        filter.setFilter(new SecurityFilter());
+        filter.addInitParameter("excludePatterns", "/login");
+        context.addFilterDef(filter);
+        FilterMap mapping = new FilterMap();
+        mapping.setFilterName("security");
+        mapping.addURLPattern("/*");
+        context.addFilterMap(mapping);
+        
+        Tomcat.addServlet(context, "login", new LoginServlet());
+        context.addServletMappingDecoded("/login", "login");
+        Tomcat.addServlet(context, "logout", new LogoutServlet());
+        context.addServletMappingDecoded("/logout", "logout");
+        Tomcat.addServlet(context, "private", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                response.setStatus(HttpServletResponse.SC_OK);
+            }
+        });
+        context.addServletMappingDecoded("/private/*", "private");
+        tomcat.getConnector();
+        tomcat.start();
+    }
+    
+    @AfterClass
+    public static void stopServer() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+    
+    @Test
+    public void anonymousCallersGetNoSession() throws IOException {
+        int before = sessions.size();
+        for (int i = 0; i < 50; i++) {
+            HttpURLConnection conn = get("/private/page-" + i, null);
+            assertEquals(HttpURLConnection.HTTP_MOVED_TEMP, conn.getResponseCode());
+            assertTrue(conn.getHeaderField("Location").endsWith("/login"));
+            assertNull(conn.getHeaderField("Set-Cookie"));
+        }
+        assertEquals(before, sessions.size());
+    }
+    
+    @Test
+    public void logoutFreesTheSession() throws IOException {
+        int before = sessions.size();
+        String cookie = login();
+        assertEquals(before + 1, sessions.size());
+        assertEquals(HttpURLConnection.HTTP_OK, get("/private/page", cookie).getResponseCode());
+        
+        HttpURLConnection logout = get("/logout", cookie);
+        assertEquals(HttpURLConnection.HTTP_MOVED_TEMP, logout.getResponseCode());
+        String cleared = logout.getHeaderField("Set-Cookie");
+        assertNotNull(cleared);
+        assertTrue(cleared, cleared.startsWith(OffHeapSessionStore.COOKIE_NAME + "=;"));
+        assertEquals(before, sessions.size());
+        
+        assertEquals(HttpURLConnection.HTTP_MOVED_TEMP, get("/private/page", cookie).getResponseCode());
+    }
+    
+    private static String login() throws IOException {
+        HttpURLConnection conn = open("/login");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write("username=user&password=user123".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(HttpURLConnection.HTTP_MOVED_TEMP, conn.getResponseCode());
+        String setCookie = conn.getHeaderField("Set-Cookie");
+        assertNotNull(setCookie);
+        return setCookie.substring(0, setCookie.indexOf(';'));
+    }
+    
+    private static HttpURLConnection get(String path, String cookie) throws IOException {
+        HttpURLConnection conn = open(path);
+        if (cookie != null) {
+            conn.setRequestProperty("Cookie", cookie);
+        }
+        return conn;
+    }
+    
+    private static HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" 
+                + tomcat.getConnector().getLocalPort() + path).openConnection();
+        conn.setInstanceFollowRedirects(false);
+        return conn;
+    }
+}
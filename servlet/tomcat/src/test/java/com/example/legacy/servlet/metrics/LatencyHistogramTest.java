@@ -0,0 +1,115 @@
+package com.example.legacy.servlet.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.highestEquivalentValue((int) value));
+        }
+    }
+    
+    @Test
+    public void bucketBoundaries() {
+        // 64..127: 32 buckets two values wide
+        assertEquals(64, LatencyHistogram.index(64));
+        assertEquals(64, LatencyHistogram.index(65));
+        assertEquals(65, LatencyHistogram.index(66));
+        assertEquals(95, LatencyHistogram.index(127));
+        assertEquals(65, LatencyHistogram.highestEquivalentValue(64));
+        assertEquals(127, LatencyHistogram.highestEquivalentValue(95));
+        // 128..255: four values wide
+        assertEquals(96, LatencyHistogram.index(128));
+        assertEquals(96, LatencyHistogram.index(131));
+        assertEquals(97, LatencyHistogram.index(132));
+        assertEquals(131, LatencyHistogram.highestEquivalentValue(96));
+        
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(LatencyHistogram.MAX_TRACKABLE));
+        assertEquals(LatencyHistogram.MAX_TRACKABLE, 
+                LatencyHistogram.highestEquivalentValue(LatencyHistogram.BUCKETS - 1));
+    }
+    
+    @Test
+    public void everyValueIsReportedWithinOneThirtySecond() {
+        int previous = 0;
+        for (long value = 1; value <= LatencyHistogram.MAX_TRACKABLE; value += 1 + value / 97) {
+            int index = LatencyHistogram.index(value);
+            assertTrue("index must not decrease at " + value, index >= previous);
+            long reported = LatencyHistogram.highestEquivalentValue(index);
+            assertTrue(value + " reported as " + reported, reported >= value);
+            assertTrue(value + " reported as " + reported, reported - value <= value / 32);
+            previous = index;
+        }
+    }
+    
+    @Test
+    public void recordingClampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        
+        assertEquals(LatencyHistogram.MAX_TRACKABLE, histogram.addTo(counts));
+        assertEquals(1, counts[0]);
+        assertEquals(1, counts[LatencyHistogram.BUCKETS - 1]);
+    }
+    
+    @Test
+    public void quantilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long sum = 0;
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+            sum += micros * 1000;
+        }
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        assertEquals(sum, histogram.addTo(counts));
+        long total = Arrays.stream(counts).sum();
+        assertEquals(1000, total);
+        
+        assertWithin(1000, LatencyHistogram.valueAtQuantile(counts, total, 0.0));
+        assertWithin(500000, LatencyHistogram.valueAtQuantile(counts, total, 0.5));
+        assertWithin(900000, LatencyHistogram.valueAtQuantile(counts, total, 0.9));
+        assertWithin(990000, LatencyHistogram.valueAtQuantile(counts, total, 0.99));
+        assertWithin(1000000, LatencyHistogram.valueAtQuantile(counts, total, 1.0));
+    }
+    
+    @Test
+    public void quantilesUseTheRankRoundedUp() {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        counts[10] = 9;
+        counts[20] = 1;
+        assertEquals(10, LatencyHistogram.valueAtQuantile(counts, 10, 0.5));
+        assertEquals(10, LatencyHistogram.valueAtQuantile(counts, 10, 0.9));
+        assertEquals(20, LatencyHistogram.valueAtQuantile(counts, 10, 0.91));
+        assertEquals(20, LatencyHistogram.valueAtQuantile(counts, 10, 0.999));
+    }
+    
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, LatencyHistogram.valueAtQuantile(new long[LatencyHistogram.BUCKETS], 0, 0.99));
+    }
+    
+    @Test
+    public void resetClearsCountsAndSum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        assertEquals(0, histogram.addTo(counts));
+        assertEquals(0, Arrays.stream(counts).sum());
+    }
+    
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, 
+                actual >= expected && actual - expected <= expected / 32);
+    }
+}
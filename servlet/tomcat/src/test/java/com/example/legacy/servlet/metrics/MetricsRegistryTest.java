@@ -0,0 +1,54 @@
+package com.example.legacy.servlet.metrics;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MetricsRegistry's Prometheus output with a one-second window: the summary's
+ * sum and count keep counting after requests leave the window, and only the
+ * quantiles and the request rate follow it.
+ */
+public class MetricsRegistryTest {
+    
+    @Test
+    public void summarySumAndCountAreCumulative() throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry(1, 1);
+        RouteMetrics route = registry.route("/users");
+        route.begin();
+        route.end(200, 2000000L, System.nanoTime());
+        route.begin();
+        route.end(200, 3000000L, System.nanoTime());
+        
+        String inWindow = text(registry);
+        assertContains(inWindow, "http_server_request_duration_seconds_sum{route=\"/users\",status=\"2xx\"} 0.005000\n");
+        assertContains(inWindow, "http_server_request_duration_seconds_count{route=\"/users\",status=\"2xx\"} 2\n");
+        assertContains(inWindow, "http_server_request_duration_seconds{route=\"/users\",status=\"2xx\",quantile=\"0.99\"} 0.003");
+        
+        Thread.sleep(1100);
+        String afterWindow = text(registry);
+        assertContains(afterWindow, "http_server_request_duration_seconds_sum{route=\"/users\",status=\"2xx\"} 0.005000\n");
+        assertContains(afterWindow, "http_server_request_duration_seconds_count{route=\"/users\",status=\"2xx\"} 2\n");
+        assertContains(afterWindow, "http_server_request_duration_seconds{route=\"/users\",status=\"2xx\",quantile=\"0.99\"} NaN\n");
+        assertContains(afterWindow, "http_server_requests_per_second{route=\"/users\",status=\"2xx\"} 0.000\n");
+        
+        route.begin();
+        route.end(200, 1000000L, System.nanoTime());
+        String later = text(registry);
+        assertContains(later, "http_server_request_duration_seconds_sum{route=\"/users\",status=\"2xx\"} 0.006000\n");
+        assertContains(later, "http_server_request_duration_seconds_count{route=\"/users\",status=\"2xx\"} 3\n");
+    }
+    
+    private static String text(MetricsRegistry registry) {
+        StringWriter text = new StringWriter();
+        registry.writeText(new PrintWriter(text));
+        return text.toString();
+    }
+    
+    private static void assertContains(String text, String expected) {
+        assertTrue("missing " + expected + " in\n" + text, text.contains(expected));
+    }
+}
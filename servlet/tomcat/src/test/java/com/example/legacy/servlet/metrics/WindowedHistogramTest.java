@@ -0,0 +1,71 @@
+package com.example.legacy.servlet.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * WindowedHistogram with a fixed clock: 3 slots of 10 ns from origin 1000,
+ * so the window covers the current slot and the two before it.
+ */
+public class WindowedHistogramTest {
+    
+    private static final long ORIGIN = 1000;
+    
+    private final WindowedHistogram histogram = new WindowedHistogram(ORIGIN, 10, 3);
+    
+    @Test
+    public void windowCoversTheCurrentSlotAndThePreviousOnes() {
+        histogram.record(5, at(5));
+        histogram.record(7, at(15));
+        histogram.record(9, at(25));
+        
+        assertWindow(at(29), 3, 21);
+        // Slot 0 has left the window, though its counts are still there
+        assertWindow(at(30), 2, 16);
+        assertWindow(at(49), 1, 9);
+        assertWindow(at(50), 0, 0);
+    }
+    
+    @Test
+    public void reusedSlotStartsEmpty() {
+        histogram.record(5, at(5));
+        histogram.record(5, at(6));
+        // Slot 3 reuses slot 0's counters
+        histogram.record(40, at(35));
+        
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        assertEquals(40, histogram.addTo(counts, at(35)));
+        assertEquals(0, counts[5]);
+        assertEquals(1, counts[40]);
+    }
+    
+    @Test
+    public void slotIsNotClearedTwiceInOneInterval() {
+        histogram.record(5, at(35));
+        histogram.record(6, at(39));
+        assertWindow(at(39), 2, 11);
+    }
+    
+    @Test
+    public void idleIntervalsLeaveNothingBehind() {
+        histogram.record(5, at(5));
+        // Long idle spell: the next recording lands in slot 100, which maps to slot 1
+        histogram.record(8, at(1000));
+        assertWindow(at(1000), 1, 8);
+        assertWindow(at(1019), 1, 8);
+        assertWindow(at(1030), 0, 0);
+    }
+    
+    private void assertWindow(long now, long count, long sum) {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        assertEquals("sum at " + now, sum, histogram.addTo(counts, now));
+        assertEquals("count at " + now, count, Arrays.stream(counts).sum());
+    }
+    
+    private static long at(long offset) {
+        return ORIGIN + offset;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.legacy.servlet.scheduler;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TaskScheduler.close(): the timeout bounds the whole shutdown, and work
+ * that finishes in time reports a clean drain.
+ */
+public class TaskSchedulerTest {
+    
+    @Test
+    public void closeDrainsWorkThatFinishesInTime() throws InterruptedException {
+        TaskScheduler scheduler = new TaskScheduler(2, 10, 64, 16);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.execute(() -> {
+            started.countDown();
+            sleepUninterruptibly(100);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        
+        assertTrue(scheduler.close(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void closeGivesUpAfterOneTimeout() throws InterruptedException {
+        TaskScheduler scheduler = new TaskScheduler(2, 10, 64, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.scheduleAtFixedRate("stuck", () -> {
+            started.countDown();
+            // Ignores interrupts, like a blocking call that cannot be cancelled
+            while (release.getCount() > 0) {
+                sleepUninterruptibly(10);
+            }
+        }, 0, 1, TimeUnit.SECONDS);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        
+        try {
+            long start = System.nanoTime();
+            assertFalse(scheduler.close(300, TimeUnit.MILLISECONDS));
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("close took " + millis + " ms", millis < 550);
+        } finally {
+            release.countDown();
+        }
+    }
+    
+    private static void sleepUninterruptibly(long millis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long left;
+        while ((left = end - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(left);
+            } catch (InterruptedException e) {
+                // Keep going
+            }
+        }
+    }
+}
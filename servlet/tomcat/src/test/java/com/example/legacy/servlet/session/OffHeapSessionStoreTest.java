@@ -0,0 +1,328 @@
+package com.example.legacy.servlet.session;
+
+import org.junit.Test;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * OffHeapSessionStore with a fixed clock, 60 s sessions. Tests that need to
+ * place sessions pick their IDs: the high half sets the index home, the low
+ * half the segment.
+ */
+public class OffHeapSessionStoreTest {
+    
+    private static final int TIMEOUT_SECONDS = 60;
+    private static final long TIMEOUT = TIMEOUT_SECONDS * 1000L;
+    
+    @Test
+    public void createdSessionReadsBack() {
+        OffHeapSessionStore store = new OffHeapSessionStore(1000, 256, TIMEOUT_SECONDS);
+        String alice = store.create(SessionRecord.login("alice", "admin", 500), 1000);
+        String bob = store.create(SessionRecord.login("böb 世", null, 600), 1000);
+        
+        assertTrue(alice, alice.matches("[A-Za-z0-9_-]{21}[AQgw]"));
+        assertRecord("alice", "admin", 500, store.get(alice, 2000));
+        assertRecord("böb 世", null, 600, store.get(bob, 2000));
+        assertEquals(2, store.size());
+    }
+    
+    @Test
+    public void removedSessionIsGone() {
+        OffHeapSessionStore store = new OffHeapSessionStore(1000, 256, TIMEOUT_SECONDS);
+        String alice = store.create(SessionRecord.login("alice", "admin", 500), 1000);
+        String bob = store.create(SessionRecord.login("bob", "user", 500), 1000);
+        
+        store.remove(alice);
+        store.remove(alice);
+        assertNull(store.get(alice, 1000));
+        assertRecord("bob", "user", 500, store.get(bob, 1000));
+        assertEquals(1, store.size());
+    }
+    
+    @Test
+    public void lookupExtendsExpiry() {
+        OffHeapSessionStore store = new OffHeapSessionStore(1000, 256, TIMEOUT_SECONDS);
+        String id = store.create(SessionRecord.login("alice", "admin", 500), 1000);
+        
+        assertNotNull(store.get(id, 1000 + TIMEOUT - 1));
+        assertNotNull(store.get(id, 1000 + 2 * TIMEOUT - 2));
+        assertNull(store.get(id, 1000 + 3 * TIMEOUT - 2));
+        assertEquals(0, store.size());
+        assertTrue(store.describe(), store.describe().contains("expired=1"));
+        // Gone for good, not just hidden
+        assertNull(store.get(id, 0));
+    }
+    
+    @Test
+    public void sweepFreesOnlyExpiredSessions() {
+        OffHeapSessionStore store = new OffHeapSessionStore(1000, 256, TIMEOUT_SECONDS);
+        String kept = store.create(SessionRecord.login("alice", "admin", 500), 1000);
+        for (int i = 0; i < 20; i++) {
+            store.create(SessionRecord.login("user" + i, "user", 500), 1000);
+        }
+        store.get(kept, 1000 + TIMEOUT / 2);
+        
+        store.sweep(1000 + TIMEOUT);
+        assertEquals(1, store.size());
+        assertNotNull(store.get(kept, 1000 + TIMEOUT));
+    }
+    
+    @Test
+    public void fullSegmentEvictsOneSession() {
+        PickedIds ids = new PickedIds();
+        // 16 sessions leave 17 slots per segment
+        OffHeapSessionStore store = new OffHeapSessionStore(16, 64, TIMEOUT_SECONDS, ids);
+        List<String> first = new ArrayList<>();
+        for (int k = 1; k <= 17; k++) {
+            ids.add(homedAt(k, k * 7), 0);
+            first.add(store.create(SessionRecord.login("user" + k, "user", 500), 1000));
+        }
+        ids.add(homedAt(18, 0), 0);
+        String last = store.create(SessionRecord.login("user18", "user", 500), 1001);
+        
+        int evicted = 0;
+        for (String id : first) {
+            if (store.get(id, 1001) == null) {
+                evicted++;
+            }
+        }
+        assertEquals(1, evicted);
+        assertRecord("user18", "user", 500, store.get(last, 1001));
+        assertEquals(17, store.size());
+        assertTrue(store.describe(), store.describe().contains("evicted=1"));
+    }
+    
+    @Test
+    public void fullSegmentFreesExpiredSessionsBeforeEvicting() {
+        PickedIds ids = new PickedIds();
+        OffHeapSessionStore store = new OffHeapSessionStore(16, 64, TIMEOUT_SECONDS, ids);
+        ids.add(homedAt(1, 0), 0);
+        String stale = store.create(SessionRecord.login("stale", "user", 500), 1000);
+        List<String> live = new ArrayList<>();
+        for (int k = 2; k <= 18; k++) {
+            ids.add(homedAt(k, k * 7), 0);
+            live.add(store.create(SessionRecord.login("user" + k, "user", 500), 1000 + TIMEOUT));
+        }
+        
+        for (String id : live) {
+            assertNotNull(store.get(id, 1000 + TIMEOUT));
+        }
+        assertNull(store.get(stale, 1000));
+        assertTrue(store.describe(), store.describe().contains("evicted=0"));
+    }
+    
+    @Test
+    public void attributesLargerThanTheSlotAreRejected() {
+        // 30 bytes of attributes: two length prefixes and 26 bytes of username
+        OffHeapSessionStore store = new OffHeapSessionStore(16, 64, TIMEOUT_SECONDS);
+        String fits = store.create(SessionRecord.login("abcdefghijklmnopqrstuvwxyz", null, 500), 1000);
+        assertRecord("abcdefghijklmnopqrstuvwxyz", null, 500, store.get(fits, 1000));
+        try {
+            store.create(SessionRecord.login("abcdefghijklmnopqrstuvwxyz", "a", 500), 1000);
+            fail("27 bytes of attributes fit a 64-byte slot");
+        } catch (IllegalArgumentException expected) {
+            // The record is not stored
+        }
+        assertEquals(1, store.size());
+    }
+    
+    /**
+     * Sessions whose homes run from the end of the index over its start;
+     * removing them in any order has to keep every other one reachable.
+     */
+    @Test
+    public void deletionKeepsCollidingRunsReachable() {
+        Random shuffle = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            PickedIds ids = new PickedIds();
+            OffHeapSessionStore store = new OffHeapSessionStore(64, 64, TIMEOUT_SECONDS, ids);
+            // -2 and -1 are the last two index positions whatever the index size
+            int[] homes = {-2, -2, -1, -1, -1, 0, 0, 0, 1, 1, -2, 0};
+            List<Integer> order = new ArrayList<>();
+            for (int k = 0; k < homes.length; k++) {
+                order.add(k);
+            }
+            Collections.shuffle(order, shuffle);
+            
+            List<String> live = new ArrayList<>();
+            for (int k : order) {
+                ids.add(homedAt(k + 1, homes[k]), 0);
+                live.add(store.create(SessionRecord.login("user" + k, "user", 500), 1000));
+            }
+            Collections.shuffle(live, shuffle);
+            while (!live.isEmpty()) {
+                String removed = live.remove(live.size() - 1);
+                store.remove(removed);
+                assertNull(store.get(removed, 1000));
+                for (String id : live) {
+                    assertNotNull("round " + round, store.get(id, 1000));
+                }
+                assertEquals(live.size(), store.size());
+            }
+        }
+    }
+    
+    @Test
+    public void malformedIdsMatchNothing() {
+        OffHeapSessionStore store = new OffHeapSessionStore(1000, 256, TIMEOUT_SECONDS);
+        String id = store.create(SessionRecord.login("alice", "admin", 500), 1000);
+        char last = id.charAt(21);
+        
+        List<String> malformed = new ArrayList<>();
+        malformed.add("");
+        malformed.add("alice");
+        malformed.add(id.substring(0, 21));
+        malformed.add(id + "A");
+        malformed.add(id.substring(0, 20) + "==");
+        malformed.add("+" + id.substring(1));
+        malformed.add("/" + id.substring(1));
+        malformed.add(" " + id.substring(1));
+        malformed.add("é" + id.substring(1));
+        // Decodes to the same 16 bytes: only the padding bits differ
+        malformed.add(id.substring(0, 21) + (char) (last + 1));
+        for (String bad : malformed) {
+            assertNull(bad, store.get(bad, 1000));
+            store.remove(bad);
+        }
+        
+        assertNull(store.get(request(new Cookie(OffHeapSessionStore.COOKIE_NAME, "../../etc/passwd"))));
+        assertNull(store.get(request(new Cookie("JSESSIONID", id))));
+        assertNull(store.get(request()));
+        assertNotNull(store.get(id, 1000));
+    }
+    
+    /**
+     * Random creates, lookups, removals, sweeps and clock steps, checked
+     * against a map of what should be live.
+     */
+    @Test
+    public void randomOperationsMatchAReferenceMap() {
+        for (long seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            OffHeapSessionStore store = new OffHeapSessionStore(4096, 128, TIMEOUT_SECONDS, new Random(-seed));
+            Map<String, Expected> reference = new HashMap<>();
+            List<String> issued = new ArrayList<>();
+            String[] roles = {"admin", "user", null};
+            long now = 1000;
+            
+            for (int op = 0; op < 20000; op++) {
+                int dice = random.nextInt(100);
+                if (dice < 30 || issued.isEmpty()) {
+                    SessionRecord record = SessionRecord.login("user" + op, roles[random.nextInt(3)], now - op);
+                    String id = store.create(record, now);
+                    reference.put(id, new Expected(record, now + TIMEOUT));
+                    issued.add(id);
+                } else if (dice < 70) {
+                    String id = issued.get(random.nextInt(issued.size()));
+                    Expected expected = reference.get(id);
+                    if (expected != null && expected.expiresAt <= now) {
+                        reference.remove(id);
+                        expected = null;
+                    }
+                    SessionRecord actual = store.get(id, now);
+                    if (expected == null) {
+                        assertNull("seed " + seed + ", op " + op, actual);
+                    } else {
+                        assertRecord(expected.record, actual);
+                        expected.expiresAt = now + TIMEOUT;
+                    }
+                } else if (dice < 85) {
+                    String id = issued.get(random.nextInt(issued.size()));
+                    store.remove(id);
+                    reference.remove(id);
+                } else if (dice < 99) {
+                    now += random.nextInt(20000);
+                } else {
+                    store.sweep(now);
+                    dropExpired(reference, now);
+                    assertEquals("seed " + seed + ", op " + op, reference.size(), store.size());
+                }
+            }
+            
+            store.sweep(now);
+            dropExpired(reference, now);
+            assertEquals(reference.size(), store.size());
+            for (Map.Entry<String, Expected> entry : reference.entrySet()) {
+                assertRecord(entry.getValue().record, store.get(entry.getKey(), now));
+            }
+            assertTrue(store.describe(), store.describe().contains("evicted=0"));
+        }
+    }
+    
+    private static void dropExpired(Map<String, Expected> reference, long now) {
+        for (Iterator<Expected> it = reference.values().iterator(); it.hasNext(); ) {
+            if (it.next().expiresAt <= now) {
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * An ID high half whose index home is {@code home} masked to the index size.
+     */
+    private static long homedAt(int k, int home) {
+        return ((long) k << 32) | ((k ^ home) & 0xFFFFFFFFL);
+    }
+    
+    private static void assertRecord(String username, String role, long loginTime, SessionRecord actual) {
+        assertRecord(new SessionRecord(username, role, loginTime), actual);
+    }
+    
+    private static void assertRecord(SessionRecord expected, SessionRecord actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getUsername(), actual.getUsername());
+        assertEquals(expected.getRole(), actual.getRole());
+        assertEquals(expected.getLoginTimeMillis(), actual.getLoginTimeMillis());
+    }
+    
+    private static HttpServletRequest request(Cookie... cookies) {
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                OffHeapSessionStoreTest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+                (proxy, method, args) -> "getCookies".equals(method.getName()) && cookies.length > 0 ? cookies : null);
+    }
+    
+    private static final class Expected {
+        
+        final SessionRecord record;
+        long expiresAt;
+        
+        Expected(SessionRecord record, long expiresAt) {
+            this.record = record;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    /**
+     * Hands out queued ID halves, high half first, in place of SecureRandom.
+     */
+    private static final class PickedIds extends Random {
+        
+        private final ArrayDeque<Long> next = new ArrayDeque<>();
+        
+        void add(long idHigh, long idLow) {
+            next.add(idHigh);
+            next.add(idLow);
+        }
+        
+        @Override
+        public long nextLong() {
+            return next.remove();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.legacy.servlet.session;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GC pauses with a million logged-in sessions held by:
+ * - standardSession: Tomcat's StandardManager, what the container store uses
+ * - offHeap: OffHeapSessionStore at its default 256-byte slots
+ *
+ * Each call looks up a random session and allocates 8 KB of garbage, standing
+ * in for the rest of a request. After each iteration it prints the
+ * collections during the iteration (count, total, p50/p99/max pause), then
+ * the time of a System.gc() and the heap used after it. The million session
+ * IDs the benchmark keeps (about 70 MB) are on the heap in both cases.
+ *
+ * G1 by default; for another collector pass it in jmh.args, e.g.
+ * -Djmh.args="-jvmArgsAppend '-Xmx2g -XX:+UseParallelGC'".
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=SessionStoreGcBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:+UseG1GC"})
+@State(Scope.Benchmark)
+public class SessionStoreGcBenchmark {
+    
+    private static final int SESSIONS = 1000000;
+    
+    @Param({"standardSession", "offHeap"})
+    public String store;
+    
+    private final List<Long> pauses = Collections.synchronizedList(new ArrayList<>());
+    private final NotificationListener listener = (notification, handback) -> {
+        if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (!info.getGcName().contains("Concurrent")) {
+                pauses.add(info.getGcInfo().getDuration());
+            }
+        }
+    };
+    
+    private StandardManager manager;
+    private OffHeapSessionStore offHeap;
+    private String[] ids;
+    
+    @Setup(Level.Trial)
+    public void login() {
+        long now = System.currentTimeMillis();
+        ids = new String[SESSIONS];
+        if ("offHeap".equals(store)) {
+            offHeap = new OffHeapSessionStore(SESSIONS, 256, 1800);
+            for (int i = 0; i < SESSIONS; i++) {
+                ids[i] = offHeap.create(SessionRecord.login("user" + i, "user", now), now);
+            }
+        } else {
+            manager = new StandardManager();
+            manager.setContext(new StandardContext());
+            for (int i = 0; i < SESSIONS; i++) {
+                Session session = manager.createEmptySession();
+                session.setNew(true);
+                session.setValid(true);
+                session.setCreationTime(now);
+                session.setMaxInactiveInterval(1800);
+                ids[i] = Long.toHexString(ThreadLocalRandom.current().nextLong())
+                        + Long.toHexString(ThreadLocalRandom.current().nextLong());
+                session.setId(ids[i]);
+                session.getSession().setAttribute("username", "user" + i);
+                session.getSession().setAttribute("role", "user");
+                session.getSession().setAttribute("loginTime", now);
+            }
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopListening() throws Exception {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).removeNotificationListener(listener);
+        }
+    }
+    
+    @Setup(Level.Iteration)
+    public void clearPauses() {
+        pauses.clear();
+    }
+    
+    @TearDown(Level.Iteration)
+    public void report() {
+        List<Long> churn;
+        synchronized (pauses) {
+            churn = new ArrayList<>(pauses);
+        }
+        Collections.sort(churn);
+        long total = 0;
+        for (long pause : churn) {
+            total += pause;
+        }
+        long start = System.nanoTime();
+        System.gc();
+        long fullGc = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf("%n%d GCs, %d ms total, p50/p99/max %d/%d/%d ms; System.gc() %d ms, heap after %d MB%n",
+                churn.size(), total, percentile(churn, 0.50), percentile(churn, 0.99), percentile(churn, 1.0),
+                fullGc, heap / 1048576);
+    }
+    
+    private static long percentile(List<Long> sorted, double quantile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return sorted.get((int) Math.ceil(quantile * sorted.size()) - 1);
+    }
+    
+    @Benchmark
+    public Object request() throws IOException {
+        String id = ids[ThreadLocalRandom.current().nextInt(SESSIONS)];
+        byte[] garbage = new byte[8192];
+        garbage[ThreadLocalRandom.current().nextInt(8192)] = 1;
+        if (offHeap != null) {
+            SessionRecord record = offHeap.get(id, System.currentTimeMillis());
+            return record != null ? record.getUsername() : garbage;
+        }
+        Session session = manager.findSession(id);
+        session.access();
+        Object username = session.getSession().getAttribute("username");
+        session.endAccess();
+        return username != null ? username : garbage;
+    }
+}
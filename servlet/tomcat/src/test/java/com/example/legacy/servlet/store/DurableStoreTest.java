@@ -0,0 +1,181 @@
+package com.example.legacy.servlet.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * DurableStore recovery from its log segments, and writes that fail in the log.
+ */
+public class DurableStoreTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void reopenRecoversPutsAndRemoves() throws IOException {
+        try (DurableStore<String, String> store = open("recover")) {
+            assertTrue(store.isFresh());
+            store.put("a", "1");
+            store.put("b", "2");
+            store.put("a", "3");
+            assertEquals("2", store.remove("b"));
+        }
+        try (DurableStore<String, String> store = open("recover")) {
+            assertEquals(1, store.size());
+            assertEquals("3", store.get("a"));
+            assertNull(store.get("b"));
+            assertEquals(4, store.getVersion());
+        }
+    }
+    
+    @Test
+    public void tornTailOfLastSegmentIsTruncated() throws IOException {
+        try (DurableStore<String, String> store = open("torn")) {
+            store.put("a", "1");
+            store.put("b", "2");
+        }
+        File segment = lastSegment("torn");
+        long length = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // A record header promising more bytes than a crash left behind
+            file.seek(length);
+            file.writeInt(100);
+            file.writeLong(3);
+        }
+        
+        try (DurableStore<String, String> store = open("torn")) {
+            assertEquals(2, store.size());
+            assertEquals("2", store.get("b"));
+        }
+        assertEquals(length, segment.length());
+    }
+    
+    @Test
+    public void corruptRecordInAnOlderSegmentFailsRecovery() throws IOException {
+        try (DurableStore<String, String> store = open("corrupt")) {
+            store.put("a", "1");
+            store.put("b", "2");
+        }
+        File older = lastSegment("corrupt");
+        try (DurableStore<String, String> store = open("corrupt")) {
+            store.put("c", "3");
+        }
+        assertEquals(2, WriteAheadLog.listSegments(folder.getRoot(), "corrupt").size());
+        
+        long length = older.length();
+        try (RandomAccessFile file = new RandomAccessFile(older, "rw")) {
+            // Flip a byte inside the first record's body
+            file.seek(8);
+            int b = file.read();
+            file.seek(8);
+            file.write(b ^ 0xff);
+        }
+        
+        try {
+            open("corrupt").close();
+            fail("a corrupt record before the last segment must fail recovery");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("not the last segment"));
+        }
+        assertEquals("the corrupt segment must be left as it was", length, older.length());
+    }
+    
+    @Test
+    public void failedLogLeavesTheStoreUnchanged() throws Exception {
+        try (DurableStore<String, String> store = open("failed")) {
+            store.put("a", "1");
+            
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("wal-writer-failed")) {
+                    thread.interrupt();
+                    thread.join(10000);
+                }
+            }
+            try {
+                store.put("a", "2");
+                fail("a write the log could not take must fail");
+            } catch (IOException expected) {
+                // The log's failure
+            }
+            try {
+                store.remove("a");
+                fail("a write the log could not take must fail");
+            } catch (IOException expected) {
+                // The log's failure
+            }
+            assertEquals("1", store.get("a"));
+            assertEquals(1, store.snapshot().size());
+        } catch (IOException closeFailure) {
+            // close() reports the log failure again
+        }
+    }
+    
+    @Test
+    public void valueThatCannotBeEncodedIsNotApplied() throws IOException {
+        try (DurableStore<String, String> store = open("poison")) {
+            store.put("a", "1");
+            try {
+                store.put("a", POISON);
+                fail("the codec rejects this value");
+            } catch (IllegalStateException expected) {
+                // Encoding failure
+            }
+            assertEquals("1", store.get("a"));
+            store.put("b", "2");
+        }
+        try (DurableStore<String, String> store = open("poison")) {
+            assertEquals("1", store.get("a"));
+            assertEquals("2", store.get("b"));
+        }
+    }
+    
+    private static final String POISON = "poison";
+    
+    private DurableStore<String, String> open(String name) throws IOException {
+        StoreSettings settings = new StoreSettings(folder.getRoot(), FsyncPolicy.ALWAYS, 50L, Long.MAX_VALUE, 3600L);
+        return new DurableStore<>(settings, name, new StringCodec());
+    }
+    
+    private File lastSegment(String name) {
+        List<Long> segments = WriteAheadLog.listSegments(folder.getRoot(), name);
+        return WriteAheadLog.segmentFile(folder.getRoot(), name, segments.get(segments.size() - 1));
+    }
+    
+    private static final class StringCodec implements RecordCodec<String, String> {
+        @Override
+        public void writeKey(String key, DataOutput out) throws IOException {
+            out.writeUTF(key);
+        }
+        
+        @Override
+        public String readKey(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+        
+        @Override
+        public void writeValue(String value, DataOutput out) throws IOException {
+            if (POISON.equals(value)) {
+                throw new IOException("Cannot encode " + value);
+            }
+            out.writeUTF(value);
+        }
+        
+        @Override
+        public String readValue(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.legacy.servlet.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput of DurableStore under each FsyncPolicy: 4 threads put
+ * 100-byte values under 10k keys into a store under target/benchmark-data.
+ * Under ALWAYS the writers share each fsync (group commit); run with -t 1
+ * to see a lone writer paying for every fsync itself. Compaction is off so
+ * only the write-ahead log is measured.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=DurableStoreWriteBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class DurableStoreWriteBenchmark {
+    
+    private static final int KEYS = 10000;
+    
+    @Param({"ALWAYS", "INTERVAL", "NEVER"})
+    public FsyncPolicy policy;
+    
+    private DurableStore<String, String> store;
+    private String[] keys;
+    private String value;
+    
+    @Setup(Level.Trial)
+    public void openStore() throws IOException {
+        File directory = new File("target/benchmark-data/durable-" + policy.name().toLowerCase(Locale.ROOT));
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        StoreSettings settings = new StoreSettings(directory, policy, 50L, Long.MAX_VALUE, 3600L);
+        store = new DurableStore<>(settings, "bench", new StringCodec());
+        
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "user" + i;
+        }
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 100) {
+            sb.append("0123456789");
+        }
+        value = sb.toString();
+    }
+    
+    @TearDown(Level.Trial)
+    public void closeStore() throws IOException {
+        store.close();
+    }
+    
+    @Benchmark
+    public String put() throws IOException {
+        return store.put(keys[ThreadLocalRandom.current().nextInt(KEYS)], value);
+    }
+    
+    private static final class StringCodec implements RecordCodec<String, String> {
+        @Override
+        public void writeKey(String key, DataOutput out) throws IOException {
+            out.writeUTF(key);
+        }
+        
+        @Override
+        public String readKey(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+        
+        @Override
+        public void writeValue(String value, DataOutput out) throws IOException {
+            out.writeUTF(value);
+        }
+        
+        @Override
+        public String readValue(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.legacy.servlet.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a read/write mix on StripedSnapshotMap from 4 threads, over
+ * 1k and 100k entries with 0%, 10% and 50% of operations being puts of an
+ * existing key; a snapshot is taken every 1000 operations per thread, as
+ * UserServlet listings would.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=StripedSnapshotMapBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class StripedSnapshotMapBenchmark {
+    
+    @Param({"1000", "100000"})
+    public int size;
+    
+    @Param({"0", "10", "50"})
+    public int writePercent;
+    
+    private StripedSnapshotMap<Integer, Integer> map;
+    
+    @Setup(Level.Trial)
+    public void populate() {
+        map = new StripedSnapshotMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(i, i);
+        }
+    }
+    
+    @Benchmark
+    public Object mix() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer key = random.nextInt(size);
+        int dice = random.nextInt(1000);
+        if (dice == 0) {
+            return map.snapshot();
+        }
+        if (dice % 100 < writePercent) {
+            return map.put(key, dice);
+        }
+        return map.get(key);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.legacy.servlet.store;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * StripedSnapshotMap against a HashMap model, including keys whose hash codes
+ * collide, and under concurrent writers with snapshots taken throughout.
+ */
+public class StripedSnapshotMapTest {
+    
+    @Test
+    public void randomOperationsMatchHashMap() {
+        StripedSnapshotMap<Key, Integer> map = new StripedSnapshotMap<>();
+        Map<Key, Integer> model = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            Key key = new Key(random.nextInt(5000));
+            int op = random.nextInt(10);
+            if (op < 5) {
+                assertEquals(model.put(key, i), map.put(key, i));
+            } else if (op < 7) {
+                assertEquals(model.putIfAbsent(key, i), map.putIfAbsent(key, i));
+            } else {
+                assertEquals(model.remove(key), map.remove(key));
+            }
+            if (i % 10000 == 0) {
+                assertMatches(model, map.snapshot());
+            }
+        }
+        assertMatches(model, map.snapshot());
+        assertEquals(model.size(), map.size());
+        
+        for (Key key : new ArrayList<>(model.keySet())) {
+            assertEquals(model.remove(key), map.remove(key));
+        }
+        assertEquals(0, map.size());
+        assertMatches(model, map.snapshot());
+    }
+    
+    @Test
+    public void snapshotIgnoresLaterWrites() {
+        StripedSnapshotMap<String, String> map = new StripedSnapshotMap<>();
+        map.put("a", "1");
+        map.put("b", "2");
+        StripedSnapshotMap.Snapshot<String, String> snapshot = map.snapshot();
+        map.put("a", "changed");
+        map.remove("b");
+        map.put("c", "3");
+        
+        assertEquals(2, snapshot.size());
+        assertEquals("1", snapshot.get("a"));
+        assertEquals("2", snapshot.get("b"));
+        assertNull(snapshot.get("c"));
+        assertEquals(2, snapshot.getVersion());
+        assertEquals(5, map.getVersion());
+    }
+    
+    /**
+     * Writers insert fresh keys and then remove them, so every snapshot must
+     * hold exactly as many entries as its version implies.
+     */
+    @Test
+    public void snapshotsStayConsistentUnderConcurrentWriters() throws Exception {
+        final int writers = 4;
+        final int keysPerWriter = 20000;
+        final int total = writers * keysPerWriter;
+        StripedSnapshotMap<Integer, Integer> map = new StripedSnapshotMap<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch inserted = new CountDownLatch(writers);
+        CountDownLatch removing = new CountDownLatch(1);
+        
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < keysPerWriter; i++) {
+                        int key = i * writers + writer;
+                        assertNull(map.putIfAbsent(key, key));
+                    }
+                    inserted.countDown();
+                    removing.await();
+                    for (int i = 0; i < keysPerWriter; i++) {
+                        int key = i * writers + writer;
+                        assertEquals(Integer.valueOf(key), map.remove(key));
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            try {
+                while (running.get()) {
+                    StripedSnapshotMap.Snapshot<Integer, Integer> snapshot = map.snapshot();
+                    long version = snapshot.getVersion();
+                    long expected = version <= total ? version : 2L * total - version;
+                    assertEquals(expected, snapshot.size());
+                    int count = 0;
+                    for (Map.Entry<Integer, Integer> entry : snapshot.entries()) {
+                        assertEquals(entry.getKey(), entry.getValue());
+                        assertEquals(entry.getValue(), snapshot.get(entry.getKey()));
+                        count++;
+                    }
+                    assertEquals(snapshot.size(), count);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }));
+        
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        inserted.await();
+        assertEquals(total, map.size());
+        removing.countDown();
+        for (int i = 0; i < writers; i++) {
+            threads.get(i).join();
+        }
+        running.set(false);
+        threads.get(writers).join();
+        
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(0, map.size());
+        assertEquals(2L * total, map.getVersion());
+    }
+    
+    private static void assertMatches(Map<Key, Integer> model, StripedSnapshotMap.Snapshot<Key, Integer> snapshot) {
+        assertEquals(model.size(), snapshot.size());
+        Map<Key, Integer> seen = new HashMap<>();
+        for (Map.Entry<Key, Integer> entry : snapshot.entries()) {
+            assertNull("entry listed twice: " + entry, seen.put(entry.getKey(), entry.getValue()));
+        }
+        assertEquals(model, seen);
+        List<Integer> values = new ArrayList<>(snapshot.values());
+        List<Integer> expected = new ArrayList<>(model.values());
+        Collections.sort(values);
+        Collections.sort(expected);
+        assertEquals(expected, values);
+        for (Map.Entry<Key, Integer> entry : model.entrySet()) {
+            assertEquals(entry.getValue(), snapshot.get(entry.getKey()));
+        }
+    }
+    
+    /**
+     * Key whose hash codes collide often: every third key hashes to 7, so
+     * collision nodes and deep tries are exercised as well as the usual case.
+     */
+    private static final class Key {
+        private final int id;
+        private final int hash;
+        
+        Key(int id) {
+            this.id = id;
+            this.hash = id % 3 == 0 ? 7 : id * 0x9E3779B9;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public String toString() {
+            return "key" + id;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.legacy.servlet.util;
+
+import com.example.legacy.servlet.cache.CacheManager;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per /user/list body at 100 and 1000 users, written into a discarding
+ * stream:
+ * - jsonArray: a JSONObject per user in a JSONArray, printed through a
+ *   UTF-8 PrintWriter, as the list was built before JsonBytesCache
+ * - cachedBytes: JsonBytesCache.writeArray over the cached encodings
+ *
+ * Setup checks that both produce the same bytes. Add -prof gc for the
+ * allocation per list.
+ *
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark=JsonBytesCacheBenchmark -Djmh.args="-prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBytesCacheBenchmark {
+    
+    @Param({"100", "1000"})
+    public int users;
+    
+    private List<User> list;
+    private JsonBytesCache<String, User> cache;
+    
+    @Setup(Level.Trial)
+    public void createUsers() throws IOException {
+        list = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            list.add(new User("user" + i, "User Number " + i, "user" + i + "@example.com", i == 0 ? "admin" : "user"));
+        }
+        cache = new JsonBytesCache<>(JsonBytesCacheBenchmark::toJson, new CacheManager(users * 2), "bench", users * 2);
+        
+        Sink before = new Sink(true);
+        jsonArray(before);
+        Sink after = new Sink(true);
+        cachedBytes(after);
+        if (!before.text().equals(after.text())) {
+            throw new IllegalStateException("Outputs differ:\n" + before.text() + "\n" + after.text());
+        }
+    }
+    
+    @Benchmark
+    public long jsonArray() {
+        return jsonArray(new Sink(false));
+    }
+    
+    @Benchmark
+    public long cachedBytes() throws IOException {
+        return cachedBytes(new Sink(false));
+    }
+    
+    private long jsonArray(Sink sink) {
+        JSONArray array = new JSONArray();
+        for (User user : list) {
+            array.put(toJson(user));
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8));
+        out.print(array.toString());
+        out.flush();
+        return sink.count;
+    }
+    
+    private long cachedBytes(Sink sink) throws IOException {
+        cache.writeArray(list, User::getUsername, sink);
+        return sink.count;
+    }
+    
+    private static JSONObject toJson(User user) {
+        JSONObject json = new JSONObject();
+        json.put("username", user.getUsername());
+        json.put("fullName", user.fullName);
+        json.put("email", user.email);
+        json.put("role", user.role);
+        return json;
+    }
+    
+    private static final class User {
+        private final String username;
+        private final String fullName;
+        private final String email;
+        private final String role;
+        
+        User(String username, String fullName, String email, String role) {
+            this.username = username;
+            this.fullName = fullName;
+            this.email = email;
+            this.role = role;
+        }
+        
+        String getUsername() {
+            return username;
+        }
+    }
+    
+    /**
+     * Counts bytes, keeping them only when asked to.
+     */
+    private static final class Sink extends OutputStream {
+        private final StringBuilder kept;
+        long count;
+        
+        Sink(boolean keep) {
+            kept = keep ? new StringBuilder() : null;
+        }
+        
+        @Override
+        public void write(int b) {
+            count++;
+            if (kept != null) {
+                kept.append((char) b);
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+            if (kept != null) {
+                kept.append(new String(b, off, len, StandardCharsets.ISO_8859_1));
+            }
+        }
+        
+        String text() {
+            return kept.toString();
+        }
+    }
+}
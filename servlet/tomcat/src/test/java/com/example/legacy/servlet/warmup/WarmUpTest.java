@@ -0,0 +1,95 @@
+package com.example.legacy.servlet.warmup;
+
+import com.example.legacy.servlet.scheduler.TaskScheduler;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * WarmUp against an embedded Tomcat whose every page takes 20 ms: a long
+ * replay leaves the scheduler's workers free and ends promptly on stop().
+ */
+public class WarmUpTest {
+    
+    private static final AtomicInteger served = new AtomicInteger();
+    
+    private static Tomcat tomcat;
+    
+    @BeforeClass
+    public static void startServer() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", null);
+        Tomcat.addServlet(context, "slow", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                served.incrementAndGet();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        context.addServletMappingDecoded("/*", "slow");
+        tomcat.getConnector();
+        tomcat.start();
+    }
+    
+    @AfterClass
+    public static void stopServer() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+    
+    @Test
+    public void replayLeavesSchedulerWorkersFreeAndStopsMidRound() throws InterruptedException {
+        TaskScheduler scheduler = new TaskScheduler(1, 10, 64, 16);
+        // A round of 1000 requests takes about 20 s
+        WarmUp warmUp = new WarmUp("http://127.0.0.1:" + tomcat.getConnector().getLocalPort(), null, null,
+                1000, 3, 10, 120, scheduler, null);
+        try {
+            warmUp.start();
+            awaitServed(5);
+            
+            CountDownLatch ran = new CountDownLatch(1);
+            scheduler.execute(ran::countDown);
+            assertTrue("a scheduler job waited for the warm-up", ran.await(2, TimeUnit.SECONDS));
+            
+            long start = System.nanoTime();
+            warmUp.stop();
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("stop took " + millis + " ms", millis < 1000);
+            assertTrue(warmUp.isReady());
+            
+            int afterStop = served.get();
+            Thread.sleep(200);
+            assertEquals("requests after stop", afterStop, served.get());
+        } finally {
+            warmUp.stop();
+            scheduler.close(5, TimeUnit.SECONDS);
+        }
+    }
+    
+    private static void awaitServed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (served.get() < count) {
+            assertTrue("warm-up sent no requests", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}